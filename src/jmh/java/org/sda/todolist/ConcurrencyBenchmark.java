@@ -0,0 +1,142 @@
+package org.sda.todolist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures the throughput of 32 threads sharing one list: 8 threads change tasks
+ * while 24 threads read single tasks and pages of the due date listing. It compares
+ * ConcurrentTodoList ("readwrite") with SynchronizedTodoList ("synchronized").
+ *
+ * The list is kept in memory, without a data file, so that writing the journal is not measured.
+ **/
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Group)
+public class ConcurrencyBenchmark {
+    static final int TASKS = 100_000;
+    static final int PROJECTS = 100;
+
+    // "readwrite" for ConcurrentTodoList, "synchronized" for one monitor around every call
+    @Param({"readwrite", "synchronized"})
+    public String locking;
+
+    SharedTasks tasks;
+
+    /**
+     * The operations compared, as offered by both ConcurrentTodoList and SynchronizedTodoList
+     */
+    public interface SharedTasks {
+        long add(Task task);
+        boolean update(long id, TaskField field, String value);
+        boolean markCompleted(long id);
+        Task find(long id);
+        List<Task> getTasks(TaskOrder order, int offset, int limit);
+    }
+
+    /**
+     * ConcurrentTodoList seen as SharedTasks
+     */
+    static class ReadWrite implements SharedTasks {
+        private final ConcurrentTodoList tasks;
+
+        ReadWrite(ConcurrentTodoList tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        public long add(Task task) {
+            return tasks.add(task);
+        }
+
+        @Override
+        public boolean update(long id, TaskField field, String value) {
+            return tasks.update(id, field, value);
+        }
+
+        @Override
+        public boolean markCompleted(long id) {
+            return tasks.markCompleted(id);
+        }
+
+        @Override
+        public Task find(long id) {
+            return tasks.find(id);
+        }
+
+        @Override
+        public List<Task> getTasks(TaskOrder order, int offset, int limit) {
+            return tasks.getTasks(order, offset, limit);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void load() {
+        TodoList todoList = new TodoList();
+        Random random = new Random(1);
+        for (int i = 0; i < TASKS; i++) {
+            todoList.addTask(new Task(TaskData.words(random, 3), "Project " + random.nextInt(PROJECTS),
+                    LocalDate.now().plusDays(random.nextInt(365)), "MEDIUM"));
+        }
+        // both variants keep the same indexes up to date on every change
+        todoList.search("");
+        todoList.getTasks(TaskOrder.DUE_DATE, 0, 0);
+        if (locking.equals("synchronized")) {
+            tasks = new SynchronizedTodoList(todoList);
+        } else {
+            tasks = new ReadWrite(new ConcurrentTodoList(todoList));
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(8)
+    public boolean write() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int operation = random.nextInt(10);
+        if (operation == 0) {
+            return tasks.add(new Task("Prepare slides", "Project " + random.nextInt(PROJECTS), LocalDate.now().plusDays(7), "HIGH")) > 0;
+        }
+        long id = 1 + random.nextInt(TASKS);
+        if (operation < 4) {
+            return tasks.markCompleted(id);
+        }
+        return tasks.update(id, TaskField.TITLE, "Review invoice " + operation);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(20)
+    public Task readTask() {
+        return tasks.find(1 + ThreadLocalRandom.current().nextInt(TASKS));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(4)
+    public List<Task> readPage() {
+        return tasks.getTasks(TaskOrder.DUE_DATE, ThreadLocalRandom.current().nextInt(TASKS), 50);
+    }
+}
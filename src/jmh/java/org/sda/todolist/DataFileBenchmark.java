@@ -0,0 +1,62 @@
+package org.sda.todolist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures writing the whole list to the data file and loading it again.
+ **/
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@State(Scope.Benchmark)
+public class DataFileBenchmark {
+    TodoList todoList;
+    String dataFile;
+
+    @Setup(Level.Trial)
+    public void load(TaskData data) {
+        todoList = data.load();
+        dataFile = data.dataFile.toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        todoList.close();
+    }
+
+    @Benchmark
+    public boolean saveToFile() {
+        return todoList.saveToFile(dataFile);
+    }
+
+    @Benchmark
+    public TodoList readFromFile(TaskData data) {
+        TodoList loaded = data.load();
+        loaded.close();
+        return loaded;
+    }
+
+    @Benchmark
+    public TodoList roundTrip(TaskData data) {
+        todoList.saveToFile(dataFile);
+        TodoList loaded = data.load();
+        loaded.close();
+        return loaded;
+    }
+}
@@ -0,0 +1,204 @@
+package org.sda.todolist;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class is a load test of the HTTP API, see TaskServer. It sends requests at a fixed rate
+ * for a number of seconds and reports the throughput and the percentiles of the latency.
+ *
+ * The requests are sent open-loop: each request has a planned start time, and its latency is
+ * measured from that time, so a slow server is not hidden by sending fewer requests
+ * (coordinated omission). Each request is sent on its own virtual thread over kept-alive
+ * HTTP/1.1 connections. The mix is 70% pages of the due date listing (half of them conditional
+ * with the last ETag), 15% single tasks, 5% searches and 10% changes.
+ *
+ * Run with: gradle loadTest -PloadArgs="--rate 10000 --seconds 30 --tasks 100000"
+ * By default a server with generated tasks is started in this JVM on a free port; --url
+ * http://host:port tests a running server instead ("todo serve").
+ **/
+
+public class HttpLoadTest {
+    private final HttpClient client;
+    private final String url;
+    private final int tasks;
+    // ETag of the first page of the listing, for conditional requests
+    private final AtomicReference<String> etag = new AtomicReference<>();
+    private final AtomicInteger[] statuses = new AtomicInteger[6];
+
+    HttpLoadTest(String url, int tasks) {
+        this.url = url;
+        this.tasks = tasks;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (int i = 0; i < statuses.length; i++) {
+            statuses[i] = new AtomicInteger();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = 10_000;
+        int seconds = 30;
+        int warmup = 5;
+        int taskCount = 100_000;
+        String url = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--rate" -> rate = Integer.parseInt(args[i + 1]);
+                case "--seconds" -> seconds = Integer.parseInt(args[i + 1]);
+                case "--warmup" -> warmup = Integer.parseInt(args[i + 1]);
+                case "--tasks" -> taskCount = Integer.parseInt(args[i + 1]);
+                case "--url" -> url = args[i + 1];
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        TaskServer server = null;
+        if (url == null) {
+            server = new TaskServer(new ConcurrentTodoList(generate(taskCount)), new InetSocketAddress("localhost", 0));
+            server.start();
+            url = "http://localhost:" + server.port();
+        }
+        try {
+            HttpLoadTest test = new HttpLoadTest(url, taskCount);
+            if (warmup > 0) {
+                System.out.println("Warm-up: " + warmup + " s at " + rate + " requests/s");
+                test.run(rate, warmup);
+            }
+            System.out.println("Measuring: " + seconds + " s at " + rate + " requests/s against " + url);
+            test.report(test.run(rate, seconds), seconds);
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    /**
+     * This method sends requests at a fixed rate
+     * @return latency of every request in nanoseconds, -1 for a failed request
+     */
+    long[] run(int rate, int seconds) throws InterruptedException {
+        for (AtomicInteger status : statuses) {
+            status.set(0);
+        }
+        int count = rate * seconds;
+        AtomicLongArray latencies = new AtomicLongArray(count);
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        try (ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < count; i++) {
+                long planned = start + i * interval;
+                long wait = planned - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                int index = i;
+                senders.execute(() -> latencies.set(index, send(planned)));
+            }
+        }
+        long[] result = new long[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = latencies.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * This method sends one request of the mix
+     * @return the latency from the planned start, or -1 if the request failed
+     */
+    private long send(long planned) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int kind = random.nextInt(100);
+        long id = 1 + random.nextInt(tasks);
+        HttpRequest.Builder request;
+        if (kind < 70) {
+            int page = kind < 35 ? 0 : random.nextInt(20);
+            request = HttpRequest.newBuilder(URI.create(url + "/tasks?order=due&limit=50&offset=" + page * 50));
+            String known = etag.get();
+            if (page == 0 && known != null) {
+                request.header("If-None-Match", known);
+            }
+        } else if (kind < 85) {
+            request = HttpRequest.newBuilder(URI.create(url + "/tasks/" + id));
+        } else if (kind < 90) {
+            request = HttpRequest.newBuilder(URI.create(url + "/search?q=" + TaskData.WORDS[random.nextInt(TaskData.WORDS.length)]
+                    + "+" + TaskData.WORDS[random.nextInt(TaskData.WORDS.length)]));
+        } else {
+            String priority = Task.Priority.values()[random.nextInt(3)].name();
+            request = HttpRequest.newBuilder(URI.create(url + "/tasks/" + id))
+                    .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"priority\":\"" + priority + "\"}"));
+        }
+        try {
+            HttpResponse<String> response = client.send(request.timeout(Duration.ofSeconds(30)).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            statuses[Math.min(response.statusCode() / 100, 5)].incrementAndGet();
+            if (kind < 35 && response.statusCode() == 200) {
+                response.headers().firstValue("ETag").ifPresent(etag::set);
+            }
+            return System.nanoTime() - planned;
+        } catch (IOException e) {
+            statuses[0].incrementAndGet();
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    private void report(long[] latencies, int seconds) {
+        long[] succeeded = Arrays.stream(latencies).filter(latency -> latency >= 0).sorted().toArray();
+        System.out.printf("requests: %d in %d s (%.0f/s), failed: %d%n", latencies.length, seconds,
+                (double) succeeded.length / seconds, latencies.length - succeeded.length);
+        System.out.printf("status 2xx: %d, 3xx (not modified): %d, 4xx: %d, 5xx: %d%n",
+                statuses[2].get(), statuses[3].get(), statuses[4].get(), statuses[5].get());
+        if (succeeded.length == 0) {
+            return;
+        }
+        System.out.printf("latency ms  p50: %.2f  p90: %.2f  p99: %.2f  p99.9: %.2f  max: %.2f%n",
+                percentile(succeeded, 50), percentile(succeeded, 90), percentile(succeeded, 99),
+                percentile(succeeded, 99.9), succeeded[succeeded.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double percent) {
+        int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * This method creates a list of tasks in memory, without a data file
+     */
+    static TodoList generate(int count) {
+        Random random = new Random(1);
+        LocalDate today = LocalDate.now();
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(new Task(TaskData.words(random, 2 + random.nextInt(3)), "Project " + random.nextInt(100),
+                    today.plusDays(random.nextInt(365)), Task.Priority.values()[random.nextInt(3)].name()));
+        }
+        TodoList list = new TodoList();
+        list.addTasks(tasks);
+        return list;
+    }
+}
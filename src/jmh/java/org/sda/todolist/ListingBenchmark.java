@@ -0,0 +1,83 @@
+package org.sda.todolist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures the listings of TodoList. Standard output is discarded during the
+ * benchmarks, and the page size is set to the whole list so no page prompt is shown.
+ **/
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@State(Scope.Benchmark)
+public class ListingBenchmark {
+    TodoList todoList;
+    PrintStream terminal;
+
+    /**
+     * The choices of the "Display All Tasks" menu
+     */
+    @State(Scope.Benchmark)
+    public static class SortMode {
+        @Param({"1", "2", "3"})
+        public String sortBy;
+    }
+
+    @Setup(Level.Trial)
+    public void load(TaskData data) {
+        todoList = data.load();
+        todoList.setPageSize(Integer.MAX_VALUE);
+        terminal = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        System.setOut(terminal);
+        todoList.close();
+    }
+
+    @Benchmark
+    public void listAllTasks(SortMode mode) {
+        todoList.listAllTasks(mode.sortBy);
+    }
+
+    @Benchmark
+    public void listAllTasksWithIndex() {
+        todoList.listAllTasksWithIndex();
+    }
+
+    @Benchmark
+    public void sortByDueDate() {
+        todoList.sortByDueDate();
+    }
+
+    @Benchmark
+    public void sortByPriority() {
+        todoList.sortByPriority();
+    }
+
+    @Benchmark
+    public void sortByCompletionStatus() {
+        todoList.sortByCompletionStatus();
+    }
+}
@@ -0,0 +1,97 @@
+package org.sda.todolist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures the operations which walk the whole list, on 1 to 16 threads of
+ * ParallelTasks. The scaling is read by comparing the scores of one benchmark over the
+ * parallelism, on a machine with at least as many cores, e.g.
+ * {@code -p size=1000000 -p projects=10 -p noteLength=0 -p storage=objects}. Lists smaller than
+ * ParallelTasks.DEFAULT_THRESHOLD are handled on the calling thread whatever the parallelism.
+ **/
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@State(Scope.Benchmark)
+public class ParallelBenchmark {
+    // number of worker threads, 1 for the calling thread only
+    @Param({"1", "2", "4", "8", "16"})
+    public int parallelism;
+
+    TodoList todoList;
+    List<Task> tasks;
+    ParallelTasks parallel;
+
+    @Setup(Level.Trial)
+    public void load(TaskData data) {
+        parallel = new ParallelTasks(parallelism, ParallelTasks.DEFAULT_THRESHOLD);
+        todoList = data.load();
+        todoList.setParallel(parallel);
+        tasks = todoList.getTasks();
+        // the indexes used by the scans are built before measuring
+        todoList.search("report");
+        todoList.query("is:open");
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        todoList.close();
+        parallel.shutdown();
+    }
+
+    @Benchmark
+    public TaskStatistics buildStatistics() {
+        return TaskStatistics.build(tasks, Clock.systemDefaultZone(), parallel);
+    }
+
+    @Benchmark
+    public SearchIndex buildSearchIndex() {
+        return SearchIndex.build(tasks, parallel);
+    }
+
+    @Benchmark
+    public SortedTaskIndexes buildSortedIndexes() {
+        return SortedTaskIndexes.build(tasks, parallel);
+    }
+
+    @Benchmark
+    public QueryIndex buildQueryIndex() {
+        return QueryIndex.build(tasks, parallel);
+    }
+
+    /**
+     * A term of 2 characters has no trigrams and is checked on every task
+     */
+    @Benchmark
+    public List<Task> searchShortTerm() {
+        return todoList.search("po");
+    }
+
+    /**
+     * The terms give the candidates, "is:open" matches too many tasks to be intersected with them
+     * and is checked on every candidate
+     */
+    @Benchmark
+    public List<Task> queryWithCheckedCondition() {
+        return todoList.query("is:open draft budget");
+    }
+}
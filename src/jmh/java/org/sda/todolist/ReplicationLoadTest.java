@@ -0,0 +1,285 @@
+package org.sda.todolist;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * This class is a load test of the replication, see ReplicationServer and TaskReplica, with the
+ * primary and every replica in its own JVM on localhost ("todo serve --replication-port" and
+ * "todo replica").
+ *
+ * The primary gets a data file of generated tasks. The replicas start without data files, so
+ * the time until they serve all tasks is the catch-up from a snapshot. Then changes are sent to
+ * the primary over its HTTP API at a fixed rate, and ten times per second a probe task is added
+ * and every replica is polled until it serves it: the time from the answer of the primary to the
+ * first answer of a replica with the task is the replication lag as a client sees it. At the end
+ * the time until every replica has the last change gives the replication throughput. The lag
+ * measured inside the replicas is read from their metrics files ("replication").
+ *
+ * Run with: gradle replicationTest -PreplicationArgs="--replicas 2 --rate 2000 --seconds 20 --tasks 100000"
+ **/
+
+public class ReplicationLoadTest {
+    private static final Pattern TOTAL = Pattern.compile("\"total\":(\\d+)");
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final String primary;
+    private final List<String> replicas;
+    private final int tasks;
+    private final AtomicInteger failed = new AtomicInteger();
+
+    ReplicationLoadTest(String primary, List<String> replicas, int tasks) {
+        this.primary = primary;
+        this.replicas = replicas;
+        this.tasks = tasks;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int replicaCount = 2;
+        int rate = 2000;
+        int seconds = 20;
+        int taskCount = 100_000;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--replicas" -> replicaCount = Integer.parseInt(args[i + 1]);
+                case "--rate" -> rate = Integer.parseInt(args[i + 1]);
+                case "--seconds" -> seconds = Integer.parseInt(args[i + 1]);
+                case "--tasks" -> taskCount = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        Path directory = Files.createTempDirectory("todolist-replication");
+        List<Process> processes = new ArrayList<>();
+        try {
+            Path dataFile = directory.resolve("primary.obj");
+            BinaryTaskFile.write(HttpLoadTest.generate(taskCount).getTasks(), dataFile);
+            int replicationPort = freePort();
+            String primary = "http://localhost:" + freePort();
+            processes.add(start(directory, "primary", "--file", dataFile.toString(), "serve",
+                    "--port", port(primary), "--replication-port", String.valueOf(replicationPort)));
+            List<String> replicas = new ArrayList<>();
+            for (int i = 1; i <= replicaCount; i++) {
+                replicas.add("http://localhost:" + freePort());
+            }
+            ReplicationLoadTest test = new ReplicationLoadTest(primary, replicas, taskCount);
+            test.awaitTotal(primary, taskCount, 60);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < replicaCount; i++) {
+                processes.add(start(directory, "replica-" + (i + 1), "--file", directory.resolve("replica-" + (i + 1) + ".obj").toString(),
+                        "replica", "--primary", "localhost:" + replicationPort, "--port", port(replicas.get(i))));
+            }
+            for (String replica : replicas) {
+                test.awaitTotal(replica, taskCount, 120);
+            }
+            System.out.printf("%d replicas of %d tasks started and caught up from a snapshot in %d ms%n",
+                    replicaCount, taskCount, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+            System.out.println("Measuring: " + seconds + " s at " + rate + " changes/s");
+            test.run(rate, seconds);
+        } finally {
+            for (Process process : processes) {
+                // the shutdown hooks write the metrics files
+                process.destroy();
+            }
+            for (Process process : processes) {
+                process.waitFor(30, TimeUnit.SECONDS);
+            }
+            for (int i = 1; i < processes.size(); i++) {
+                Path metrics = directory.resolve("replica-" + i + ".metrics");
+                if (Files.exists(metrics)) {
+                    for (String line : Files.readAllLines(metrics)) {
+                        if (line.trim().startsWith("replication")) {
+                            System.out.println("replica-" + i + " " + line.trim());
+                        }
+                    }
+                }
+            }
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    /**
+     * This method sends changes to the primary at a fixed rate and probes the lag of the replicas
+     */
+    void run(int rate, int seconds) throws InterruptedException {
+        int count = rate * seconds;
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        int probeEvery = Math.max(1, rate / 10);
+        // not counting the connections refused while the servers started
+        failed.set(0);
+        List<Long> lags = new ArrayList<>();
+        long start = System.nanoTime();
+        try (ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < count; i++) {
+                long planned = start + i * interval;
+                long wait = planned - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                if (i % probeEvery == 0) {
+                    senders.execute(() -> {
+                        long[] probe = probe();
+                        synchronized (lags) {
+                            for (long lag : probe) {
+                                lags.add(lag);
+                            }
+                        }
+                    });
+                } else {
+                    senders.execute(this::change);
+                }
+            }
+        }
+        long sent = System.nanoTime();
+        // the last change is visible everywhere once a probe made after it is
+        long[] last = probe();
+        long drained = System.nanoTime();
+        System.out.printf("changes: %d in %.1f s (%.0f/s), failed: %d%n", count, (sent - start) / 1e9,
+                count / ((sent - start) / 1e9), failed.get());
+        System.out.printf("replicated to all replicas: %.0f changes/s, last change visible after %.1f ms%n",
+                count / ((drained - start) / 1e9), Arrays.stream(last).max().orElse(0) / 1e6);
+        long[] sorted = lags.stream().mapToLong(Long::longValue).filter(lag -> lag >= 0).sorted().toArray();
+        if (sorted.length > 0) {
+            System.out.printf("lag until visible, ms  p50: %.2f  p90: %.2f  p99: %.2f  max: %.2f  (%d probes)%n",
+                    percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                    sorted[sorted.length - 1] / 1e6, sorted.length);
+        }
+    }
+
+    /**
+     * This method changes the priority of a random task on the primary
+     */
+    private void change() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String priority = Task.Priority.values()[random.nextInt(3)].name();
+        send(HttpRequest.newBuilder(URI.create(primary + "/tasks/" + (1 + random.nextInt(tasks))))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"priority\":\"" + priority + "\"}")));
+    }
+
+    /**
+     * This method adds a task on the primary and polls every replica until it serves the task
+     * @return per replica the nanoseconds from the answer of the primary until the task was
+     * served, -1 if it was not served within 30 s
+     */
+    private long[] probe() {
+        String tomorrow = java.time.LocalDate.now().plusDays(1).toString();
+        HttpResponse<String> added = send(HttpRequest.newBuilder(URI.create(primary + "/tasks"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"title\":\"Probe\",\"dueDate\":\"" + tomorrow + "\"}")));
+        long[] lags = new long[replicas.size()];
+        Arrays.fill(lags, -1);
+        if (added == null || added.statusCode() != 201) {
+            return lags;
+        }
+        long committed = System.nanoTime();
+        Matcher id = ID.matcher(added.body());
+        if (!id.find()) {
+            return lags;
+        }
+        for (int i = 0; i < replicas.size(); i++) {
+            while (System.nanoTime() - committed < TimeUnit.SECONDS.toNanos(30)) {
+                HttpResponse<String> found = send(HttpRequest.newBuilder(URI.create(replicas.get(i) + "/tasks/" + id.group(1))));
+                if (found != null && found.statusCode() == 200) {
+                    lags[i] = System.nanoTime() - committed;
+                    break;
+                }
+                // polling without a pause would take the CPU from the replicas
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        return lags;
+    }
+
+    /**
+     * This method waits until a server answers with the given number of tasks
+     */
+    private void awaitTotal(String url, int total, int seconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < deadline) {
+            HttpResponse<String> page = send(HttpRequest.newBuilder(URI.create(url + "/tasks?limit=1")));
+            if (page != null && page.statusCode() == 200) {
+                Matcher matcher = TOTAL.matcher(page.body());
+                if (matcher.find() && Integer.parseInt(matcher.group(1)) == total) {
+                    return;
+                }
+            }
+            Thread.sleep(20);
+        }
+        throw new IllegalStateException(url + " did not serve " + total + " tasks within " + seconds + " s");
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) {
+        try {
+            return client.send(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            failed.incrementAndGet();
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * This method starts the application in a new JVM with the classpath of this one; its output
+     * is written to a log file, its metrics to a metrics file in the directory
+     */
+    private static Process start(Path directory, String name, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("-Dtodolist.metricsFile=" + directory.resolve(name + ".metrics"));
+        command.add(Main.class.getName());
+        command.addAll(List.of(args));
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(directory.resolve(name + ".log").toFile())
+                .start();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static String port(String url) {
+        return url.substring(url.lastIndexOf(':') + 1);
+    }
+
+    private static double percentile(long[] sorted, double percent) {
+        int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
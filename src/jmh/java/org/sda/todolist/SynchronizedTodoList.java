@@ -0,0 +1,59 @@
+package org.sda.todolist;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is the baseline of ConcurrencyBenchmark: it shares a TodoList between threads with
+ * one monitor around every call, readers included. Its methods return copies of the tasks like
+ * the methods of ConcurrentTodoList, so both do the same work apart from the locking.
+ **/
+
+public class SynchronizedTodoList implements ConcurrencyBenchmark.SharedTasks {
+    private final TodoList list;
+
+    public SynchronizedTodoList(TodoList list) {
+        this.list = list;
+    }
+
+    @Override
+    public synchronized long add(Task task) {
+        list.addTask(task);
+        return task.getId();
+    }
+
+    @Override
+    public synchronized boolean update(long id, TaskField field, String value) {
+        Task task = list.findTask(id);
+        if (task == null) {
+            return false;
+        }
+        list.updateTask(task, field, value);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean markCompleted(long id) {
+        Task task = list.findTask(id);
+        if (task == null) {
+            return false;
+        }
+        list.markCompleted(task);
+        return true;
+    }
+
+    @Override
+    public synchronized Task find(long id) {
+        Task task = list.findTask(id);
+        return task == null ? null : task.copy();
+    }
+
+    @Override
+    public synchronized List<Task> getTasks(TaskOrder order, int offset, int limit) {
+        List<Task> copies = new ArrayList<>();
+        for (Task task : list.getTasks(order, offset, limit)) {
+            copies.add(task.copy());
+        }
+        return copies;
+    }
+}
@@ -0,0 +1,120 @@
+package org.sda.todolist;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class generates the task lists used by the benchmarks.
+ *
+ * The tasks are generated from a fixed seed, so every run and every commit measures the same
+ * data. They are written once per trial to a data file in a temporary directory, and each
+ * benchmark loads its TodoList from that file like the application does.
+ **/
+
+@State(Scope.Benchmark)
+public class TaskData {
+    static final String[] WORDS = {
+        "write", "report", "call", "buy", "milk", "review", "invoice", "meeting", "plan", "trip",
+        "fix", "bug", "clean", "garage", "book", "dentist", "pay", "rent", "update", "website",
+        "prepare", "slides", "renew", "passport", "order", "parts", "email", "quarterly", "budget", "draft"
+    };
+
+    // number of tasks
+    @Param({"1000", "100000", "1000000"})
+    public int size;
+
+    // number of distinct projects
+    @Param({"10", "10000"})
+    public int projects;
+
+    // length of the notes of every task, 0 for no notes
+    @Param({"0", "200"})
+    public int noteLength;
+
+    // "objects" for one Task object per task, "compact" for CompactTaskList
+    @Param({"objects", "compact"})
+    public String storage;
+
+    Path directory;
+    Path dataFile;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        directory = Files.createTempDirectory("todolist-jmh");
+        dataFile = directory.resolve("tasks.obj");
+        BinaryTaskFile.write(tasks(size, 1), dataFile);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * This method loads the generated tasks into a new TodoList, which records changes in a
+     * journal next to the data file
+     */
+    TodoList load() {
+        TodoList todoList = new TodoList();
+        todoList.setCompactStorage(storage.equals("compact"));
+        todoList.readFromFile(dataFile.toString());
+        return todoList;
+    }
+
+    /**
+     * This method generates tasks with the distribution given by the parameters
+     * @param count number of tasks
+     * @param firstId id of the first task
+     * @return the tasks, in id order
+     */
+    List<Task> tasks(int count, long firstId) {
+        Random random = new Random(firstId);
+        LocalDate today = LocalDate.now();
+        Task.Priority[] priorities = Task.Priority.values();
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Task task = new Task(words(random, 2 + random.nextInt(3)), "Project " + random.nextInt(projects),
+                    today.plusDays(random.nextInt(365)), priorities[random.nextInt(priorities.length)].name());
+            task.setNotes(notes(random));
+            if (random.nextInt(3) == 0) {
+                task.markCompleted();
+            }
+            task.setId(firstId + i);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+        for (int i = 1; i < count; i++) {
+            text.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+
+    private String notes(Random random) {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < noteLength) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return text.substring(0, noteLength);
+    }
+}
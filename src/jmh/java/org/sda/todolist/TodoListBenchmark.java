@@ -0,0 +1,90 @@
+package org.sda.todolist;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class measures the operations of TodoList which do not print: adding tasks, searching,
+ * counting and formatting a single task.
+ **/
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@State(Scope.Benchmark)
+public class TodoListBenchmark {
+    TodoList todoList;
+    List<Task> tasks;
+    int next;
+
+    @Setup(Level.Iteration)
+    public void load(TaskData data) {
+        todoList = data.load();
+        tasks = todoList.getTasks();
+        // builds the search index outside of the measurement
+        todoList.search("report");
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() {
+        todoList.close();
+    }
+
+    @Benchmark
+    public void addTask() {
+        todoList.addTask(new Task("Prepare slides", "Project 1", LocalDate.now().plusDays(7), "HIGH"));
+    }
+
+    @Benchmark
+    public List<Task> searchOneTerm() {
+        return todoList.search("passport");
+    }
+
+    @Benchmark
+    public List<Task> searchTwoTermsOr() {
+        return todoList.search("quarterly budget OR dentist");
+    }
+
+    /**
+     * The matching of searchTask before the search index: a case-insensitive contains on title and project
+     */
+    @Benchmark
+    public int searchScan() {
+        int found = 0;
+        for (Task task : tasks) {
+            if (task.getTitle().toLowerCase().contains("passport") || task.getProject().toLowerCase().contains("passport")) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public void counts(Blackhole blackhole) {
+        blackhole.consume(todoList.completedCount());
+        blackhole.consume(todoList.notCompletedCount());
+    }
+
+    @Benchmark
+    public String formattedStringOfTask() {
+        next = next + 1 < tasks.size() ? next + 1 : 0;
+        return tasks.get(next).formattedStringOfTask();
+    }
+}
@@ -0,0 +1,592 @@
+package org.sda.todolist;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.management.JMException;
+
+/**
+ * This class runs commands given on the command line or in a script instead of the menu, e.g.
+ * {@code todo add "Pay rent" --due 2024-01-31} or {@code todo script commands.txt}.
+ *
+ * The data file is read once, all commands are applied, and the journal is written once at the
+ * end, so a script of thousands of commands pays the start of the JVM and the loading of the list
+ * only once. A command which fails is reported with its line number and the following commands
+ * still run. Results are written as tab separated text or as JSON lines, see Format. If the data
+ * file can not be read, every command which changes the tasks fails, so that a script does not
+ * exit with 0 while its changes are not saved.
+ **/
+
+public class BatchMode {
+    // exit status if a command failed, or if the command line is not valid
+    public static final int FAILED = 1;
+    public static final int USAGE = 2;
+    // commands which change the tasks
+    private static final Set<String> CHANGES = Set.of("add", "complete", "reopen", "delete", "skip", "detach",
+            "undo", "redo", "archive", "import");
+
+    /**
+     * This enum lists the output formats: tasks as tab separated lines of id, due date, priority,
+     * status, project and title, or as the JSON objects of TaskFormat.JSON_LINES; results of the
+     * other commands as "added 12" or {"added":12}
+     **/
+    public enum Format {
+        TEXT, JSON
+    }
+
+    private final TodoList list;
+    private final Format format;
+    private final PrintWriter out;
+    private final PrintWriter err;
+    private int failed;
+    // set if the data file could not be read
+    private boolean readOnly;
+
+    BatchMode(TodoList list, Format format, Writer out, Writer err) {
+        this.list = list;
+        this.format = format;
+        this.out = new PrintWriter(out);
+        this.err = new PrintWriter(err);
+    }
+
+    /**
+     * This method runs the batch mode with the data file and settings of Main
+     * @param args options and the command, see Messages.batchUsage
+     * @return the exit status, 0 if all commands succeeded
+     */
+    public static int run(String[] args) {
+        String filename = Main.filename;
+        Format format = Format.TEXT;
+        int next = 0;
+        try {
+            while (next < args.length && args[next].startsWith("--")) {
+                if (next + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value of " + args[next]);
+                }
+                switch (args[next]) {
+                    case "--file" -> filename = args[next + 1];
+                    case "--format" -> format = Format.valueOf(args[next + 1].toUpperCase(Locale.ROOT));
+                    default -> throw new IllegalArgumentException("Unknown option " + args[next]);
+                }
+                next += 2;
+            }
+            if (next == args.length || args[next].equals("help")) {
+                throw new IllegalArgumentException("Missing command");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            Messages.batchUsage();
+            return USAGE;
+        }
+
+        // messages of the list, e.g. a missing data file, must not mix with the results
+        Messages.setMessageStream(System.err);
+        TodoList list = new TodoList();
+        list.setLazyLoad(Main.lazyLoad);
+        list.setCompactStorage(Main.compactStorage);
+        list.setSharded(Main.sharded);
+        list.setCompressionLevel(Main.compression);
+        // the worker threads are daemons, they do not keep the process alive
+        list.setParallel(new ParallelTasks(Main.parallelism, Main.parallelThreshold));
+        List<String> command = Arrays.asList(args).subList(next, args.length);
+        String project = command.get(0).equals("list") ? new Arguments(command.subList(1, command.size())).option("project") : null;
+        boolean loaded;
+        if (project != null) {
+            // nothing is changed, so only the shards of the project are read
+            loaded = list.readProject(filename, project);
+        } else {
+            loaded = list.readFromFile(filename);
+            if (loaded && !args[next].equals("replica")) {
+                // a replica only removes the tasks its primary archives
+                Main.archiveCompleted(list);
+            }
+        }
+
+        if (args[next].equals("serve")) {
+            if (!loaded) {
+                System.err.println("The tasks are not served, the data file " + filename + " could not be read");
+                return FAILED;
+            }
+            return serve(list, Arrays.asList(args).subList(next + 1, args.length));
+        }
+        if (args[next].equals("replica")) {
+            return replica(list, Arrays.asList(args).subList(next + 1, args.length));
+        }
+
+        Writer stdout = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        BatchMode batch = new BatchMode(list, format, stdout, new OutputStreamWriter(System.err, StandardCharsets.UTF_8));
+        batch.setReadOnly(!loaded);
+        try {
+            if (command.get(0).equals("script")) {
+                String script = command.size() > 1 ? command.get(1) : "-";
+                try (BufferedReader in = script.equals("-")
+                        ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                        : Files.newBufferedReader(Paths.get(script), StandardCharsets.UTF_8)) {
+                    batch.runScript(in);
+                }
+            } else {
+                batch.execute(command, 1);
+            }
+        } catch (IOException e) {
+            batch.fail(0, e.getMessage());
+        } finally {
+            batch.flush();
+            if (!list.close()) {
+                batch.failed++;
+            }
+            Main.writeMetrics(list.metrics());
+        }
+        return batch.failed == 0 ? 0 : FAILED;
+    }
+
+    /**
+     * This method serves the list over HTTP until the JVM is stopped, see TaskServer. With a
+     * replication port, the list is the primary of replicas which connect to that port.
+     * @param arguments [--port 8080] [--replication-port 9090]
+     * @return the exit status if the server can not be started
+     */
+    private static int serve(TodoList list, List<String> arguments) {
+        ConcurrentTodoList shared = new ConcurrentTodoList(list);
+        try {
+            Arguments options = new Arguments(arguments);
+            int port = Integer.parseInt(options.option("port", String.valueOf(TaskServer.DEFAULT_PORT)));
+            String replicationPort = options.option("replication-port");
+            ReplicationServer replication = null;
+            if (replicationPort != null) {
+                ReplicationLog log = new ReplicationLog();
+                list.setReplicationLog(log);
+                replication = new ReplicationServer(shared, log, new InetSocketAddress(Integer.parseInt(replicationPort)));
+            }
+            TaskServer server = new TaskServer(shared, new InetSocketAddress(port));
+            list.metrics().registerMBeans();
+            ReplicationServer primary = replication;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                if (primary != null) {
+                    primary.stop();
+                }
+                shared.close();
+                Main.writeMetrics(list.metrics());
+            }));
+            server.start();
+            System.err.println("Serving the tasks on http://localhost:" + server.port() + "/tasks, stop with Ctrl+C");
+            if (primary != null) {
+                primary.start();
+                System.err.println("Sending the changes to replicas on port " + primary.port());
+            }
+            Thread.currentThread().join();
+            return 0;
+        } catch (IOException | JMException | RuntimeException e) {
+            System.err.println(e.getMessage());
+            shared.close();
+            return FAILED;
+        } catch (InterruptedException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * This method keeps the list up to date with a primary and serves it read-only over HTTP
+     * until the JVM is stopped, see TaskReplica
+     * @param arguments [--primary localhost:9090] [--port 8080]
+     * @return the exit status if the replica can not be started
+     */
+    private static int replica(TodoList list, List<String> arguments) {
+        ConcurrentTodoList shared = new ConcurrentTodoList(list);
+        try {
+            Arguments options = new Arguments(arguments);
+            String primary = options.option("primary", "localhost:" + ReplicationServer.DEFAULT_PORT);
+            int colon = primary.lastIndexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("The primary must be given as host:port: " + primary);
+            }
+            TaskReplica replica = new TaskReplica(shared, new InetSocketAddress(primary.substring(0, colon),
+                    Integer.parseInt(primary.substring(colon + 1))));
+            int port = Integer.parseInt(options.option("port", String.valueOf(TaskServer.DEFAULT_PORT)));
+            TaskServer server = new TaskServer(shared, new InetSocketAddress(port), true);
+            list.metrics().registerMBeans();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                try {
+                    replica.stop();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                shared.close();
+                Main.writeMetrics(list.metrics());
+            }));
+            replica.start();
+            server.start();
+            System.err.println("Replicating " + primary + ", serving the tasks read-only on http://localhost:"
+                    + server.port() + "/tasks, stop with Ctrl+C");
+            Thread.currentThread().join();
+            return 0;
+        } catch (IOException | JMException | RuntimeException e) {
+            System.err.println(e.getMessage());
+            shared.close();
+            return FAILED;
+        } catch (InterruptedException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * This method runs one command per line, blank lines and lines starting with # are skipped
+     * @param in the lines of the script
+     */
+    void runScript(BufferedReader in) throws IOException {
+        String line;
+        int number = 0;
+        while ((line = in.readLine()) != null) {
+            number++;
+            if (line.isBlank() || line.trim().startsWith("#")) {
+                continue;
+            }
+            try {
+                execute(words(line), number);
+            } catch (IllegalArgumentException e) {
+                fail(number, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param readOnly true if the commands which change the tasks must fail, e.g. because the
+     * data file could not be read
+     */
+    void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * This method runs one command; a failure is reported and counted, it does not stop the batch
+     * @param command the name of the command and its arguments
+     * @param line the line of the command in the script, 1 on the command line
+     */
+    void execute(List<String> command, int line) {
+        // the changes of one command are undone at once
+        list.beginChange();
+        try {
+            String name = command.get(0);
+            if (readOnly && CHANGES.contains(name)) {
+                throw new IllegalStateException("The data file could not be read, " + name + " would not be saved");
+            }
+            Arguments arguments = new Arguments(command.subList(1, command.size()));
+            switch (name) {
+                case "add" -> add(arguments);
+                case "list" -> list(arguments);
+                case "search" -> tasks(list.search(String.join(" ", arguments.words)));
+                case "query" -> tasks(list.query(queryOf(arguments.words)));
+                case "complete", "reopen", "delete" -> change(name, arguments);
+                case "skip", "detach" -> occurrence(name, arguments);
+                case "undo", "redo" -> undo(name, arguments);
+                case "archive" -> result("archived", list.archiveCompleted(Integer.parseInt(arguments.option("days", "30"))));
+                case "export" -> result("exported", list.exportTasks(arguments.word(0, "file")));
+                case "import" -> {
+                    TaskImporter.Report report = list.importTasks(arguments.word(0, "file"));
+                    if (format == Format.JSON) {
+                        out.println("{\"imported\":" + report.imported() + ",\"rejected\":" + report.rejected() + "}");
+                    } else {
+                        out.println("imported " + report.imported() + " rejected " + report.rejected());
+                    }
+                    for (String error : report.errors()) {
+                        err.println(arguments.word(0, "file") + ": " + error);
+                    }
+                }
+                default -> throw new IllegalArgumentException("Unknown command: " + name);
+            }
+        } catch (Exception e) {
+            fail(line, e.getMessage());
+        } finally {
+            list.endChange();
+        }
+    }
+
+    private void add(Arguments arguments) {
+        String due = arguments.option("due");
+        if (due == null) {
+            throw new IllegalArgumentException("REQUIRED: --due yyyy-mm-dd");
+        }
+        // the words of the title need no quotes
+        Task task = new Task(String.join(" ", arguments.words), arguments.option("project", ""), LocalDate.parse(due),
+                arguments.option("priority", "MEDIUM"));
+        task.setNotes(arguments.option("notes", ""));
+        task.setRecurrence(Recurrence.parse(arguments.option("repeat"), task.getDueDate()));
+        list.addTask(task);
+        result("added", task.getId());
+    }
+
+    private void list(Arguments arguments) {
+        int offset = Integer.parseInt(arguments.option("offset", "0"));
+        int limit = Integer.parseInt(arguments.option("limit", String.valueOf(Integer.MAX_VALUE)));
+        Boolean complete = arguments.flag("done") ? Boolean.TRUE : arguments.flag("open") ? Boolean.FALSE : null;
+        String project = arguments.option("project");
+        List<Task> tasks;
+        if (arguments.option("due") != null) {
+            tasks = list.getTasksDueWithin(Integer.parseInt(arguments.option("due")));
+        } else if (arguments.flag("overdue")) {
+            tasks = list.getOverdueTasks();
+        } else {
+            String order = arguments.option("order");
+            tasks = order == null ? list.getTasks() : list.getTasks(switch (order.toLowerCase(Locale.ROOT)) {
+                case "due" -> TaskOrder.DUE_DATE;
+                case "project" -> TaskOrder.PROJECT;
+                case "priority" -> TaskOrder.PRIORITY;
+                case "completion" -> TaskOrder.COMPLETION;
+                default -> throw new IllegalArgumentException("Unknown order: " + order);
+            });
+        }
+        List<Task> shown = new ArrayList<>();
+        int skipped = 0;
+        for (Task task : tasks) {
+            if (shown.size() == limit) {
+                break;
+            }
+            if ((complete == null || task.isComplete() == complete) && (project == null || task.getProject().equals(project))) {
+                if (skipped++ >= offset) {
+                    shown.add(task);
+                }
+            }
+        }
+        tasks(shown);
+    }
+
+    /**
+     * This method completes, opens again or deletes the tasks of the given ids; with --on a date
+     * the occurrence of a repeating task on that date is completed
+     */
+    private void change(String name, Arguments arguments) {
+        if (arguments.words.isEmpty()) {
+            throw new IllegalArgumentException("REQUIRED: id of a task");
+        }
+        String on = arguments.option("on");
+        for (String id : arguments.words) {
+            Task task = task(id);
+            switch (name) {
+                case "complete" -> {
+                    if (on != null) {
+                        list.completeOccurrence(task, LocalDate.parse(on));
+                    } else {
+                        list.markCompleted(task);
+                    }
+                }
+                case "reopen" -> list.markInComplete(task);
+                default -> list.removeTask(task);
+            }
+            result(name.equals("reopen") ? "reopened" : name + "d", task.getId());
+        }
+    }
+
+    /**
+     * This method skips an occurrence of a repeating task, or makes a task of its own of it
+     * @param arguments id [--on yyyy-mm-dd], the next occurrence by default
+     */
+    private void occurrence(String name, Arguments arguments) {
+        Task task = task(arguments.word(0, "id of a task"));
+        String on = arguments.option("on");
+        LocalDate day = on == null ? task.getDueDate() : LocalDate.parse(on);
+        if (name.equals("skip")) {
+            list.skipOccurrence(task, day);
+            result("skipped", task.getId());
+        } else {
+            result("detached", list.detachOccurrence(task, day).getId());
+        }
+    }
+
+    private Task task(String id) {
+        Task task = list.findTask(Long.parseLong(id));
+        if (task == null) {
+            throw new IllegalArgumentException("No task with id " + id);
+        }
+        return task;
+    }
+
+    /**
+     * This method undoes or redoes the last commands of this run
+     * @param arguments [number of commands], 1 by default
+     */
+    private void undo(String name, Arguments arguments) {
+        int count = arguments.words.isEmpty() ? 1 : Integer.parseInt(arguments.words.get(0));
+        int done = 0;
+        while (done < count && (name.equals("undo") ? list.undo() : list.redo())) {
+            done++;
+        }
+        if (done == 0) {
+            throw new IllegalArgumentException("Nothing to " + name);
+        }
+        result(name.equals("undo") ? "undone" : "redone", done);
+    }
+
+    private void tasks(List<Task> tasks) {
+        StringBuilder row = new StringBuilder(256);
+        for (Task task : tasks) {
+            row.setLength(0);
+            if (format == Format.JSON) {
+                TaskFormat.JSON_LINES.format(task, row);
+            } else {
+                row.append(task.getId()).append('\t').append(task.getDueDate()).append('\t')
+                        .append(task.getPriority()).append('\t').append(task.isComplete() ? "done" : "open")
+                        .append('\t').append(task.getProject()).append('\t').append(task.getTitle());
+            }
+            out.println(row);
+        }
+    }
+
+    private void result(String name, long value) {
+        out.println(format == Format.JSON ? "{\"" + name + "\":" + value + "}" : name + " " + value);
+    }
+
+    private void fail(int line, String message) {
+        failed++;
+        if (format == Format.JSON) {
+            // in the output, so that a reader can match it with the commands
+            StringBuilder error = new StringBuilder("{\"line\":").append(line).append(",\"error\":");
+            TaskFormat.appendJson(String.valueOf(message), error);
+            out.println(error.append('}'));
+        } else {
+            err.println("line " + line + ": " + message);
+        }
+    }
+
+    void flush() {
+        out.flush();
+        err.flush();
+    }
+
+    /**
+     * This method splits a line of a script into words, like a shell: words are separated by
+     * spaces, and text in double or single quotes is one word; a backslash escapes the next
+     * character outside of single quotes
+     * @throws IllegalArgumentException if a quote is not closed
+     */
+    static List<String> words(String line) throws IllegalArgumentException {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean inWord = false;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '\\' && i + 1 < line.length()) {
+                word.append(line.charAt(++i));
+                inWord = true;
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+                inWord = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (quote != 0) {
+            throw new IllegalArgumentException("Quote is not closed: " + line);
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /**
+     * This method joins the words of a query command, quoting the values which contained spaces
+     * in the command, e.g. project:"Side project"
+     */
+    private static String queryOf(List<String> words) {
+        List<String> quoted = new ArrayList<>();
+        for (String word : words) {
+            int colon = word.indexOf(':');
+            if (!word.contains(" ")) {
+                quoted.add(word);
+            } else if (colon > 0) {
+                quoted.add(word.substring(0, colon + 1) + '"' + word.substring(colon + 1) + '"');
+            } else {
+                quoted.add('"' + word + '"');
+            }
+        }
+        return String.join(" ", quoted);
+    }
+
+    /**
+     * This class separates the arguments of a command into words and options: --name value,
+     * --name=value, or --name alone for a flag
+     **/
+    private static final class Arguments {
+        final List<String> words = new ArrayList<>();
+        final Map<String, String> options = new HashMap<>();
+
+        Arguments(List<String> arguments) {
+            for (int i = 0; i < arguments.size(); i++) {
+                String argument = arguments.get(i);
+                if (!argument.startsWith("--")) {
+                    words.add(argument);
+                    continue;
+                }
+                int equals = argument.indexOf('=');
+                if (equals > 0) {
+                    options.put(argument.substring(2, equals), argument.substring(equals + 1));
+                } else if (i + 1 < arguments.size() && !arguments.get(i + 1).startsWith("--")
+                        && !isFlag(argument.substring(2))) {
+                    options.put(argument.substring(2), arguments.get(++i));
+                } else {
+                    options.put(argument.substring(2), "");
+                }
+            }
+        }
+
+        private static boolean isFlag(String name) {
+            return name.equals("open") || name.equals("done") || name.equals("overdue");
+        }
+
+        String word(int index, String name) {
+            if (index >= words.size()) {
+                throw new IllegalArgumentException("REQUIRED: " + name);
+            }
+            return words.get(index);
+        }
+
+        String option(String name) {
+            return options.get(name);
+        }
+
+        String option(String name, String missing) {
+            return options.getOrDefault(name, missing);
+        }
+
+        boolean flag(String name) {
+            return options.containsKey(name);
+        }
+    }
+}
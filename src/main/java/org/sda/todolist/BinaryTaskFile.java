@@ -0,0 +1,569 @@
+package org.sda.todolist;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class reads and writes the binary columnar data file which holds all tasks.
+ *
+ * The file starts with a fixed header (magic, version, row count, block count) followed by a
+ * block directory (tag, offset, length per block) and the blocks themselves. Every column is
+ * stored as its own block: dictionary ids for project and priority, epoch-day ints for the due
+ * and completed dates, a bitset for the completion flag and offsets into a string heap for the
+ * title and notes. Unknown blocks are skipped, so newer versions can add columns.
+ *
+ * Version 2 adds the task id column and the sequence number of the last journal record
+ * contained in the file. Version 1 files get ids 1..n when they are read.
+ *
+ * Version 3 adds the rules of repeating tasks in a block of their own: the number of repeating
+ * tasks, then for each its row and its rule as UTF-8 text after its length. Few tasks repeat, so a
+ * column for all rows would mostly be empty. The block is written only if a task repeats, and
+ * only then is the file marked as version 3: an older reader would skip the block and save the
+ * tasks again without their rules, so it must refuse the file instead.
+ **/
+
+public class BinaryTaskFile {
+    // "TDLS" in ASCII
+    public static final int MAGIC = 0x54444C53;
+    public static final short VERSION = 3;
+    // the version of files without repeating tasks, which older readers can read
+    static final short VERSION_WITHOUT_RECURRENCE = 2;
+
+    // epoch-day used for a missing date
+    public static final int NO_DATE = Integer.MIN_VALUE;
+
+    public static final int BLOCK_PROJECT_DICT = 1;
+    public static final int BLOCK_PRIORITY_DICT = 2;
+    public static final int BLOCK_PROJECT = 3;
+    public static final int BLOCK_PRIORITY = 4;
+    public static final int BLOCK_DUE = 5;
+    public static final int BLOCK_COMPLETED = 6;
+    public static final int BLOCK_COMPLETE_BITS = 7;
+    public static final int BLOCK_TITLE_OFFSETS = 8;
+    public static final int BLOCK_NOTES_OFFSETS = 9;
+    public static final int BLOCK_STRING_HEAP = 10;
+    public static final int BLOCK_ID = 11;
+    public static final int BLOCK_JOURNAL_SEQUENCE = 12;
+    public static final int BLOCK_RECURRENCE = 13;
+
+    // header flag: the id column is in ascending order, so ids can be found by binary search
+    public static final short FLAG_IDS_ASCENDING = 1;
+
+    private static final int HEADER_SIZE = 16;
+    private static final int DIRECTORY_ENTRY_SIZE = 20;
+
+    /**
+     * This method checks the first bytes of a file to find out if it is written in this format
+     * @param path the data file
+     * @return true if the file starts with the magic number of this format
+     */
+    public static boolean isBinaryFile(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] head = in.readNBytes(4);
+            return head.length == 4 && ByteBuffer.wrap(head).getInt() == MAGIC;
+        }
+    }
+
+    /**
+     * This method writes all given tasks to the data file, replacing its previous content
+     * @param tasks the tasks to write, in list order
+     * @param path the data file
+     */
+    public static void write(List<Task> tasks, Path path) throws IOException {
+        write(tasks, 0, path);
+    }
+
+    /**
+     * This method writes all given tasks to the data file, replacing its previous content
+     * @param tasks the tasks to write, in list order
+     * @param journalSequence sequence number of the last journal record applied to the tasks
+     * @param path the data file
+     */
+    public static void write(List<Task> tasks, long journalSequence, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer buffer : encode(tasks, journalSequence)) {
+                writeFully(channel, buffer);
+            }
+        }
+    }
+
+    /**
+     * This method encodes the tasks in the format of the data file, e.g. for a block of BlockTaskFile
+     * @param tasks the tasks to encode, in list order
+     * @param journalSequence sequence number of the last journal record applied to the tasks
+     * @return the header followed by the blocks, together they are the content of a data file
+     */
+    static List<ByteBuffer> encode(List<Task> tasks, long journalSequence) throws IOException {
+        int rows = tasks.size();
+
+        Dictionary projects = new Dictionary();
+        Dictionary priorities = new Dictionary();
+        ByteBuffer id = column(rows * 8);
+        ByteBuffer project = column(rows * 4);
+        ByteBuffer priority = column(rows);
+        ByteBuffer due = column(rows * 4);
+        ByteBuffer completed = column(rows * 4);
+        long[] bits = new long[(rows + 63) >>> 6];
+        ByteBuffer titleOffsets = column((rows + 1) * 4);
+        ByteBuffer notesOffsets = column((rows + 1) * 4);
+        StringHeap heap = new StringHeap(rows * 32);
+        StringHeap notesHeap = new StringHeap(rows * 8);
+        short flags = FLAG_IDS_ASCENDING;
+        long previousId = Long.MIN_VALUE;
+        List<Integer> recurringRows = new ArrayList<>();
+
+        for (int row = 0; row < rows; row++) {
+            Task task = tasks.get(row);
+            id.putLong(task.getId());
+            if (task.getId() <= previousId) {
+                flags = 0;
+            }
+            previousId = task.getId();
+            project.putInt(projects.idOf(task.getProject()));
+            int priorityId = priorities.idOf(task.getPriority());
+            if (priorityId > 0xFF) {
+                throw new IOException("Too many distinct priorities to store: " + (priorityId + 1));
+            }
+            priority.put((byte) priorityId);
+            due.putInt(toEpochDay(task.getDueDate()));
+            completed.putInt(toEpochDay(task.getCompletedDate()));
+            if (task.isComplete()) {
+                bits[row >>> 6] |= 1L << row;
+            }
+            titleOffsets.putInt(heap.size());
+            heap.add(task.getTitle());
+            notesOffsets.putInt(notesHeap.size());
+            notesHeap.add(task.getNotes());
+            if (task.getRecurrence() != null) {
+                recurringRows.add(row);
+            }
+        }
+        titleOffsets.putInt(heap.size());
+        notesOffsets.putInt(notesHeap.size());
+
+        // the notes are stored in the heap after all titles
+        int titlesSize = heap.size();
+        for (int position = 0; position < notesOffsets.position(); position += 4) {
+            notesOffsets.putInt(position, notesOffsets.getInt(position) + titlesSize);
+        }
+        heap.add(notesHeap);
+
+        ByteBuffer bitBuffer = column(bits.length * 8);
+        bitBuffer.asLongBuffer().put(bits);
+        bitBuffer.position(bitBuffer.capacity());
+
+        List<ByteBuffer> blocks = new ArrayList<>();
+        List<Integer> tags = new ArrayList<>();
+        addBlock(tags, blocks, BLOCK_PROJECT_DICT, projects.encode());
+        addBlock(tags, blocks, BLOCK_PRIORITY_DICT, priorities.encode());
+        addBlock(tags, blocks, BLOCK_PROJECT, project);
+        addBlock(tags, blocks, BLOCK_PRIORITY, priority);
+        addBlock(tags, blocks, BLOCK_DUE, due);
+        addBlock(tags, blocks, BLOCK_COMPLETED, completed);
+        addBlock(tags, blocks, BLOCK_COMPLETE_BITS, bitBuffer);
+        addBlock(tags, blocks, BLOCK_TITLE_OFFSETS, titleOffsets);
+        addBlock(tags, blocks, BLOCK_NOTES_OFFSETS, notesOffsets);
+        addBlock(tags, blocks, BLOCK_STRING_HEAP, heap.toBuffer());
+        addBlock(tags, blocks, BLOCK_ID, id);
+        addBlock(tags, blocks, BLOCK_JOURNAL_SEQUENCE, column(8).putLong(journalSequence));
+        if (!recurringRows.isEmpty()) {
+            addBlock(tags, blocks, BLOCK_RECURRENCE, recurrences(tasks, recurringRows));
+        }
+
+        ByteBuffer header = column(HEADER_SIZE + blocks.size() * DIRECTORY_ENTRY_SIZE);
+        short version = recurringRows.isEmpty() ? VERSION_WITHOUT_RECURRENCE : VERSION;
+        header.putInt(MAGIC).putShort(version).putShort(flags).putInt(rows).putInt(blocks.size());
+        long offset = header.capacity();
+        for (int i = 0; i < blocks.size(); i++) {
+            long length = blocks.get(i).remaining();
+            header.putInt(tags.get(i)).putLong(offset).putLong(length);
+            offset += length;
+        }
+        header.flip();
+        blocks.add(0, header);
+        return blocks;
+    }
+
+    /**
+     * This method reads all tasks from a data file written by {@link #write(List, Path)}
+     * @param path the data file
+     * @return a new list holding the restored tasks in file order
+     */
+    public static ArrayList<Task> read(Path path) throws IOException {
+        return open(path).tasks();
+    }
+
+    /**
+     * This method loads a data file into memory and parses its header
+     * @param path the data file
+     * @return the layout of the loaded file
+     */
+    public static Layout open(Path path) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Data file is too large to load: " + size + " bytes");
+            }
+            data = ByteBuffer.allocate((int) size);
+            while (data.hasRemaining() && channel.read(data) >= 0) {
+                // keep reading until the whole file is in memory
+            }
+            data.flip();
+        }
+
+        return Layout.parse(data);
+    }
+
+    /**
+     * This method maps a data file into memory without reading it. Rows are decoded only when
+     * they are accessed, so the cost of this call does not depend on the number of tasks.
+     * @param path the data file
+     * @return the layout of the mapped file
+     */
+    public static Layout map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Data file is too large to map: " + size + " bytes");
+            }
+            // the mapping stays valid after the channel is closed
+            return Layout.parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * This method encodes the block of the rules of the repeating tasks, see the class comment
+     */
+    private static ByteBuffer recurrences(List<Task> tasks, List<Integer> rows) {
+        List<byte[]> rules = new ArrayList<>(rows.size());
+        int size = 4;
+        for (int row : rows) {
+            byte[] rule = tasks.get(row).getRecurrence().toString().getBytes(StandardCharsets.UTF_8);
+            rules.add(rule);
+            size += 8 + rule.length;
+        }
+        ByteBuffer block = column(size).putInt(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            block.putInt(rows.get(i)).putInt(rules.get(i).length).put(rules.get(i));
+        }
+        return block;
+    }
+
+    static int toEpochDay(LocalDate date) {
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+
+    static LocalDate fromEpochDay(int epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static ByteBuffer column(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.BIG_ENDIAN);
+    }
+
+    private static void addBlock(List<Integer> tags, List<ByteBuffer> blocks, int tag, ByteBuffer block) {
+        block.flip();
+        tags.add(tag);
+        blocks.add(block);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * This class holds the parsed header and block directory of a data file, and decodes single
+     * rows straight from the underlying buffer (heap or memory-mapped).
+     */
+    public static class Layout {
+        final ByteBuffer data;
+        final short version;
+        final short flags;
+        final int rows;
+        final String[] projects;
+        final String[] priorities;
+        final int project;
+        final int priority;
+        final int due;
+        final int completed;
+        final int completeBits;
+        final int titleOffsets;
+        final int notesOffsets;
+        final int heap;
+        final int id;
+        final long journalSequence;
+        // rows of the repeating tasks, ascending, and their rules
+        final int[] recurringRows;
+        final String[] recurrences;
+
+        private Layout(ByteBuffer data, short version, short flags, int rows, Map<Integer, Integer> offsets)
+                throws IOException {
+            this.data = data;
+            this.version = version;
+            this.flags = flags;
+            this.rows = rows;
+            this.projects = readDictionary(data, require(offsets, BLOCK_PROJECT_DICT));
+            this.priorities = readDictionary(data, require(offsets, BLOCK_PRIORITY_DICT));
+            this.project = require(offsets, BLOCK_PROJECT);
+            this.priority = require(offsets, BLOCK_PRIORITY);
+            this.due = require(offsets, BLOCK_DUE);
+            this.completed = require(offsets, BLOCK_COMPLETED);
+            this.completeBits = require(offsets, BLOCK_COMPLETE_BITS);
+            this.titleOffsets = require(offsets, BLOCK_TITLE_OFFSETS);
+            this.notesOffsets = require(offsets, BLOCK_NOTES_OFFSETS);
+            this.heap = require(offsets, BLOCK_STRING_HEAP);
+            // optional before version 2
+            this.id = offsets.getOrDefault(BLOCK_ID, -1);
+            Integer sequence = offsets.get(BLOCK_JOURNAL_SEQUENCE);
+            this.journalSequence = sequence == null ? 0 : data.getLong(sequence);
+            Integer rules = offsets.get(BLOCK_RECURRENCE);
+            int count = rules == null ? 0 : data.getInt(rules);
+            this.recurringRows = new int[count];
+            this.recurrences = new String[count];
+            int position = rules == null ? 0 : rules + 4;
+            for (int i = 0; i < count; i++) {
+                recurringRows[i] = data.getInt(position);
+                byte[] bytes = new byte[data.getInt(position + 4)];
+                data.get(position + 8, bytes);
+                recurrences[i] = new String(bytes, StandardCharsets.UTF_8);
+                position += 8 + bytes.length;
+            }
+        }
+
+        /**
+         * This method parses the header of a data file held in the given buffer
+         * @param data the whole data file, positioned at its first byte
+         * @return the layout of the file
+         */
+        public static Layout parse(ByteBuffer data) throws IOException {
+            if (data.remaining() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+                throw new IOException("Not a task data file (bad magic number)");
+            }
+            short version = data.getShort(4);
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported task data file version: " + version);
+            }
+            int rows = data.getInt(8);
+            int blockCount = data.getInt(12);
+
+            Map<Integer, Integer> offsets = new HashMap<>();
+            for (int i = 0; i < blockCount; i++) {
+                int entry = HEADER_SIZE + i * DIRECTORY_ENTRY_SIZE;
+                long offset = data.getLong(entry + 4);
+                long length = data.getLong(entry + 12);
+                if (offset + length > data.limit()) {
+                    throw new IOException("Task data file is truncated");
+                }
+                offsets.put(data.getInt(entry), (int) offset);
+            }
+            return new Layout(data, version, data.getShort(6), rows, offsets);
+        }
+
+        public int rows() {
+            return rows;
+        }
+
+        /**
+         * @return sequence number of the last journal record contained in the file
+         */
+        public long journalSequence() {
+            return journalSequence;
+        }
+
+        public boolean idsAscending() {
+            // version 1 ids are the row numbers
+            return id < 0 || (flags & FLAG_IDS_ASCENDING) != 0;
+        }
+
+        public long id(int row) {
+            return id < 0 ? row + 1 : data.getLong(id + row * 8);
+        }
+
+        /**
+         * This method restores all rows of the file as Task objects
+         * @return a new list holding the tasks in file order
+         */
+        public ArrayList<Task> tasks() {
+            ArrayList<Task> tasks = new ArrayList<>(rows);
+            for (int row = 0; row < rows; row++) {
+                tasks.add(task(row));
+            }
+            return tasks;
+        }
+
+        public boolean isComplete(int row) {
+            return (data.getLong(completeBits + (row >>> 6) * 8) & (1L << row)) != 0;
+        }
+
+        /**
+         * This method counts the completed rows straight from the completion bitset
+         * @return number of rows with the completion bit set
+         */
+        public int completedCount() {
+            int count = 0;
+            int words = (rows + 63) >>> 6;
+            for (int word = 0; word < words; word++) {
+                count += Long.bitCount(data.getLong(completeBits + word * 8));
+            }
+            return count;
+        }
+
+        public Task task(int row) {
+            Task task = Task.restore(
+                    string(titleOffsets, row),
+                    projects[data.getInt(project + row * 4)],
+                    fromEpochDay(data.getInt(due + row * 4)),
+                    priorities[data.get(priority + row) & 0xFF],
+                    isComplete(row),
+                    fromEpochDay(data.getInt(completed + row * 4)),
+                    string(notesOffsets, row));
+            task.setId(id(row));
+            String rule = recurrence(row);
+            if (rule != null) {
+                task.restoreField(TaskField.RECURRENCE, rule);
+            }
+            return task;
+        }
+
+        /**
+         * @return the rule of a repeating task in its text form, null for a task due once
+         */
+        public String recurrence(int row) {
+            if (recurringRows.length == 0) {
+                return null;
+            }
+            int position = Arrays.binarySearch(recurringRows, row);
+            return position < 0 ? null : recurrences[position];
+        }
+
+        private String string(int offsetsBlock, int row) {
+            int start = data.getInt(offsetsBlock + row * 4);
+            int end = data.getInt(offsetsBlock + (row + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            data.get(heap + start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static int require(Map<Integer, Integer> offsets, int tag) throws IOException {
+            Integer offset = offsets.get(tag);
+            if (offset == null) {
+                throw new IOException("Task data file is missing block " + tag);
+            }
+            return offset;
+        }
+
+        private static String[] readDictionary(ByteBuffer data, int offset) {
+            int count = data.getInt(offset);
+            String[] values = new String[count];
+            int position = offset + 4;
+            for (int i = 0; i < count; i++) {
+                int length = data.getInt(position);
+                byte[] bytes = new byte[length];
+                data.get(position + 4, bytes);
+                values[i] = new String(bytes, StandardCharsets.UTF_8);
+                position += 4 + length;
+            }
+            return values;
+        }
+    }
+
+    /**
+     * This class assigns small integer ids to repeated strings (projects, priorities)
+     */
+    private static class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int idOf(String value) {
+            String key = value == null ? "" : value;
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = values.size();
+                ids.put(key, id);
+                values.add(key);
+            }
+            return id;
+        }
+
+        ByteBuffer encode() {
+            List<byte[]> encoded = new ArrayList<>(values.size());
+            int size = 4;
+            for (String value : values) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                size += 4 + bytes.length;
+            }
+            ByteBuffer buffer = column(size);
+            buffer.putInt(encoded.size());
+            for (byte[] bytes : encoded) {
+                buffer.putInt(bytes.length).put(bytes);
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * This class collects the UTF-8 bytes of all titles and notes into one growable array
+     */
+    private static class StringHeap {
+        private byte[] bytes;
+        private int size;
+
+        StringHeap(int initialCapacity) {
+            bytes = new byte[Math.max(initialCapacity, 64)];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void add(String value) {
+            if (value == null || value.isEmpty()) {
+                return;
+            }
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            ensureCapacity(encoded.length);
+            System.arraycopy(encoded, 0, bytes, size, encoded.length);
+            size += encoded.length;
+        }
+
+        void add(StringHeap other) {
+            ensureCapacity(other.size);
+            System.arraycopy(other.bytes, 0, bytes, size, other.size);
+            size += other.size;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                long grown = Math.max((long) bytes.length * 2, (long) size + extra);
+                if (grown > Integer.MAX_VALUE - 8) {
+                    throw new IllegalStateException("String heap exceeds 2 GB");
+                }
+                bytes = Arrays.copyOf(bytes, (int) grown);
+            }
+        }
+
+        ByteBuffer toBuffer() {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size);
+            buffer.position(size);
+            return buffer;
+        }
+    }
+}
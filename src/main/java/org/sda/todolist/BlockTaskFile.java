@@ -0,0 +1,530 @@
+package org.sda.todolist;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This class stores the tasks as blocks, so that a save writes only the blocks which changed.
+ *
+ * The tasks are grouped by id into blocks of up to 1024 ids (ids 0-1023, 1024-2047, ...), so a
+ * change, a deletion or a new task changes only one block. Every block is encoded like a data
+ * file of BinaryTaskFile and compressed with a Deflater of the given level (0 stores it as is).
+ * The blocks are appended to a pack file next to the data file, named like it with ".blocks."
+ * and a generation number; the data file itself is only a small index of the blocks: their
+ * position in the pack, a hash of their content and a CRC32C of their bytes.
+ *
+ * A save encodes all blocks, but appends only those whose hash is not in the index yet, then
+ * replaces the index atomically (temp file and ATOMIC_MOVE). A torn write therefore leaves the
+ * old index pointing to complete blocks. When the blocks which are no longer used take more
+ * space than the used ones, the used blocks are copied into a new pack and the old one is deleted.
+ * Reading verifies the CRC32C of every block and of the index.
+ **/
+
+public class BlockTaskFile {
+    public static final int MAGIC = 0x54444C42;
+    public static final short VERSION = 1;
+    // ids per block
+    public static final int BLOCK_IDS = 1024;
+    public static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+    // a pack is rewritten only once it has more unused bytes than this
+    private static final long MIN_GARBAGE = 1L << 20;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 44;
+
+    /**
+     * This class is the content of a block file: the tasks and the journal sequence
+     **/
+    public static final class Contents {
+        private final List<Task> tasks;
+        private final long journalSequence;
+        private final long bytesRead;
+
+        Contents(List<Task> tasks, long journalSequence, long bytesRead) {
+            this.tasks = tasks;
+            this.journalSequence = journalSequence;
+            this.bytesRead = bytesRead;
+        }
+
+        public List<Task> tasks() {
+            return tasks;
+        }
+
+        public long journalSequence() {
+            return journalSequence;
+        }
+
+        /**
+         * @return the size of the index and of the blocks read
+         */
+        public long bytesRead() {
+            return bytesRead;
+        }
+    }
+
+    /**
+     * @return true if the file is the index of a block file
+     */
+    public static boolean isBlockFile(Path path) throws IOException {
+        if (!Files.isReadable(path) || Files.size(path) < 4) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return in.readInt() == MAGIC;
+        }
+    }
+
+    /**
+     * @return the pack file of the given generation of a data file
+     */
+    public static Path packPath(Path path, long generation) {
+        return Paths.get(path + ".blocks." + generation);
+    }
+
+    /**
+     * This method reads all tasks of a block file
+     * @param path the data file, i.e., the index
+     * @throws IOException if a file can not be read, or if a block or the index is damaged
+     */
+    public static Contents read(Path path) throws IOException {
+        Index index = Index.read(path);
+        List<Task> tasks = new ArrayList<>(index.rows);
+        long bytesRead = index.size();
+        Inflater inflater = new Inflater();
+        try (FileChannel pack = FileChannel.open(packPath(path, index.generation), StandardOpenOption.READ)) {
+            for (int i = 0; i < index.entries.size(); i++) {
+                Entry entry = index.entries.get(i);
+                byte[] raw = decode(entry, readStored(pack, entry), inflater);
+                bytesRead += entry.storedLength;
+                if (raw == null) {
+                    throw new IOException("Block " + (i + 1) + " of the data file, i.e., " + path + " is damaged");
+                }
+                tasks.addAll(BinaryTaskFile.Layout.parse(ByteBuffer.wrap(raw)).tasks());
+            }
+        } finally {
+            inflater.end();
+        }
+        return new Contents(tasks, index.journalSequence, bytesRead);
+    }
+
+    /**
+     * This method writes the tasks, reusing the blocks of the file which did not change
+     * @param tasks all tasks, in list order
+     * @param journalSequence sequence number of the last journal record applied to the tasks
+     * @param path the data file, i.e., the index
+     * @param level compression level of the new blocks, 0 to 9
+     * @return the number of bytes written
+     */
+    public static long write(List<Task> tasks, long journalSequence, Path path, int level) throws IOException {
+        Index old = null;
+        if (isBlockFile(path)) {
+            try {
+                old = Index.read(path);
+            } catch (IOException e) {
+                // a damaged index is replaced, its blocks are not reused
+                old = null;
+            }
+        }
+        long generation = old == null ? 1 : old.generation;
+        Path packFile = packPath(path, generation);
+        long packSize = Files.exists(packFile) ? Files.size(packFile) : 0;
+        Map<Hash, Entry> known = new HashMap<>();
+        if (old != null && packSize > 0) {
+            for (Entry entry : old.entries) {
+                known.put(entry.hash, entry);
+            }
+        } else {
+            packSize = 0;
+        }
+
+        MessageDigest digest = digest();
+        Deflater deflater = new Deflater(level);
+        List<Entry> entries = new ArrayList<>();
+        // new blocks, appended to the pack in this order
+        Map<Entry, byte[]> appended = new LinkedHashMap<>();
+        long used = 0;
+        long position = packSize;
+        try {
+            for (List<Task> group : groups(tasks)) {
+                byte[] raw = encode(group);
+                Hash hash = new Hash(digest.digest(raw));
+                Entry entry = known.get(hash);
+                if (entry == null) {
+                    byte[] stored = level == 0 ? raw : deflate(raw, deflater);
+                    entry = new Entry(hash, position, stored.length, raw.length, group.size(),
+                            level == 0 ? 0 : 1, crc(stored));
+                    known.put(hash, entry);
+                    appended.put(entry, stored);
+                    position += stored.length;
+                }
+                used += entry.storedLength;
+                entries.add(entry);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        long written;
+        long garbage = position - used;
+        if (packSize > 0 && garbage > Math.max(used, MIN_GARBAGE)) {
+            // copy the used blocks into a new pack
+            generation++;
+            written = copyUsed(entries, packFile, appended, packPath(path, generation));
+        } else {
+            written = append(packFile, appended.values(), packSize);
+        }
+
+        Index index = new Index(journalSequence, generation, tasks.size(), entries);
+        Path temp = Paths.get(path + ".tmp");
+        written += index.write(temp);
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        deleteOtherPacks(path, generation);
+        return written;
+    }
+
+    /**
+     * This method splits the tasks into the groups of the blocks: tasks which follow each other in
+     * the list and have ids in the same range of BLOCK_IDS
+     */
+    private static List<List<Task>> groups(List<Task> tasks) {
+        List<List<Task>> groups = new ArrayList<>();
+        List<Task> group = null;
+        long range = -1;
+        for (Task task : tasks) {
+            long taskRange = Math.floorDiv(task.getId(), BLOCK_IDS);
+            if (group == null || taskRange != range || group.size() == BLOCK_IDS) {
+                group = new ArrayList<>(BLOCK_IDS);
+                groups.add(group);
+                range = taskRange;
+            }
+            group.add(task);
+        }
+        return groups;
+    }
+
+    static byte[] encode(List<Task> group) throws IOException {
+        // the journal sequence is kept in the index, so an unchanged block keeps its content
+        List<ByteBuffer> buffers = BinaryTaskFile.encode(group, 0);
+        int size = 0;
+        for (ByteBuffer buffer : buffers) {
+            size += buffer.remaining();
+        }
+        ByteBuffer raw = ByteBuffer.allocate(size);
+        for (ByteBuffer buffer : buffers) {
+            raw.put(buffer);
+        }
+        return raw.array();
+    }
+
+    static byte[] deflate(byte[] raw, Deflater deflater) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 3 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the content of the block, or null if its CRC32C or its compressed data is not valid
+     */
+    private static byte[] decode(Entry entry, byte[] stored, Inflater inflater) {
+        if (crc(stored) != entry.crc) {
+            return null;
+        }
+        if (entry.compression == 0) {
+            return stored;
+        }
+        return inflate(stored, entry.rawLength, inflater);
+    }
+
+    /**
+     * @return the inflated bytes, or null if the compressed data is not valid or has another length
+     */
+    static byte[] inflate(byte[] stored, int rawLength, Inflater inflater) {
+        try {
+            inflater.reset();
+            inflater.setInput(stored);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, length, raw.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return null;
+                }
+                length += inflated;
+            }
+            return length == raw.length ? raw : null;
+        } catch (DataFormatException e) {
+            return null;
+        }
+    }
+
+    private static byte[] readStored(FileChannel pack, Entry entry) throws IOException {
+        ByteBuffer stored = ByteBuffer.allocate(entry.storedLength);
+        while (stored.hasRemaining()) {
+            if (pack.read(stored, entry.offset + stored.position()) < 0) {
+                throw new IOException("The pack file ends before block at " + entry.offset);
+            }
+        }
+        return stored.array();
+    }
+
+    /**
+     * This method appends the new blocks to the pack, behind any bytes of a torn write
+     * @return the number of bytes written
+     */
+    private static long append(Path packFile, Collection<byte[]> blocks, long position) throws IOException {
+        long written = 0;
+        try (FileChannel pack = FileChannel.open(packFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            for (byte[] block : blocks) {
+                ByteBuffer buffer = ByteBuffer.wrap(block);
+                while (buffer.hasRemaining()) {
+                    written += pack.write(buffer, position + written);
+                }
+            }
+            pack.force(true);
+        }
+        return written;
+    }
+
+    /**
+     * This method writes the used blocks, old and new, into a new pack and changes their entries
+     * to their new positions
+     * @return the number of bytes written
+     */
+    private static long copyUsed(List<Entry> entries, Path oldPack, Map<Entry, byte[]> appended, Path newPack)
+            throws IOException {
+        Map<Entry, Long> moved = new HashMap<>();
+        long position = 0;
+        try (FileChannel source = FileChannel.open(oldPack, StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(newPack, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Entry entry : entries) {
+                if (moved.containsKey(entry)) {
+                    continue;
+                }
+                byte[] stored = appended.get(entry);
+                ByteBuffer block = ByteBuffer.wrap(stored != null ? stored : readStored(source, entry));
+                moved.put(entry, position);
+                while (block.hasRemaining()) {
+                    position += target.write(block, position);
+                }
+            }
+            target.force(true);
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            entries.set(i, entry.at(moved.get(entry)));
+        }
+        return position;
+    }
+
+    /**
+     * This method renames a block file together with its pack
+     */
+    public static void move(Path path, Path target) throws IOException {
+        long generation = Index.read(path).generation;
+        deletePacks(target);
+        Files.move(packPath(path, generation), packPath(target, generation), StandardCopyOption.REPLACE_EXISTING);
+        Files.move(path, target, StandardCopyOption.REPLACE_EXISTING);
+        deletePacks(path);
+    }
+
+    /**
+     * This method deletes the pack files of a data file, after it was written in another format
+     */
+    public static void deletePacks(Path path) throws IOException {
+        deleteOtherPacks(path, -1);
+    }
+
+    private static void deleteOtherPacks(Path path, long generation) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        String prefix = path.getFileName() + ".blocks.";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*")) {
+            for (Path file : files) {
+                if (!file.getFileName().toString().equals(prefix + generation)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    static int crc(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * This class is the first 128 bits of the SHA-256 of the content of a block
+     **/
+    private static final class Hash {
+        private final long high;
+        private final long low;
+
+        Hash(byte[] digest) {
+            ByteBuffer bytes = ByteBuffer.wrap(digest);
+            this.high = bytes.getLong();
+            this.low = bytes.getLong();
+        }
+
+        Hash(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Hash hash && hash.high == high && hash.low == low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high);
+        }
+    }
+
+    /**
+     * This class is the entry of one block in the index
+     **/
+    private static final class Entry {
+        final Hash hash;
+        final long offset;
+        final int storedLength;
+        final int rawLength;
+        final int rows;
+        // 0 if stored as is, 1 if deflated
+        final int compression;
+        final int crc;
+
+        Entry(Hash hash, long offset, int storedLength, int rawLength, int rows, int compression, int crc) {
+            this.hash = hash;
+            this.offset = offset;
+            this.storedLength = storedLength;
+            this.rawLength = rawLength;
+            this.rows = rows;
+            this.compression = compression;
+            this.crc = crc;
+        }
+
+        Entry at(long newOffset) {
+            return new Entry(hash, newOffset, storedLength, rawLength, rows, compression, crc);
+        }
+    }
+
+    /**
+     * This class is the data file of a block file: the journal sequence, the generation of the
+     * pack and the entries of the blocks in list order, followed by a CRC32C of all of it
+     **/
+    private static final class Index {
+        final long journalSequence;
+        final long generation;
+        final int rows;
+        final List<Entry> entries;
+
+        Index(long journalSequence, long generation, int rows, List<Entry> entries) {
+            this.journalSequence = journalSequence;
+            this.generation = generation;
+            this.rows = rows;
+            this.entries = entries;
+        }
+
+        int size() {
+            return HEADER_SIZE + entries.size() * ENTRY_SIZE + 4;
+        }
+
+        static Index read(Path path) throws IOException {
+            byte[] bytes = Files.readAllBytes(path);
+            if (bytes.length < HEADER_SIZE + 4) {
+                throw new IOException("The data file, i.e., " + path + " is damaged: too short");
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(bytes, 0, bytes.length - 4);
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            if (in.getInt(bytes.length - 4) != (int) crc.getValue()) {
+                throw new IOException("The data file, i.e., " + path + " is damaged: wrong checksum");
+            }
+            if (in.getInt() != MAGIC || in.getShort() != VERSION) {
+                throw new IOException("The data file, i.e., " + path + " is not a block file of this version");
+            }
+            in.getShort();
+            long journalSequence = in.getLong();
+            long generation = in.getLong();
+            int rows = in.getInt();
+            int count = in.getInt();
+            List<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Hash hash = new Hash(in.getLong(), in.getLong());
+                long offset = in.getLong();
+                int storedLength = in.getInt();
+                int rawLength = in.getInt();
+                int blockRows = in.getInt();
+                int compression = in.get();
+                in.get();
+                in.getShort();
+                entries.add(new Entry(hash, offset, storedLength, rawLength, blockRows, compression, in.getInt()));
+            }
+            return new Index(journalSequence, generation, rows, entries);
+        }
+
+        /**
+         * @return the number of bytes written
+         */
+        long write(Path path) throws IOException {
+            ByteBuffer out = ByteBuffer.allocate(size());
+            out.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+            out.putLong(journalSequence).putLong(generation).putInt(rows).putInt(entries.size());
+            for (Entry entry : entries) {
+                out.putLong(entry.hash.high).putLong(entry.hash.low).putLong(entry.offset);
+                out.putInt(entry.storedLength).putInt(entry.rawLength).putInt(entry.rows);
+                out.put((byte) entry.compression).put((byte) 0).putShort((short) 0).putInt(entry.crc);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(out.array(), 0, out.position());
+            out.putInt((int) crc.getValue());
+            out.flip();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                channel.force(true);
+            }
+            return out.limit();
+        }
+    }
+}
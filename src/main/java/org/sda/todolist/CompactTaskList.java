@@ -0,0 +1,719 @@
+package org.sda.todolist;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * This class represents the list of tasks as one primitive array per field (struct of arrays).
+ *
+ * Dates are stored as epoch-day ints, the priority as the ordinal of Task.Priority, completion
+ * as a flag byte and the project as the id of a dictionary entry. Titles and notes are stored
+ * as UTF-8 bytes, each after its length, in one shared byte array. No Task object is kept:
+ * {@link #get(int)} returns a small view which reads and writes the arrays, so a task costs
+ * 30 bytes plus its text instead of a Task object with two LocalDate objects and four String
+ * objects. The rules of the few repeating tasks are kept in a map by task id.
+ *
+ * A view finds its row by the task id, so it stays valid when other tasks are removed. A view
+ * removed through {@link #remove(Object)} keeps a copy of its values, other views of a removed
+ * task throw IllegalStateException.
+ **/
+
+public class CompactTaskList extends AbstractList<Task> implements RandomAccess {
+    private static final byte FLAG_COMPLETE = 1;
+    private static final Task.Priority[] PRIORITIES = Task.Priority.values();
+
+    private int size;
+    private long[] ids;
+    private int[] due;
+    private int[] completed;
+    private byte[] priority;
+    private byte[] flags;
+    private int[] project;
+    // offset in the text array + 1, 0 for an empty text
+    private int[] title;
+    private int[] notes;
+    private boolean idsAscending = true;
+
+    // rules of the repeating tasks by task id
+    private final Map<Long, Recurrence> recurrences = new HashMap<>();
+
+    private final List<String> projects = new ArrayList<>();
+    private final Map<String, Integer> projectIds = new HashMap<>();
+
+    private byte[] text = new byte[1024];
+    private int textSize;
+    // bytes of text no longer used by any task, reclaimed once they are half of the text array
+    private int garbage;
+
+    public CompactTaskList() {
+        this(16);
+    }
+
+    public CompactTaskList(int capacity) {
+        allocate(Math.max(capacity, 1));
+    }
+
+    public CompactTaskList(Collection<Task> tasks) {
+        this(tasks.size());
+        // not through addAll, which a subclass may override
+        for (Task task : tasks) {
+            append(task);
+        }
+    }
+
+    /**
+     * This method loads all rows of a data file into a new list. The columns of the file are
+     * already dictionary and epoch-day encoded, so no Task object is created.
+     * @param layout the data file
+     * @return a new list holding the rows in file order
+     */
+    public static CompactTaskList of(BinaryTaskFile.Layout layout) {
+        CompactTaskList list = new CompactTaskList(layout.rows());
+        int[] projectIds = new int[layout.projects.length];
+        for (int i = 0; i < projectIds.length; i++) {
+            projectIds[i] = list.projectId(layout.projects[i]);
+        }
+        byte[] priorities = new byte[layout.priorities.length];
+        for (int i = 0; i < priorities.length; i++) {
+            priorities[i] = (byte) Task.Priority.restore(layout.priorities[i]).ordinal();
+        }
+        list.text = new byte[Math.max(textSize(layout, layout.titleOffsets) + textSize(layout, layout.notesOffsets), 16)];
+        for (int row = 0; row < layout.rows(); row++) {
+            list.ids[row] = layout.id(row);
+            list.due[row] = layout.data.getInt(layout.due + row * 4);
+            list.completed[row] = layout.data.getInt(layout.completed + row * 4);
+            list.priority[row] = priorities[layout.data.get(layout.priority + row) & 0xFF];
+            list.flags[row] = layout.isComplete(row) ? FLAG_COMPLETE : 0;
+            list.project[row] = projectIds[layout.data.getInt(layout.project + row * 4)];
+            list.title[row] = list.copyText(layout, layout.titleOffsets, row);
+            list.notes[row] = list.copyText(layout, layout.notesOffsets, row);
+        }
+        for (int i = 0; i < layout.recurringRows.length; i++) {
+            list.recurrences.put(layout.id(layout.recurringRows[i]), Recurrence.parse(layout.recurrences[i], null));
+        }
+        list.size = layout.rows();
+        list.idsAscending = layout.idsAscending();
+        return list;
+    }
+
+    @Override
+    public Task get(int index) {
+        checkIndex(index);
+        return new View(ids[index], index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Task set(int index, Task task) {
+        checkIndex(index);
+        Task old = get(index).copy();
+        release(index);
+        store(index, task);
+        idsAscending = idsAscending && (index == 0 || ids[index - 1] < ids[index])
+                && (index == size - 1 || ids[index] < ids[index + 1]);
+        return old;
+    }
+
+    @Override
+    public void add(int index, Task task) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        modCount++;
+        if (size == ids.length) {
+            grow();
+        }
+        if (index < size) {
+            shift(index, index + 1, size - index);
+        }
+        size++;
+        store(index, task);
+        idsAscending = idsAscending && (index == 0 || ids[index - 1] < ids[index])
+                && (index == size - 1 || ids[index] < ids[index + 1]);
+    }
+
+    @Override
+    public Task remove(int index) {
+        checkIndex(index);
+        modCount++;
+        Task removed = get(index).copy();
+        release(index);
+        shift(index + 1, index, size - index - 1);
+        size--;
+        return removed;
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        int index = indexOf(object);
+        if (index < 0) {
+            return false;
+        }
+        if (object instanceof View view && view.owner() == this) {
+            // the caller, e.g. the listeners of TodoList, may still read the removed task
+            view.detach();
+        }
+        remove(index);
+        return true;
+    }
+
+    /**
+     * This method removes all tasks matching the filter in one pass over the arrays, instead of
+     * moving the following rows once per removed task. Views of the removed tasks are no longer
+     * valid, the filter must copy the tasks it keeps reading.
+     */
+    @Override
+    public boolean removeIf(Predicate<? super Task> filter) {
+        int kept = 0;
+        for (int row = 0; row < size; row++) {
+            if (filter.test(new View(ids[row], row))) {
+                release(row);
+            } else {
+                if (kept < row) {
+                    shift(row, kept, 1);
+                }
+                kept++;
+            }
+        }
+        if (kept == size) {
+            return false;
+        }
+        modCount++;
+        size = kept;
+        return true;
+    }
+
+    @Override
+    public int indexOf(Object object) {
+        if (!(object instanceof Task task)) {
+            return -1;
+        }
+        if (object instanceof View view && view.detached) {
+            return -1;
+        }
+        return rowOf(task.getId(), -1);
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        size = 0;
+        textSize = 0;
+        garbage = 0;
+        idsAscending = true;
+        recurrences.clear();
+    }
+
+    /**
+     * This method finds a task by its id, with a binary search while the list is in id order
+     * @param id id of the task
+     * @return a view of the task, or null if it is not in the list
+     */
+    public Task findById(long id) {
+        int row = rowOf(id, -1);
+        return row < 0 ? null : new View(id, row);
+    }
+
+    /**
+     * @return true if the task is a view of this list, as returned by get or findById
+     */
+    public boolean holds(Task task) {
+        return task instanceof View view && view.owner() == this;
+    }
+
+    /**
+     * @return the highest task id in the list, 0 if the list is empty
+     */
+    public long maxId() {
+        if (size == 0) {
+            return 0;
+        }
+        if (idsAscending) {
+            return ids[size - 1];
+        }
+        long max = 0;
+        for (int row = 0; row < size; row++) {
+            max = Math.max(max, ids[row]);
+        }
+        return max;
+    }
+
+    /**
+     * This method counts the completed tasks on the flag array
+     * @return number of completed tasks
+     */
+    public int completedCount() {
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            count += flags[row] & FLAG_COMPLETE;
+        }
+        return count;
+    }
+
+    /**
+     * This method creates an independent copy of this list, e.g. to write it on another thread.
+     * Only the arrays are copied, no Task object is created.
+     */
+    public CompactTaskList copy() {
+        CompactTaskList copy = new CompactTaskList(size);
+        System.arraycopy(ids, 0, copy.ids, 0, size);
+        System.arraycopy(due, 0, copy.due, 0, size);
+        System.arraycopy(completed, 0, copy.completed, 0, size);
+        System.arraycopy(priority, 0, copy.priority, 0, size);
+        System.arraycopy(flags, 0, copy.flags, 0, size);
+        System.arraycopy(project, 0, copy.project, 0, size);
+        System.arraycopy(title, 0, copy.title, 0, size);
+        System.arraycopy(notes, 0, copy.notes, 0, size);
+        copy.projects.addAll(projects);
+        copy.projectIds.putAll(projectIds);
+        copy.recurrences.putAll(recurrences);
+        copy.text = Arrays.copyOf(text, textSize);
+        copy.textSize = textSize;
+        copy.garbage = garbage;
+        copy.size = size;
+        copy.idsAscending = idsAscending;
+        return copy;
+    }
+
+    // primitive access by row, used to build indexes without creating views
+
+    public long id(int row) {
+        return ids[row];
+    }
+
+    /**
+     * @return the due date as epoch-day, or BinaryTaskFile.NO_DATE
+     */
+    public int dueDay(int row) {
+        return due[row];
+    }
+
+    public int priorityOrdinal(int row) {
+        return priority[row];
+    }
+
+    public boolean isComplete(int row) {
+        return (flags[row] & FLAG_COMPLETE) != 0;
+    }
+
+    public String project(int row) {
+        return projects.get(project[row]);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * This method finds the row of a task id
+     * @param id the task id
+     * @param hint the row the task was last seen at, or -1
+     * @return the row, or -1 if no task has this id
+     */
+    private int rowOf(long id, int hint) {
+        if (hint >= 0 && hint < size && ids[hint] == id) {
+            return hint;
+        }
+        if (idsAscending) {
+            int row = Arrays.binarySearch(ids, 0, size, id);
+            return row < 0 ? -1 : row;
+        }
+        for (int row = 0; row < size; row++) {
+            if (ids[row] == id) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private void append(Task task) {
+        if (size == ids.length) {
+            grow();
+        }
+        size++;
+        store(size - 1, task);
+        idsAscending = idsAscending && (size == 1 || ids[size - 2] < ids[size - 1]);
+    }
+
+    private void store(int row, Task task) {
+        ids[row] = task.getId();
+        due[row] = BinaryTaskFile.toEpochDay(task.getDueDate());
+        completed[row] = BinaryTaskFile.toEpochDay(task.getCompletedDate());
+        priority[row] = (byte) task.getPriorityLevel().ordinal();
+        flags[row] = task.isComplete() ? FLAG_COMPLETE : 0;
+        project[row] = projectId(task.getProject());
+        title[row] = addText(task.getTitle());
+        notes[row] = addText(task.getNotes());
+        if (task.getRecurrence() != null) {
+            recurrences.put(task.getId(), task.getRecurrence());
+        }
+    }
+
+    private void release(int row) {
+        if (!recurrences.isEmpty()) {
+            recurrences.remove(ids[row]);
+        }
+        garbage += entrySize(title[row]) + entrySize(notes[row]);
+        title[row] = 0;
+        notes[row] = 0;
+    }
+
+    private int projectId(String name) {
+        Integer id = projectIds.get(name);
+        if (id == null) {
+            id = projects.size();
+            projects.add(name);
+            projectIds.put(name, id);
+        }
+        return id;
+    }
+
+    private String text(int reference) {
+        if (reference == 0) {
+            return "";
+        }
+        int position = reference - 1;
+        int length = 0;
+        int shift = 0;
+        byte next;
+        do {
+            next = text[position++];
+            length |= (next & 0x7F) << shift;
+            shift += 7;
+        } while (next < 0);
+        return new String(text, position, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of bytes used by a text in the text array, including its length
+     */
+    private int entrySize(int reference) {
+        if (reference == 0) {
+            return 0;
+        }
+        int position = reference - 1;
+        int length = 0;
+        int shift = 0;
+        byte next;
+        do {
+            next = text[position++];
+            length |= (next & 0x7F) << shift;
+            shift += 7;
+        } while (next < 0);
+        return position - (reference - 1) + length;
+    }
+
+    private int addText(String value) {
+        if (value == null || value.isEmpty()) {
+            return 0;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensureText(lengthSize(bytes.length) + bytes.length);
+        int reference = writeLength(bytes.length);
+        System.arraycopy(bytes, 0, text, textSize, bytes.length);
+        textSize += bytes.length;
+        return reference;
+    }
+
+    private int copyText(BinaryTaskFile.Layout layout, int offsetsBlock, int row) {
+        int start = layout.data.getInt(offsetsBlock + row * 4);
+        int length = layout.data.getInt(offsetsBlock + (row + 1) * 4) - start;
+        if (length == 0) {
+            return 0;
+        }
+        ensureText(lengthSize(length) + length);
+        int reference = writeLength(length);
+        layout.data.get(layout.heap + start, text, textSize, length);
+        textSize += length;
+        return reference;
+    }
+
+    /**
+     * @return the bytes needed for the texts of one offsets block of a data file, with their lengths
+     */
+    private static int textSize(BinaryTaskFile.Layout layout, int offsetsBlock) {
+        long size = 0;
+        for (int row = 0; row < layout.rows(); row++) {
+            int length = layout.data.getInt(offsetsBlock + (row + 1) * 4) - layout.data.getInt(offsetsBlock + row * 4);
+            size += length == 0 ? 0 : lengthSize(length) + length;
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE - 8);
+    }
+
+    private static int lengthSize(int length) {
+        return (32 - Integer.numberOfLeadingZeros(length) + 6) / 7;
+    }
+
+    /**
+     * This method writes a text length as varint at the end of the text array
+     * @return the reference of the text starting there
+     */
+    private int writeLength(int length) {
+        int reference = textSize + 1;
+        while ((length & ~0x7F) != 0) {
+            text[textSize++] = (byte) ((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        text[textSize++] = (byte) length;
+        return reference;
+    }
+
+    private void ensureText(int length) {
+        if (textSize + length <= text.length) {
+            return;
+        }
+        if (garbage > textSize / 2) {
+            compactText();
+            if (textSize + length <= text.length) {
+                return;
+            }
+        }
+        long capacity = Math.max((long) text.length * 3 / 2, (long) textSize + length);
+        if (capacity > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Task texts exceed 2 GB");
+        }
+        text = Arrays.copyOf(text, (int) capacity);
+    }
+
+    /**
+     * This method moves the text of all tasks to a new array, dropping the text of removed
+     * tasks and old values of changed fields
+     */
+    private void compactText() {
+        byte[] compacted = new byte[text.length];
+        int position = 0;
+        for (int[] column : new int[][] {title, notes}) {
+            for (int row = 0; row < size; row++) {
+                int length = entrySize(column[row]);
+                if (length > 0) {
+                    System.arraycopy(text, column[row] - 1, compacted, position, length);
+                    column[row] = position + 1;
+                    position += length;
+                }
+            }
+        }
+        text = compacted;
+        textSize = position;
+        garbage = 0;
+    }
+
+    private void grow() {
+        allocate(ids.length + (ids.length >> 1) + 1);
+    }
+
+    private void allocate(int capacity) {
+        ids = ids == null ? new long[capacity] : Arrays.copyOf(ids, capacity);
+        due = due == null ? new int[capacity] : Arrays.copyOf(due, capacity);
+        completed = completed == null ? new int[capacity] : Arrays.copyOf(completed, capacity);
+        priority = priority == null ? new byte[capacity] : Arrays.copyOf(priority, capacity);
+        flags = flags == null ? new byte[capacity] : Arrays.copyOf(flags, capacity);
+        project = project == null ? new int[capacity] : Arrays.copyOf(project, capacity);
+        title = title == null ? new int[capacity] : Arrays.copyOf(title, capacity);
+        notes = notes == null ? new int[capacity] : Arrays.copyOf(notes, capacity);
+    }
+
+    private void shift(int from, int to, int count) {
+        System.arraycopy(ids, from, ids, to, count);
+        System.arraycopy(due, from, due, to, count);
+        System.arraycopy(completed, from, completed, to, count);
+        System.arraycopy(priority, from, priority, to, count);
+        System.arraycopy(flags, from, flags, to, count);
+        System.arraycopy(project, from, project, to, count);
+        System.arraycopy(title, from, title, to, count);
+        System.arraycopy(notes, from, notes, to, count);
+    }
+
+    /**
+     * This class is a Task which reads and writes its values in the arrays of the list. The
+     * fields inherited from Task are only used once the task is removed from the list.
+     */
+    private final class View extends Task {
+        private static final long serialVersionUID = 1L;
+        private int hint;
+        private boolean detached;
+
+        View(long id, int row) {
+            setId(id);
+            this.hint = row;
+        }
+
+        CompactTaskList owner() {
+            return CompactTaskList.this;
+        }
+
+        // serialized as a plain Task with its current values, without the list
+        private Object writeReplace() {
+            return copy();
+        }
+
+        private int row() {
+            int row = rowOf(getId(), hint);
+            if (row < 0) {
+                throw new IllegalStateException("Task " + getId() + " is no longer in the list");
+            }
+            hint = row;
+            return row;
+        }
+
+        /**
+         * This method copies the values of the task into the fields of this object, before its row is removed
+         */
+        void detach() {
+            int row = row();
+            super.restoreField(TaskField.TITLE, text(title[row]));
+            super.restoreField(TaskField.PROJECT, projects.get(project[row]));
+            super.restoreField(TaskField.DUE_DATE, due[row] == BinaryTaskFile.NO_DATE
+                    ? null : BinaryTaskFile.fromEpochDay(due[row]).toString());
+            super.restoreField(TaskField.PRIORITY, PRIORITIES[priority[row]].name());
+            super.restoreField(TaskField.NOTES, text(notes[row]));
+            super.restoreCompletion((flags[row] & FLAG_COMPLETE) != 0, BinaryTaskFile.fromEpochDay(completed[row]));
+            Recurrence recurrence = recurrences.get(getId());
+            super.restoreField(TaskField.RECURRENCE, recurrence == null ? null : recurrence.toString());
+            detached = true;
+        }
+
+        @Override
+        public String getTitle() {
+            return detached ? super.getTitle() : text(title[row()]);
+        }
+
+        @Override
+        public void setTitle(String value) throws NullPointerException {
+            restoreField(TaskField.TITLE, checkTitle(value));
+        }
+
+        @Override
+        public String getProject() {
+            return detached ? super.getProject() : projects.get(project[row()]);
+        }
+
+        @Override
+        public void setProject(String value) {
+            restoreField(TaskField.PROJECT, value.trim());
+        }
+
+        @Override
+        public boolean isComplete() {
+            return detached ? super.isComplete() : (flags[row()] & FLAG_COMPLETE) != 0;
+        }
+
+        @Override
+        public boolean markInComplete() {
+            restoreCompletion(false, null);
+            return false;
+        }
+
+        @Override
+        public boolean markCompleted() {
+            restoreCompletion(true, LocalDate.now());
+            return true;
+        }
+
+        @Override
+        public LocalDate getDueDate() {
+            return detached ? super.getDueDate() : BinaryTaskFile.fromEpochDay(due[row()]);
+        }
+
+        @Override
+        public void setDueDate(LocalDate value) throws DateTimeException {
+            restoreField(TaskField.DUE_DATE, checkDueDate(value).toString());
+        }
+
+        @Override
+        public String getPriority() {
+            return getPriorityLevel().name();
+        }
+
+        @Override
+        public Task.Priority getPriorityLevel() {
+            return detached ? super.getPriorityLevel() : PRIORITIES[priority[row()]];
+        }
+
+        @Override
+        public void setPriority(String value) throws IllegalArgumentException {
+            restoreField(TaskField.PRIORITY, Task.Priority.of(value).name());
+        }
+
+        @Override
+        public LocalDate getCompletedDate() {
+            return detached ? super.getCompletedDate() : BinaryTaskFile.fromEpochDay(completed[row()]);
+        }
+
+        @Override
+        public String getNotes() {
+            return detached ? super.getNotes() : text(notes[row()]);
+        }
+
+        @Override
+        public void setNotes(String value) {
+            restoreField(TaskField.NOTES, value == null ? "" : value.trim());
+        }
+
+        @Override
+        public Recurrence getRecurrence() {
+            if (detached) {
+                return super.getRecurrence();
+            }
+            row();
+            return recurrences.isEmpty() ? null : recurrences.get(getId());
+        }
+
+        @Override
+        void restoreField(TaskField field, String value) {
+            if (detached) {
+                super.restoreField(field, value);
+                return;
+            }
+            int row = row();
+            switch (field) {
+                case TITLE -> {
+                    garbage += entrySize(title[row]);
+                    title[row] = 0;
+                    title[row] = addText(value);
+                }
+                case PROJECT -> project[row] = projectId(value);
+                case DUE_DATE -> due[row] = value == null ? BinaryTaskFile.NO_DATE : (int) LocalDate.parse(value).toEpochDay();
+                case PRIORITY -> priority[row] = (byte) Task.Priority.restore(value).ordinal();
+                case NOTES -> {
+                    garbage += entrySize(notes[row]);
+                    notes[row] = 0;
+                    notes[row] = addText(value);
+                }
+                case RECURRENCE -> {
+                    if (value == null) {
+                        recurrences.remove(getId());
+                    } else {
+                        recurrences.put(getId(), Recurrence.parse(value, null));
+                    }
+                }
+            }
+        }
+
+        @Override
+        void restoreCompletion(boolean complete, LocalDate completedDate) {
+            if (detached) {
+                super.restoreCompletion(complete, completedDate);
+                return;
+            }
+            int row = row();
+            flags[row] = complete ? FLAG_COMPLETE : 0;
+            completed[row] = BinaryTaskFile.toEpochDay(completedDate);
+        }
+    }
+}
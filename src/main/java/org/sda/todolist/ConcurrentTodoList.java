@@ -0,0 +1,492 @@
+package org.sda.todolist;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * This class gives several threads (CLI sessions, importers, scheduled jobs) access to one
+ * TodoList. All access must go through this class once it is created.
+ *
+ * The list is guarded by one read/write lock (a StampedLock); writers do not run in parallel.
+ * A writer validates its change on a copy of the task first, so that a value which is not valid
+ * is rejected without the lock. Only then it takes the write lock to apply the change to the
+ * list, its journal and its indexes, which takes a few microseconds.
+ *
+ * If the list keeps Task objects, single tasks and the list order are read from its snapshot
+ * without any lock. Sorted listing, search and pages take the read lock only to select the ids
+ * of the tasks from the indexes, together with the snapshot of the same point in time; the tasks
+ * are tested and copied from that snapshot after the lock is released. Other lists are read
+ * under the read lock. Readers of a few fields (size, counts) read optimistically: they run
+ * without any lock and only keep the result if no write happened meanwhile. Readers let a
+ * writer which waits for the lock go first, so that readers which overlap each other do not
+ * keep the writers out. Readers always get copies of the tasks, so a task they hold is not
+ * changed afterwards.
+ **/
+
+public class ConcurrentTodoList {
+    // optimistic attempts of a reader before it takes the read lock
+    private static final int OPTIMISTIC_ATTEMPTS = 8;
+    // times a reader lets waiting writers go first before it takes the read lock anyway
+    private static final int WRITER_TURNS = 64;
+
+    private final TodoList list;
+    private final StampedLock lock = new StampedLock();
+    private final AtomicInteger waitingWriters = new AtomicInteger();
+    // reading a memory-mapped list caches tasks, which is a write
+    private final boolean optimisticReads;
+    // tasks are read from the snapshots of the list, see copiesOf
+    private final boolean snapshots;
+    // number of changes applied, written under the write lock
+    private volatile long version;
+
+    /**
+     * @param list the list to share, it must not be used directly afterwards
+     */
+    public ConcurrentTodoList(TodoList list) {
+        this.list = list;
+        this.optimisticReads = !list.isMapped();
+        this.snapshots = list.keepsTaskObjects();
+        prepareReads();
+    }
+
+    /**
+     * This method builds the structures which are built on first use, so that reading never builds them
+     */
+    private void prepareReads() {
+        list.findTask(0);
+        list.search("");
+        list.getTasks(TaskOrder.DUE_DATE, 0, 0);
+        list.statistics();
+        if (snapshots) {
+            list.snapshot();
+        }
+    }
+
+    /**
+     * This method adds a new task
+     * @param task the task to add, it gets a new id
+     * @return the id of the task
+     */
+    public long add(Task task) {
+        long stamp = writeLock();
+        try {
+            list.addTask(task);
+            version++;
+            return task.getId();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method updates one field of a task through its validating setter
+     * @return false if there is no task with this id
+     */
+    public boolean update(long id, TaskField field, String value) {
+        Map<TaskField, String> changes = new EnumMap<>(TaskField.class);
+        changes.put(field, value);
+        return update(id, changes);
+    }
+
+    /**
+     * This method updates several fields of a task at once, readers see either none or all changes
+     * @param id id of the task
+     * @param changes new values by field, as text
+     * @return false if there is no task with this id
+     */
+    public boolean update(long id, Map<TaskField, String> changes) {
+        return change(id, task -> {
+            // throws before the write lock is taken if a value is not valid
+            for (Map.Entry<TaskField, String> change : changes.entrySet()) {
+                change.getKey().apply(task, change.getValue());
+            }
+        }, task -> {
+            list.beginChange();
+            try {
+                for (Map.Entry<TaskField, String> change : changes.entrySet()) {
+                    list.updateTask(task, change.getKey(), change.getValue());
+                }
+            } finally {
+                list.endChange();
+            }
+        });
+    }
+
+    public boolean markCompleted(long id) {
+        return change(id, task -> { }, list::markCompleted);
+    }
+
+    public boolean markInComplete(long id) {
+        return change(id, task -> { }, list::markInComplete);
+    }
+
+    public boolean remove(long id) {
+        return change(id, task -> { }, list::removeTask);
+    }
+
+    /**
+     * @return a copy of the task, or null if there is no task with this id
+     */
+    public Task find(long id) {
+        if (snapshots) {
+            Task task = list.snapshot().find(id);
+            return task == null ? null : task.copy();
+        }
+        return readLocked(() -> {
+            Task task = list.findTask(id);
+            return task == null ? null : task.copy();
+        });
+    }
+
+    /**
+     * This method returns copies of a part of the tasks
+     * @param order the order of the tasks, or null for the order of the list
+     * @param offset number of tasks to skip
+     * @param limit maximum number of tasks to return
+     */
+    public List<Task> getTasks(TaskOrder order, int offset, int limit) {
+        if (order == null && snapshots) {
+            return copies(window(list.snapshot(), offset, limit));
+        }
+        return copiesOf(() -> order == null ? window(list.getTasks(), offset, limit) : list.getTasks(order, offset, limit));
+    }
+
+    /**
+     * This method returns copies of a part of the tasks which match a filter. Only the tasks of
+     * the page are copied, but all tasks are tested to count the matching tasks.
+     * @param order the order of the tasks, or null for the order of the list
+     * @param filter the tasks to return, or null for all tasks
+     * @param offset number of matching tasks to skip
+     * @param limit maximum number of tasks to return
+     */
+    public Page getTasks(TaskOrder order, Predicate<Task> filter, int offset, int limit) {
+        if (order == null && snapshots) {
+            // one point in time, read without locks and without retries however long it takes
+            TaskSnapshot tasks = list.snapshot();
+            return filter == null ? new Page(copies(window(tasks, offset, limit)), tasks.size())
+                    : page(tasks, filter, offset, limit);
+        }
+        if (filter == null) {
+            if (snapshots) {
+                Selection selection = select(() -> list.getTasks(order, offset, limit));
+                return new Page(copies(selection.tasks()), selection.snapshot.size());
+            }
+            return readLocked(() -> new Page(copies(order == null ? window(list.getTasks(), offset, limit)
+                    : list.getTasks(order, offset, limit)), list.getTasks().size()));
+        }
+        if (snapshots) {
+            // the filter is tested on the snapshot, after the read lock is released
+            return page(select(() -> list.getTasks(order)).tasks(), filter, offset, limit);
+        }
+        return readLocked(() -> page(order == null ? list.getTasks() : list.getTasks(order), filter, offset, limit));
+    }
+
+    private static Page page(List<Task> tasks, Predicate<Task> filter, int offset, int limit) {
+        List<Task> page = new ArrayList<>();
+        int total = 0;
+        for (Task task : tasks) {
+            if (filter.test(task)) {
+                if (total >= offset && page.size() < limit) {
+                    page.add(task.copy());
+                }
+                total++;
+            }
+        }
+        return new Page(page, total);
+    }
+
+    /**
+     * @return all tasks at one point in time, see TodoList.snapshot; for mapped and compact lists
+     * a copy of all tasks, taken under the read lock
+     */
+    public List<Task> snapshot() {
+        return snapshots ? list.snapshot() : readLocked(() -> copies(list.getTasks()));
+    }
+
+    /**
+     * @return copies of the tasks matching the query, see TodoList.search
+     */
+    public List<Task> search(String query) {
+        return copiesOf(() -> list.search(query));
+    }
+
+    /**
+     * @return copies of a part of the tasks matching the query and the number of all matching tasks
+     */
+    public Page search(String query, int offset, int limit) {
+        if (snapshots) {
+            List<Task> found = select(() -> list.search(query)).tasks();
+            return new Page(copies(window(found, offset, limit)), found.size());
+        }
+        return readLocked(() -> {
+            List<Task> found = list.search(query);
+            return new Page(copies(window(found, offset, limit)), found.size());
+        });
+    }
+
+    public int size() {
+        if (snapshots) {
+            return list.snapshot().size();
+        }
+        return readFields(() -> list.getTasks().size());
+    }
+
+    public int completedCount() {
+        return readFields(list::completedCount);
+    }
+
+    public int notCompletedCount() {
+        return readFields(list::notCompletedCount);
+    }
+
+    /**
+     * @return the counters of the list; they are read without locks and may include a change
+     * which is being applied at the same time
+     */
+    public TaskStatistics statistics() {
+        return list.statistics();
+    }
+
+    /**
+     * @return the number of changes applied so far; a result read for one version is still
+     * valid as long as the version does not change
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * @return the journal sequence of the last change
+     */
+    public long sequence() {
+        return list.sequence();
+    }
+
+    /**
+     * @return the timings of the list, see TodoList.metrics
+     */
+    public TaskMetrics metrics() {
+        return list.metrics();
+    }
+
+    /**
+     * This method applies a change received from the primary, see TaskReplica
+     */
+    void replicate(JournalRecord record) {
+        long stamp = writeLock();
+        try {
+            list.applyReplicated(record);
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method replaces all tasks by a snapshot of the primary, see TaskReplica
+     */
+    void restore(List<Task> tasks, long sequence) {
+        long stamp = writeLock();
+        try {
+            list.restoreReplica(tasks, sequence);
+            prepareReads();
+            version++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return all tasks with the sequence of the last change they include, for a new replica,
+     * see ReplicationServer
+     */
+    TaskSnapshot replicationSnapshot() {
+        if (snapshots) {
+            return list.snapshot();
+        }
+        return readLocked(() -> TaskSnapshot.of(list.getTasks(), list.sequence()));
+    }
+
+    /**
+     * This method flushes and closes the journal of the list, see TodoList.close
+     */
+    public boolean close() {
+        long stamp = writeLock();
+        try {
+            return list.close();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method applies a change to an existing task
+     * @param id id of the task
+     * @param validate checks the change on a copy of the task, before the write lock is taken
+     * @param apply applies the change to the task of the list
+     * @return false if there is no task with this id
+     */
+    private boolean change(long id, TaskAction validate, TaskAction apply) {
+        Task current = find(id);
+        if (current == null) {
+            return false;
+        }
+        validate.run(current);
+        long stamp = writeLock();
+        try {
+            Task task = list.findTask(id);
+            if (task == null) {
+                return false;
+            }
+            apply.run(task);
+            version++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * This method returns copies of the tasks a reader selects from the list. With snapshots,
+     * only their ids are taken under the read lock, the tasks are copied afterwards.
+     */
+    private List<Task> copiesOf(Supplier<List<Task>> reader) {
+        if (!snapshots) {
+            return readLocked(() -> copies(reader.get()));
+        }
+        return copies(select(reader).tasks());
+    }
+
+    /**
+     * This method takes the ids of the tasks a reader selects and the snapshot of the same point
+     * in time under the read lock, it needs the snapshots of the list
+     */
+    private Selection select(Supplier<List<Task>> reader) {
+        long stamp = readLock();
+        try {
+            List<Task> selected = reader.get();
+            long[] ids = new long[selected.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = selected.get(i).getId();
+            }
+            return new Selection(list.snapshot(), ids);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * This method reads a few fields (sizes, counters) without a lock, it must not be used to walk
+     * the tasks or an index, which a writer may change at the same time
+     */
+    private <T> T readFields(Supplier<T> reader) {
+        if (optimisticReads) {
+            for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+                long stamp = lock.tryOptimisticRead();
+                if (stamp == 0) {
+                    // a writer holds the lock
+                    Thread.onSpinWait();
+                    continue;
+                }
+                T result = reader.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            }
+        }
+        return readLocked(reader);
+    }
+
+    private <T> T readLocked(Supplier<T> reader) {
+        long stamp = readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private long readLock() {
+        for (int turn = 0; turn < WRITER_TURNS && waitingWriters.get() > 0; turn++) {
+            Thread.yield();
+        }
+        return lock.readLock();
+    }
+
+    private long writeLock() {
+        waitingWriters.incrementAndGet();
+        try {
+            return lock.writeLock();
+        } finally {
+            waitingWriters.decrementAndGet();
+        }
+    }
+
+    private static List<Task> window(List<Task> tasks, int offset, int limit) {
+        int from = Math.min(offset, tasks.size());
+        return tasks.subList(from, from + Math.min(limit, tasks.size() - from));
+    }
+
+    private static List<Task> copies(List<Task> tasks) {
+        List<Task> copies = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            copies.add(task.copy());
+        }
+        return copies;
+    }
+
+    /**
+     * This class is a page of tasks and the number of all tasks it was taken from
+     **/
+    public static final class Page {
+        private final List<Task> tasks;
+        private final int total;
+
+        Page(List<Task> tasks, int total) {
+            this.tasks = tasks;
+            this.total = total;
+        }
+
+        public List<Task> tasks() {
+            return tasks;
+        }
+
+        public int total() {
+            return total;
+        }
+    }
+
+    /**
+     * This class is the ids of selected tasks and the snapshot they are read from
+     **/
+    private static final class Selection {
+        private final TaskSnapshot snapshot;
+        private final long[] ids;
+
+        Selection(TaskSnapshot snapshot, long[] ids) {
+            this.snapshot = snapshot;
+            this.ids = ids;
+        }
+
+        List<Task> tasks() {
+            List<Task> tasks = new ArrayList<>(ids.length);
+            for (long id : ids) {
+                tasks.add(snapshot.find(id));
+            }
+            return tasks;
+        }
+    }
+
+    /**
+     * This interface is a change to a task
+     */
+    private interface TaskAction {
+        void run(Task task);
+    }
+}
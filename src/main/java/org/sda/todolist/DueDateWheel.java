@@ -0,0 +1,286 @@
+package org.sda.todolist;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class keeps the ids of the tasks which are not completed by due date, to find the
+ * overdue tasks and the tasks due on a day or within the next days.
+ *
+ * It works like a timing wheel: the next SLOTS days, starting today, are the slots of a ring
+ * indexed by the day number. Tasks due later wait in buckets per day outside of the ring and are
+ * moved into it when their day comes within SLOTS days, tasks of the days which passed are moved
+ * to the buckets of overdue days. This roll happens once per day, on the first use after the date
+ * changed. A query only visits the buckets of the asked days, so it takes time proportional to the
+ * number of tasks it returns (plus at most SLOTS empty slots).
+ *
+ * Queries roll the wheel, so all methods are synchronized.
+ **/
+
+public class DueDateWheel implements TaskListener {
+    // days held by the ring, the first is today
+    static final int SLOTS = 64;
+    // after a longer time (or if the clock goes back) all buckets are placed again
+    private static final int MAX_ROLL_DAYS = SLOTS;
+
+    private final Clock clock;
+    private long today;
+    // slot of day d is d mod SLOTS, for today <= d < today + SLOTS; null for an empty slot
+    private final TaskIdSet[] slots = new TaskIdSet[SLOTS];
+    // buckets of the days before today
+    private final TreeMap<Integer, TaskIdSet> overdue = new TreeMap<>();
+    // buckets of the days from today + SLOTS on
+    private final TreeMap<Integer, TaskIdSet> later = new TreeMap<>();
+
+    DueDateWheel(Clock clock) {
+        this.clock = clock;
+        this.today = LocalDate.now(clock).toEpochDay();
+    }
+
+    /**
+     * This method places all tasks which are not completed and have a due date
+     * @param tasks the tasks of the list
+     * @param clock the clock giving the current date
+     */
+    public static DueDateWheel build(List<Task> tasks, Clock clock) {
+        DueDateWheel wheel = new DueDateWheel(clock);
+        if (tasks instanceof CompactTaskList compact) {
+            // straight from the primitive columns, without creating views
+            for (int row = 0; row < compact.size(); row++) {
+                if (!compact.isComplete(row) && compact.dueDay(row) != BinaryTaskFile.NO_DATE) {
+                    wheel.bucket(compact.dueDay(row), true).add((int) compact.id(row));
+                }
+            }
+            return wheel;
+        }
+        for (Task task : tasks) {
+            wheel.taskAdded(task);
+        }
+        return wheel;
+    }
+
+    @Override
+    public synchronized void taskAdded(Task task) {
+        if (!task.isComplete()) {
+            add(task.getDueDate(), TaskIdSet.idOf(task));
+        }
+    }
+
+    @Override
+    public synchronized void taskRemoved(Task task) {
+        if (!task.isComplete()) {
+            remove(task.getDueDate(), TaskIdSet.idOf(task));
+        }
+    }
+
+    @Override
+    public synchronized void taskUpdated(Task task, TaskField field, String oldValue) {
+        if (field == TaskField.DUE_DATE && !task.isComplete()) {
+            remove(oldValue == null ? null : LocalDate.parse(oldValue), TaskIdSet.idOf(task));
+            add(task.getDueDate(), TaskIdSet.idOf(task));
+        }
+    }
+
+    @Override
+    public synchronized void taskCompletionChanged(Task task) {
+        if (task.isComplete()) {
+            remove(task.getDueDate(), TaskIdSet.idOf(task));
+        } else {
+            add(task.getDueDate(), TaskIdSet.idOf(task));
+        }
+    }
+
+    /**
+     * @return the current date the wheel is rolled to
+     */
+    public synchronized LocalDate today() {
+        roll();
+        return LocalDate.ofEpochDay(today);
+    }
+
+    /**
+     * @return ids of the tasks due before today, by due date
+     */
+    public synchronized int[] overdue() {
+        roll();
+        return due(Long.MIN_VALUE, today - 1);
+    }
+
+    /**
+     * @param days number of days after today, 0 for today only
+     * @return ids of the tasks due from today to today + days, by due date
+     */
+    public synchronized int[] dueWithin(int days) {
+        roll();
+        return due(today, today + Math.max(0, days));
+    }
+
+    /**
+     * @return ids of the tasks due on a date
+     */
+    public synchronized int[] dueOn(LocalDate date) {
+        roll();
+        TaskIdSet bucket = bucket(date.toEpochDay(), false);
+        return bucket == null ? new int[0] : bucket.toArray();
+    }
+
+    /**
+     * This method finds the tasks due in a range of days
+     * @param from first day (epoch-day)
+     * @param to last day (epoch-day), included
+     * @return ids by due date, and by id within a day
+     */
+    public synchronized int[] due(long from, long to) {
+        roll();
+        List<TaskIdSet> buckets = buckets(from, to);
+        int size = 0;
+        for (TaskIdSet bucket : buckets) {
+            size += bucket.size();
+        }
+        int[] ids = new int[size];
+        int position = 0;
+        for (TaskIdSet bucket : buckets) {
+            for (int i = 0; i < bucket.size(); i++) {
+                ids[position++] = bucket.get(i);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return the number of tasks due in a range of days, see due
+     */
+    public synchronized int count(long from, long to) {
+        roll();
+        int count = 0;
+        for (TaskIdSet bucket : buckets(from, to)) {
+            count += bucket.size();
+        }
+        return count;
+    }
+
+    private List<TaskIdSet> buckets(long from, long to) {
+        List<TaskIdSet> buckets = new ArrayList<>();
+        if (from > to) {
+            return buckets;
+        }
+        if (from < today) {
+            buckets.addAll(overdue.subMap(clamp(from), true, clamp(Math.min(to, today - 1)), true).values());
+        }
+        for (long day = Math.max(from, today); day <= to && day < today + SLOTS; day++) {
+            TaskIdSet slot = slots[slot(day)];
+            if (slot != null) {
+                buckets.add(slot);
+            }
+        }
+        if (to >= today + SLOTS) {
+            buckets.addAll(later.subMap(clamp(Math.max(from, today + SLOTS)), true, clamp(to), true).values());
+        }
+        return buckets;
+    }
+
+    private void add(LocalDate dueDate, int id) {
+        if (dueDate != null) {
+            bucket(dueDate.toEpochDay(), true).add(id);
+        }
+    }
+
+    private void remove(LocalDate dueDate, int id) {
+        if (dueDate == null) {
+            return;
+        }
+        long day = dueDate.toEpochDay();
+        TaskIdSet bucket = bucket(day, false);
+        if (bucket != null && bucket.remove(id) && bucket.size() == 0) {
+            if (day < today) {
+                overdue.remove((int) day);
+            } else if (day < today + SLOTS) {
+                slots[slot(day)] = null;
+            } else {
+                later.remove((int) day);
+            }
+        }
+    }
+
+    /**
+     * @param create true to create a missing bucket
+     * @return the bucket of a day, or null if there is none and create is false
+     */
+    private TaskIdSet bucket(long day, boolean create) {
+        if (day >= today && day < today + SLOTS) {
+            int slot = slot(day);
+            if (slots[slot] == null && create) {
+                slots[slot] = new TaskIdSet();
+            }
+            return slots[slot];
+        }
+        TreeMap<Integer, TaskIdSet> buckets = day < today ? overdue : later;
+        return create ? buckets.computeIfAbsent((int) day, key -> new TaskIdSet()) : buckets.get((int) day);
+    }
+
+    /**
+     * This method moves the wheel to the current date: the slots of the days which passed become
+     * overdue buckets, and the days coming within the ring are moved into their slots
+     */
+    private void roll() {
+        long now = LocalDate.now(clock).toEpochDay();
+        if (now == today) {
+            return;
+        }
+        if (now < today || now - today > MAX_ROLL_DAYS) {
+            replace(now);
+            return;
+        }
+        for (long day = today; day < now; day++) {
+            TaskIdSet slot = slots[slot(day)];
+            if (slot != null) {
+                overdue.put((int) day, slot);
+                slots[slot(day)] = null;
+            }
+        }
+        for (long day = today + SLOTS; day < now + SLOTS; day++) {
+            slots[slot(day)] = later.remove((int) day);
+        }
+        today = now;
+    }
+
+    /**
+     * This method places all buckets again for a new date
+     */
+    private void replace(long now) {
+        TreeMap<Integer, TaskIdSet> all = new TreeMap<>(overdue);
+        all.putAll(later);
+        for (long day = today; day < today + SLOTS; day++) {
+            if (slots[slot(day)] != null) {
+                all.put((int) day, slots[slot(day)]);
+            }
+        }
+        overdue.clear();
+        later.clear();
+        Arrays.fill(slots, null);
+        today = now;
+        for (Map.Entry<Integer, TaskIdSet> bucket : all.entrySet()) {
+            long day = bucket.getKey();
+            if (day < today) {
+                overdue.put(bucket.getKey(), bucket.getValue());
+            } else if (day < today + SLOTS) {
+                slots[slot(day)] = bucket.getValue();
+            } else {
+                later.put(bucket.getKey(), bucket.getValue());
+            }
+        }
+    }
+
+    private static int slot(long day) {
+        return (int) Math.floorMod(day, (long) SLOTS);
+    }
+
+    private static int clamp(long day) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, day));
+    }
+}
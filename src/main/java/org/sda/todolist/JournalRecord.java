@@ -0,0 +1,233 @@
+package org.sda.todolist;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * This class represents one mutation of the TodoList as it is written to the journal:
+ * a task was added, a field was updated, the completion state changed or a task was deleted.
+ *
+ * The first byte of a record holds its type and, in the high four bits, its version. Records of
+ * version 0 have their texts written with DataOutputStream.writeUTF, which takes at most 64 KB;
+ * version 1 writes the length of a text followed by its UTF-8 bytes. Both are read, only
+ * version 1 is written, so a journal of this version is refused by older readers.
+ **/
+
+public class JournalRecord {
+    public enum Type {
+        ADD, UPDATE, COMPLETE, DELETE
+    }
+
+    // written instead of ADD for a task which repeats, its rule follows the values of ADD
+    private static final int ADD_RECURRING = 4;
+    static final int VERSION = 1;
+    // largest encoded record, a longer one in a journal is taken for a torn write
+    static final int MAX_LENGTH = 1 << 24;
+
+    private final Type type;
+    private final long sequence;
+    private final long taskId;
+    // ADD: the whole task; UPDATE: the field and its new value; COMPLETE: the new state
+    private final Task task;
+    private final TaskField field;
+    private final String value;
+    private final boolean complete;
+    private final LocalDate completedDate;
+    // the encoded record, kept as it is written to the journal, the undo history and the replicas
+    private byte[] encoded;
+
+    private JournalRecord(Type type, long sequence, long taskId, Task task, TaskField field, String value,
+                          boolean complete, LocalDate completedDate) {
+        this.type = type;
+        this.sequence = sequence;
+        this.taskId = taskId;
+        this.task = task;
+        this.field = field;
+        this.value = value;
+        this.complete = complete;
+        this.completedDate = completedDate;
+    }
+
+    public static JournalRecord add(long sequence, Task task) {
+        return new JournalRecord(Type.ADD, sequence, task.getId(), task.copy(), null, null, false, null);
+    }
+
+    public static JournalRecord update(long sequence, long taskId, TaskField field, String value) {
+        return new JournalRecord(Type.UPDATE, sequence, taskId, null, field, value, false, null);
+    }
+
+    public static JournalRecord complete(long sequence, long taskId, boolean complete, LocalDate completedDate) {
+        return new JournalRecord(Type.COMPLETE, sequence, taskId, null, null, null, complete, completedDate);
+    }
+
+    public static JournalRecord delete(long sequence, long taskId) {
+        return new JournalRecord(Type.DELETE, sequence, taskId, null, null, null, false, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTaskId() {
+        return taskId;
+    }
+
+    /**
+     * @return a new copy of the added task for an ADD record, null otherwise
+     */
+    public Task getTask() {
+        return task == null ? null : task.copy();
+    }
+
+    public TaskField getField() {
+        return field;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public LocalDate getCompletedDate() {
+        return completedDate;
+    }
+
+    /**
+     * This method encodes the record body (without length and checksum framing). The record is
+     * encoded once, TodoList encodes it before it changes the list.
+     * @return the encoded bytes, which must not be changed
+     * @throws IllegalArgumentException if the record is larger than 16 MB
+     */
+    public synchronized byte[] encode() {
+        if (encoded == null) {
+            byte[] bytes = write();
+            if (bytes.length > MAX_LENGTH) {
+                throw new IllegalArgumentException("A change can not be larger than " + (MAX_LENGTH >> 20)
+                        + " MB: " + bytes.length + " bytes");
+            }
+            encoded = bytes;
+        }
+        return encoded;
+    }
+
+    private byte[] write() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            boolean recurring = type == Type.ADD && task.isRecurring();
+            out.writeByte(VERSION << 4 | (recurring ? ADD_RECURRING : type.ordinal()));
+            out.writeLong(sequence);
+            out.writeLong(taskId);
+            switch (type) {
+                case ADD -> {
+                    writeText(task.getTitle(), out);
+                    writeText(task.getProject(), out);
+                    writeText(task.getPriority(), out);
+                    writeText(task.getNotes(), out);
+                    out.writeInt(BinaryTaskFile.toEpochDay(task.getDueDate()));
+                    out.writeBoolean(task.isComplete());
+                    out.writeInt(BinaryTaskFile.toEpochDay(task.getCompletedDate()));
+                    if (recurring) {
+                        writeText(task.getRecurrence().toString(), out);
+                    }
+                }
+                case UPDATE -> {
+                    out.writeByte(field.ordinal());
+                    out.writeBoolean(value != null);
+                    if (value != null) {
+                        writeText(value, out);
+                    }
+                }
+                case COMPLETE -> {
+                    out.writeBoolean(complete);
+                    out.writeInt(BinaryTaskFile.toEpochDay(completedDate));
+                }
+                case DELETE -> {
+                }
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // writing to a byte array does not fail
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * This method decodes a record body written by {@link #encode()}
+     * @param in stream positioned at the start of the body
+     * @return the decoded record
+     */
+    public static JournalRecord decode(DataInputStream in) throws IOException {
+        int first = in.readUnsignedByte();
+        int version = first >>> 4;
+        if (version > VERSION) {
+            throw new IOException("Unknown journal record version: " + version);
+        }
+        int typeOrdinal = first & 0x0F;
+        boolean recurring = typeOrdinal == ADD_RECURRING;
+        if (typeOrdinal >= Type.values().length && !recurring) {
+            throw new IOException("Unknown journal record type: " + typeOrdinal);
+        }
+        Type type = recurring ? Type.ADD : Type.values()[typeOrdinal];
+        long sequence = in.readLong();
+        long taskId = in.readLong();
+        switch (type) {
+            case ADD: {
+                String title = readText(in, version);
+                String project = readText(in, version);
+                String priority = readText(in, version);
+                String notes = readText(in, version);
+                LocalDate due = BinaryTaskFile.fromEpochDay(in.readInt());
+                boolean complete = in.readBoolean();
+                LocalDate completedDate = BinaryTaskFile.fromEpochDay(in.readInt());
+                Task task = Task.restore(title, project, due, priority, complete, completedDate, notes);
+                task.setId(taskId);
+                if (recurring) {
+                    task.restoreField(TaskField.RECURRENCE, readText(in, version));
+                }
+                return new JournalRecord(type, sequence, taskId, task, null, null, false, null);
+            }
+            case UPDATE: {
+                TaskField field = TaskField.values()[in.readUnsignedByte()];
+                String value = in.readBoolean() ? readText(in, version) : null;
+                return update(sequence, taskId, field, value);
+            }
+            case COMPLETE: {
+                boolean complete = in.readBoolean();
+                return complete(sequence, taskId, complete, BinaryTaskFile.fromEpochDay(in.readInt()));
+            }
+            default:
+                return delete(sequence, taskId);
+        }
+    }
+
+    private static void writeText(String text, DataOutputStream out) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readText(DataInputStream in, int version) throws IOException {
+        if (version == 0) {
+            return in.readUTF();
+        }
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid text length in journal record: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
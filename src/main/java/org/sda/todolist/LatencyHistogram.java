@@ -0,0 +1,127 @@
+package org.sda.todolist;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts durations in buckets, to tell how long an operation takes usually and at
+ * worst (percentiles) without keeping every measurement.
+ *
+ * The buckets are laid out like HdrHistogram: durations below 128 ns have one bucket each, and
+ * every power of 2 above is divided into 64 buckets of equal width, so a percentile is off by at
+ * most 1/64 (1.6%) of its value. Durations up to about an hour take 2432 counters (19 KB).
+ * Recording is one increment of a counter and a few shifts, without locks and without
+ * allocation, so it can be done on every call of an operation.
+ **/
+
+public class LatencyHistogram {
+    // bits of the linear buckets of every power of 2
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // durations above 2^42 ns (73 minutes) are counted in the last bucket
+    private static final int HIGHEST_BIT = 42;
+    private static final long HIGHEST_VALUE = (1L << HIGHEST_BIT) - 1;
+    private static final int BUCKETS = (HIGHEST_BIT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * This method counts one duration
+     * @param nanos the duration in nanoseconds, negative durations count as 0
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), HIGHEST_VALUE);
+        counts.incrementAndGet(index(value));
+        total.add(value);
+        long highest = max.get();
+        while (value > highest && !max.compareAndSet(highest, value)) {
+            highest = max.get();
+        }
+    }
+
+    /**
+     * @return the number of durations counted
+     */
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return the mean duration in nanoseconds, 0 if nothing was counted
+     */
+    public double mean() {
+        long count = count();
+        return count == 0 ? 0 : total.doubleValue() / count;
+    }
+
+    /**
+     * @return the longest duration in nanoseconds
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * This method returns the duration which the given share of all durations did not exceed
+     * @param percentile between 0 and 100, e.g. 99.9
+     * @return the duration in nanoseconds (the upper end of its bucket), 0 if nothing was counted
+     */
+    public long percentile(double percentile) {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * Math.min(Math.max(percentile, 0), 100) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += copy[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max());
+            }
+        }
+        return max();
+    }
+
+    /**
+     * This method forgets all counted durations
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        total.reset();
+        max.set(0);
+    }
+
+    static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return the highest duration counted in the bucket
+     */
+    static long highestValueOf(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
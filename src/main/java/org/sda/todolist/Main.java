@@ -1,6 +1,9 @@
 package org.sda.todolist;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.Scanner;
+import javax.management.JMException;
 
 /**
  * Main class of the To-Do List Project
@@ -14,27 +17,79 @@ import java.util.Scanner;
 public class Main {
     // A string to hold the data file name which contains all tasks and their details
     public static String filename = "tasks.obj";
+    // memory-map the data file instead of reading all tasks on start, i.e., -Dtodolist.lazyLoad=true
+    public static boolean lazyLoad = Boolean.getBoolean("todolist.lazyLoad");
+    // keep tasks in primitive arrays to save memory on very large lists, i.e., -Dtodolist.compact=true
+    public static boolean compactStorage = Boolean.getBoolean("todolist.compact");
+    // store the tasks in one file per project, written only when they change, i.e., -Dtodolist.sharded=true
+    public static boolean sharded = Boolean.getBoolean("todolist.sharded");
+    // compression of the blocks of the data file, 0 (none) to 9 (smallest), i.e., -Dtodolist.compression=6
+    public static int compression = Integer.getInteger("todolist.compression", BlockTaskFile.DEFAULT_LEVEL);
+    // threads building the indexes and scanning large lists, 1 for none, i.e., -Dtodolist.parallelism=4
+    public static int parallelism = Integer.getInteger("todolist.parallelism", Runtime.getRuntime().availableProcessors());
+    // smallest number of tasks handled in parallel, i.e., -Dtodolist.parallelThreshold=50000
+    public static int parallelThreshold = Integer.getInteger("todolist.parallelThreshold", ParallelTasks.DEFAULT_THRESHOLD);
+    // number of tasks shown per page by the listings, i.e., -Dtodolist.pageSize=100
+    public static int pageSize = Integer.getInteger("todolist.pageSize", TodoList.DEFAULT_PAGE_SIZE);
+    // tasks completed more than this many days ago are moved to the archive on start, 0 for never, i.e., -Dtodolist.archiveDays=90
+    public static int archiveDays = Integer.getInteger("todolist.archiveDays", 0);
+    // days before the due date to show reminders at in the background, i.e., -Dtodolist.reminders=2,0,-1
+    public static String reminders = System.getProperty("todolist.reminders", "");
+    // bytes of changes kept in memory for undo, older changes are kept in a temporary file, i.e., -Dtodolist.undoMemory=65536
+    public static long undoMemory = Long.getLong("todolist.undoMemory", UndoHistory.DEFAULT_MEMORY);
+    // file the timings of the operations are written to at exit, i.e., -Dtodolist.metricsFile=metrics.txt
+    public static String metricsFile = System.getProperty("todolist.metricsFile", "");
 
     /**
      * main method to run the command line based "To Do List" application
-     * @param args array of String holding command line parameters
+     * @param args array of String holding command line parameters, a command runs the batch mode
+     *             instead of the menu, see BatchMode
      */
     public static void main(String args[]) {
+        if (args.length > 0) {
+            // commands given on the command line or in a script, see BatchMode
+            System.exit(BatchMode.run(args));
+        }
+
         // An object of TodoList to hold all tasks and their data
         TodoList todoList = new TodoList();
         todoList.showMotivationalQuote();
+        // gives reminders of due tasks in the background, if enabled
+        ReminderScheduler scheduler = null;
 
         //A string to hold the choice that will be entered by the user
         String menuChoice = "-17";
 
         try {
             Scanner input = new Scanner(System.in);
+            // all prompts read through this Scanner, so piped input is not lost between them
+            todoList.setInput(input);
 
             // reading the date from task data file
             // if this is the first time, a message will be shown that no data file is found
+            todoList.setLazyLoad(lazyLoad);
+            todoList.setCompactStorage(compactStorage);
+            todoList.setSharded(sharded);
+            todoList.setCompressionLevel(compression);
+            ParallelTasks parallel = new ParallelTasks(parallelism, parallelThreshold);
+            todoList.setParallel(parallel);
+            todoList.setPageSize(pageSize);
+            todoList.setUndoHistory(new UndoHistory(UndoHistory.DEFAULT_CAPACITY, undoMemory,
+                    Paths.get(System.getProperty("java.io.tmpdir"))));
+            // the timings can be watched with jconsole while the application runs
+            try {
+                todoList.metrics().registerMBeans();
+            } catch (JMException e) {
+                Messages.showMessage("The metrics are not available over JMX: " + e.getMessage(), true);
+            }
             todoList.readFromFile(filename);
+            archiveCompleted(todoList);
 
             Messages.showMessage("Welcome to ToDoList", false);
+            if (!reminders.trim().isEmpty()) {
+                scheduler = new ReminderScheduler(todoList, Messages::reminder, ReminderScheduler.parseLeadDays(reminders));
+                scheduler.start();
+            }
 
   while (!menuChoice.equals("6")) {
     Messages.mainMenu(todoList.notCompletedCount(), todoList.completedCount());
@@ -57,21 +112,56 @@ public class Main {
             todoList.searchTask(); // 🆕 Search option
             break;
         case "5":
-            todoList.saveToFile(filename);
-            Messages.showMessage(">>> Progress saved successfully!", false);
+            // every change is already recorded in the journal, this only forces it to disk
+            if (todoList.flushChanges()) {
+                Messages.showMessage(">>> Progress saved successfully!", false);
+            } else {
+                Messages.showMessage(">>> The changes could not be saved", true);
+            }
             break;
         case "6":
             break;
+        case "7":
+            todoList.showSummary();
+            break;
+        case "8":
+            todoList.showDueTasks(TodoList.DEFAULT_DUE_DAYS);
+            break;
+        case "9":
+            Messages.importExportMenu();
+            todoList.importOrExportTasks(input.nextLine());
+            break;
+        case "10":
+            todoList.undoOrRedo(false);
+            break;
+        case "11":
+            todoList.undoOrRedo(true);
+            break;
+        case "12":
+            Messages.diagnostics(todoList.metrics());
+            break;
+        case "13":
+            todoList.queryTasks();
+            break;
         default:
             Messages.unknownMessage();
     }
 }
 
 
-            // saving the task details in data file
-            // if this is the first time, a new task file will be created
-            todoList.saveToFile(filename);
-            Messages.byeMessage();
+            if (scheduler != null) {
+                scheduler.stop();
+            }
+            // flushing the journal of all changes next to the data file
+            // the data file itself is rewritten only when the journal is compacted
+            boolean saved = todoList.close();
+            parallel.shutdown();
+            writeMetrics(todoList.metrics());
+            if (saved) {
+                Messages.byeMessage();
+            } else {
+                Messages.showMessage(">>> The changes could not be saved to " + filename, true);
+            }
 
         } catch (Exception e) {
             Messages.showMessage("UNCAUGHT EXCEPTION THROWN", true);
@@ -81,4 +171,39 @@ public class Main {
             System.out.println(e.getStackTrace());
 }
 }
+
+    /**
+     * This method moves the tasks completed more than archiveDays ago into the archive of the
+     * data file, if -Dtodolist.archiveDays is given
+     * @param todoList the task list, read from its data file
+     */
+    static void archiveCompleted(TodoList todoList) {
+        if (archiveDays <= 0) {
+            return;
+        }
+        try {
+            int archived = todoList.archiveCompleted(archiveDays);
+            if (archived > 0) {
+                Messages.showMessage(archived + " task(s) completed more than " + archiveDays + " days ago are archived", false);
+            }
+        } catch (IOException | IllegalStateException e) {
+            Messages.showMessage("The tasks can not be archived: " + e.getMessage(), true);
+        }
+    }
+
+    /**
+     * This method writes the timings of the operations to the file given by
+     * -Dtodolist.metricsFile, if it is given
+     * @param metrics the metrics of the task list
+     */
+    static void writeMetrics(TaskMetrics metrics) {
+        if (metricsFile.isEmpty()) {
+            return;
+        }
+        try {
+            metrics.writeTo(Paths.get(metricsFile));
+        } catch (IOException e) {
+            Messages.showMessage("The metrics file, i.e., " + metricsFile + " can not be written: " + e.getMessage(), true);
+        }
+    }
 }
\ No newline at end of file
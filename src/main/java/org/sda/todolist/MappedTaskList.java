@@ -0,0 +1,410 @@
+package org.sda.todolist;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * This class represents the list of tasks over a memory-mapped data file.
+ *
+ * A Task object is created only when its position is read through {@link #get(int)}, and is then
+ * cached so that later changes to it are kept. Tasks added after loading are kept on the heap,
+ * removed file rows are tracked in a bitset. Counting completed tasks works on the completion
+ * bitset of the file and only looks at the tasks which were created so far.
+ *
+ * Re-ordering the list (sort or insertion in the middle) creates all tasks and turns this list
+ * into a plain heap list.
+ **/
+
+public class MappedTaskList extends AbstractList<Task> implements RandomAccess {
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private final BinaryTaskFile.Layout layout;
+    private final int fileRows;
+
+    // position -> file row, null as long as no file row was removed
+    private int[] rowOf;
+    // number of file rows still in the list
+    private int baseSize;
+    // file rows removed from the list
+    private long[] removedRows;
+
+    // tasks created from file rows, by row, in pages allocated on first use
+    private final Task[][] pages;
+    private int[] materializedRows = new int[64];
+    private int materializedCount;
+
+    // tasks added after the file was loaded, and the same tasks by id, like the id column of the file
+    private final ArrayList<Task> appended = new ArrayList<>();
+    private final Map<Long, Task> appendedById = new HashMap<>();
+
+    // all tasks once the list had to be re-ordered, null before that
+    private ArrayList<Task> full;
+
+    public MappedTaskList(BinaryTaskFile.Layout layout) {
+        this.layout = layout;
+        this.fileRows = layout.rows();
+        this.baseSize = fileRows;
+        this.pages = new Task[(fileRows + PAGE_SIZE - 1) >>> PAGE_BITS][];
+    }
+
+    @Override
+    public Task get(int index) {
+        if (full != null) {
+            return full.get(index);
+        }
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return index < baseSize ? row(rowAt(index)) : appended.get(index - baseSize);
+    }
+
+    @Override
+    public int size() {
+        return full != null ? full.size() : baseSize + appended.size();
+    }
+
+    @Override
+    public Task set(int index, Task task) {
+        if (full == null) {
+            if (get(index) == task) {
+                return task;
+            }
+            materializeAll();
+        }
+        return full.set(index, task);
+    }
+
+    @Override
+    public void add(int index, Task task) {
+        modCount++;
+        if (full == null && index == size()) {
+            appended.add(task);
+            appendedById.put(task.getId(), task);
+            return;
+        }
+        if (full == null) {
+            materializeAll();
+        }
+        full.add(index, task);
+    }
+
+    @Override
+    public Task remove(int index) {
+        modCount++;
+        if (full != null) {
+            return full.remove(index);
+        }
+        if (index >= baseSize) {
+            Task removed = appended.remove(index - baseSize);
+            appendedById.remove(removed.getId(), removed);
+            return removed;
+        }
+        Task removed = get(index);
+        if (rowOf == null) {
+            rowOf = new int[baseSize];
+            Arrays.setAll(rowOf, position -> position);
+            removedRows = new long[(fileRows + 63) >>> 6];
+        }
+        int row = rowOf[index];
+        System.arraycopy(rowOf, index + 1, rowOf, index, baseSize - index - 1);
+        baseSize--;
+        removedRows[row >>> 6] |= 1L << row;
+        return removed;
+    }
+
+    @Override
+    public int indexOf(Object object) {
+        if (full != null) {
+            return full.indexOf(object);
+        }
+        if (!(object instanceof Task task)) {
+            return -1;
+        }
+        if (appendedById.get(task.getId()) == task) {
+            return baseSize + appended.indexOf(task);
+        }
+        // a file row can only be in the list as the cached task of that row
+        int row = rowOfId(task.getId());
+        if (row < 0 || isRemoved(row)) {
+            return -1;
+        }
+        Task[] page = pages[row >>> PAGE_BITS];
+        if (page == null || page[row & (PAGE_SIZE - 1)] != task) {
+            return -1;
+        }
+        return rowOf == null ? row : Arrays.binarySearch(rowOf, 0, baseSize, row);
+    }
+
+    @Override
+    public boolean remove(Object object) {
+        int index = indexOf(object);
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    /**
+     * This method removes all tasks matching the filter in one pass. File rows are tested
+     * through {@link #peek(int)}, so they are not kept in memory for it.
+     */
+    @Override
+    public boolean removeIf(Predicate<? super Task> filter) {
+        if (full != null) {
+            boolean removed = full.removeIf(filter);
+            modCount += removed ? 1 : 0;
+            return removed;
+        }
+        boolean removed = appended.removeIf(task -> {
+            if (filter.test(task)) {
+                appendedById.remove(task.getId(), task);
+                return true;
+            }
+            return false;
+        });
+        int kept = 0;
+        for (int index = 0; index < baseSize; index++) {
+            int row = rowAt(index);
+            if (filter.test(peek(index))) {
+                if (rowOf == null) {
+                    rowOf = new int[baseSize];
+                    Arrays.setAll(rowOf, position -> position);
+                    removedRows = new long[(fileRows + 63) >>> 6];
+                }
+                removedRows[row >>> 6] |= 1L << row;
+                removed = true;
+            } else {
+                if (rowOf != null) {
+                    rowOf[kept] = row;
+                }
+                kept++;
+            }
+        }
+        baseSize = kept;
+        modCount += removed ? 1 : 0;
+        return removed;
+    }
+
+    /**
+     * @return the highest task id in the list, 0 if the list is empty
+     */
+    public long maxId() {
+        long max = 0;
+        if (full != null) {
+            for (Task task : full) {
+                max = Math.max(max, task.getId());
+            }
+            return max;
+        }
+        if (layout.idsAscending() && fileRows > 0) {
+            max = layout.id(fileRows - 1);
+        } else {
+            for (int row = 0; row < fileRows; row++) {
+                max = Math.max(max, layout.id(row));
+            }
+        }
+        for (Task task : appended) {
+            max = Math.max(max, task.getId());
+        }
+        return max;
+    }
+
+    /**
+     * This method counts the completed tasks without creating Task objects: the completion bitset
+     * of the file is counted word by word and corrected for the tasks created (and possibly changed)
+     * since loading.
+     * @return number of completed tasks
+     */
+    public int completedCount() {
+        if (full != null) {
+            return (int) full.stream().filter(Task::isComplete).count();
+        }
+        int count = 0;
+        int words = (fileRows + 63) >>> 6;
+        for (int word = 0; word < words; word++) {
+            long bits = layout.data.getLong(layout.completeBits + word * 8);
+            if (removedRows != null) {
+                bits &= ~removedRows[word];
+            }
+            count += Long.bitCount(bits);
+        }
+        for (int i = 0; i < materializedCount; i++) {
+            int row = materializedRows[i];
+            if (isRemoved(row)) {
+                continue;
+            }
+            boolean stored = layout.isComplete(row);
+            boolean current = pages[row >>> PAGE_BITS][row & (PAGE_SIZE - 1)].isComplete();
+            if (stored != current) {
+                count += current ? 1 : -1;
+            }
+        }
+        for (Task task : appended) {
+            if (task.isComplete()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This method finds a task by its id, using a binary search over the id column when the
+     * file was written in id order
+     * @param id id of the task
+     * @return the task, or null if it is not in the list
+     */
+    public Task findById(long id) {
+        if (full != null) {
+            return findIn(full, id);
+        }
+        Task task = appendedById.get(id);
+        if (task != null) {
+            return task;
+        }
+        int row = rowOfId(id);
+        return row < 0 || isRemoved(row) ? null : row(row);
+    }
+
+    /**
+     * This method finds a task by its id like findById, without keeping a newly created Task object
+     * @param id id of the task
+     * @return the cached task, a new task decoded from the file, or null if it is not in the list
+     */
+    public Task peekById(long id) {
+        if (full != null) {
+            return findIn(full, id);
+        }
+        Task task = appendedById.get(id);
+        if (task != null) {
+            return task;
+        }
+        int row = rowOfId(id);
+        if (row < 0 || isRemoved(row)) {
+            return null;
+        }
+        Task[] page = pages[row >>> PAGE_BITS];
+        Task cached = page == null ? null : page[row & (PAGE_SIZE - 1)];
+        return cached != null ? cached : layout.task(row);
+    }
+
+    private int rowOfId(long id) {
+        int row = -1;
+        if (layout.idsAscending()) {
+            int low = 0;
+            int high = fileRows - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long middleId = layout.id(middle);
+                if (middleId < id) {
+                    low = middle + 1;
+                } else if (middleId > id) {
+                    high = middle - 1;
+                } else {
+                    row = middle;
+                    break;
+                }
+            }
+        } else {
+            for (int candidate = 0; candidate < fileRows && row < 0; candidate++) {
+                if (layout.id(candidate) == id) {
+                    row = candidate;
+                }
+            }
+        }
+        return row;
+    }
+
+    /**
+     * This method returns the task at a position without keeping a newly created Task object,
+     * used to write or copy the whole list without filling the cache
+     * @param index position in the list
+     * @return the cached task, or a new task decoded from the file
+     */
+    public Task peek(int index) {
+        if (full != null || index >= baseSize) {
+            return get(index);
+        }
+        int row = rowAt(index);
+        Task[] page = pages[row >>> PAGE_BITS];
+        Task cached = page == null ? null : page[row & (PAGE_SIZE - 1)];
+        return cached != null ? cached : layout.task(row);
+    }
+
+    /**
+     * @return a read-only view of this list which reads positions through {@link #peek(int)}
+     */
+    public List<Task> uncachedView() {
+        return new AbstractList<Task>() {
+            @Override
+            public Task get(int index) {
+                return peek(index);
+            }
+
+            @Override
+            public int size() {
+                return MappedTaskList.this.size();
+            }
+        };
+    }
+
+    /**
+     * @return the number of file rows which are kept as Task objects
+     */
+    int materializedCount() {
+        return materializedCount;
+    }
+
+    private int rowAt(int index) {
+        return rowOf == null ? index : rowOf[index];
+    }
+
+    private boolean isRemoved(int row) {
+        return removedRows != null && (removedRows[row >>> 6] & (1L << row)) != 0;
+    }
+
+    private Task row(int row) {
+        Task[] page = pages[row >>> PAGE_BITS];
+        if (page == null) {
+            page = new Task[PAGE_SIZE];
+            pages[row >>> PAGE_BITS] = page;
+        }
+        Task task = page[row & (PAGE_SIZE - 1)];
+        if (task == null) {
+            task = layout.task(row);
+            page[row & (PAGE_SIZE - 1)] = task;
+            if (materializedCount == materializedRows.length) {
+                materializedRows = Arrays.copyOf(materializedRows, materializedCount * 2);
+            }
+            materializedRows[materializedCount++] = row;
+        }
+        return task;
+    }
+
+    private void materializeAll() {
+        ArrayList<Task> tasks = new ArrayList<>(size() + 16);
+        for (int index = 0; index < baseSize; index++) {
+            tasks.add(row(rowAt(index)));
+        }
+        tasks.addAll(appended);
+        full = tasks;
+        appended.clear();
+        appendedById.clear();
+    }
+
+    private static Task findIn(List<Task> tasks, long id) {
+        for (Task task : tasks) {
+            if (task.getId() == id) {
+                return task;
+            }
+        }
+        return null;
+    }
+}
@@ -1,5 +1,7 @@
 package org.sda.todolist;
 
+import java.io.PrintStream;
+
 /**
  * This is main contains various display messages
  *
@@ -17,6 +19,8 @@ public class Messages {
     public static final String GREEN_TEXT = "\u001B[32m";
     //A public constant field to hold code to change the text font color to YELLOW
     public static final String YELLOW_TEXT = "\u001B[33m";
+    // stream showMessage writes to, the batch mode uses the error stream to keep its output clean
+    private static PrintStream messageStream = System.out;
 
     /**
      * This method will display the main menu (top level menu) on standard output (terminal)
@@ -38,8 +42,15 @@ public class Messages {
         System.out.println("(4) Search Task"); // 
         System.out.println("(5) Save Progress"); // 
         System.out.println("(6) Save and Quit");
+        System.out.println("(7) Show Summary (overdue, by project and priority)");
+        System.out.println("(8) What's Due (overdue and next 7 days)");
+        System.out.println("(9) Import / Export Tasks (CSV or JSON lines)");
+        System.out.println("(10) Undo Last Change");
+        System.out.println("(11) Redo Last Undone Change");
+        System.out.println("(12) Diagnostics (timings of operations)");
+        System.out.println("(13) Query Tasks (by project, priority, status and dates)");
 
-        System.out.print("Please enter your choice [1-6]: ");
+        System.out.print("Please enter your choice [1-13]: ");
     }
 
     /**
@@ -78,9 +89,60 @@ public class Messages {
         System.out.println("(1) Modify selected tasks");
         System.out.println("(2) Mark selected task as COMPLETED");
         System.out.println("(3) Delete selected task");
-        System.out.println("(4) Return to main menu "
+        System.out.println("(4) Skip the next occurrence of a repeating task");
+        System.out.println("(5) Return to main menu "
                 + Messages.RED_TEXT + " [default choice, just press ENTER]"+Messages.RESET_TEXT);
-        System.out.print("\nPlease enter your choice [1-4]: ");
+        System.out.print("\nPlease enter your choice [1-5]: ");
+    }
+
+    /**
+     * This method will display the menu to import tasks from or export them to a file
+     */
+    public static void importExportMenu() {
+        System.out.println("\nImport / Export Tasks");
+        System.out.println("======================\n");
+        System.out.println("Pick an option:");
+        System.out.println("(1) Import tasks from a CSV or JSON lines file");
+        System.out.println("(2) Export all tasks to a CSV or JSON lines file");
+        System.out.println("(3) Return to main menu "
+                + Messages.RED_TEXT + " [default choice, just press ENTER]"+Messages.RESET_TEXT);
+        System.out.print("\nPlease enter your choice [1-3]: ");
+    }
+
+    /**
+     * This method will display the conditions of a query and a prompt to type one
+     */
+    public static void queryHelp() {
+        System.out.println("\nQuery Tasks");
+        System.out.println("=============\n");
+        System.out.println("Conditions, separated by spaces, which must all match:");
+        System.out.println("  project:Work   project:\"Side project\"   priority:high   priority:high,medium");
+        System.out.println("  is:open   is:done   due:today   due:this-week   due:2024-01-01..2024-01-31   due:..+7");
+        System.out.println("  due:none   completed:-7..today   completed:2024-03   other words are searched like (4) Search Task");
+        System.out.println("  in:archive looks for the tasks moved to the archive, e.g. in:archive completed:2024-03");
+        System.out.print(">>> Enter your query: ");
+    }
+
+    /**
+     * This method will display the timings of the operations and the bytes read and written
+     * since the application was started
+     * @param metrics the metrics of the task list
+     */
+    public static void diagnostics(TaskMetrics metrics) {
+        System.out.println("\nDiagnostics");
+        System.out.println("=============\n");
+        System.out.print(metrics.report());
+    }
+
+    /**
+     * This method will display the page shown and the options to move to another page
+     * @param page number of the page shown, starting from 1
+     * @param pages number of pages
+     */
+    public static void pageNavigation(int page, int pages) {
+        System.out.println("\nPage " + page + " of " + pages);
+        System.out.print(">>> (n) next page, (p) previous page, a page number to jump"
+                + Messages.RED_TEXT + " [ENTER to stop]" + Messages.RESET_TEXT + ": ");
     }
 
     /**
@@ -88,7 +150,7 @@ public class Messages {
      */
     public static void  byeMessage() {
         System.out.println(GREEN_TEXT);
-        System.out.println(">>> All tasks are saved to data file");
+        System.out.println(">>> All changes are saved in the journal of the data file");
         System.out.println(">>> Good Bye");
         System.out.println(RESET_TEXT);
     }
@@ -110,9 +172,59 @@ public class Messages {
      *                for printing message in GREEN text on standard output (terminal)
      */
     public static void showMessage(String message, boolean warning) {
-        System.out.println(warning?RED_TEXT:GREEN_TEXT);
-        System.out.println(">>> " + message);
-        System.out.println(RESET_TEXT);
+        messageStream.println(warning?RED_TEXT:GREEN_TEXT);
+        messageStream.println(">>> " + message);
+        messageStream.println(RESET_TEXT);
+    }
+
+    /**
+     * This method will change the stream the messages of showMessage are displayed on
+     * @param stream e.g. System.err
+     */
+    public static void setMessageStream(PrintStream stream) {
+        messageStream = stream;
+    }
+
+    /**
+     * This method will display the commands of the batch mode on standard error
+     */
+    public static void batchUsage() {
+        System.err.println("Usage: todo [--file tasks.obj] [--format text|json] <command>");
+        System.err.println("Commands:");
+        System.err.println("  add <title> --due yyyy-mm-dd [--project name] [--priority HIGH|MEDIUM|LOW] [--notes text]");
+        System.err.println("       [--repeat rule]  e.g. --repeat \"weekly on mon,thu until 2025-06-30\" or \"every 3 days\"");
+        System.err.println("  list [--order due|project|priority|completion] [--open | --done] [--due days | --overdue]");
+        System.err.println("       [--project name] [--offset n] [--limit n]");
+        System.err.println("  search <keywords>");
+        System.err.println("  query <conditions>  e.g. query project:Work priority:high is:open due:this-week");
+        System.err.println("  complete <id>...   reopen <id>...   delete <id>...");
+        System.err.println("  complete <id> --on yyyy-mm-dd   skip <id> [--on yyyy-mm-dd]   detach <id> --on yyyy-mm-dd");
+        System.err.println("       complete, skip or make a task of its own of an occurrence of a repeating task");
+        System.err.println("  export <file.csv|file.jsonl>   import <file.csv|file.jsonl>");
+        System.err.println("  undo [n]   redo [n]  undoes or redoes the last n commands of a script");
+        System.err.println("  archive [--days 30]  moves the tasks completed more than the days ago to the archive of the data");
+        System.err.println("       file, see TaskArchive; query them with e.g. query in:archive completed:2024-03");
+        System.err.println("  script [file]      runs one command per line of a file, or of standard input");
+        System.err.println("  serve [--port 8080] [--replication-port 9090]  serves the tasks over HTTP as JSON, see TaskServer,");
+        System.err.println("       and sends every change to the replicas connected to the replication port");
+        System.err.println("  replica [--primary localhost:9090] [--port 8080]  keeps the data file up to date with a primary");
+        System.err.println("       and serves it read-only over HTTP, see TaskReplica");
+        System.err.println("Tasks are written one per line: id, due date, priority, status, project and title separated");
+        System.err.println("by tabs, or as JSON objects with --format json. The data file is read once and every change");
+        System.err.println("is recorded in its journal, which is written once at the end.");
+    }
+
+    /**
+     * This method will display a reminder of a task which is due soon or overdue, it is the
+     * console ReminderSink of the reminder scheduler
+     * @param task the task to remind of
+     * @param daysLeft days until the due date, negative if the task is overdue
+     */
+    public static void reminder(Task task, long daysLeft) {
+        String when = daysLeft > 0 ? "is due in " + daysLeft + " day(s)"
+                : daysLeft == 0 ? "is due today" : "is overdue since " + -daysLeft + " day(s)";
+        System.out.println((daysLeft < 0 ? RED_TEXT : YELLOW_TEXT)
+                + "\n>>> Reminder: " + task.getTitle() + " (" + task.getProject() + ") " + when + RESET_TEXT);
     }
 
     /**
@@ -0,0 +1,218 @@
+package org.sda.todolist;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.LongFunction;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * This class runs the operations which walk the whole list on a ForkJoinPool: building the
+ * search, sorted and query indexes and the statistics, and checking search terms or query
+ * conditions on many tasks.
+ *
+ * A range of list positions is split in halves until a part is small enough, every part is
+ * collected by one worker into its own result, e.g. an index of its tasks, and the results are
+ * merged in list order, so the id sets of the left part are only appended to. Ranges smaller than
+ * the threshold are run on the calling thread, so small lists do not pay for the pool; with a
+ * parallelism of 1 there is no pool at all. The lists are read by position, which is cheap for
+ * an ArrayList and a CompactTaskList; a list which is not RandomAccess is read sequentially.
+ **/
+
+public class ParallelTasks {
+    // lists with fewer tasks are handled on the calling thread
+    public static final int DEFAULT_THRESHOLD = 100_000;
+    // smallest part handled by one worker
+    private static final int MIN_GRAIN = 4096;
+    private static final ParallelTasks SEQUENTIAL = new ParallelTasks(1, Integer.MAX_VALUE);
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private final int threshold;
+
+    /**
+     * @param parallelism number of worker threads, 1 to run everything on the calling thread
+     * @param threshold smallest number of tasks which is handled in parallel
+     */
+    public ParallelTasks(int parallelism, int threshold) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.threshold = Math.max(threshold, 1);
+        this.pool = parallelism == 1 ? null : new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("todolist-parallel-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * @return the instance which runs everything on the calling thread
+     */
+    public static ParallelTasks sequential() {
+        return SEQUENTIAL;
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    public int threshold() {
+        return threshold;
+    }
+
+    /**
+     * @return true if a range of this size is split over the workers
+     */
+    public boolean isParallel(int size) {
+        return pool != null && size >= threshold;
+    }
+
+    /**
+     * This method collects a result from all positions of a range, e.g. an index of the tasks
+     * @param size number of positions, from 0 to size - 1
+     * @param supplier creates an empty result for a part
+     * @param accumulator adds one position to the result of its part
+     * @param combiner merges the result of the following part into the result of a part
+     * @return the result of all positions
+     */
+    public <R> R collect(int size, Supplier<R> supplier, ObjIntConsumer<R> accumulator, BinaryOperator<R> combiner) {
+        if (!isParallel(size)) {
+            R result = supplier.get();
+            for (int position = 0; position < size; position++) {
+                accumulator.accept(result, position);
+            }
+            return result;
+        }
+        int grain = Math.max(MIN_GRAIN, size / (parallelism * 8));
+        return pool.invoke(new Part<>(0, size, grain, supplier, accumulator, combiner));
+    }
+
+    /**
+     * This method collects a result from all tasks of a list, see collect
+     */
+    public <R> R collect(List<Task> tasks, Supplier<R> supplier, BiConsumer<R, Task> accumulator,
+                         BinaryOperator<R> combiner) {
+        if (!(tasks instanceof RandomAccess)) {
+            R result = supplier.get();
+            for (Task task : tasks) {
+                accumulator.accept(result, task);
+            }
+            return result;
+        }
+        return collect(tasks.size(), supplier, (result, position) -> accumulator.accept(result, tasks.get(position)),
+                combiner);
+    }
+
+    /**
+     * This method checks a condition on all tasks of a list
+     * @return the ids of the matching tasks, in list order
+     */
+    public int[] filter(List<Task> tasks, Predicate<Task> check) {
+        return collect(tasks, Ids::new, (ids, task) -> {
+            if (check.test(task)) {
+                ids.add(TaskIdSet.idOf(task));
+            }
+        }, Ids::append).toArray();
+    }
+
+    /**
+     * This method checks a condition on the tasks of the given ids
+     * @param ids the ids to check
+     * @param lookup finds a task by its id, it is called from several threads
+     * @return the ids of the matching tasks, in the given order
+     */
+    public int[] filter(int[] ids, LongFunction<Task> lookup, Predicate<Task> check) {
+        return collect(ids.length, Ids::new, (matching, position) -> {
+            Task task = lookup.apply(ids[position]);
+            if (task != null && check.test(task)) {
+                matching.add(ids[position]);
+            }
+        }, Ids::append).toArray();
+    }
+
+    /**
+     * This method stops the worker threads, running operations are finished
+     */
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * This class is a range of positions, split until it is at most grain long
+     **/
+    private static final class Part<R> extends RecursiveTask<R> {
+        // ForkJoinTask is Serializable, but a part is never serialized: it only lives in the pool
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final transient Supplier<R> supplier;
+        private final transient ObjIntConsumer<R> accumulator;
+        private final transient BinaryOperator<R> combiner;
+
+        Part(int from, int to, int grain, Supplier<R> supplier, ObjIntConsumer<R> accumulator,
+             BinaryOperator<R> combiner) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.supplier = supplier;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+        }
+
+        @Override
+        protected R compute() {
+            if (to - from <= grain) {
+                R result = supplier.get();
+                for (int position = from; position < to; position++) {
+                    accumulator.accept(result, position);
+                }
+                return result;
+            }
+            int middle = (from + to) >>> 1;
+            Part<R> left = new Part<>(from, middle, grain, supplier, accumulator, combiner);
+            left.fork();
+            R right = new Part<>(middle, to, grain, supplier, accumulator, combiner).compute();
+            return combiner.apply(left.join(), right);
+        }
+    }
+
+    /**
+     * This class collects ids in a growable array
+     **/
+    private static final class Ids {
+        private int[] ids = new int[16];
+        private int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        Ids append(Ids other) {
+            if (size + other.size > ids.length) {
+                ids = Arrays.copyOf(ids, size + other.size);
+            }
+            System.arraycopy(other.ids, 0, ids, size, other.size);
+            size += other.size;
+            return this;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(ids, size);
+        }
+    }
+}
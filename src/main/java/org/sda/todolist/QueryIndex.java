@@ -0,0 +1,342 @@
+package org.sda.todolist;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * This class finds the tasks matching a TaskQuery without checking every task.
+ *
+ * It keeps a TaskBitmap of task ids per project, priority and completion state, and per day of
+ * due date and of completion date. A query is planned by estimating how many tasks each of its
+ * conditions matches, which is the size of its bitmaps, or for search terms the size of their
+ * postings in the SearchIndex. The most selective condition gives the candidates, and the other
+ * conditions are intersected with them in the order of their estimates while they are not much
+ * larger than the candidates; the remaining conditions are only checked on the few tasks left,
+ * so e.g. a wide due date range is never collected into a bitmap when the project already
+ * narrows the list down to a few tasks. The bitmaps are updated with every change of the list.
+ **/
+
+public class QueryIndex implements TaskListener {
+    // a condition matching this many times more tasks than the candidates is checked on the candidates
+    static final int FILTER_RATIO = 8;
+    // bucket of the tasks without due date or not completed
+    private static final int NO_DATE = Integer.MAX_VALUE;
+
+    // by project in lower case
+    private final Map<String, TaskBitmap> byProject = new HashMap<>();
+    // by Task.Priority ordinal
+    private final TaskBitmap[] byPriority = newBitmaps(Task.Priority.values().length);
+    // [0] not completed, [1] completed
+    private final TaskBitmap[] byCompletion = newBitmaps(2);
+    // by epoch-day
+    private final TreeMap<Integer, TaskBitmap> byDueDay = new TreeMap<>();
+    private final TreeMap<Integer, TaskBitmap> byCompletedDay = new TreeMap<>();
+    private ParallelTasks parallel = ParallelTasks.sequential();
+
+    public static QueryIndex build(List<Task> tasks) {
+        return build(tasks, ParallelTasks.sequential());
+    }
+
+    /**
+     * This method builds the bitmaps of parts of the list in parallel and merges them
+     */
+    public static QueryIndex build(List<Task> tasks, ParallelTasks parallel) {
+        return parallel.collect(tasks, QueryIndex::new, QueryIndex::taskAdded, QueryIndex::merge);
+    }
+
+    /**
+     * This method adds the ids of the bitmaps of the following part of the list
+     * @return this
+     */
+    private QueryIndex merge(QueryIndex other) {
+        other.byProject.forEach((key, ids) -> byProject.computeIfAbsent(key, k -> new TaskBitmap()).addAll(ids));
+        other.byDueDay.forEach((key, ids) -> byDueDay.computeIfAbsent(key, k -> new TaskBitmap()).addAll(ids));
+        other.byCompletedDay.forEach((key, ids) -> byCompletedDay.computeIfAbsent(key, k -> new TaskBitmap()).addAll(ids));
+        for (int i = 0; i < byPriority.length; i++) {
+            byPriority[i].addAll(other.byPriority[i]);
+        }
+        for (int i = 0; i < byCompletion.length; i++) {
+            byCompletion[i].addAll(other.byCompletion[i]);
+        }
+        return this;
+    }
+
+    /**
+     * This method selects the pool which checks the remaining conditions on many candidates
+     */
+    void setParallel(ParallelTasks parallel) {
+        this.parallel = parallel;
+    }
+
+    @Override
+    public void taskAdded(Task task) {
+        int id = TaskIdSet.idOf(task);
+        byProject.computeIfAbsent(projectKey(task.getProject()), key -> new TaskBitmap()).add(id);
+        byPriority[task.getPriorityLevel().ordinal()].add(id);
+        byCompletion[task.isComplete() ? 1 : 0].add(id);
+        byDueDay.computeIfAbsent(dayKey(task.getDueDate()), key -> new TaskBitmap()).add(id);
+        if (task.isComplete()) {
+            byCompletedDay.computeIfAbsent(dayKey(task.getCompletedDate()), key -> new TaskBitmap()).add(id);
+        }
+    }
+
+    @Override
+    public void taskRemoved(Task task) {
+        int id = TaskIdSet.idOf(task);
+        removeFrom(byProject, projectKey(task.getProject()), id);
+        byPriority[task.getPriorityLevel().ordinal()].remove(id);
+        byCompletion[task.isComplete() ? 1 : 0].remove(id);
+        removeFrom(byDueDay, dayKey(task.getDueDate()), id);
+        if (task.isComplete()) {
+            removeFrom(byCompletedDay, dayKey(task.getCompletedDate()), id);
+        }
+    }
+
+    @Override
+    public void taskUpdated(Task task, TaskField field, String oldValue) {
+        int id = TaskIdSet.idOf(task);
+        switch (field) {
+            case DUE_DATE -> {
+                removeFrom(byDueDay, dayKey(oldValue == null ? null : LocalDate.parse(oldValue)), id);
+                byDueDay.computeIfAbsent(dayKey(task.getDueDate()), key -> new TaskBitmap()).add(id);
+            }
+            case PROJECT -> {
+                removeFrom(byProject, projectKey(oldValue), id);
+                byProject.computeIfAbsent(projectKey(task.getProject()), key -> new TaskBitmap()).add(id);
+            }
+            case PRIORITY -> {
+                byPriority[Task.Priority.restore(oldValue).ordinal()].remove(id);
+                byPriority[task.getPriorityLevel().ordinal()].add(id);
+            }
+            default -> {
+                // title and notes are found through the search index
+            }
+        }
+    }
+
+    @Override
+    public void taskCompletionChanged(Task task) {
+        int id = TaskIdSet.idOf(task);
+        byCompletion[task.isComplete() ? 0 : 1].remove(id);
+        byCompletion[task.isComplete() ? 1 : 0].add(id);
+        if (task.isComplete()) {
+            byCompletedDay.computeIfAbsent(dayKey(task.getCompletedDate()), key -> new TaskBitmap()).add(id);
+        } else {
+            // the completion date is already cleared, reopening is rare enough to look for it
+            for (Map.Entry<Integer, TaskBitmap> day : byCompletedDay.entrySet()) {
+                if (day.getValue().remove(id)) {
+                    if (day.getValue().isEmpty()) {
+                        byCompletedDay.remove(day.getKey());
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * This method plans a query
+     * @param query the conditions
+     * @param search the search index, used if the query has search terms
+     * @param tasks all tasks, for search terms of less than 3 characters
+     * @param lookup finds a task by its id
+     * @return the plan, which can be shown or executed
+     */
+    public Plan plan(TaskQuery query, Supplier<SearchIndex> search, List<Task> tasks, LongFunction<Task> lookup) {
+        List<Step> steps = new ArrayList<>();
+        if (query.project() != null) {
+            TaskBitmap project = byProject.getOrDefault(projectKey(query.project()), new TaskBitmap());
+            steps.add(new Step("project", project.cardinality(), () -> project, query::matchesProject));
+        }
+        if (query.priorities() != null) {
+            List<TaskBitmap> levels = new ArrayList<>();
+            for (Task.Priority level : query.priorities()) {
+                levels.add(byPriority[level.ordinal()]);
+            }
+            steps.add(new Step("priority", cardinality(levels), () -> union(levels), query::matchesPriority));
+        }
+        if (query.complete() != null) {
+            TaskBitmap state = byCompletion[query.complete() ? 1 : 0];
+            steps.add(new Step(query.complete() ? "done" : "open", state.cardinality(), () -> state,
+                    query::matchesCompletion));
+        }
+        if (query.withoutDue() || query.hasDueRange()) {
+            Collection<TaskBitmap> days = query.withoutDue()
+                    ? byDueDay.subMap(NO_DATE, true, NO_DATE, true).values()
+                    : days(byDueDay, query.dueFrom(), query.dueTo());
+            steps.add(new Step("due date", cardinality(days), () -> union(days), query::matchesDueDate));
+        }
+        if (query.hasCompletedRange()) {
+            Collection<TaskBitmap> days = days(byCompletedDay, query.completedFrom(), query.completedTo());
+            steps.add(new Step("completion date", cardinality(days), () -> union(days), query::matchesCompletedDate));
+        }
+        if (query.text() != null) {
+            SearchIndex index = search.get();
+            steps.add(new Step("search", index.estimateQuery(query.text(), tasks.size()),
+                    () -> TaskBitmap.of(index.search(query.text(), tasks, lookup)), query::matchesText));
+        }
+        steps.sort((a, b) -> Long.compare(a.estimate, b.estimate));
+        return new Plan(steps, lookup);
+    }
+
+    /**
+     * @return the ids of all tasks
+     */
+    TaskBitmap all() {
+        return TaskBitmap.or(byCompletion[0], byCompletion[1]);
+    }
+
+    /**
+     * This class is the plan of a query: its conditions ordered by their estimates
+     **/
+    public final class Plan {
+        private final List<Step> steps;
+        private final LongFunction<Task> lookup;
+        // number of conditions intersected as bitmaps, the others are checked on the tasks
+        private int intersected;
+        private boolean executed;
+
+        Plan(List<Step> steps, LongFunction<Task> lookup) {
+            this.steps = steps;
+            this.lookup = lookup;
+        }
+
+        /**
+         * This method finds the matching tasks
+         * @return their ids in ascending order
+         */
+        public int[] execute() {
+            TaskBitmap candidates = steps.isEmpty() ? all() : steps.get(0).bitmap.get();
+            intersected = Math.min(1, steps.size());
+            while (intersected < steps.size() && !candidates.isEmpty()
+                    && steps.get(intersected).estimate <= (long) candidates.cardinality() * FILTER_RATIO) {
+                candidates = TaskBitmap.and(candidates, steps.get(intersected).bitmap.get());
+                intersected++;
+            }
+            executed = true;
+            int[] ids = candidates.toArray();
+            if (intersected == steps.size()) {
+                return ids;
+            }
+            return parallel.filter(ids, lookup, this::checks);
+        }
+
+        private boolean checks(Task task) {
+            for (int i = intersected; i < steps.size(); i++) {
+                if (!steps.get(i).check.test(task)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the names of the conditions intersected as bitmaps, in order, after execute
+         */
+        List<String> intersected() {
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < intersected; i++) {
+                names.add(steps.get(i).name);
+            }
+            return names;
+        }
+
+        /**
+         * @return the conditions with their estimates, e.g. "project (12) AND priority (3000),
+         * then checked: due date (41000)", once executed
+         */
+        @Override
+        public String toString() {
+            if (steps.isEmpty()) {
+                return "all tasks";
+            }
+            StringBuilder plan = new StringBuilder();
+            int bitmaps = executed ? intersected : steps.size();
+            for (int i = 0; i < steps.size(); i++) {
+                if (i > 0) {
+                    plan.append(i == bitmaps ? ", then checked: " : i < bitmaps ? " AND " : ", ");
+                }
+                plan.append(steps.get(i).name).append(" (").append(steps.get(i).estimate).append(")");
+            }
+            return plan.toString();
+        }
+    }
+
+    /**
+     * This class is one condition of a plan: the number of tasks it matches at most, how to get
+     * their ids and how to check a single task
+     **/
+    private static final class Step {
+        final String name;
+        final long estimate;
+        final Supplier<TaskBitmap> bitmap;
+        final Predicate<Task> check;
+
+        Step(String name, long estimate, Supplier<TaskBitmap> bitmap, Predicate<Task> check) {
+            this.name = name;
+            this.estimate = estimate;
+            this.bitmap = bitmap;
+            this.check = check;
+        }
+    }
+
+    private static Collection<TaskBitmap> days(TreeMap<Integer, TaskBitmap> index, LocalDate from, LocalDate to) {
+        // the bucket of tasks without date is after all days
+        int first = from == null ? Integer.MIN_VALUE : dayKey(from);
+        int last = to == null ? NO_DATE - 1 : dayKey(to);
+        if (first > last) {
+            return List.of();
+        }
+        NavigableMap<Integer, TaskBitmap> days = index.subMap(first, true, last, true);
+        return days.values();
+    }
+
+    private static long cardinality(Collection<TaskBitmap> bitmaps) {
+        long cardinality = 0;
+        for (TaskBitmap bitmap : bitmaps) {
+            cardinality += bitmap.cardinality();
+        }
+        return cardinality;
+    }
+
+    private static TaskBitmap union(Collection<TaskBitmap> bitmaps) {
+        TaskBitmap result = new TaskBitmap();
+        for (TaskBitmap bitmap : bitmaps) {
+            result.addAll(bitmap);
+        }
+        return result;
+    }
+
+    private static int dayKey(LocalDate date) {
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+
+    private static String projectKey(String project) {
+        return project == null ? "" : project.toLowerCase(Locale.ROOT);
+    }
+
+    private static <K> void removeFrom(Map<K, TaskBitmap> index, K key, int id) {
+        TaskBitmap bitmap = index.get(key);
+        if (bitmap != null && bitmap.remove(id) && bitmap.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static TaskBitmap[] newBitmaps(int count) {
+        TaskBitmap[] bitmaps = new TaskBitmap[count];
+        for (int i = 0; i < count; i++) {
+            bitmaps[i] = new TaskBitmap();
+        }
+        return bitmaps;
+    }
+}
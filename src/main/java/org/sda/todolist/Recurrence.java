@@ -0,0 +1,455 @@
+package org.sda.todolist;
+
+import java.io.Serializable;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class represents the rule by which a task repeats: every N days, every N weeks on given
+ * weekdays, or every N months on the day of the month of its first day, from a first day and
+ * optionally until a last day. Days left out of the series (because their occurrence was
+ * completed, skipped or turned into a task of its own before its turn) are kept as exceptions.
+ *
+ * Occurrences are computed from the rule, so finding the next one or counting the ones in a range
+ * of days takes the same time for a series of ten days as for one of ten years. Rules are
+ * immutable; the text form is the one entered by the user and stored in the data file, e.g.
+ * "weekly on mon,thu from 2024-01-01 until 2024-06-30 except 2024-03-07".
+ **/
+
+public final class Recurrence implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final String EXAMPLE = "e.g. daily, every 3 days, weekly on mon,thu, every 2 weeks, monthly until 2025-12-31";
+
+    public enum Frequency {
+        DAILY, WEEKLY, MONTHLY
+    }
+
+    private final Frequency frequency;
+    private final int interval;
+    // WEEKLY: bit (DayOfWeek.getValue() - 1) is set for every weekday the task occurs on
+    private final int weekdays;
+    private final LocalDate start;
+    private final LocalDate until;
+    // epoch-days of the occurrences left out, ascending
+    private final int[] exceptions;
+
+    private Recurrence(Frequency frequency, int interval, int weekdays, LocalDate start, LocalDate until, int[] exceptions) {
+        this.frequency = frequency;
+        this.interval = interval;
+        this.weekdays = weekdays;
+        this.start = start;
+        this.until = until;
+        this.exceptions = exceptions;
+    }
+
+    /**
+     * This method creates a rule without end and without exceptions
+     * @param frequency unit of the interval
+     * @param interval number of days, weeks or months between occurrences, at least 1
+     * @param start the first occurrence; weekly rules occur on its weekday if no weekdays are given
+     * @param days WEEKLY only: the weekdays the task occurs on
+     * @throws IllegalArgumentException if the interval is not positive or weekdays are given for another frequency
+     */
+    public static Recurrence of(Frequency frequency, int interval, LocalDate start, DayOfWeek... days) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("The interval must be at least 1: " + interval);
+        }
+        int weekdays = 0;
+        for (DayOfWeek day : days) {
+            weekdays |= 1 << (day.getValue() - 1);
+        }
+        if (weekdays != 0 && frequency != Frequency.WEEKLY) {
+            throw new IllegalArgumentException("Weekdays can only be given for a weekly rule");
+        }
+        if (frequency == Frequency.WEEKLY && weekdays == 0) {
+            weekdays = 1 << (start.getDayOfWeek().getValue() - 1);
+        }
+        return new Recurrence(frequency, interval, weekdays, start, null, new int[0]);
+    }
+
+    /**
+     * This method parses a rule in its text form, see the class comment. Words are separated by
+     * spaces, the case is ignored; "every weekday" means weekly on mon,tue,wed,thu,fri.
+     * @param text the rule, or "never", "none" or an empty text for a task which does not repeat
+     * @param start the first occurrence if the text does not give one with "from"
+     * @return the rule, or null for a task which does not repeat
+     * @throws IllegalArgumentException if the text is not a rule
+     */
+    public static Recurrence parse(String text, LocalDate start) throws IllegalArgumentException {
+        if (text == null || text.isBlank() || text.trim().equalsIgnoreCase("never") || text.trim().equalsIgnoreCase("none")) {
+            return null;
+        }
+        // lists may be written with spaces after the commas, "on mon, thu"
+        String[] words = text.trim().toLowerCase(Locale.ROOT).replaceAll("\\s*,\\s*", ",").split("\\s+");
+        int i = 0;
+        Frequency frequency;
+        int interval = 1;
+        int weekdays = 0;
+        switch (words[i++]) {
+            case "daily" -> frequency = Frequency.DAILY;
+            case "weekly" -> frequency = Frequency.WEEKLY;
+            case "monthly" -> frequency = Frequency.MONTHLY;
+            case "every" -> {
+                if (i < words.length && words[i].matches("\\d{1,4}")) {
+                    interval = Integer.parseInt(words[i++]);
+                }
+                String unit = i < words.length ? words[i++] : "";
+                switch (unit) {
+                    case "day", "days" -> frequency = Frequency.DAILY;
+                    case "week", "weeks" -> frequency = Frequency.WEEKLY;
+                    case "month", "months" -> frequency = Frequency.MONTHLY;
+                    case "weekday", "weekdays" -> {
+                        frequency = Frequency.WEEKLY;
+                        weekdays = 0b11111;
+                    }
+                    default -> throw new IllegalArgumentException("Not a repeat rule: " + text + " (" + EXAMPLE + ")");
+                }
+            }
+            default -> throw new IllegalArgumentException("Not a repeat rule: " + text + " (" + EXAMPLE + ")");
+        }
+        if (interval < 1) {
+            throw new IllegalArgumentException("The interval must be at least 1: " + text);
+        }
+        LocalDate from = start;
+        LocalDate until = null;
+        int[] exceptions = new int[0];
+        while (i < words.length) {
+            String word = words[i++];
+            if (i == words.length) {
+                throw new IllegalArgumentException("Missing value after " + word + ": " + text);
+            }
+            String value = words[i++];
+            switch (word) {
+                case "on" -> {
+                    if (frequency != Frequency.WEEKLY) {
+                        throw new IllegalArgumentException("Weekdays can only be given for a weekly rule: " + text);
+                    }
+                    for (String day : value.split(",")) {
+                        weekdays |= 1 << (weekday(day).getValue() - 1);
+                    }
+                }
+                case "from" -> from = date(value);
+                case "until" -> until = date(value);
+                case "except" -> {
+                    String[] days = value.split(",");
+                    exceptions = new int[days.length];
+                    for (int d = 0; d < days.length; d++) {
+                        exceptions[d] = (int) date(days[d]).toEpochDay();
+                    }
+                    Arrays.sort(exceptions);
+                }
+                default -> throw new IllegalArgumentException("Unknown word " + word + " in the repeat rule: " + text + " (" + EXAMPLE + ")");
+            }
+        }
+        if (from == null) {
+            throw new IllegalArgumentException("The first day of the repeat rule is missing: " + text);
+        }
+        if (frequency == Frequency.WEEKLY && weekdays == 0) {
+            weekdays = 1 << (from.getDayOfWeek().getValue() - 1);
+        }
+        return new Recurrence(frequency, interval, weekdays, from, until, exceptions);
+    }
+
+    public Frequency frequency() {
+        return frequency;
+    }
+
+    public int interval() {
+        return interval;
+    }
+
+    /**
+     * @return the first day of the series, which fixes the days, weeks or months counted by the interval
+     */
+    public LocalDate start() {
+        return start;
+    }
+
+    /**
+     * @return the last day the task may occur on, or null if it repeats without end
+     */
+    public LocalDate until() {
+        return until;
+    }
+
+    /**
+     * @return a copy of this rule which ends on a day
+     */
+    public Recurrence until(LocalDate last) {
+        return new Recurrence(frequency, interval, weekdays, start, last, exceptions);
+    }
+
+    /**
+     * @return true if the task occurs on the day, i.e., the day follows the rule and is not left out
+     */
+    public boolean occursOn(LocalDate day) {
+        return day.equals(next(day));
+    }
+
+    /**
+     * This method finds the next occurrence
+     * @param from the first day to look at
+     * @return the first occurrence on or after the day, or null if the series ends before
+     */
+    public LocalDate next(LocalDate from) {
+        long day = Math.max(from.toEpochDay(), start.toEpochDay());
+        long last = until == null ? Long.MAX_VALUE : until.toEpochDay();
+        while (true) {
+            long next = ruleNext(day);
+            if (next > last) {
+                return null;
+            }
+            if (Arrays.binarySearch(exceptions, (int) next) < 0) {
+                return LocalDate.ofEpochDay(next);
+            }
+            day = next + 1;
+        }
+    }
+
+    /**
+     * This method lists the occurrences in a range of days
+     * @param from the first day of the range
+     * @param to the last day of the range, included
+     * @return the days, ascending
+     */
+    public List<LocalDate> occurrences(LocalDate from, LocalDate to) {
+        List<LocalDate> days = new ArrayList<>();
+        for (LocalDate day = next(from); day != null && !day.isAfter(to); day = next(day.plusDays(1))) {
+            days.add(day);
+        }
+        return days;
+    }
+
+    /**
+     * This method counts the occurrences in a range of days without listing them
+     * @param from the first day of the range
+     * @param to the last day of the range, included
+     * @return the number of occurrences
+     */
+    public long count(LocalDate from, LocalDate to) {
+        long low = Math.max(from.toEpochDay(), start.toEpochDay());
+        long high = until == null ? to.toEpochDay() : Math.min(to.toEpochDay(), until.toEpochDay());
+        if (low > high) {
+            return 0;
+        }
+        long count = switch (frequency) {
+            case DAILY -> countSteps(low - start.toEpochDay(), high - start.toEpochDay(), interval);
+            case WEEKLY -> {
+                long monday = mondayOf(start.toEpochDay());
+                long weeks = 0;
+                for (int weekday = 0; weekday < 7; weekday++) {
+                    if ((weekdays & (1 << weekday)) != 0) {
+                        weeks += countSteps(low - monday - weekday, high - monday - weekday, 7L * interval);
+                    }
+                }
+                yield weeks;
+            }
+            case MONTHLY -> {
+                long first = monthStep(low, true);
+                long last = monthStep(high, false);
+                yield first > last ? 0 : last / interval - (first + interval - 1) / interval + 1;
+            }
+        };
+        int fromIndex = lowerBound(low);
+        int toIndex = lowerBound(high + 1);
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (ruleNext(exceptions[i]) == exceptions[i]) {
+                count--;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return a copy of this rule which leaves out the occurrence on a day
+     */
+    public Recurrence except(LocalDate day) {
+        int epochDay = (int) day.toEpochDay();
+        int position = Arrays.binarySearch(exceptions, epochDay);
+        if (position >= 0) {
+            return this;
+        }
+        int insert = -position - 1;
+        int[] more = new int[exceptions.length + 1];
+        System.arraycopy(exceptions, 0, more, 0, insert);
+        more[insert] = epochDay;
+        System.arraycopy(exceptions, insert, more, insert + 1, exceptions.length - insert);
+        return new Recurrence(frequency, interval, weekdays, start, until, more);
+    }
+
+    /**
+     * @return a copy of this rule without the exceptions before a day, which are no longer needed
+     * once the series moved past them
+     */
+    public Recurrence withoutExceptionsBefore(LocalDate day) {
+        int from = lowerBound(day.toEpochDay());
+        if (from == 0) {
+            return this;
+        }
+        return new Recurrence(frequency, interval, weekdays, start, until,
+                Arrays.copyOfRange(exceptions, from, exceptions.length));
+    }
+
+    /**
+     * @return the rule in its text form, which parse reads back
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        String unit = switch (frequency) {
+            case DAILY -> "day";
+            case WEEKLY -> "week";
+            case MONTHLY -> "month";
+        };
+        if (interval == 1) {
+            text.append(frequency == Frequency.DAILY ? "daily" : unit + "ly");
+        } else {
+            text.append("every ").append(interval).append(' ').append(unit).append('s');
+        }
+        if (frequency == Frequency.WEEKLY) {
+            text.append(" on ");
+            String separator = "";
+            for (DayOfWeek day : DayOfWeek.values()) {
+                if ((weekdays & (1 << (day.getValue() - 1))) != 0) {
+                    text.append(separator).append(day.name().substring(0, 3).toLowerCase(Locale.ROOT));
+                    separator = ",";
+                }
+            }
+        }
+        text.append(" from ").append(start);
+        if (until != null) {
+            text.append(" until ").append(until);
+        }
+        if (exceptions.length > 0) {
+            text.append(" except ");
+            for (int i = 0; i < exceptions.length; i++) {
+                text.append(i == 0 ? "" : ",").append(LocalDate.ofEpochDay(exceptions[i]));
+            }
+        }
+        return text.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Recurrence rule && toString().equals(rule.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+
+    /**
+     * This method finds the next day following the rule, ignoring the exceptions and the end
+     * @param day epoch-day, not before the start
+     * @return epoch-day of the first day on or after it which follows the rule
+     */
+    private long ruleNext(long day) {
+        long first = start.toEpochDay();
+        switch (frequency) {
+            case DAILY -> {
+                return first + ceilDiv(day - first, interval) * interval;
+            }
+            case WEEKLY -> {
+                long monday = mondayOf(first);
+                long week = Math.floorDiv(day - monday, 7);
+                // the weeks counted by the interval, and the next of them if no weekday is left in this one
+                for (int pass = 0; pass < 2; pass++) {
+                    long active = ceilDiv(week, interval) * interval;
+                    long from = active == week ? day : monday + active * 7;
+                    for (long candidate = from; candidate < monday + (active + 1) * 7; candidate++) {
+                        if ((weekdays & (1 << Math.floorMod(candidate - monday, 7))) != 0) {
+                            return candidate;
+                        }
+                    }
+                    week = active + 1;
+                }
+                throw new IllegalStateException("A weekly rule without weekdays: " + this);
+            }
+            default -> {
+                long step = monthStep(day, true);
+                long months = ceilDiv(step, interval) * interval;
+                return monthDay(months).toEpochDay();
+            }
+        }
+    }
+
+    /**
+     * This method finds the months since the start which hold an occurrence for a day
+     * @param day epoch-day
+     * @param onOrAfter true for the first month whose day of the month is on or after the day,
+     *                  false for the last one on or before it
+     * @return months since the month of the start
+     */
+    private long monthStep(long day, boolean onOrAfter) {
+        LocalDate date = LocalDate.ofEpochDay(day);
+        long months = (date.getYear() - start.getYear()) * 12L + date.getMonthValue() - start.getMonthValue();
+        long monthDay = monthDay(months).toEpochDay();
+        if (onOrAfter) {
+            return monthDay < day ? months + 1 : months;
+        }
+        return monthDay > day ? months - 1 : months;
+    }
+
+    /**
+     * @return the day of a month since the start, the last day of the month if it is shorter
+     */
+    private LocalDate monthDay(long months) {
+        YearMonth month = YearMonth.from(start).plusMonths(months);
+        return month.atDay(Math.min(start.getDayOfMonth(), month.lengthOfMonth()));
+    }
+
+    /**
+     * @return the index of the first exception on or after a day
+     */
+    private int lowerBound(long day) {
+        int position = Arrays.binarySearch(exceptions, (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, day)));
+        if (position >= 0) {
+            return position;
+        }
+        return -position - 1;
+    }
+
+    /**
+     * @return the number of multiples of the step from low to high, counting only those not below 0
+     */
+    private static long countSteps(long low, long high, long step) {
+        low = Math.max(low, 0);
+        if (low > high) {
+            return 0;
+        }
+        return Math.floorDiv(high, step) - ceilDiv(low, step) + 1;
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return -Math.floorDiv(-value, divisor);
+    }
+
+    private static long mondayOf(long day) {
+        return day - (LocalDate.ofEpochDay(day).getDayOfWeek().getValue() - 1);
+    }
+
+    private static DayOfWeek weekday(String name) {
+        for (DayOfWeek day : DayOfWeek.values()) {
+            String full = day.name().toLowerCase(Locale.ROOT);
+            if (name.length() >= 2 && full.startsWith(name)) {
+                return day;
+            }
+        }
+        throw new IllegalArgumentException("Not a weekday: " + name + " (use mon, tue, wed, thu, fri, sat or sun)");
+    }
+
+    private static LocalDate date(String value) {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Not a date: " + value + " (use yyyy-mm-dd)");
+        }
+    }
+}
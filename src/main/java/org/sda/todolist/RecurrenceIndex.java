@@ -0,0 +1,72 @@
+package org.sda.todolist;
+
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * This class keeps the ids of the repeating tasks which are not completed.
+ *
+ * A repeating task is stored once and is due on its next occurrence, which is all the other
+ * indexes (e.g. the DueDateWheel) know of it. The later occurrences are computed from the rule
+ * of the task when a range of days is listed or counted, see Recurrence; this index tells which
+ * tasks to ask, so that no other task is read for it. It is built once from all tasks and then
+ * updated with every change.
+ **/
+
+public class RecurrenceIndex implements TaskListener {
+    private final TreeSet<Long> ids = new TreeSet<>();
+
+    /**
+     * This method finds the repeating tasks of a list
+     * @param tasks all tasks of the list
+     * @return a new index
+     */
+    public static RecurrenceIndex build(List<Task> tasks) {
+        RecurrenceIndex index = new RecurrenceIndex();
+        for (Task task : tasks) {
+            index.update(task);
+        }
+        return index;
+    }
+
+    @Override
+    public synchronized void taskAdded(Task task) {
+        update(task);
+    }
+
+    @Override
+    public synchronized void taskRemoved(Task task) {
+        ids.remove(task.getId());
+    }
+
+    @Override
+    public synchronized void taskUpdated(Task task, TaskField field, String oldValue) {
+        if (field == TaskField.RECURRENCE) {
+            update(task);
+        }
+    }
+
+    @Override
+    public synchronized void taskCompletionChanged(Task task) {
+        update(task);
+    }
+
+    /**
+     * @return the ids of the repeating tasks which are not completed, ascending
+     */
+    public synchronized long[] ids() {
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    public synchronized int size() {
+        return ids.size();
+    }
+
+    private void update(Task task) {
+        if (task.isRecurring() && !task.isComplete()) {
+            ids.add(task.getId());
+        } else {
+            ids.remove(task.getId());
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package org.sda.todolist;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class reminds of the tasks which are due soon or overdue, in the background.
+ *
+ * Reminders are given at lead times, in days before the due date: 0 on the due date, -1 the day
+ * after it. There is no timer per task. The scheduler wakes up on start and then once per day at
+ * midnight, and reads the tasks due on the day of each lead time from the due date index of the
+ * list, which takes time proportional to the number of reminders, not to the number of tasks.
+ *
+ * Changes made during the day are followed incrementally: a task which is added, moved to another
+ * due date or opened again is reminded of at once if it is due on one of the reminder days of
+ * today. Completed and deleted tasks need no cancellation, they are simply not found any more.
+ * A task is reminded of only once per day and lead time.
+ **/
+
+public class ReminderScheduler implements TaskListener {
+    // due soon, due today and overdue since yesterday
+    public static final int[] DEFAULT_LEAD_DAYS = {Task.DUE_SOON_DAYS, 0, -1};
+
+    private final TodoList list;
+    private final ReminderSink sink;
+    private final int[] leadDays;
+    private final Clock clock;
+    private final ScheduledExecutorService executor;
+    // day of the last wake-up (epoch-day), read by the listener methods on other threads
+    private volatile long today = Long.MIN_VALUE;
+    // reminders given on remindedDay as id and lead time, used on the scheduler thread only
+    private final Set<Long> reminded = new HashSet<>();
+    private long remindedDay = Long.MIN_VALUE;
+
+    /**
+     * @param list the list to remind of, it must be read from its data file before start is called
+     * @param sink receives the reminders
+     * @param leadDays days before the due date to remind at, DEFAULT_LEAD_DAYS if none are given
+     */
+    public ReminderScheduler(TodoList list, ReminderSink sink, int... leadDays) {
+        this(list, sink, Clock.systemDefaultZone(), leadDays);
+    }
+
+    ReminderScheduler(TodoList list, ReminderSink sink, Clock clock, int... leadDays) {
+        this.list = list;
+        this.sink = sink;
+        this.clock = clock;
+        this.leadDays = leadDays.length == 0 ? DEFAULT_LEAD_DAYS.clone() : leadDays.clone();
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "todolist-reminders");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * This method converts lead times given as text
+     * @param text days separated by commas, e.g. "2,0,-1"
+     * @throws NumberFormatException if a lead time is not a number
+     */
+    public static int[] parseLeadDays(String text) throws NumberFormatException {
+        String[] parts = text.split(",");
+        int[] days = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            days[i] = Integer.parseInt(parts[i].trim());
+        }
+        return days;
+    }
+
+    /**
+     * This method gives the reminders of today and schedules the next wake-up
+     */
+    public void start() {
+        // the due date index and the map of ids are built here, not on the scheduler thread
+        list.getTasksDueOn(LocalDate.now(clock));
+        list.findTask(0);
+        list.addListener(this);
+        executor.execute(this::wakeUp);
+    }
+
+    /**
+     * This method stops the scheduler, reminders which were not given yet are dropped
+     */
+    public void stop() {
+        list.removeListener(this);
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void taskAdded(Task task) {
+        changed(task);
+    }
+
+    @Override
+    public void taskUpdated(Task task, TaskField field, String oldValue) {
+        if (field == TaskField.DUE_DATE) {
+            changed(task);
+        }
+    }
+
+    @Override
+    public void taskCompletionChanged(Task task) {
+        changed(task);
+    }
+
+    /**
+     * This method runs on the scheduler thread: it gives the reminders of all lead times of
+     * today and schedules itself for the next midnight
+     */
+    private void wakeUp() {
+        try {
+            LocalDate date = LocalDate.now(clock);
+            today = date.toEpochDay();
+            for (int lead : leadDays) {
+                for (Task task : list.copiesOfTasksDueOn(date.plusDays(lead))) {
+                    remind(task, lead);
+                }
+            }
+        } catch (RuntimeException e) {
+            Messages.showMessage(e.getMessage(), true);
+        } finally {
+            ZonedDateTime now = ZonedDateTime.now(clock);
+            ZonedDateTime midnight = now.toLocalDate().plusDays(1).atStartOfDay(now.getZone());
+            schedule(this::wakeUp, Duration.between(now, midnight).toMillis());
+        }
+    }
+
+    /**
+     * This method is called on the thread changing a task: if the task is due on a reminder day
+     * of today, a reminder is given on the scheduler thread
+     */
+    private void changed(Task task) {
+        long day = today;
+        if (day == Long.MIN_VALUE || task.isComplete() || task.getDueDate() == null) {
+            return;
+        }
+        long daysLeft = task.getDueDate().toEpochDay() - day;
+        long id = task.getId();
+        for (int lead : leadDays) {
+            if (lead == daysLeft) {
+                schedule(() -> remindAgain(id, lead), 0);
+            }
+        }
+    }
+
+    /**
+     * This method gives a reminder for a changed task, if it still is due on the same day
+     */
+    private void remindAgain(long id, int lead) {
+        Task task = list.copyOfTask(id);
+        if (task != null && !task.isComplete() && task.getDueDate() != null
+                && task.getDueDate().toEpochDay() - today == lead) {
+            remind(task, lead);
+        }
+    }
+
+    private void remind(Task task, int lead) {
+        if (remindedDay != today) {
+            reminded.clear();
+            remindedDay = today;
+        }
+        if (!reminded.add(task.getId() << 16 | (lead & 0xFFFF))) {
+            return;
+        }
+        try {
+            sink.remind(task, lead);
+        } catch (RuntimeException e) {
+            Messages.showMessage(e.getMessage(), true);
+        }
+    }
+
+    private void schedule(Runnable action, long delayMillis) {
+        try {
+            executor.schedule(action, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // stopped
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.sda.todolist;
+
+/**
+ * This interface receives the reminders of the ReminderScheduler, e.g. to print them on the
+ * console (Messages::reminder) or to send them somewhere else. It is called on the thread of the
+ * scheduler.
+ **/
+
+public interface ReminderSink {
+    /**
+     * This method is called once per task and lead time when a reminder is due
+     * @param task a copy of the task
+     * @param daysLeft days until the due date, negative if the task is overdue
+     */
+    void remind(Task task, long daysLeft);
+}
@@ -0,0 +1,131 @@
+package org.sda.todolist;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class keeps the most recent changes of a TodoList in memory, from where they are sent to
+ * the replicas of the list, see ReplicationServer.
+ *
+ * Every change the list records in its journal is also appended here with the time it was made.
+ * The journal sequences of the changes follow each other without gaps, so the changes are kept
+ * in a ring indexed by sequence. Only the last changes up to the capacity are kept: a replica
+ * which is further behind gets a snapshot of the whole list instead.
+ **/
+
+public class ReplicationLog {
+    public static final int DEFAULT_CAPACITY = 100_000;
+
+    private final JournalRecord[] records;
+    private final long[] times;
+    // the changes after first up to last are kept
+    private long first;
+    private long last;
+
+    public ReplicationLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of changes kept
+     */
+    public ReplicationLog(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1: " + capacity);
+        }
+        records = new JournalRecord[capacity];
+        times = new long[capacity];
+    }
+
+    /**
+     * This method forgets all changes, the next change has the sequence after the given one
+     * @param sequence journal sequence of the state of the list
+     */
+    public synchronized void reset(long sequence) {
+        first = sequence;
+        last = sequence;
+        notifyAll();
+    }
+
+    /**
+     * This method appends a change, called by TodoList for every change it records
+     */
+    public synchronized void append(JournalRecord record) {
+        if (record.getSequence() != last + 1) {
+            // the list was read again meanwhile; replicas need a snapshot
+            reset(record.getSequence() - 1);
+        }
+        int slot = slot(record.getSequence());
+        records[slot] = record;
+        times[slot] = System.currentTimeMillis();
+        last = record.getSequence();
+        first = Math.max(first, last - records.length);
+        notifyAll();
+    }
+
+    /**
+     * @return the journal sequence of the last change
+     */
+    public synchronized long lastSequence() {
+        return last;
+    }
+
+    /**
+     * @return true if the changes after the given sequence are all kept, or are still to come
+     */
+    public synchronized boolean contains(long sequence) {
+        return sequence >= first;
+    }
+
+    /**
+     * This method reads the changes after a sequence, waiting for one if there is none yet
+     * @param after the sequence of the last change the reader has
+     * @param max maximum number of changes to return
+     * @param timeoutMillis time to wait for a change
+     * @return the changes in order, empty if there was none within the time, or null if the
+     * changes following the sequence are not kept any longer
+     */
+    public synchronized List<Entry> read(long after, int max, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (after >= last && after >= first) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                return List.of();
+            }
+            wait(wait);
+        }
+        if (after < first) {
+            return null;
+        }
+        List<Entry> entries = new ArrayList<>((int) Math.min(max, last - after));
+        for (long sequence = after + 1; sequence <= last && entries.size() < max; sequence++) {
+            entries.add(new Entry(records[slot(sequence)], times[slot(sequence)]));
+        }
+        return entries;
+    }
+
+    private int slot(long sequence) {
+        return (int) Math.floorMod(sequence, (long) records.length);
+    }
+
+    /**
+     * This class is a change with the time it was made, in milliseconds since the epoch
+     **/
+    public static final class Entry {
+        final JournalRecord record;
+        final long time;
+
+        Entry(JournalRecord record, long time) {
+            this.record = record;
+            this.time = time;
+        }
+
+        public JournalRecord record() {
+            return record;
+        }
+
+        public long time() {
+            return time;
+        }
+    }
+}
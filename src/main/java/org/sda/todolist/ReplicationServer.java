@@ -0,0 +1,187 @@
+package org.sda.todolist;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class sends the changes of a list to its replicas over TCP, see TaskReplica. The list is
+ * the primary: it is the only one which is changed, and every change it records is appended to a
+ * ReplicationLog which this server reads.
+ *
+ * A replica connects and sends the sequence of the last change it has. If the log still holds
+ * the following changes, they are sent from there; otherwise, or if the replica has no state yet,
+ * it first gets a snapshot of all tasks with the sequence it was taken at, followed by the
+ * changes after it. From then on every change is sent as soon as it is made, each replica on its
+ * own virtual thread, so a slow replica does not hold up the list or the other replicas. When no
+ * change is made for HEARTBEAT_MILLIS, a heartbeat with the sequence of the primary is sent, so a
+ * replica knows how far behind it is and notices a lost connection.
+ *
+ * Messages from the primary start with a type byte:
+ * RECORD      time of the change (ms), length, the change as in the journal (JournalRecord)
+ * HEARTBEAT   sequence of the last change of the primary
+ * SNAPSHOT    sequence, number of tasks, number of parts, then per part its length and up to
+ *             SNAPSHOT_PART tasks in the format of the data file (BinaryTaskFile)
+ **/
+
+public class ReplicationServer {
+    public static final int DEFAULT_PORT = 9090;
+    static final int MAGIC = 0x54444C52;
+    // 2: the records of JournalRecord.VERSION 1
+    static final int VERSION = 2;
+    static final byte RECORD = 1;
+    static final byte HEARTBEAT = 2;
+    static final byte SNAPSHOT = 3;
+    // the sequence a replica sends if it has no state yet
+    static final long NO_STATE = -1;
+    static final long HEARTBEAT_MILLIS = 500;
+    static final int SNAPSHOT_PART = 4096;
+    // changes sent at once before the output is flushed
+    private static final int BATCH = 1024;
+
+    private final ConcurrentTodoList tasks;
+    private final ReplicationLog log;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final Set<Socket> replicas = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param tasks the list, which must record its changes in the log, see TodoList.setReplicationLog
+     * @param log the log of the changes of the list
+     * @param address the address to listen on, port 0 for any free port
+     */
+    public ReplicationServer(ConcurrentTodoList tasks, ReplicationLog log, InetSocketAddress address) throws IOException {
+        this.tasks = tasks;
+        this.log = log;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(address, 64);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    public void start() {
+        executor.submit(this::accept);
+    }
+
+    /**
+     * This method stops accepting replicas and closes the connections to them
+     */
+    public void stop() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // closing anyway
+        }
+        for (Socket replica : replicas) {
+            try {
+                replica.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the number of connected replicas
+     */
+    public int replicaCount() {
+        return replicas.size();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket replica = serverSocket.accept();
+                replicas.add(replica);
+                executor.submit(() -> serve(replica));
+            } catch (IOException e) {
+                // the server socket was closed by stop
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+            long sent = in.readLong();
+            if (sent > log.lastSequence()) {
+                // ahead of the primary, e.g. of another list
+                sent = NO_STATE;
+            }
+            while (!socket.isClosed()) {
+                List<ReplicationLog.Entry> entries = sent == NO_STATE ? null : log.read(sent, BATCH, HEARTBEAT_MILLIS);
+                if (entries == null) {
+                    sent = sendSnapshot(out);
+                    continue;
+                }
+                for (ReplicationLog.Entry entry : entries) {
+                    byte[] body = entry.record().encode();
+                    out.writeByte(RECORD);
+                    out.writeLong(entry.time());
+                    out.writeInt(body.length);
+                    out.write(body);
+                    sent = entry.record().getSequence();
+                }
+                out.writeByte(HEARTBEAT);
+                out.writeLong(log.lastSequence());
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the replica disconnected, it connects again and continues from its last change
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            replicas.remove(socket);
+        }
+    }
+
+    /**
+     * This method sends all tasks as they are now
+     * @return the sequence of the snapshot, the changes after it follow
+     */
+    private long sendSnapshot(DataOutputStream out) throws IOException {
+        TaskSnapshot snapshot = tasks.replicationSnapshot();
+        int parts = (snapshot.size() + SNAPSHOT_PART - 1) / SNAPSHOT_PART;
+        out.writeByte(SNAPSHOT);
+        out.writeLong(snapshot.sequence());
+        out.writeInt(snapshot.size());
+        out.writeInt(parts);
+        for (int from = 0; from < snapshot.size(); from += SNAPSHOT_PART) {
+            List<ByteBuffer> part = BinaryTaskFile.encode(snapshot.subList(from, Math.min(from + SNAPSHOT_PART, snapshot.size())),
+                    snapshot.sequence());
+            int length = 0;
+            for (ByteBuffer buffer : part) {
+                length += buffer.remaining();
+            }
+            out.writeInt(length);
+            for (ByteBuffer buffer : part) {
+                out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            }
+        }
+        out.flush();
+        return snapshot.sequence();
+    }
+}
@@ -0,0 +1,426 @@
+package org.sda.todolist;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongFunction;
+
+/**
+ * This class represents the search index of the task list.
+ *
+ * It keeps two inverted indexes from a key to the sorted ids of the tasks containing it:
+ * the words of title, project and notes, and the trigrams (3 characters) of title and project.
+ * A search term matches a task if the title or the project contains the term (the trigrams give
+ * the candidates which are then checked), or if one of its words is equal to the term.
+ * Terms shorter than 3 characters have no trigrams and are checked against every task.
+ *
+ * Terms separated by spaces must all match, groups of terms separated by OR are alternatives,
+ * e.g. "report draft OR invoice".
+ **/
+
+public class SearchIndex implements TaskListener {
+    private static final int MAGIC = 0x54444C49;
+    private static final int VERSION = 2;
+
+    private final Map<String, TaskIdSet> words = new HashMap<>();
+    private final Map<Long, TaskIdSet> trigrams = new HashMap<>();
+    private ParallelTasks parallel = ParallelTasks.sequential();
+
+    /**
+     * This method builds the index for all given tasks
+     * @param tasks the tasks to index
+     * @return the new index
+     */
+    public static SearchIndex build(List<Task> tasks) {
+        return build(tasks, ParallelTasks.sequential());
+    }
+
+    /**
+     * This method builds the indexes of parts of the list in parallel and merges them
+     */
+    public static SearchIndex build(List<Task> tasks, ParallelTasks parallel) {
+        return parallel.collect(tasks, SearchIndex::new, SearchIndex::add, SearchIndex::merge);
+    }
+
+    /**
+     * This method adds the postings of the index of the following part of the list
+     * @return this
+     */
+    private SearchIndex merge(SearchIndex other) {
+        other.words.forEach((key, ids) -> words.computeIfAbsent(key, k -> new TaskIdSet()).addAll(ids));
+        other.trigrams.forEach((key, ids) -> trigrams.computeIfAbsent(key, k -> new TaskIdSet()).addAll(ids));
+        return this;
+    }
+
+    /**
+     * This method selects the pool which checks short terms on all tasks
+     */
+    void setParallel(ParallelTasks parallel) {
+        this.parallel = parallel;
+    }
+
+    @Override
+    public void taskAdded(Task task) {
+        add(task);
+    }
+
+    @Override
+    public void taskRemoved(Task task) {
+        remove(task);
+    }
+
+    @Override
+    public void taskUpdated(Task task, TaskField field, String oldValue) {
+        update(task, field, oldValue);
+    }
+
+    public void add(Task task) {
+        // repeated keys of one task are skipped by TaskIdSet.add, so no sets are needed here
+        int id = TaskIdSet.idOf(task);
+        for (String word : wordsOf(task.getTitle(), task.getProject(), task.getNotes())) {
+            words.computeIfAbsent(word, key -> new TaskIdSet()).add(id);
+        }
+        for (long trigram : trigramsOf(task.getTitle(), task.getProject())) {
+            trigrams.computeIfAbsent(trigram, key -> new TaskIdSet()).add(id);
+        }
+    }
+
+    public void remove(Task task) {
+        int id = TaskIdSet.idOf(task);
+        for (String word : wordsOf(task.getTitle(), task.getProject(), task.getNotes())) {
+            removeFrom(words, word, id);
+        }
+        for (long trigram : trigramsOf(task.getTitle(), task.getProject())) {
+            removeFrom(trigrams, trigram, id);
+        }
+    }
+
+    /**
+     * This method updates the index after one field of a task was changed
+     * @param task the task, already holding the new value
+     * @param field the changed field
+     * @param oldValue the value of the field before the change
+     */
+    public void update(Task task, TaskField field, String oldValue) {
+        if (field != TaskField.TITLE && field != TaskField.PROJECT && field != TaskField.NOTES) {
+            return;
+        }
+        int id = TaskIdSet.idOf(task);
+        String oldTitle = field == TaskField.TITLE ? oldValue : task.getTitle();
+        String oldProject = field == TaskField.PROJECT ? oldValue : task.getProject();
+        String oldNotes = field == TaskField.NOTES ? oldValue : task.getNotes();
+
+        Set<String> oldWords = wordsOf(oldTitle, oldProject, oldNotes);
+        Set<String> newWords = wordsOf(task.getTitle(), task.getProject(), task.getNotes());
+        for (String word : oldWords) {
+            if (!newWords.contains(word)) {
+                removeFrom(words, word, id);
+            }
+        }
+        for (String word : newWords) {
+            if (!oldWords.contains(word)) {
+                words.computeIfAbsent(word, key -> new TaskIdSet()).add(id);
+            }
+        }
+
+        if (field == TaskField.NOTES) {
+            return;
+        }
+        Set<Long> oldTrigrams = trigramsOf(oldTitle, oldProject);
+        Set<Long> newTrigrams = trigramsOf(task.getTitle(), task.getProject());
+        for (long trigram : oldTrigrams) {
+            if (!newTrigrams.contains(trigram)) {
+                removeFrom(trigrams, trigram, id);
+            }
+        }
+        for (long trigram : newTrigrams) {
+            if (!oldTrigrams.contains(trigram)) {
+                trigrams.computeIfAbsent(trigram, key -> new TaskIdSet()).add(id);
+            }
+        }
+    }
+
+    /**
+     * This method finds the ids of all tasks matching a query
+     * @param query search terms, separated by spaces (all must match) and OR (alternatives)
+     * @param tasks all tasks, used for terms too short for the trigram index
+     * @param lookup finds a task by its id
+     * @return matching task ids in ascending order
+     */
+    public int[] search(String query, List<Task> tasks, LongFunction<Task> lookup) {
+        int[] result = new int[0];
+        for (List<String> group : parse(query)) {
+            // the most selective term gives the candidates, the other terms are only checked on them
+            List<String> terms = new ArrayList<>(group);
+            terms.sort((a, b) -> Integer.compare(estimate(a), estimate(b)));
+            int[] groupResult = match(terms.get(0), tasks, lookup);
+            for (int i = 1; i < terms.size() && groupResult.length > 0; i++) {
+                groupResult = filter(groupResult, terms.get(i), lookup);
+            }
+            result = TaskIdSet.union(result, groupResult);
+        }
+        return result;
+    }
+
+    /**
+     * This method estimates the number of tasks a query matches, for the planner of a QueryIndex
+     * @return the candidates of the most selective term of every group, at most taskCount
+     */
+    long estimateQuery(String query, int taskCount) {
+        long candidates = 0;
+        for (List<String> group : parse(query)) {
+            int smallest = Integer.MAX_VALUE;
+            for (String term : group) {
+                smallest = Math.min(smallest, estimate(term));
+            }
+            candidates += Math.min(smallest, taskCount);
+        }
+        return Math.min(candidates, taskCount);
+    }
+
+    /**
+     * This method estimates the number of candidates of a term from the size of its postings
+     */
+    private int estimate(String term) {
+        if (term.length() < 3) {
+            return Integer.MAX_VALUE;
+        }
+        int smallest = Integer.MAX_VALUE;
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            TaskIdSet postings = trigrams.get(trigram(term, i));
+            smallest = Math.min(smallest, postings == null ? 0 : postings.size());
+        }
+        TaskIdSet exact = words.get(term);
+        return exact == null ? smallest : smallest + exact.size();
+    }
+
+    private static int[] filter(int[] ids, String term, LongFunction<Task> lookup) {
+        int[] result = new int[ids.length];
+        int count = 0;
+        for (int id : ids) {
+            Task task = lookup.apply(id);
+            if (task != null && matches(task, term)) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * This method checks if a single lower-case term matches a task
+     */
+    public static boolean matches(Task task, String term) {
+        return containsIgnoreCase(task.getTitle(), term)
+                || containsIgnoreCase(task.getProject(), term)
+                || containsWord(task.getNotes(), term);
+    }
+
+    private static boolean containsWord(String text, String lowerTerm) {
+        if (text == null) {
+            return false;
+        }
+        int last = text.length() - lowerTerm.length();
+        for (int start = 0; start <= last; start++) {
+            if (text.regionMatches(true, start, lowerTerm, 0, lowerTerm.length())
+                    && (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1)))
+                    && (start == last || !Character.isLetterOrDigit(text.charAt(start + lowerTerm.length())))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method writes the index to a file, together with the state of the list it belongs to
+     * @param path the index file
+     * @param sequence journal sequence of the indexed list
+     * @param taskCount number of indexed tasks
+     */
+    public void write(Path path, long sequence, int taskCount) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sequence);
+            out.writeInt(taskCount);
+            out.writeInt(words.size());
+            for (Map.Entry<String, TaskIdSet> entry : words.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().write(out);
+            }
+            out.writeInt(trigrams.size());
+            for (Map.Entry<Long, TaskIdSet> entry : trigrams.entrySet()) {
+                out.writeLong(entry.getKey());
+                entry.getValue().write(out);
+            }
+        }
+    }
+
+    /**
+     * This method reads an index file if it belongs to the given state of the list
+     * @param path the index file
+     * @param sequence journal sequence of the list
+     * @param taskCount number of tasks in the list
+     * @return the index, or null if the file is missing, damaged or out of date
+     */
+    public static SearchIndex read(Path path, long sequence, int taskCount) {
+        if (!Files.isReadable(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || in.readLong() != sequence || in.readInt() != taskCount) {
+                return null;
+            }
+            SearchIndex index = new SearchIndex();
+            int wordCount = in.readInt();
+            for (int i = 0; i < wordCount; i++) {
+                index.words.put(in.readUTF(), TaskIdSet.read(in));
+            }
+            int trigramCount = in.readInt();
+            for (int i = 0; i < trigramCount; i++) {
+                index.trigrams.put(in.readLong(), TaskIdSet.read(in));
+            }
+            return index;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private int[] match(String term, List<Task> tasks, LongFunction<Task> lookup) {
+        if (term.length() < 3) {
+            int[] result = parallel.filter(tasks, task -> matches(task, term));
+            Arrays.sort(result);
+            return result;
+        }
+
+        // exact words are checked like the candidates of the trigrams, a posting may be stale
+        TaskIdSet exact = words.get(term);
+        int[] result = exact == null ? new int[0] : verify(exact.toArray(), term, lookup);
+
+        // candidates must contain every trigram of the term
+        List<TaskIdSet> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            TaskIdSet postings = trigrams.get(trigram(term, i));
+            if (postings == null) {
+                return result;
+            }
+            lists.add(postings);
+        }
+        lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+        int[] candidates = lists.get(0).toArray();
+        for (int i = 1; i < lists.size() && candidates.length > 0; i++) {
+            candidates = lists.get(i).retain(candidates);
+        }
+
+        return TaskIdSet.union(result, verify(candidates, term, lookup));
+    }
+
+    private static int[] verify(int[] candidates, String term, LongFunction<Task> lookup) {
+        int[] verified = new int[candidates.length];
+        int count = 0;
+        for (int id : candidates) {
+            Task task = lookup.apply(id);
+            if (task != null && matches(task, term)) {
+                verified[count++] = id;
+            }
+        }
+        return count == candidates.length ? candidates : Arrays.copyOf(verified, count);
+    }
+
+    /**
+     * This method splits a query into groups of lower-case terms, groups are separated by OR
+     */
+    static List<List<String>> parse(String query) {
+        List<List<String>> groups = new ArrayList<>();
+        List<String> group = new ArrayList<>();
+        for (String term : query.trim().split("\\s+")) {
+            if (term.equals("OR")) {
+                if (!group.isEmpty()) {
+                    groups.add(group);
+                }
+                group = new ArrayList<>();
+            } else if (!term.isEmpty() && !term.equals("AND")) {
+                group.add(term.toLowerCase(Locale.ROOT));
+            }
+        }
+        if (!group.isEmpty()) {
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    private static <K> void removeFrom(Map<K, TaskIdSet> index, K key, int id) {
+        TaskIdSet postings = index.get(key);
+        if (postings != null && postings.remove(id) && postings.size() == 0) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * This method splits texts into their lower-case words, the same way as matches does; it is
+     * used to add, update and remove the postings, so that no posting is left behind
+     */
+    static Set<String> wordsOf(String title, String project, String notes) {
+        Set<String> result = new HashSet<>();
+        for (String text : new String[] {title, project, notes}) {
+            if (text == null) {
+                continue;
+            }
+            String lower = text.toLowerCase(Locale.ROOT);
+            int start = -1;
+            for (int i = 0; i <= lower.length(); i++) {
+                boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+                if (wordChar && start < 0) {
+                    start = i;
+                } else if (!wordChar && start >= 0) {
+                    result.add(lower.substring(start, i));
+                    start = -1;
+                }
+            }
+        }
+        return result;
+    }
+
+    static Set<Long> trigramsOf(String title, String project) {
+        Set<Long> result = new HashSet<>();
+        for (String text : new String[] {title, project}) {
+            if (text == null) {
+                continue;
+            }
+            String lower = text.toLowerCase(Locale.ROOT);
+            for (int i = 0; i + 3 <= lower.length(); i++) {
+                result.add(trigram(lower, i));
+            }
+        }
+        return result;
+    }
+
+    private static long trigram(String lower, int start) {
+        return ((long) lower.charAt(start) << 32) | ((long) lower.charAt(start + 1) << 16) | lower.charAt(start + 2);
+    }
+
+    private static boolean containsIgnoreCase(String text, String lowerTerm) {
+        if (text == null) {
+            return false;
+        }
+        int last = text.length() - lowerTerm.length();
+        for (int start = 0; start <= last; start++) {
+            if (text.regionMatches(true, start, lowerTerm, 0, lowerTerm.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,571 @@
+package org.sda.todolist;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class stores the tasks of a data file in several segment files instead of one, so that a
+ * save writes only the parts of the list which changed, and one project can be read without
+ * reading the others.
+ *
+ * The tasks are partitioned by project. A project with more tasks than the shard size is split
+ * further into a power of 2 of buckets by a hash of the task id, so that no segment grows beyond
+ * the shard size and a change rewrites only its bucket. Every shard is one segment file in the
+ * format of BinaryTaskFile, in id order. The files are kept in a directory next to the data file,
+ * named like it with ".shards", together with a small manifest which lists the shards and the
+ * journal sequence they contain.
+ *
+ * The store is a TaskListener of the TodoList, it collects the shards changed since the last
+ * write. A write creates new segment files for these shards only, and then replaces the manifest
+ * atomically; the manifest is the commit point, a crash before it keeps the old shards. Segment
+ * files which are not in the manifest are deleted on the next load.
+ **/
+
+public class ShardedTaskStore implements TaskListener {
+    // number of tasks of a project above which it is split into buckets
+    public static final int DEFAULT_SHARD_SIZE = 65_536;
+    public static final int MAGIC = 0x54444C4D;
+    public static final short VERSION = 1;
+
+    private static final String MANIFEST = "manifest";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+
+    private final Path dataFile;
+    private final Path directory;
+    private final int shardSize;
+    private final int threads;
+    // shards of the manifest by project, indexed by bucket
+    private Map<String, Shard[]> shards = new TreeMap<>();
+    private long journalSequence;
+    private long generation;
+    // shards changed since the last write, by project
+    private Map<String, Dirty> dirty = new HashMap<>();
+    private final LongAdder bytesRead = new LongAdder();
+
+    /**
+     * @param dataFile the data file the shards replace, i.e., tasks.obj
+     */
+    public ShardedTaskStore(Path dataFile) {
+        this(dataFile, DEFAULT_SHARD_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param dataFile the data file the shards replace, i.e., tasks.obj
+     * @param shardSize number of tasks of a project above which it is split into buckets
+     * @param threads number of segment files read or written at once
+     */
+    public ShardedTaskStore(Path dataFile, int shardSize, int threads) {
+        if (shardSize < 1 || threads < 1) {
+            throw new IllegalArgumentException("The shard size and the number of threads must be positive");
+        }
+        this.dataFile = dataFile;
+        this.directory = directoryOf(dataFile);
+        this.shardSize = shardSize;
+        this.threads = threads;
+    }
+
+    /**
+     * @return the directory of the shards of the given data file
+     */
+    public static Path directoryOf(Path dataFile) {
+        return Paths.get(dataFile + ".shards");
+    }
+
+    /**
+     * @return true if the tasks of the given data file are stored in shards
+     */
+    public static boolean exists(Path dataFile) {
+        return Files.isReadable(directoryOf(dataFile).resolve(MANIFEST));
+    }
+
+    /**
+     * @return the journal sequence of the last write, or of the manifest which was read
+     */
+    public synchronized long journalSequence() {
+        return journalSequence;
+    }
+
+    /**
+     * @return the number of bytes of the segment files read by load and loadProject
+     */
+    public long bytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * @return the number of segment files of the manifest
+     */
+    public synchronized int shardCount() {
+        int count = 0;
+        for (Shard[] buckets : shards.values()) {
+            count += buckets.length;
+        }
+        return count;
+    }
+
+    /**
+     * This method reads the manifest and all shards, several shards at once on a pool of threads
+     * @return all tasks in id order
+     */
+    public List<Task> load() throws IOException {
+        readManifest();
+        deleteUnusedSegments();
+        List<Shard> all = new ArrayList<>();
+        synchronized (this) {
+            for (Shard[] buckets : shards.values()) {
+                Collections.addAll(all, buckets);
+            }
+        }
+        return merge(readAll(all));
+    }
+
+    /**
+     * This method reads the manifest and only the shards of one project
+     * @return the tasks of the project in id order, empty if it has no tasks
+     */
+    public List<Task> loadProject(String project) throws IOException {
+        readManifest();
+        Shard[] buckets;
+        synchronized (this) {
+            buckets = shards.get(project);
+        }
+        if (buckets == null) {
+            return new ArrayList<>();
+        }
+        return merge(readAll(List.of(buckets)));
+    }
+
+    /**
+     * This method marks the shards of the given projects as changed, all their buckets are
+     * written by the next write, e.g. for tasks which were never written to shards
+     */
+    public synchronized void markDirty(Collection<String> projects) {
+        for (String project : projects) {
+            dirty.computeIfAbsent(project, key -> new Dirty(bucketsOf(key))).bits = null;
+        }
+    }
+
+    /**
+     * This method takes the shards changed since the last call, to write them
+     * @return the changes by project, to pass to write
+     */
+    public synchronized Map<String, Dirty> takeDirty() {
+        Map<String, Dirty> taken = dirty;
+        dirty = new HashMap<>();
+        return taken;
+    }
+
+    /**
+     * This method marks the shards taken for a write as changed again, if the write failed
+     */
+    public synchronized void restoreDirty(Map<String, Dirty> taken) {
+        for (Map.Entry<String, Dirty> entry : taken.entrySet()) {
+            Dirty current = dirty.get(entry.getKey());
+            if (current == null) {
+                dirty.put(entry.getKey(), entry.getValue());
+            } else if (current.buckets != entry.getValue().buckets || entry.getValue().bits == null) {
+                current.bits = null;
+            } else if (current.bits != null) {
+                current.bits.or(entry.getValue().bits);
+            }
+        }
+    }
+
+    /**
+     * This method writes the changed shards and then the manifest. Only the tasks of the changed
+     * projects are taken from the list, the shards of all other projects are kept as they are.
+     * @param tasks all tasks of the list, in id order; they are not changed while they are written
+     * @param sequence journal sequence of the last change contained in the tasks
+     * @param changed the changed shards, see takeDirty
+     * @return the number of bytes written
+     */
+    public long write(List<Task> tasks, long sequence, Map<String, Dirty> changed) throws IOException {
+        Map<String, List<Task>> byProject = new HashMap<>();
+        if (!changed.isEmpty()) {
+            for (Task task : tasks) {
+                if (changed.containsKey(task.getProject())) {
+                    byProject.computeIfAbsent(task.getProject(), key -> new ArrayList<>()).add(task);
+                }
+            }
+        }
+
+        Map<String, Shard[]> written;
+        synchronized (this) {
+            written = new TreeMap<>(shards);
+        }
+        List<Path> replaced = new ArrayList<>();
+        List<Callable<Shard>> writes = new ArrayList<>();
+        for (Map.Entry<String, Dirty> entry : changed.entrySet()) {
+            String project = entry.getKey();
+            List<Task> projectTasks = byProject.get(project);
+            Shard[] old = written.get(project);
+            if (old != null) {
+                for (Shard shard : old) {
+                    replaced.add(directory.resolve(shard.file));
+                }
+            }
+            if (projectTasks == null) {
+                written.remove(project);
+                continue;
+            }
+            int buckets = bucketsFor(projectTasks.size());
+            List<List<Task>> split = split(projectTasks, buckets);
+            Dirty change = entry.getValue();
+            boolean all = old == null || old.length != buckets || change.buckets != buckets || change.bits == null;
+            Shard[] projectShards = new Shard[buckets];
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                if (all || change.bits.get(bucket)) {
+                    List<Task> bucketTasks = split.get(bucket);
+                    Shard shard = new Shard(nextSegment(), bucketTasks.size());
+                    projectShards[bucket] = shard;
+                    writes.add(() -> {
+                        BinaryTaskFile.write(bucketTasks, sequence, directory.resolve(shard.file));
+                        return shard;
+                    });
+                } else {
+                    // unchanged, it stays in the manifest
+                    projectShards[bucket] = old[bucket];
+                    replaced.remove(directory.resolve(old[bucket].file));
+                }
+            }
+            written.put(project, projectShards);
+        }
+
+        Files.createDirectories(directory);
+        long bytes = 0;
+        for (Shard shard : runAll(writes)) {
+            bytes += Files.size(directory.resolve(shard.file));
+        }
+        bytes += writeManifest(written, sequence);
+        synchronized (this) {
+            shards = written;
+            journalSequence = sequence;
+        }
+        for (Path file : replaced) {
+            Files.deleteIfExists(file);
+        }
+        if (Files.exists(dataFile)) {
+            // the single data file of the list before it was sharded, it is no longer read
+            Path unsharded = Paths.get(dataFile + ".unsharded");
+            if (BlockTaskFile.isBlockFile(dataFile)) {
+                BlockTaskFile.move(dataFile, unsharded);
+            } else {
+                Files.move(dataFile, unsharded, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public void taskAdded(Task task) {
+        changed(task.getProject(), task.getId());
+    }
+
+    @Override
+    public void taskRemoved(Task task) {
+        changed(task.getProject(), task.getId());
+    }
+
+    @Override
+    public void taskUpdated(Task task, TaskField field, String oldValue) {
+        if (field == TaskField.PROJECT) {
+            // moved: removed from the shard of the old project
+            changed(oldValue, task.getId());
+        }
+        changed(task.getProject(), task.getId());
+    }
+
+    @Override
+    public void taskCompletionChanged(Task task) {
+        changed(task.getProject(), task.getId());
+    }
+
+    private synchronized void changed(String project, long id) {
+        int buckets = bucketsOf(project);
+        Dirty change = dirty.computeIfAbsent(project, key -> new Dirty(buckets));
+        if (change.bits == null) {
+            return;
+        }
+        if (change.buckets != buckets) {
+            // the project was split differently meanwhile, its buckets are all written
+            change.bits = null;
+        } else {
+            change.bits.set(bucket(id, buckets));
+        }
+    }
+
+    private synchronized String nextSegment() {
+        return SEGMENT_PREFIX + (++generation) + SEGMENT_SUFFIX;
+    }
+
+    /**
+     * @return the number of buckets of the project in the manifest, 1 for a new project
+     */
+    private int bucketsOf(String project) {
+        Shard[] buckets = shards.get(project);
+        return buckets == null ? 1 : buckets.length;
+    }
+
+    /**
+     * @return the smallest power of 2 of buckets which keeps every bucket within the shard size
+     */
+    private int bucketsFor(int tasks) {
+        int buckets = 1;
+        while ((long) buckets * shardSize < tasks) {
+            buckets <<= 1;
+        }
+        return buckets;
+    }
+
+    private static int bucket(long id, int buckets) {
+        // ids are consecutive, the multiplication spreads them evenly over the buckets
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & (buckets - 1);
+    }
+
+    private static List<List<Task>> split(List<Task> tasks, int buckets) {
+        List<List<Task>> split = new ArrayList<>(buckets);
+        if (buckets == 1) {
+            split.add(tasks);
+            return split;
+        }
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            split.add(new ArrayList<>(tasks.size() / buckets + 16));
+        }
+        for (Task task : tasks) {
+            split.get(bucket(task.getId(), buckets)).add(task);
+        }
+        return split;
+    }
+
+    private List<List<Task>> readAll(List<Shard> shards) throws IOException {
+        List<Callable<List<Task>>> reads = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            reads.add(() -> {
+                Path file = directory.resolve(shard.file);
+                bytesRead.add(Files.size(file));
+                return BinaryTaskFile.open(file).tasks();
+            });
+        }
+        return runAll(reads);
+    }
+
+    /**
+     * This method runs the tasks on a pool of threads, or on the calling thread if there is
+     * only one
+     * @return the results in the order of the tasks
+     */
+    private <T> List<T> runAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (threads == 1 || tasks.size() < 2) {
+            for (Callable<T> task : tasks) {
+                results.add(call(task));
+            }
+            return results;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, tasks.size()), runnable -> {
+            Thread thread = new Thread(runnable, "task-shards");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<T>> futures = new ArrayList<>(tasks.size());
+            for (Callable<T> task : tasks) {
+                futures.add(pool.submit(task));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reading or writing the shards was interrupted");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static <T> T call(Callable<T> task) throws IOException {
+        try {
+            return task.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * This method merges the shards, each in id order, into one list in id order. Ids are given
+     * one after the other, so usually the tasks are put at the position of their id directly;
+     * only if many ids were deleted the merged list is sorted.
+     */
+    private static List<Task> merge(List<List<Task>> shards) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+        int size = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (List<Task> shard : shards) {
+            if (!shard.isEmpty()) {
+                size += shard.size();
+                min = Math.min(min, shard.get(0).getId());
+                max = Math.max(max, shard.get(shard.size() - 1).getId());
+            }
+        }
+        List<Task> merged = new ArrayList<>(size);
+        if (size == 0) {
+            return merged;
+        }
+        if (max - min >= 2L * size) {
+            for (List<Task> shard : shards) {
+                merged.addAll(shard);
+            }
+            merged.sort(Comparator.comparingLong(Task::getId));
+            return merged;
+        }
+        Task[] byId = new Task[(int) (max - min + 1)];
+        for (List<Task> shard : shards) {
+            for (Task task : shard) {
+                byId[(int) (task.getId() - min)] = task;
+            }
+        }
+        for (Task task : byId) {
+            if (task != null) {
+                merged.add(task);
+            }
+        }
+        return merged;
+    }
+
+    private void readManifest() throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException("The manifest of the shards, i.e., " + manifest + " is not valid");
+            }
+            long sequence = in.readLong();
+            long lastGeneration = in.readLong();
+            int projects = in.readInt();
+            Map<String, Shard[]> read = new TreeMap<>();
+            for (int i = 0; i < projects; i++) {
+                String project = in.readUTF();
+                Shard[] buckets = new Shard[in.readInt()];
+                for (int bucket = 0; bucket < buckets.length; bucket++) {
+                    buckets[bucket] = new Shard(in.readUTF(), in.readInt());
+                }
+                read.put(project, buckets);
+            }
+            synchronized (this) {
+                shards = read;
+                journalSequence = sequence;
+                generation = Math.max(generation, lastGeneration);
+            }
+        }
+    }
+
+    /**
+     * @return the size of the manifest in bytes
+     */
+    private long writeManifest(Map<String, Shard[]> written, long sequence) throws IOException {
+        Path manifest = directory.resolve(MANIFEST);
+        Path temp = directory.resolve(MANIFEST + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(sequence);
+            synchronized (this) {
+                out.writeLong(generation);
+            }
+            out.writeInt(written.size());
+            for (Map.Entry<String, Shard[]> entry : written.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                for (Shard shard : entry.getValue()) {
+                    out.writeUTF(shard.file);
+                    out.writeInt(shard.rows);
+                }
+            }
+        }
+        long bytes = Files.size(temp);
+        Files.move(temp, manifest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return bytes;
+    }
+
+    /**
+     * This method deletes the segment files of writes which did not reach the manifest
+     */
+    private void deleteUnusedSegments() throws IOException {
+        Set<String> used = new HashSet<>();
+        synchronized (this) {
+            for (Shard[] buckets : shards.values()) {
+                for (Shard shard : buckets) {
+                    used.add(shard.file);
+                }
+            }
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                if (!used.contains(file.getFileName().toString())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * This class is one segment file of the manifest, with its number of tasks
+     **/
+    private static final class Shard {
+        final String file;
+        final int rows;
+
+        Shard(String file, int rows) {
+            this.file = file;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * This class is the set of changed buckets of one project, all of them if bits is null. The
+     * buckets are counted for the number of buckets the project had when they were changed.
+     **/
+    public static final class Dirty {
+        private final int buckets;
+        private BitSet bits;
+
+        private Dirty(int buckets) {
+            this.buckets = buckets;
+            this.bits = new BitSet(buckets);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.sda.todolist;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * This class keeps the ids of all tasks sorted by due date, project, priority and completion.
+ *
+ * Due dates (as epoch-day) and projects are the keys of a TreeMap of buckets, priority and
+ * completion use one bucket per value. Within a bucket ids are in ascending order, i.e., in the
+ * order the tasks were added. The structures are updated on every change, so showing the list in
+ * one of these orders walks the buckets without comparing tasks.
+ **/
+
+public class SortedTaskIndexes implements TaskListener {
+    // bucket of tasks without due date, shown last
+    private static final int NO_DUE_DATE = Integer.MAX_VALUE;
+
+    private final TreeMap<Integer, TaskIdSet> byDueDate = new TreeMap<>();
+    private final TreeMap<String, TaskIdSet> byProject = new TreeMap<>();
+    // by Task.Priority ordinal
+    private final TaskIdSet[] byPriority = newBuckets(Task.Priority.values().length);
+    // [0] not completed, [1] completed
+    private final TaskIdSet[] byCompletion = newBuckets(2);
+
+    public static SortedTaskIndexes build(List<Task> tasks) {
+        return build(tasks, ParallelTasks.sequential());
+    }
+
+    /**
+     * This method builds the indexes of parts of the list in parallel and merges them
+     */
+    public static SortedTaskIndexes build(List<Task> tasks, ParallelTasks parallel) {
+        if (tasks instanceof CompactTaskList compact) {
+            // straight from the primitive columns, without creating views
+            return parallel.collect(compact.size(), SortedTaskIndexes::new, (indexes, row) -> {
+                int id = (int) compact.id(row);
+                indexes.byDueDate.computeIfAbsent(dueKey(compact.dueDay(row)), key -> new TaskIdSet()).add(id);
+                indexes.byProject.computeIfAbsent(projectKey(compact.project(row)), key -> new TaskIdSet()).add(id);
+                indexes.byPriority[compact.priorityOrdinal(row)].add(id);
+                indexes.byCompletion[compact.isComplete(row) ? 1 : 0].add(id);
+            }, SortedTaskIndexes::merge);
+        }
+        return parallel.collect(tasks, SortedTaskIndexes::new, SortedTaskIndexes::taskAdded, SortedTaskIndexes::merge);
+    }
+
+    /**
+     * This method adds the ids of the indexes of the following part of the list
+     * @return this
+     */
+    private SortedTaskIndexes merge(SortedTaskIndexes other) {
+        other.byDueDate.forEach((key, ids) -> byDueDate.computeIfAbsent(key, k -> new TaskIdSet()).addAll(ids));
+        other.byProject.forEach((key, ids) -> byProject.computeIfAbsent(key, k -> new TaskIdSet()).addAll(ids));
+        for (int i = 0; i < byPriority.length; i++) {
+            byPriority[i].addAll(other.byPriority[i]);
+        }
+        for (int i = 0; i < byCompletion.length; i++) {
+            byCompletion[i].addAll(other.byCompletion[i]);
+        }
+        return this;
+    }
+
+    @Override
+    public void taskAdded(Task task) {
+        int id = TaskIdSet.idOf(task);
+        byDueDate.computeIfAbsent(dueKey(task.getDueDate()), key -> new TaskIdSet()).add(id);
+        byProject.computeIfAbsent(projectKey(task.getProject()), key -> new TaskIdSet()).add(id);
+        byPriority[task.getPriorityLevel().ordinal()].add(id);
+        byCompletion[task.isComplete() ? 1 : 0].add(id);
+    }
+
+    @Override
+    public void taskRemoved(Task task) {
+        int id = TaskIdSet.idOf(task);
+        removeFrom(byDueDate, dueKey(task.getDueDate()), id);
+        removeFrom(byProject, projectKey(task.getProject()), id);
+        byPriority[task.getPriorityLevel().ordinal()].remove(id);
+        byCompletion[task.isComplete() ? 1 : 0].remove(id);
+    }
+
+    @Override
+    public void taskUpdated(Task task, TaskField field, String oldValue) {
+        int id = TaskIdSet.idOf(task);
+        switch (field) {
+            case DUE_DATE -> {
+                removeFrom(byDueDate, dueKey(oldValue == null ? null : LocalDate.parse(oldValue)), id);
+                byDueDate.computeIfAbsent(dueKey(task.getDueDate()), key -> new TaskIdSet()).add(id);
+            }
+            case PROJECT -> {
+                removeFrom(byProject, projectKey(oldValue), id);
+                byProject.computeIfAbsent(projectKey(task.getProject()), key -> new TaskIdSet()).add(id);
+            }
+            case PRIORITY -> {
+                byPriority[Task.Priority.restore(oldValue).ordinal()].remove(id);
+                byPriority[task.getPriorityLevel().ordinal()].add(id);
+            }
+            default -> {
+                // title and notes are not sort keys
+            }
+        }
+    }
+
+    @Override
+    public void taskCompletionChanged(Task task) {
+        int id = TaskIdSet.idOf(task);
+        byCompletion[task.isComplete() ? 0 : 1].remove(id);
+        byCompletion[task.isComplete() ? 1 : 0].add(id);
+    }
+
+    /**
+     * This method returns a window of the task ids in the given order, skipping whole buckets
+     * before the window without looking at their ids
+     * @param order the order of the list
+     * @param offset number of tasks to skip
+     * @param limit maximum number of ids to return
+     * @return the ids of the window
+     */
+    public int[] window(TaskOrder order, int offset, int limit) {
+        int tasks = byCompletion[0].size() + byCompletion[1].size();
+        int[] result = new int[Math.max(0, Math.min(limit, tasks - offset))];
+        int count = 0;
+        int skip = offset;
+        for (TaskIdSet bucket : buckets(order)) {
+            if (count == result.length) {
+                break;
+            }
+            if (skip >= bucket.size()) {
+                skip -= bucket.size();
+                continue;
+            }
+            for (int position = skip; position < bucket.size() && count < result.length; position++) {
+                result[count++] = bucket.get(position);
+            }
+            skip = 0;
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    private Collection<TaskIdSet> buckets(TaskOrder order) {
+        switch (order) {
+            case DUE_DATE: return byDueDate.values();
+            case PROJECT: return byProject.values();
+            case PRIORITY: return List.of(byPriority);
+            default: return List.of(byCompletion);
+        }
+    }
+
+    private static int dueKey(LocalDate dueDate) {
+        return dueDate == null ? NO_DUE_DATE : (int) dueDate.toEpochDay();
+    }
+
+    private static int dueKey(int epochDay) {
+        return epochDay == BinaryTaskFile.NO_DATE ? NO_DUE_DATE : epochDay;
+    }
+
+    private static String projectKey(String project) {
+        return project == null ? "" : project;
+    }
+
+    private static <K> void removeFrom(TreeMap<K, TaskIdSet> index, K key, int id) {
+        TaskIdSet bucket = index.get(key);
+        if (bucket != null && bucket.remove(id) && bucket.size() == 0) {
+            index.remove(key);
+        }
+    }
+
+    private static TaskIdSet[] newBuckets(int count) {
+        List<TaskIdSet> buckets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            buckets.add(new TaskIdSet());
+        }
+        return buckets.toArray(new TaskIdSet[0]);
+    }
+}
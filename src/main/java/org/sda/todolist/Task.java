@@ -3,25 +3,63 @@ package org.sda.todolist;
 import java.io.Serializable;
 import java.time.DateTimeException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
 
 public class Task implements Serializable {
+    // pinned to the value of the last release so existing tasks.obj files can still be migrated
+    private static final long serialVersionUID = 5469338385933523211L;
+    // a task which is not completed is due soon from this many days before its due date
+    public static final int DUE_SOON_DAYS = 2;
 
     // Priority levels
     public enum Priority {
-        HIGH, MEDIUM, LOW
+        HIGH, MEDIUM, LOW;
+
+        /**
+         * This method converts a priority text, ignoring the case
+         * @param text HIGH, MEDIUM or LOW; empty means MEDIUM
+         * @return the priority level
+         * @throws IllegalArgumentException if the text is not a priority level
+         */
+        public static Priority of(String text) throws IllegalArgumentException {
+            if (text == null || text.trim().equals("")) {
+                return MEDIUM;
+            }
+            for (Priority level : values()) {
+                if (level.name().equalsIgnoreCase(text.trim())) {
+                    return level;
+                }
+            }
+            throw new IllegalArgumentException("Priority must be HIGH, MEDIUM or LOW: " + text);
+        }
+
+        /**
+         * This method converts a stored priority text, any text which is not a priority level
+         * (older versions accepted free text) becomes MEDIUM
+         */
+        static Priority restore(String text) {
+            try {
+                return of(text);
+            } catch (IllegalArgumentException e) {
+                return MEDIUM;
+            }
+        }
     }
 
+    // stable identifier assigned by TodoList, it does not change when the list is re-ordered
+    private long id;
     private String title;
     private String project;
     private boolean complete;
     private LocalDate dueDate;
 
-    private String priority;          // Low, Medium, High
+    private String priority;          // name of a Priority level, kept as text for old data files
     private LocalDate completedDate; 
     private String notes; // When task was completed
-
+    // the rule by which the task repeats, null for a task due once; see Recurrence
+    private Recurrence recurrence;
+    // set on the copies which stand for a later occurrence of a repeating task, see occurrence
+    private transient boolean occurrence;
 
 
     /**
@@ -36,11 +74,26 @@ public class Task implements Serializable {
         this.notes = "";
     }
 
+    /**
+     * Constructor used only while restoring stored tasks and by views of a task store,
+     * no validation is applied
+     */
+    Task() {
+    }
+
     /**
      * Default constructor for compatibility (priority = Medium)
      */
     public Task(String title, String project, LocalDate dueDate) {
-        this(title, project, dueDate, "Medium");
+        this(title, project, dueDate, "MEDIUM");
+    }
+
+    public long getId() {
+        return this.id;
+    }
+
+    void setId(long id) {
+        this.id = id;
     }
 
     public String getTitle() {
@@ -48,10 +101,14 @@ public class Task implements Serializable {
     }
 
     public void setTitle(String title) throws NullPointerException {
+        this.title = checkTitle(title);
+    }
+
+    static String checkTitle(String title) throws NullPointerException {
         if (title == null || title.trim().equals("")) {
             throw new NullPointerException("REQUIRED: Title can not be empty.");
         }
-        this.title = title.trim();
+        return title.trim();
     }
 
     public String getProject() {
@@ -83,23 +140,35 @@ public class Task implements Serializable {
     }
 
     public void setDueDate(LocalDate dueDate) throws DateTimeException {
+        this.dueDate = checkDueDate(dueDate);
+    }
+
+    static LocalDate checkDueDate(LocalDate dueDate) throws DateTimeException {
         if (dueDate.compareTo(LocalDate.now()) < 0) {
             throw new DateTimeException("Past Date not allowed");
         }
-        DateTimeFormatter formattedDate = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-        this.dueDate = LocalDate.parse(dueDate.format(formattedDate));
+        // LocalDate holds no time, so it is stored as given (it used to be formatted and parsed again)
+        return dueDate;
     }
 
+    /**
+     * @return the name of the priority level, i.e., HIGH, MEDIUM or LOW
+     */
     public String getPriority() {
         return priority;
     }
 
-    public void setPriority(String priority) {
-        if (priority == null || priority.trim().equals("")) {
-            this.priority = "Medium";
-        } else {
-            this.priority = priority.trim();
-        }
+    public Priority getPriorityLevel() {
+        return Priority.restore(priority);
+    }
+
+    /**
+     * This method sets the priority level, ignoring the case of the text
+     * @param priority HIGH, MEDIUM or LOW; empty means MEDIUM
+     * @throws IllegalArgumentException if the text is not a priority level
+     */
+    public void setPriority(String priority) throws IllegalArgumentException {
+        this.priority = Priority.of(priority).name();
     }
 
     public LocalDate getCompletedDate() {
@@ -121,19 +190,119 @@ public class Task implements Serializable {
 }
 
 
+    public Recurrence getRecurrence() {
+        return recurrence;
+    }
+
+    /**
+     * @return true if the task repeats; its due date is then the day of its next occurrence
+     */
+    public boolean isRecurring() {
+        return getRecurrence() != null;
+    }
+
+    /**
+     * This method makes the task repeat by a rule, or stop repeating. The due date moves to the
+     * first occurrence on or after it, so that a repeating task is always due on its next occurrence.
+     * @param recurrence the rule, or null for a task due once
+     * @throws IllegalArgumentException if the rule has no occurrence on or after the due date
+     */
+    public void setRecurrence(Recurrence recurrence) throws IllegalArgumentException {
+        if (recurrence != null) {
+            LocalDate first = recurrence.next(getDueDate() == null ? recurrence.start() : getDueDate());
+            if (first == null) {
+                throw new IllegalArgumentException("The task would never be due: " + recurrence);
+            }
+            restoreField(TaskField.DUE_DATE, first.toString());
+        }
+        restoreField(TaskField.RECURRENCE, recurrence == null ? null : recurrence.toString());
+    }
+
+    /**
+     * This method creates a copy of this repeating task which stands for one of its later
+     * occurrences, as listed for a range of days. The copy keeps the id of the task.
+     * @param day the day of the occurrence, its due date
+     */
+    Task occurrence(LocalDate day) {
+        Task occurrence = copy();
+        occurrence.dueDate = day;
+        occurrence.occurrence = true;
+        return occurrence;
+    }
+
+    /**
+     * @return true if this is a copy made by occurrence, not a task of the list
+     */
+    public boolean isOccurrence() {
+        return occurrence;
+    }
+
+    /**
+     * This method rebuilds a task from stored values without the validation done by the setters,
+     * e.g. a stored due date may already be in the past.
+     */
+    static Task restore(String title, String project, LocalDate dueDate, String priority,
+                        boolean complete, LocalDate completedDate, String notes) {
+        Task task = new Task();
+        task.title = title;
+        task.project = project;
+        task.dueDate = dueDate;
+        task.priority = Priority.restore(priority).name();
+        task.complete = complete;
+        task.completedDate = completedDate;
+        task.notes = notes == null ? "" : notes;
+        return task;
+    }
+
+    /**
+     * This method sets a field to a stored value without validation, used while replaying the journal
+     */
+    void restoreField(TaskField field, String value) {
+        switch (field) {
+            case TITLE -> this.title = value;
+            case PROJECT -> this.project = value;
+            case DUE_DATE -> this.dueDate = value == null ? null : LocalDate.parse(value);
+            case PRIORITY -> this.priority = Priority.restore(value).name();
+            case NOTES -> this.notes = value == null ? "" : value;
+            case RECURRENCE -> this.recurrence = Recurrence.parse(value, null);
+        }
+    }
+
+    /**
+     * This method sets the completion state to a stored value, used while replaying the journal
+     */
+    void restoreCompletion(boolean complete, LocalDate completedDate) {
+        this.complete = complete;
+        this.completedDate = completedDate;
+    }
+
+    /**
+     * This method creates an independent copy of this task, including its id
+     */
+    Task copy() {
+        Task copy = restore(getTitle(), getProject(), getDueDate(), getPriority(), isComplete(),
+                getCompletedDate(), getNotes());
+        copy.id = getId();
+        copy.recurrence = getRecurrence();
+        return copy;
+    }
+
     public String formattedStringOfTask() {
         StringBuilder sb = new StringBuilder();
 
-        sb.append("\nTitle          : ").append(title);
-        sb.append("\nProject        : ").append(project);
-        sb.append("\nPriority       : ").append(priority);
-        sb.append("\nStatus         : ").append(complete ? "Completed" : "Not Completed");
-        sb.append("\nDue Date       : ").append(dueDate);
-        sb.append("\nCompleted Date : ").append(completedDate == null ? "-" : completedDate);
+        sb.append("\nTitle          : ").append(getTitle());
+        sb.append("\nProject        : ").append(getProject());
+        sb.append("\nPriority       : ").append(getPriority());
+        sb.append("\nStatus         : ").append(isComplete() ? "Completed" : "Not Completed");
+        sb.append("\nDue Date       : ").append(getDueDate());
+        sb.append("\nCompleted Date : ").append(getCompletedDate() == null ? "-" : getCompletedDate());
+        if (isRecurring()) {
+            sb.append("\nRepeats        : ").append(getRecurrence());
+        }
 
-        if (!complete) {
-            long daysBetween = ChronoUnit.DAYS.between(LocalDate.now(), dueDate);
-            if (daysBetween >= 0 && daysBetween <= 2) {
+        if (!isComplete()) {
+            long daysBetween = ChronoUnit.DAYS.between(LocalDate.now(), getDueDate());
+            if (daysBetween >= 0 && daysBetween <= DUE_SOON_DAYS) {
                 sb.append(Messages.YELLOW_TEXT)
                   .append("\nReminder: due soon!")
                   .append(Messages.RESET_TEXT);
@@ -0,0 +1,360 @@
+package org.sda.todolist;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This class stores tasks which were completed long ago outside of the list, so that loading,
+ * counting and listing the list costs only the tasks which are still worked on.
+ *
+ * The archive of a data file is the append-only file named like it with ".archive", and its
+ * index, named with ".archive.index". Archived tasks are sorted by completion date and stored in
+ * segments of up to SEGMENT_TASKS tasks, each encoded like a data file of BinaryTaskFile and
+ * compressed like the blocks of BlockTaskFile. The index has one entry of ENTRY_SIZE bytes per
+ * segment: its position, its CRC32C, the number of tasks, the first and last day of completion,
+ * the lowest and highest id, and the journal sequence of the list once the tasks were removed
+ * from it. Only the index is read when the archive is opened; a query reads just the segments
+ * whose days of completion can match.
+ *
+ * Tasks are never changed or removed once archived. An archiving appends the segments and forces
+ * them to disk before their entries are appended to the index, so a torn write leaves bytes after
+ * the last segment of the index, which the next archiving overwrites. Entries are checked by
+ * their own CRC32C, the index ends at the first entry which is not valid.
+ **/
+
+public class TaskArchive {
+    public static final int MAGIC = 0x54444C41;
+    public static final short VERSION = 1;
+    public static final int SEGMENT_TASKS = 1024;
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 64;
+
+    private final Path archiveFile;
+    private final Path indexFile;
+    private final List<Segment> segments;
+    private long tasks;
+    private long maxId;
+    private long bytesRead;
+
+    private TaskArchive(Path archiveFile, Path indexFile, List<Segment> segments) {
+        this.archiveFile = archiveFile;
+        this.indexFile = indexFile;
+        this.segments = segments;
+        for (Segment segment : segments) {
+            tasks += segment.count;
+            maxId = Math.max(maxId, segment.maxId);
+        }
+    }
+
+    /**
+     * @return the archive file of a data file
+     */
+    public static Path archivePath(Path dataFile) {
+        return Paths.get(dataFile + ".archive");
+    }
+
+    /**
+     * @return the index of the archive of a data file
+     */
+    public static Path indexPath(Path dataFile) {
+        return Paths.get(dataFile + ".archive.index");
+    }
+
+    /**
+     * This method reads the index of the archive of a data file; an archive which does not exist
+     * yet is empty and is created by the first append
+     * @param dataFile the data file of the list
+     * @return the archive
+     * @throws IOException if the index can not be read or is not an archive index
+     */
+    public static TaskArchive open(Path dataFile) throws IOException {
+        Path archiveFile = archivePath(dataFile);
+        Path indexFile = indexPath(dataFile);
+        List<Segment> segments = new ArrayList<>();
+        if (Files.exists(indexFile)) {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+            if (in.remaining() > 0 && (in.remaining() < HEADER_SIZE || in.getInt() != MAGIC || in.getShort() != VERSION)) {
+                throw new IOException("The archive index, i.e., " + indexFile + " is not an archive index of this version");
+            }
+            in.position(Math.min(HEADER_SIZE, in.limit()));
+            long archiveSize = Files.exists(archiveFile) ? Files.size(archiveFile) : 0;
+            while (in.remaining() >= ENTRY_SIZE) {
+                Segment segment = Segment.read(in);
+                if (segment == null || segment.offset + segment.storedLength > archiveSize) {
+                    // a torn write of the last archiving
+                    break;
+                }
+                segments.add(segment);
+            }
+        }
+        return new TaskArchive(archiveFile, indexFile, segments);
+    }
+
+    /**
+     * @return the number of archived tasks
+     */
+    public synchronized long size() {
+        return tasks;
+    }
+
+    /**
+     * @return the highest id of an archived task, 0 if the archive is empty; ids are not given again
+     */
+    public synchronized long maxId() {
+        return maxId;
+    }
+
+    /**
+     * @return the journal sequence of the list after the last archiving, 0 if the archive is empty
+     */
+    public synchronized long lastSequence() {
+        return segments.isEmpty() ? 0 : segments.get(segments.size() - 1).sequence;
+    }
+
+    /**
+     * @return the number of segments of the archive
+     */
+    public synchronized int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * @return the bytes of segments read by queries so far
+     */
+    public synchronized long bytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * This method appends completed tasks to the archive
+     * @param archived the tasks, all completed with a completion date
+     * @param journalSequence the journal sequence of the list once the tasks are removed from it
+     * @param level compression level, 0 to store the segments uncompressed
+     * @return the number of bytes written
+     * @throws IOException if the archive can not be written; the tasks are then not archived
+     */
+    public synchronized long append(List<Task> archived, long journalSequence, int level) throws IOException {
+        if (archived.isEmpty()) {
+            return 0;
+        }
+        List<Task> sorted = new ArrayList<>(archived);
+        sorted.sort(Comparator.comparing(Task::getCompletedDate).thenComparingLong(Task::getId));
+        List<Segment> appended = new ArrayList<>();
+        List<byte[]> stored = new ArrayList<>();
+        long position = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).end();
+        Deflater deflater = new Deflater(level);
+        try {
+            for (int from = 0; from < sorted.size(); from += SEGMENT_TASKS) {
+                List<Task> group = sorted.subList(from, Math.min(from + SEGMENT_TASKS, sorted.size()));
+                byte[] raw = BlockTaskFile.encode(group);
+                byte[] bytes = level == 0 ? raw : BlockTaskFile.deflate(raw, deflater);
+                long minId = Long.MAX_VALUE;
+                long maxGroupId = 0;
+                for (Task task : group) {
+                    minId = Math.min(minId, task.getId());
+                    maxGroupId = Math.max(maxGroupId, task.getId());
+                }
+                Segment segment = new Segment(position, bytes.length, raw.length, group.size(), level == 0 ? 0 : 1,
+                        BlockTaskFile.crc(bytes), (int) group.get(0).getCompletedDate().toEpochDay(),
+                        (int) group.get(group.size() - 1).getCompletedDate().toEpochDay(), minId, maxGroupId, journalSequence);
+                appended.add(segment);
+                stored.add(bytes);
+                position = segment.end();
+            }
+        } finally {
+            deflater.end();
+        }
+
+        long written = 0;
+        try (FileChannel archive = FileChannel.open(archiveFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // bytes of a torn write after the last segment are overwritten
+            archive.truncate(appended.get(0).offset);
+            for (int i = 0; i < appended.size(); i++) {
+                ByteBuffer buffer = ByteBuffer.wrap(stored.get(i));
+                while (buffer.hasRemaining()) {
+                    written += archive.write(buffer, appended.get(i).offset + buffer.position());
+                }
+            }
+            archive.force(true);
+        }
+        boolean first = segments.isEmpty();
+        ByteBuffer entries = ByteBuffer.allocate((first ? HEADER_SIZE : 0) + appended.size() * ENTRY_SIZE);
+        if (first) {
+            entries.putInt(MAGIC).putShort(VERSION).putShort((short) 0);
+        }
+        for (Segment segment : appended) {
+            segment.write(entries);
+        }
+        entries.flip();
+        long indexPosition = first ? 0 : HEADER_SIZE + (long) segments.size() * ENTRY_SIZE;
+        try (FileChannel index = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            while (entries.hasRemaining()) {
+                written += index.write(entries, indexPosition + entries.position());
+            }
+            index.truncate(indexPosition + entries.limit());
+            index.force(true);
+        }
+        segments.addAll(appended);
+        for (Segment segment : appended) {
+            tasks += segment.count;
+            maxId = Math.max(maxId, segment.maxId);
+        }
+        return written;
+    }
+
+    /**
+     * This method finds the archived tasks matching a query. Only the segments with days of
+     * completion in the range of the query are read, so "completed:2024-03" reads the segments
+     * of March. Archived tasks are all completed, a query for open tasks reads nothing.
+     * @param query the conditions
+     * @return the matching tasks by day of completion
+     * @throws IOException if a segment can not be read or is damaged
+     */
+    public synchronized List<Task> find(TaskQuery query) throws IOException {
+        List<Task> found = new ArrayList<>();
+        if (Boolean.FALSE.equals(query.complete()) || segments.isEmpty()) {
+            return found;
+        }
+        long from = query.completedFrom() == null ? Long.MIN_VALUE : query.completedFrom().toEpochDay();
+        long to = query.completedTo() == null ? Long.MAX_VALUE : query.completedTo().toEpochDay();
+        List<Segment> read = new ArrayList<>();
+        for (Segment segment : segments) {
+            if (!query.hasCompletedRange() || (segment.lastDay >= from && segment.firstDay <= to)) {
+                read.add(segment);
+            }
+        }
+        Inflater inflater = new Inflater();
+        try (FileChannel archive = FileChannel.open(archiveFile, StandardOpenOption.READ)) {
+            for (Segment segment : read) {
+                for (Task task : segment.tasks(archive, inflater, archiveFile)) {
+                    if (query.matches(task)) {
+                        found.add(task);
+                    }
+                }
+                bytesRead += segment.storedLength;
+            }
+        } finally {
+            inflater.end();
+        }
+        found.sort(Comparator.comparing(Task::getCompletedDate).thenComparingLong(Task::getId));
+        return found;
+    }
+
+    /**
+     * This method reads the tasks archived after a journal sequence of the list, e.g. to remove
+     * them from a list which was loaded without their removal
+     * @param journalSequence the journal sequence of the list
+     * @return the tasks of the archivings which ended after it
+     * @throws IOException if a segment can not be read or is damaged
+     */
+    public synchronized List<Task> tasksAfter(long journalSequence) throws IOException {
+        List<Task> found = new ArrayList<>();
+        Inflater inflater = new Inflater();
+        try (FileChannel archive = FileChannel.open(archiveFile, StandardOpenOption.READ)) {
+            for (Segment segment : segments) {
+                if (segment.sequence > journalSequence) {
+                    found.addAll(segment.tasks(archive, inflater, archiveFile));
+                    bytesRead += segment.storedLength;
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        return found;
+    }
+
+    /**
+     * This class is the entry of one segment in the index
+     **/
+    private static final class Segment {
+        final long offset;
+        final int storedLength;
+        final int rawLength;
+        final int count;
+        // 0 if stored as is, 1 if deflated
+        final int compression;
+        final int crc;
+        // days of completion as epoch days
+        final int firstDay;
+        final int lastDay;
+        final long minId;
+        final long maxId;
+        final long sequence;
+
+        Segment(long offset, int storedLength, int rawLength, int count, int compression, int crc,
+                int firstDay, int lastDay, long minId, long maxId, long sequence) {
+            this.offset = offset;
+            this.storedLength = storedLength;
+            this.rawLength = rawLength;
+            this.count = count;
+            this.compression = compression;
+            this.crc = crc;
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+            this.minId = minId;
+            this.maxId = maxId;
+            this.sequence = sequence;
+        }
+
+        long end() {
+            return offset + storedLength;
+        }
+
+        /**
+         * @return the next entry of the index, or null if its CRC32C is not valid
+         */
+        static Segment read(ByteBuffer in) {
+            int start = in.position();
+            long offset = in.getLong();
+            int storedLength = in.getInt();
+            int rawLength = in.getInt();
+            int count = in.getInt();
+            int compression = in.get();
+            in.get();
+            in.getShort();
+            int crc = in.getInt();
+            Segment segment = new Segment(offset, storedLength, rawLength, count, compression, crc,
+                    in.getInt(), in.getInt(), in.getLong(), in.getLong(), in.getLong());
+            CRC32C entryCrc = new CRC32C();
+            entryCrc.update(in.array(), start, ENTRY_SIZE - 4);
+            return in.getInt() == (int) entryCrc.getValue() ? segment : null;
+        }
+
+        void write(ByteBuffer out) {
+            int start = out.position();
+            out.putLong(offset).putInt(storedLength).putInt(rawLength).putInt(count);
+            out.put((byte) compression).put((byte) 0).putShort((short) 0).putInt(crc);
+            out.putInt(firstDay).putInt(lastDay).putLong(minId).putLong(maxId).putLong(sequence);
+            CRC32C entryCrc = new CRC32C();
+            entryCrc.update(out.array(), start, ENTRY_SIZE - 4);
+            out.putInt((int) entryCrc.getValue());
+        }
+
+        List<Task> tasks(FileChannel archive, Inflater inflater, Path archiveFile) throws IOException {
+            ByteBuffer stored = ByteBuffer.allocate(storedLength);
+            while (stored.hasRemaining()) {
+                if (archive.read(stored, offset + stored.position()) < 0) {
+                    throw new IOException("The archive, i.e., " + archiveFile + " ends before the segment at " + offset);
+                }
+            }
+            byte[] bytes = stored.array();
+            byte[] raw = BlockTaskFile.crc(bytes) != crc ? null
+                    : compression == 0 ? bytes : BlockTaskFile.inflate(bytes, rawLength, inflater);
+            if (raw == null) {
+                throw new IOException("The archive, i.e., " + archiveFile + " is damaged: segment at " + offset);
+            }
+            return BinaryTaskFile.Layout.parse(ByteBuffer.wrap(raw)).tasks();
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package org.sda.todolist;
+
+import java.util.Arrays;
+
+/**
+ * This class holds a set of task ids as a compressed bitmap, laid out like a roaring bitmap.
+ *
+ * The ids are split by their upper 16 bits into chunks of 65,536 ids. A chunk holding at most 4096
+ * ids keeps them as a sorted array of their lower 16 bits (2 bytes per id); a fuller chunk keeps
+ * a bitmap of 65,536 bits (8 KB) until removals leave it half that full. Sets of very different
+ * size are intersected by looking up the ids of the smaller chunk in the larger one, dense chunks
+ * by AND-ing 1024 words, so the cost follows the size of the result rather than the number of
+ * tasks. It is used by the QueryIndex.
+ **/
+
+public class TaskBitmap {
+    // a chunk with more ids is stored as bitmap
+    static final int ARRAY_LIMIT = 4096;
+    private static final int WORDS = 1 << 16 >>> 6;
+
+    // upper 16 bits of the ids of each chunk, ascending
+    private int[] keys = new int[4];
+    private Chunk[] chunks = new Chunk[4];
+    private int size;
+    private int cardinality;
+
+    /**
+     * @return a bitmap of the given sorted ids
+     */
+    public static TaskBitmap of(int[] ids) {
+        TaskBitmap bitmap = new TaskBitmap();
+        for (int id : ids) {
+            bitmap.add(id);
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return the number of ids in the set
+     */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    public boolean contains(int id) {
+        int position = find(id >>> 16);
+        return position >= 0 && chunks[position].contains((char) id);
+    }
+
+    /**
+     * This method adds an id, adding an id twice has no effect
+     */
+    public void add(int id) {
+        int key = id >>> 16;
+        int position = find(key);
+        if (position < 0) {
+            position = -position - 1;
+            insert(position, key, new Chunk());
+        }
+        if (chunks[position].add((char) id)) {
+            cardinality++;
+        }
+    }
+
+    public boolean remove(int id) {
+        int position = find(id >>> 16);
+        if (position < 0 || !chunks[position].remove((char) id)) {
+            return false;
+        }
+        cardinality--;
+        if (chunks[position].cardinality == 0) {
+            System.arraycopy(keys, position + 1, keys, position, size - position - 1);
+            System.arraycopy(chunks, position + 1, chunks, position, size - position - 1);
+            size--;
+        }
+        return true;
+    }
+
+    /**
+     * This method adds all ids of another bitmap to this one
+     */
+    public void addAll(TaskBitmap other) {
+        for (int j = 0; j < other.size; j++) {
+            int position = find(other.keys[j]);
+            if (position < 0) {
+                insert(-position - 1, other.keys[j], other.chunks[j].copy());
+                cardinality += other.chunks[j].cardinality;
+            } else {
+                cardinality -= chunks[position].cardinality;
+                chunks[position] = chunks[position].or(other.chunks[j]);
+                cardinality += chunks[position].cardinality;
+            }
+        }
+    }
+
+    /**
+     * @return the ids in ascending order
+     */
+    public int[] toArray() {
+        int[] ids = new int[cardinality];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            count = chunks[i].copyTo(ids, count, keys[i] << 16);
+        }
+        return ids;
+    }
+
+    /**
+     * @return a new bitmap of the ids contained in both
+     */
+    public static TaskBitmap and(TaskBitmap a, TaskBitmap b) {
+        TaskBitmap result = new TaskBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                Chunk chunk = a.chunks[i].and(b.chunks[j]);
+                if (chunk.cardinality > 0) {
+                    result.append(a.keys[i], chunk);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a new bitmap of the ids contained in either
+     */
+    public static TaskBitmap or(TaskBitmap a, TaskBitmap b) {
+        TaskBitmap result = new TaskBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < a.size || j < b.size) {
+            if (j == b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                result.append(a.keys[i], a.chunks[i].copy());
+                i++;
+            } else if (i == a.size || b.keys[j] < a.keys[i]) {
+                result.append(b.keys[j], b.chunks[j].copy());
+                j++;
+            } else {
+                result.append(a.keys[i], a.chunks[i].or(b.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    private int find(int key) {
+        // ids are mostly appended, so the last chunk is checked first
+        if (size > 0 && keys[size - 1] == key) {
+            return size - 1;
+        }
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void append(int key, Chunk chunk) {
+        insert(size, key, chunk);
+        cardinality += chunk.cardinality;
+    }
+
+    private void insert(int position, int key, Chunk chunk) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            chunks = Arrays.copyOf(chunks, size * 2);
+        }
+        System.arraycopy(keys, position, keys, position + 1, size - position);
+        System.arraycopy(chunks, position, chunks, position + 1, size - position);
+        keys[position] = key;
+        chunks[position] = chunk;
+        size++;
+    }
+
+    /**
+     * This class holds the lower 16 bits of the ids of one chunk, as a sorted array while there
+     * are at most ARRAY_LIMIT of them, as a bitmap otherwise
+     **/
+    private static final class Chunk {
+        private char[] array = new char[4];
+        private long[] bits;
+        private int cardinality;
+
+        boolean contains(char low) {
+            if (bits != null) {
+                return (bits[low >>> 6] & (1L << low)) != 0;
+            }
+            return Arrays.binarySearch(array, 0, cardinality, low) >= 0;
+        }
+
+        boolean add(char low) {
+            if (bits != null) {
+                long before = bits[low >>> 6];
+                bits[low >>> 6] = before | (1L << low);
+                if (before == bits[low >>> 6]) {
+                    return false;
+                }
+                cardinality++;
+                return true;
+            }
+            int position = cardinality > 0 && array[cardinality - 1] < low
+                    ? -cardinality - 1 : Arrays.binarySearch(array, 0, cardinality, low);
+            if (position >= 0) {
+                return false;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                toBits();
+                return add(low);
+            }
+            position = -position - 1;
+            if (cardinality == array.length) {
+                array = Arrays.copyOf(array, Math.min(cardinality * 2, ARRAY_LIMIT));
+            }
+            System.arraycopy(array, position, array, position + 1, cardinality - position);
+            array[position] = low;
+            cardinality++;
+            return true;
+        }
+
+        boolean remove(char low) {
+            if (bits != null) {
+                long before = bits[low >>> 6];
+                bits[low >>> 6] = before & ~(1L << low);
+                if (before == bits[low >>> 6]) {
+                    return false;
+                }
+                cardinality--;
+                // not at ARRAY_LIMIT, so that adding and removing one id does not convert each time
+                if (cardinality <= ARRAY_LIMIT / 2) {
+                    toArray();
+                }
+                return true;
+            }
+            int position = Arrays.binarySearch(array, 0, cardinality, low);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(array, position + 1, array, position, cardinality - position - 1);
+            cardinality--;
+            return true;
+        }
+
+        int copyTo(int[] ids, int count, int high) {
+            if (bits == null) {
+                for (int i = 0; i < cardinality; i++) {
+                    ids[count++] = high | array[i];
+                }
+                return count;
+            }
+            for (int word = 0; word < WORDS; word++) {
+                long remaining = bits[word];
+                while (remaining != 0) {
+                    ids[count++] = high | (word << 6) | Long.numberOfTrailingZeros(remaining);
+                    remaining &= remaining - 1;
+                }
+            }
+            return count;
+        }
+
+        Chunk and(Chunk other) {
+            Chunk result = new Chunk();
+            if (bits != null && other.bits != null) {
+                result.bits = new long[WORDS];
+                for (int word = 0; word < WORDS; word++) {
+                    result.bits[word] = bits[word] & other.bits[word];
+                    result.cardinality += Long.bitCount(result.bits[word]);
+                }
+                if (result.cardinality <= ARRAY_LIMIT) {
+                    result.toArray();
+                }
+                return result;
+            }
+            if (bits != null || other.bits != null) {
+                // every id of the array is looked up in the bitmap
+                Chunk small = bits == null ? this : other;
+                Chunk large = bits == null ? other : this;
+                result.array = new char[small.cardinality];
+                for (int i = 0; i < small.cardinality; i++) {
+                    if (large.contains(small.array[i])) {
+                        result.array[result.cardinality++] = small.array[i];
+                    }
+                }
+                return result;
+            }
+            Chunk small = cardinality <= other.cardinality ? this : other;
+            Chunk large = small == this ? other : this;
+            result.array = new char[small.cardinality];
+            if ((long) small.cardinality * 16 < large.cardinality) {
+                // sets of very different size: a search per id of the smaller one
+                for (int i = 0; i < small.cardinality; i++) {
+                    if (Arrays.binarySearch(large.array, 0, large.cardinality, small.array[i]) >= 0) {
+                        result.array[result.cardinality++] = small.array[i];
+                    }
+                }
+                return result;
+            }
+            int i = 0;
+            int j = 0;
+            while (i < cardinality && j < other.cardinality) {
+                if (array[i] < other.array[j]) {
+                    i++;
+                } else if (array[i] > other.array[j]) {
+                    j++;
+                } else {
+                    result.array[result.cardinality++] = array[i];
+                    i++;
+                    j++;
+                }
+            }
+            return result;
+        }
+
+        Chunk or(Chunk other) {
+            Chunk result = new Chunk();
+            if (bits == null && other.bits == null && cardinality + other.cardinality <= ARRAY_LIMIT) {
+                result.array = new char[cardinality + other.cardinality];
+                int i = 0;
+                int j = 0;
+                while (i < cardinality || j < other.cardinality) {
+                    if (j == other.cardinality || (i < cardinality && array[i] < other.array[j])) {
+                        result.array[result.cardinality++] = array[i++];
+                    } else if (i == cardinality || other.array[j] < array[i]) {
+                        result.array[result.cardinality++] = other.array[j++];
+                    } else {
+                        result.array[result.cardinality++] = array[i];
+                        i++;
+                        j++;
+                    }
+                }
+                return result;
+            }
+            result.bits = bits != null ? bits.clone() : new long[WORDS];
+            for (Chunk chunk : bits != null ? new Chunk[]{other} : new Chunk[]{this, other}) {
+                if (chunk.bits != null) {
+                    for (int word = 0; word < WORDS; word++) {
+                        result.bits[word] |= chunk.bits[word];
+                    }
+                } else {
+                    for (int i = 0; i < chunk.cardinality; i++) {
+                        result.bits[chunk.array[i] >>> 6] |= 1L << chunk.array[i];
+                    }
+                }
+            }
+            for (long word : result.bits) {
+                result.cardinality += Long.bitCount(word);
+            }
+            if (result.cardinality <= ARRAY_LIMIT) {
+                result.toArray();
+            }
+            return result;
+        }
+
+        Chunk copy() {
+            Chunk copy = new Chunk();
+            copy.cardinality = cardinality;
+            copy.bits = bits == null ? null : bits.clone();
+            copy.array = bits == null ? Arrays.copyOf(array, Math.max(cardinality, 4)) : null;
+            return copy;
+        }
+
+        private void toBits() {
+            bits = new long[WORDS];
+            for (int i = 0; i < cardinality; i++) {
+                bits[array[i] >>> 6] |= 1L << array[i];
+            }
+            array = null;
+        }
+
+        private void toArray() {
+            char[] values = new char[Math.max(cardinality, 4)];
+            int count = 0;
+            for (int word = 0; word < WORDS; word++) {
+                long remaining = bits[word];
+                while (remaining != 0) {
+                    values[count++] = (char) ((word << 6) | Long.numberOfTrailingZeros(remaining));
+                    remaining &= remaining - 1;
+                }
+            }
+            array = values;
+            bits = null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.sda.todolist;
+
+import java.time.LocalDate;
+
+/**
+ * This enum lists the fields of a Task which can be updated after the task is created.
+ * Values are exchanged as text, dates use the yyyy-mm-dd format and rules the text form of Recurrence.
+ **/
+
+public enum TaskField {
+    TITLE, PROJECT, DUE_DATE, PRIORITY, NOTES, RECURRENCE;
+
+    /**
+     * This method reads the current value of this field from a task
+     * @param task the task to read
+     * @return the value as text, or null for a missing date or rule
+     */
+    public String read(Task task) {
+        switch (this) {
+            case TITLE: return task.getTitle();
+            case PROJECT: return task.getProject();
+            case DUE_DATE: return task.getDueDate() == null ? null : task.getDueDate().toString();
+            case PRIORITY: return task.getPriority();
+            case NOTES: return task.getNotes();
+            default: return task.getRecurrence() == null ? null : task.getRecurrence().toString();
+        }
+    }
+
+    /**
+     * This method sets this field of a task through its validating setter. A new rule moves the
+     * due date to the first occurrence of the rule, see Task.setRecurrence.
+     * @param task the task to update
+     * @param value the new value as text
+     */
+    public void apply(Task task, String value) {
+        switch (this) {
+            case TITLE: task.setTitle(value); break;
+            case PROJECT: task.setProject(value); break;
+            case DUE_DATE: task.setDueDate(LocalDate.parse(value.trim())); break;
+            case PRIORITY: task.setPriority(value); break;
+            case NOTES: task.setNotes(value); break;
+            default: task.setRecurrence(Recurrence.parse(value, task.getDueDate()));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package org.sda.todolist;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+
+/**
+ * This class migrates data files written with Java serialization (ObjectOutputStream of an
+ * ArrayList of Task) to the binary columnar format of {@link BinaryTaskFile}.
+ *
+ * The migration is one-way: once a file has been rewritten it can only be read by the new format.
+ * A copy of the old file is kept with the ".bak" suffix.
+ **/
+
+public class TaskFileMigrator {
+    // first two bytes of every Java serialization stream
+    private static final int SERIALIZATION_MAGIC = 0xACED;
+
+    /**
+     * This method checks if the given data file was written with Java serialization
+     * @param path the data file
+     * @return true if the file starts with the Java serialization stream magic
+     */
+    public static boolean isLegacyFile(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] head = in.readNBytes(2);
+            return head.length == 2 && ((head[0] & 0xFF) << 8 | (head[1] & 0xFF)) == SERIALIZATION_MAGIC;
+        }
+    }
+
+    /**
+     * This method reads all tasks from a data file written with Java serialization
+     * @param path the legacy data file
+     * @return the list of tasks stored in the file
+     */
+    @SuppressWarnings("unchecked")
+    public static ArrayList<Task> readLegacy(Path path) throws IOException {
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(Files.newInputStream(path))) {
+            ArrayList<Task> tasks = (ArrayList<Task>) objectInputStream.readObject();
+            // old files have no task ids, and priorities were free text
+            for (int i = 0; i < tasks.size(); i++) {
+                tasks.get(i).setId(i + 1);
+                tasks.get(i).restoreField(TaskField.PRIORITY, tasks.get(i).getPriority());
+            }
+            return tasks;
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Data file does not contain a task list: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * This method rewrites a legacy data file in the binary columnar format.
+     * The old file is kept next to it with the ".bak" suffix.
+     * @param path the legacy data file
+     * @return number of migrated tasks, or -1 if the file was not a legacy file
+     */
+    public static int migrate(Path path) throws IOException {
+        if (!isLegacyFile(path)) {
+            return -1;
+        }
+        ArrayList<Task> tasks = readLegacy(path);
+        Path backup = Paths.get(path + ".bak");
+        Files.copy(path, backup, StandardCopyOption.REPLACE_EXISTING);
+        BinaryTaskFile.write(tasks, path);
+        return tasks.size();
+    }
+
+    /**
+     * main method to migrate data files from the command line
+     * @param args data files to migrate, "tasks.obj" if none is given
+     */
+    public static void main(String[] args) {
+        String[] files = args.length == 0 ? new String[] {Main.filename} : args;
+        for (String file : files) {
+            try {
+                int migrated = migrate(Paths.get(file));
+                if (migrated < 0) {
+                    Messages.showMessage(file + " is already in the binary format", false);
+                } else {
+                    Messages.showMessage(file + ": " + migrated + " task(s) migrated, old file kept as " + file + ".bak", false);
+                }
+            } catch (IOException e) {
+                Messages.showMessage(file + ": " + e.getMessage(), true);
+            }
+        }
+    }
+}
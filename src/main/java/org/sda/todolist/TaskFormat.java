@@ -0,0 +1,419 @@
+package org.sda.todolist;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class represents the text formats tasks are imported from and exported to: CSV with a
+ * header line, and JSON lines (one flat JSON object per line).
+ *
+ * Both formats have the columns of COLUMNS. On import the columns are found by name, ignoring
+ * case, spaces and underscores, so files of other trackers can be read if their columns are named
+ * alike ("Due Date", "due_date" and "dueDate" are the same column); unknown columns are ignored.
+ **/
+
+public enum TaskFormat {
+    CSV, JSON_LINES;
+
+    // columns in export order; the id is exported, but imported tasks get new ids
+    public static final List<String> COLUMNS = List.of("id", "title", "project", "dueDate", "priority",
+            "complete", "completedDate", "notes", "recurrence");
+    static final int ID = 0, TITLE = 1, PROJECT = 2, DUE_DATE = 3, PRIORITY = 4, COMPLETE = 5,
+            COMPLETED_DATE = 6, NOTES = 7, RECURRENCE = 8;
+
+    /**
+     * This method selects the format by the file extension
+     * @param filename name ending with .csv, .jsonl, .ndjson or .json
+     * @throws IllegalArgumentException for any other extension
+     */
+    public static TaskFormat of(String filename) throws IllegalArgumentException {
+        String name = filename.trim().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+            return JSON_LINES;
+        }
+        throw new IllegalArgumentException("Unknown file type, use .csv or .jsonl: " + filename);
+    }
+
+    /**
+     * This method finds a column by name, see the class comment
+     * @return the index in COLUMNS, or -1 for an unknown column
+     */
+    static int column(String name) {
+        // exported files use the names of COLUMNS, this is called for every value of a JSON line
+        int exact = COLUMNS.indexOf(name);
+        if (exact >= 0) {
+            return exact;
+        }
+        StringBuilder normalized = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c != '_' && c != '-' && !Character.isWhitespace(c)) {
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        String key = normalized.toString();
+        switch (key) {
+            case "due", "deadline" -> key = "duedate";
+            case "status", "done", "completed" -> key = "complete";
+            case "completedon", "donedate" -> key = "completeddate";
+            case "name", "summary" -> key = "title";
+            case "description", "note" -> key = "notes";
+            case "repeat", "repeats", "rrule" -> key = "recurrence";
+        }
+        for (int i = 0; i < COLUMNS.size(); i++) {
+            if (COLUMNS.get(i).toLowerCase(Locale.ROOT).equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * This method maps the header line of a CSV file to the columns
+     * @return for each field of a record, its index in COLUMNS or -1
+     */
+    static int[] header(String line) {
+        String[] names = splitCsv(line.startsWith("\uFEFF") ? line.substring(1) : line);
+        int[] columns = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = column(names[i]);
+        }
+        return columns;
+    }
+
+    /**
+     * This method tells whether a CSV record is complete, i.e., it does not end inside a quoted
+     * field; a quoted field may contain line breaks, so a record can span several lines
+     */
+    static boolean isCompleteRecord(CharSequence record) {
+        boolean quoted = false;
+        for (int i = 0; i < record.length(); i++) {
+            if (record.charAt(i) == '"') {
+                quoted = !quoted;
+            }
+        }
+        return !quoted;
+    }
+
+    /**
+     * This method parses one record
+     * @param record a CSV record or a JSON line
+     * @param header the columns of the CSV fields, see header; not used for JSON lines
+     * @return the values by index in COLUMNS, null for a missing value
+     * @throws IllegalArgumentException if the record is malformed
+     */
+    String[] parse(String record, int[] header) throws IllegalArgumentException {
+        String[] values = new String[COLUMNS.size()];
+        if (this == CSV) {
+            String[] fields = splitCsv(record);
+            if (fields.length > header.length) {
+                throw new IllegalArgumentException("More fields than columns in the header: " + fields.length);
+            }
+            for (int i = 0; i < fields.length; i++) {
+                if (header[i] >= 0) {
+                    values[header[i]] = fields[i];
+                }
+            }
+        } else {
+            new JsonLine(record, values).parse();
+        }
+        return values;
+    }
+
+    /**
+     * This method splits a CSV record into its fields, removing the quotes
+     * @throws IllegalArgumentException if a quote is not closed or is followed by other text
+     */
+    static String[] splitCsv(String record) throws IllegalArgumentException {
+        String[] fields = new String[8];
+        int count = 0;
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            String value;
+            if (i < record.length() && record.charAt(i) == '"') {
+                field.setLength(0);
+                i++;
+                while (true) {
+                    int quote = record.indexOf('"', i);
+                    if (quote < 0) {
+                        throw new IllegalArgumentException("Quoted field is not closed");
+                    }
+                    field.append(record, i, quote);
+                    i = quote + 1;
+                    if (i < record.length() && record.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                if (i < record.length() && record.charAt(i) != ',') {
+                    throw new IllegalArgumentException("Text after a quoted field");
+                }
+                value = field.toString();
+            } else {
+                int comma = record.indexOf(',', i);
+                int end = comma < 0 ? record.length() : comma;
+                value = record.substring(i, end);
+                i = end;
+            }
+            if (count == fields.length) {
+                fields = Arrays.copyOf(fields, count * 2);
+            }
+            fields[count++] = value;
+            if (i >= record.length()) {
+                return Arrays.copyOf(fields, count);
+            }
+            i++;
+        }
+    }
+
+    /**
+     * This method writes all tasks to a file, one record per task; only one record is held in
+     * memory at a time
+     * @param tasks the tasks to write
+     * @param path the file to write
+     * @return number of tasks written
+     */
+    public int export(Iterable<Task> tasks, Path path) throws IOException {
+        int count = 0;
+        try (Writer out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder(256);
+            if (this == CSV) {
+                out.write(String.join(",", COLUMNS));
+                out.write('\n');
+            }
+            for (Task task : tasks) {
+                line.setLength(0);
+                format(task, line);
+                line.append('\n');
+                out.append(line);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This method appends the record of a task, without a line break
+     */
+    void format(Task task, StringBuilder line) {
+        Object[] values = {task.getId(), task.getTitle(), task.getProject(), task.getDueDate(), task.getPriority(),
+                task.isComplete(), task.getCompletedDate(), task.getNotes(),
+                task.isRecurring() ? task.getRecurrence().toString() : null};
+        if (this == CSV) {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                if (values[i] != null) {
+                    appendCsv(String.valueOf(values[i]), line);
+                }
+            }
+        } else {
+            line.append('{');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append('"').append(COLUMNS.get(i)).append("\":");
+                if (values[i] == null) {
+                    line.append("null");
+                } else if (values[i] instanceof String || i == DUE_DATE || i == COMPLETED_DATE) {
+                    appendJson(String.valueOf(values[i]), line);
+                } else {
+                    line.append(values[i]);
+                }
+            }
+            line.append('}');
+        }
+    }
+
+    static void appendCsv(String value, StringBuilder line) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            line.append(c);
+            if (c == '"') {
+                line.append('"');
+            }
+        }
+        line.append('"');
+    }
+
+    static void appendJson(String value, StringBuilder line) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+
+    /**
+     * This class parses one flat JSON object: values must be strings, numbers, true, false or null
+     **/
+    private static final class JsonLine {
+        private final String text;
+        private final String[] values;
+        private int position;
+
+        JsonLine(String text, String[] values) {
+            this.text = text;
+            this.values = values;
+        }
+
+        void parse() throws IllegalArgumentException {
+            expect('{');
+            if (peek() == '}') {
+                position++;
+            } else {
+                while (true) {
+                    String key = string();
+                    expect(':');
+                    String value = value();
+                    int column = column(key);
+                    if (column >= 0) {
+                        values[column] = value;
+                    }
+                    char next = next();
+                    if (next == '}') {
+                        break;
+                    }
+                    if (next != ',') {
+                        throw error("',' or '}'");
+                    }
+                }
+            }
+            if (peek() != 0) {
+                throw error("end of line");
+            }
+        }
+
+        private String value() {
+            char c = peek();
+            if (c == '"') {
+                return string();
+            }
+            if (c == '{' || c == '[') {
+                throw new IllegalArgumentException("Nested JSON values are not supported");
+            }
+            int start = position;
+            while (position < text.length() && ",} \t".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.isEmpty()) {
+                throw error("a value");
+            }
+            return literal.equals("null") ? null : literal;
+        }
+
+        private String string() {
+            expect('"');
+            int end = text.indexOf('"', position);
+            int backslash = text.indexOf('\\', position);
+            if (end >= 0 && (backslash < 0 || backslash > end)) {
+                // no escapes, which is the common case
+                String value = text.substring(position, end);
+                position = end + 1;
+                return value;
+            }
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (position >= text.length()) {
+                    throw error("'\"'");
+                }
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    throw error("an escape");
+                }
+                char escape = text.charAt(position++);
+                switch (escape) {
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'u' -> {
+                        if (position + 4 > text.length()) {
+                            throw error("4 hex digits");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("4 hex digits");
+                        }
+                        position += 4;
+                    }
+                    default -> value.append(escape);
+                }
+            }
+        }
+
+        private void expect(char c) {
+            if (next() != c) {
+                throw error("'" + c + "'");
+            }
+        }
+
+        private char next() {
+            char c = peek();
+            position++;
+            return c;
+        }
+
+        /**
+         * @return the next character which is not a space, 0 at the end of the line
+         */
+        private char peek() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+
+        private IllegalArgumentException error(String expected) {
+            return new IllegalArgumentException("Invalid JSON, expected " + expected + " at position " + (position + 1));
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package org.sda.todolist;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * This class holds a set of task ids as a sorted int array. New tasks get the highest id, so
+ * adding is usually an append. It is used for the postings of the search index and for the
+ * buckets of the sorted indexes.
+ **/
+
+public class TaskIdSet {
+    private int[] ids = new int[4];
+    private int size;
+
+    /**
+     * This method converts the id of a task for use in a set
+     * @throws IllegalArgumentException if the id does not fit
+     */
+    public static int idOf(Task task) {
+        if (task.getId() <= 0 || task.getId() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Task id out of range for an id set: " + task.getId());
+        }
+        return (int) task.getId();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param position position in ascending order, from 0 to size() - 1
+     * @return the id at that position
+     */
+    public int get(int position) {
+        return ids[position];
+    }
+
+    public boolean contains(int id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    /**
+     * This method adds an id, adding an id twice has no effect
+     */
+    public void add(int id) {
+        if (size > 0 && ids[size - 1] >= id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                return;
+            }
+            insert(-position - 1, id);
+            return;
+        }
+        insert(size, id);
+    }
+
+    /**
+     * This method adds all ids of another set; if they are all higher, they are appended
+     */
+    public void addAll(TaskIdSet other) {
+        if (other.size == 0) {
+            return;
+        }
+        if (size > 0 && ids[size - 1] >= other.ids[0]) {
+            int[] merged = union(toArray(), other.toArray());
+            ids = merged.length < 4 ? Arrays.copyOf(merged, 4) : merged;
+            size = merged.length;
+            return;
+        }
+        if (size + other.size > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(size + other.size, size * 2));
+        }
+        System.arraycopy(other.ids, 0, ids, size, other.size);
+        size += other.size;
+    }
+
+    public boolean remove(int id) {
+        int position = Arrays.binarySearch(ids, 0, size, id);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+        size--;
+        return true;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * This method keeps the given sorted ids which are also in this set
+     */
+    public int[] retain(int[] candidates) {
+        if ((long) candidates.length * 16 > size) {
+            // sets of similar size: one merge pass is cheaper than a search per candidate
+            return intersect(candidates, toArray());
+        }
+        int[] result = new int[candidates.length];
+        int count = 0;
+        for (int id : candidates) {
+            if (Arrays.binarySearch(ids, 0, size, id) >= 0) {
+                result[count++] = id;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * This method writes the ids as varint gaps, which are small because ids are mostly dense
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            int gap = ids[i] - previous;
+            previous = ids[i];
+            while ((gap & ~0x7F) != 0) {
+                out.writeByte((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            out.writeByte(gap);
+        }
+    }
+
+    public static TaskIdSet read(DataInputStream in) throws IOException {
+        TaskIdSet set = new TaskIdSet();
+        int size = in.readInt();
+        set.ids = new int[Math.max(size, 4)];
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            int gap = 0;
+            int shift = 0;
+            int next;
+            do {
+                next = in.readUnsignedByte();
+                gap |= (next & 0x7F) << shift;
+                shift += 7;
+            } while ((next & 0x80) != 0);
+            previous += gap;
+            set.ids[i] = previous;
+        }
+        set.size = size;
+        return set;
+    }
+
+    /**
+     * This method intersects two sorted id arrays
+     * @return the ids contained in both, sorted
+     */
+    public static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * This method merges two sorted id arrays
+     * @return the ids contained in either, sorted and without duplicates
+     */
+    public static int[] union(int[] a, int[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        int[] result = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[count++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                result[count++] = b[j++];
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private void insert(int position, int id) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        System.arraycopy(ids, position, ids, position + 1, size - position);
+        ids[position] = id;
+        size++;
+    }
+}
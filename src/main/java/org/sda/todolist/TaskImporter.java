@@ -0,0 +1,349 @@
+package org.sda.todolist;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * This class imports tasks from a CSV or JSON lines file, see TaskFormat.
+ *
+ * The file is read as a stream in three stages: the calling thread reads records into batches,
+ * a pool of threads parses and validates the batches, and the calling thread hands the valid tasks
+ * of each batch in file order to the list. At most two batches per thread are in progress at a
+ * time, so the memory used does not depend on the size of the file.
+ *
+ * Every row is validated through the setters of Task, like a task entered by the user, except that
+ * a completed task may have a due date in the past. Rejected rows are written to an error report
+ * with their line number and the reason.
+ **/
+
+public class TaskImporter {
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+    // number of rejected rows kept in the report, all of them are written to the error file
+    static final int SHOWN_ERRORS = 10;
+
+    private final TaskFormat format;
+    private final int batchSize;
+    private final int threads;
+
+    public TaskImporter(TaskFormat format) {
+        this(format, DEFAULT_BATCH_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param format the format of the files to import
+     * @param batchSize number of records parsed together
+     * @param threads number of threads parsing batches
+     */
+    public TaskImporter(TaskFormat format, int batchSize, int threads) {
+        this.format = format;
+        this.batchSize = Math.max(1, batchSize);
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * This method imports all valid rows of a file
+     * @param file the file to read
+     * @param errorFile the CSV file rejected rows are written to; it is only created if a row is
+     *                  rejected, an older error file is deleted otherwise
+     * @param sink receives the valid tasks batch by batch, in file order, on the calling thread
+     * @return the numbers of imported and rejected rows
+     * @throws IOException if the file can not be read or the error file can not be written
+     */
+    public Report importFile(Path file, Path errorFile, Consumer<List<Task>> sink) throws IOException {
+        Report report = new Report(errorFile);
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "task-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Future<Batch>> inProgress = new ArrayDeque<>();
+        Files.deleteIfExists(errorFile);
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int[] header = null;
+            Batch batch = new Batch(batchSize);
+            StringBuilder record = new StringBuilder();
+            int lineNumber = 0;
+            // line a record spanning several lines starts on
+            int recordLine = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                    line = line.substring(1);
+                }
+                if (record.length() == 0 && line.isBlank()) {
+                    continue;
+                }
+                if (format == TaskFormat.CSV && (record.length() > 0 || line.indexOf('"') >= 0)) {
+                    // a quoted field may continue on the next line
+                    if (record.length() > 0) {
+                        record.append('\n');
+                    } else {
+                        recordLine = lineNumber;
+                    }
+                    record.append(line);
+                    if (!TaskFormat.isCompleteRecord(record)) {
+                        continue;
+                    }
+                    line = record.toString();
+                    record.setLength(0);
+                } else {
+                    recordLine = lineNumber;
+                }
+                if (format == TaskFormat.CSV && header == null) {
+                    header = TaskFormat.header(line);
+                    continue;
+                }
+                batch.add(line, recordLine);
+                if (batch.size == batchSize) {
+                    if (inProgress.size() == 2 * threads) {
+                        finish(inProgress.poll(), sink, report);
+                    }
+                    inProgress.add(pool.submit(batch.parser(format, header)));
+                    batch = new Batch(batchSize);
+                }
+            }
+            if (record.length() > 0) {
+                batch.add(record.toString(), recordLine);
+            }
+            if (batch.size > 0) {
+                inProgress.add(pool.submit(batch.parser(format, header)));
+            }
+            while (!inProgress.isEmpty()) {
+                finish(inProgress.poll(), sink, report);
+            }
+        } finally {
+            pool.shutdownNow();
+            report.close();
+        }
+        return report;
+    }
+
+    private static void finish(Future<Batch> parsed, Consumer<List<Task>> sink, Report report) throws IOException {
+        Batch batch;
+        try {
+            batch = parsed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Import failed: " + e.getCause(), e.getCause());
+        }
+        if (!batch.tasks.isEmpty()) {
+            sink.accept(batch.tasks);
+        }
+        report.imported += batch.tasks.size();
+        for (int i = 0; i < batch.errorLines.size(); i++) {
+            report.reject(batch.errorLines.get(i), batch.errors.get(i), batch.errorRecords.get(i));
+        }
+    }
+
+    /**
+     * This method creates a task from the values of a row through the validating setters
+     * @param values values by index in TaskFormat.COLUMNS
+     * @throws RuntimeException with the reason if a value is not valid
+     */
+    static Task toTask(String[] values) throws RuntimeException {
+        boolean complete = isComplete(values[TaskFormat.COMPLETE]);
+        String dueDate = values[TaskFormat.DUE_DATE];
+        if (dueDate == null || dueDate.isBlank()) {
+            throw new NullPointerException("REQUIRED: Due date can not be empty.");
+        }
+        Task task = new Task();
+        task.setTitle(values[TaskFormat.TITLE]);
+        task.setProject(values[TaskFormat.PROJECT] == null ? "" : values[TaskFormat.PROJECT]);
+        task.setPriority(values[TaskFormat.PRIORITY]);
+        task.setNotes(values[TaskFormat.NOTES]);
+        if (complete) {
+            // a completed task may have been due in the past
+            String completedDate = values[TaskFormat.COMPLETED_DATE];
+            task.restoreField(TaskField.DUE_DATE, parseDate(dueDate).toString());
+            task.restoreCompletion(true, completedDate == null || completedDate.isBlank()
+                    ? null : parseDate(completedDate));
+        } else {
+            task.setDueDate(parseDate(dueDate));
+        }
+        String recurrence = values[TaskFormat.RECURRENCE];
+        if (recurrence != null && !recurrence.isBlank()) {
+            if (complete) {
+                // a completed series is not due again
+                task.restoreField(TaskField.RECURRENCE, Recurrence.parse(recurrence, task.getDueDate()).toString());
+            } else {
+                task.setRecurrence(Recurrence.parse(recurrence, task.getDueDate()));
+            }
+        }
+        return task;
+    }
+
+    /**
+     * This method converts a date as yyyy-mm-dd, like LocalDate.parse but without its general
+     * formatter for the usual case
+     * @throws DateTimeParseException if the text is not a valid date
+     */
+    static LocalDate parseDate(String text) throws DateTimeParseException {
+        String date = text.trim();
+        if (date.length() == 10 && date.charAt(4) == '-' && date.charAt(7) == '-') {
+            int year = digits(date, 0, 4);
+            int month = digits(date, 5, 7);
+            int day = digits(date, 8, 10);
+            if (year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= 28) {
+                return LocalDate.of(year, month, day);
+            }
+        }
+        // other days are checked against the length of the month by parse
+        return LocalDate.parse(date);
+    }
+
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    /**
+     * @return true for the values which mean completed (true, yes, 1, x, done, completed)
+     * @throws IllegalArgumentException if the value means neither completed nor open
+     */
+    static boolean isComplete(String value) {
+        if (value == null) {
+            return false;
+        }
+        switch (value.trim().toLowerCase(Locale.ROOT)) {
+            case "", "false", "no", "0", "open", "todo", "not completed" -> {
+                return false;
+            }
+            case "true", "yes", "1", "x", "done", "completed" -> {
+                return true;
+            }
+            default -> throw new IllegalArgumentException("Complete must be true or false: " + value);
+        }
+    }
+
+    /**
+     * This class holds the records of a batch, and after parsing the valid tasks and the rejected rows
+     **/
+    private static final class Batch {
+        final String[] records;
+        final int[] lines;
+        int size;
+        final List<Task> tasks = new ArrayList<>();
+        final List<Integer> errorLines = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+        final List<String> errorRecords = new ArrayList<>();
+
+        Batch(int capacity) {
+            records = new String[capacity];
+            lines = new int[capacity];
+        }
+
+        void add(String record, int line) {
+            records[size] = record;
+            lines[size++] = line;
+        }
+
+        Callable<Batch> parser(TaskFormat format, int[] header) {
+            return () -> {
+                for (int i = 0; i < size; i++) {
+                    try {
+                        tasks.add(toTask(format.parse(records[i], header)));
+                    } catch (DateTimeParseException e) {
+                        reject(i, "Invalid date, use yyyy-mm-dd: " + e.getParsedString());
+                    } catch (RuntimeException e) {
+                        reject(i, e.getMessage());
+                    }
+                    records[i] = null;
+                }
+                return this;
+            };
+        }
+
+        private void reject(int i, String error) {
+            errorLines.add(lines[i]);
+            errors.add(error);
+            errorRecords.add(records[i]);
+        }
+    }
+
+    /**
+     * This class represents the result of an import
+     **/
+    public static final class Report {
+        private final Path errorFile;
+        private Writer errorWriter;
+        private int imported;
+        private int rejected;
+        private final List<String> shownErrors = new ArrayList<>();
+
+        Report(Path errorFile) {
+            this.errorFile = errorFile;
+        }
+
+        public int imported() {
+            return imported;
+        }
+
+        public int rejected() {
+            return rejected;
+        }
+
+        /**
+         * @return the first rejected rows as "line N: reason"
+         */
+        public List<String> errors() {
+            return Collections.unmodifiableList(shownErrors);
+        }
+
+        /**
+         * @return the file listing all rejected rows, or null if no row was rejected
+         */
+        public Path errorFile() {
+            return rejected == 0 ? null : errorFile;
+        }
+
+        private void reject(int line, String error, String record) throws IOException {
+            rejected++;
+            if (shownErrors.size() < SHOWN_ERRORS) {
+                shownErrors.add("line " + line + ": " + error);
+            }
+            if (errorWriter == null) {
+                errorWriter = Files.newBufferedWriter(errorFile, StandardCharsets.UTF_8);
+                errorWriter.write("line,error,record\n");
+            }
+            StringBuilder row = new StringBuilder().append(line).append(',');
+            TaskFormat.appendCsv(String.valueOf(error), row);
+            row.append(',');
+            TaskFormat.appendCsv(record, row);
+            errorWriter.append(row).append('\n');
+        }
+
+        private void close() throws IOException {
+            if (errorWriter != null) {
+                errorWriter.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package org.sda.todolist;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * This class represents the append-only journal which is kept next to the data file.
+ *
+ * Every record is framed as [length][body][crc32]. Appended records are collected in memory and
+ * written with one fsync per batch, either by a background thread every few milliseconds or when
+ * {@link #sync()} is called. When the journal is compacted into a new data file, the current
+ * journal is first rotated to a ".old" file so that new records can be appended while the
+ * snapshot is written.
+ **/
+
+public class TaskJournal implements Closeable {
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 50;
+
+    private final Path path;
+    private final Path rotatedPath;
+    private final ScheduledExecutorService flusher;
+
+    private FileChannel channel;
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream(4096);
+    private long size;
+    private IOException failure;
+
+    private TaskJournal(Path path, long syncIntervalMillis) throws IOException {
+        this.path = path;
+        this.rotatedPath = Paths.get(path + ".old");
+        this.channel = openChannel(path);
+        this.size = channel.size();
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::backgroundSync, syncIntervalMillis, syncIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * This method opens (or creates) the journal file kept next to the given data file
+     * @param dataFile the data file, i.e., tasks.obj
+     * @return the opened journal
+     */
+    public static TaskJournal open(Path dataFile) throws IOException {
+        return open(dataFile, DEFAULT_SYNC_INTERVAL_MILLIS);
+    }
+
+    public static TaskJournal open(Path dataFile, long syncIntervalMillis) throws IOException {
+        return new TaskJournal(journalPath(dataFile), syncIntervalMillis);
+    }
+
+    public static Path journalPath(Path dataFile) {
+        return Paths.get(dataFile + ".journal");
+    }
+
+    /**
+     * @return true if changes were recorded next to the data file, in the journal or its rotated file
+     */
+    public static boolean exists(Path dataFile) throws IOException {
+        Path path = journalPath(dataFile);
+        return (Files.exists(path) && Files.size(path) > 0) || Files.exists(Paths.get(path + ".old"));
+    }
+
+    /**
+     * This method reads all records of the rotated and the current journal in order. A torn or
+     * corrupt record at the end of the current journal (e.g. after a crash) is cut off.
+     * @param afterSequence records with a sequence number up to this value are skipped
+     * @return the records to apply on top of the data file
+     */
+    public synchronized List<JournalRecord> replay(long afterSequence) throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        if (Files.exists(rotatedPath)) {
+            readRecords(rotatedPath, afterSequence, records);
+        }
+        long validLength = readRecords(path, afterSequence, records);
+        if (validLength < channel.size()) {
+            channel.truncate(validLength);
+            channel.force(true);
+            size = validLength;
+        }
+        return records;
+    }
+
+    /**
+     * This method queues a record, it reaches the disk with the next batch
+     * @param record the record to append
+     * @return the number of bytes the record takes in the journal
+     */
+    public synchronized int append(JournalRecord record) {
+        byte[] body = record.encode();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        DataOutputStream out = new DataOutputStream(pending);
+        try {
+            out.writeInt(body.length);
+            out.write(body);
+            out.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            // writing to a byte array does not fail
+            throw new IllegalStateException(e);
+        }
+        size += body.length + 8;
+        return body.length + 8;
+    }
+
+    /**
+     * This method writes all queued records and forces them to the disk
+     */
+    public synchronized void sync() throws IOException {
+        if (failure != null) {
+            IOException previous = failure;
+            failure = null;
+            throw previous;
+        }
+        if (pending.size() == 0) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+        pending.reset();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * @return size of the journal in bytes, including records not yet written
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * This method moves the current journal aside before it is compacted into a snapshot.
+     * If an earlier compaction did not finish, the current records are appended to the rotated file.
+     */
+    public synchronized void rotate() throws IOException {
+        sync();
+        channel.close();
+        if (Files.exists(rotatedPath)) {
+            try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(rotatedPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                long position = 0;
+                while (position < source.size()) {
+                    position += source.transferTo(position, source.size() - position, target);
+                }
+                target.force(true);
+            }
+            Files.delete(path);
+        } else {
+            Files.move(path, rotatedPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+        channel = openChannel(path);
+        size = 0;
+    }
+
+    /**
+     * This method deletes the rotated journal once its records are contained in a snapshot
+     */
+    public synchronized void discardRotated() throws IOException {
+        Files.deleteIfExists(rotatedPath);
+    }
+
+    /**
+     * This method empties the journal after all its records were written to a snapshot
+     */
+    public synchronized void reset() throws IOException {
+        sync();
+        channel.truncate(0);
+        channel.force(true);
+        size = 0;
+        Files.deleteIfExists(rotatedPath);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flusher.shutdownNow();
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private synchronized void backgroundSync() {
+        try {
+            if (failure == null && channel.isOpen()) {
+                sync();
+            }
+        } catch (IOException e) {
+            // reported to the caller of the next sync()
+            failure = e;
+        }
+    }
+
+    private static FileChannel openChannel(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    private static long readRecords(Path file, long afterSequence, List<JournalRecord> records) throws IOException {
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length <= 0 || length > JournalRecord.MAX_LENGTH) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                int crcValue;
+                try {
+                    in.readFully(body);
+                    crcValue = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if ((int) crc.getValue() != crcValue) {
+                    break;
+                }
+                JournalRecord record = JournalRecord.decode(new DataInputStream(new ByteArrayInputStream(body)));
+                if (record.getSequence() > afterSequence) {
+                    records.add(record);
+                }
+                validLength += length + 8;
+            }
+        }
+        return validLength;
+    }
+}
@@ -0,0 +1,39 @@
+package org.sda.todolist;
+
+/**
+ * This interface is implemented by structures which are kept up to date with the changes made
+ * through TodoList, e.g. the search index. The methods are called after the change was applied.
+ **/
+
+public interface TaskListener {
+    /**
+     * This method is called after a task was added to the list
+     * @param task the added task, it already has its id
+     */
+    default void taskAdded(Task task) {
+    }
+
+    /**
+     * This method is called after a task was removed from the list
+     * @param task the removed task
+     */
+    default void taskRemoved(Task task) {
+    }
+
+    /**
+     * This method is called after one field of a task was changed
+     * @param task the task, already holding the new value
+     * @param field the changed field
+     * @param oldValue the value before the change, as text
+     */
+    default void taskUpdated(Task task, TaskField field, String oldValue) {
+    }
+
+    /**
+     * This method is called after a task was marked as completed or as not completed, only if
+     * this changed its state
+     * @param task the task, already holding the new state
+     */
+    default void taskCompletionChanged(Task task) {
+    }
+}
@@ -0,0 +1,307 @@
+package org.sda.todolist;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class keeps the timings of the operations of a TodoList and counters of the bytes it read
+ * and wrote, so that it can be seen how long saving, loading, searching or listing takes.
+ *
+ * Every operation has a LatencyHistogram; measuring a call costs two readings of System.nanoTime
+ * and one increment of a counter, so the metrics are always on. They are shown by the diagnostics
+ * screen of the main menu, can be read over JMX (e.g. with jconsole) once registerMBeans is
+ * called, and can be written to a file at exit.
+ **/
+
+public class TaskMetrics {
+    // domain of the names of the MBeans
+    public static final String DOMAIN = "org.sda.todolist";
+
+    /**
+     * This enum lists the measured operations of a TodoList
+     **/
+    public enum Operation {
+        ADD, EDIT, COMPLETE, REOPEN, DELETE, UNDO, REDO, SEARCH, QUERY,
+        LIST_BY_DUE_DATE, LIST_BY_PROJECT, LIST_BY_PRIORITY, LIST_BY_COMPLETION, LIST_OVERDUE, LIST_DUE,
+        SAVE, LOAD, COMPACTION, IMPORT, EXPORT, REPLICATION, ARCHIVE, ARCHIVE_QUERY;
+
+        /**
+         * @return the listing of the tasks in the given order
+         */
+        public static Operation list(TaskOrder order) {
+            return switch (order) {
+                case DUE_DATE -> LIST_BY_DUE_DATE;
+                case PROJECT -> LIST_BY_PROJECT;
+                case PRIORITY -> LIST_BY_PRIORITY;
+                case COMPLETION -> LIST_BY_COMPLETION;
+            };
+        }
+
+        /**
+         * @return the name shown in reports and used for the MBean, e.g. "list_by_project"
+         */
+        public String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * This enum lists the counters: bytes of data files, shards and journals read and written,
+     * and operations which failed with a message to the user
+     **/
+    public enum Counter {
+        BYTES_READ, BYTES_WRITTEN, FAILURES
+    }
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+
+    public TaskMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @return the start time of an operation, to pass to record
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * This method records the duration of an operation
+     * @param operation the operation which ended now
+     * @param start the time returned by start when it began
+     */
+    public void record(Operation operation, long start) {
+        latencies[operation.ordinal()].record(System.nanoTime() - start);
+    }
+
+    /**
+     * This method adds to a counter
+     */
+    public void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    /**
+     * @return the durations of the operation
+     */
+    public LatencyHistogram latency(Operation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    /**
+     * @return the value of a counter
+     */
+    public long count(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    /**
+     * This method forgets all timings and sets all counters to 0
+     */
+    public void reset() {
+        for (LatencyHistogram latency : latencies) {
+            latency.reset();
+        }
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * This method returns a table of the operations which were measured, with their number and
+     * durations in milliseconds, followed by the counters
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%-20s %9s %9s %9s %9s %9s %9s %9s%n",
+                "operation (ms)", "count", "mean", "p50", "p90", "p99", "p99.9", "max"));
+        boolean measured = false;
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram latency = latency(operation);
+            long count = latency.count();
+            if (count == 0) {
+                continue;
+            }
+            measured = true;
+            report.append(String.format(Locale.ROOT, "%-20s %9d %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f%n",
+                    operation.label(), count, latency.mean() / 1e6, millis(latency.percentile(50)),
+                    millis(latency.percentile(90)), millis(latency.percentile(99)),
+                    millis(latency.percentile(99.9)), millis(latency.max())));
+        }
+        if (!measured) {
+            report.append("no operation was measured yet").append(System.lineSeparator());
+        }
+        for (Counter counter : Counter.values()) {
+            report.append(String.format("%-20s %9d%n", counter.name().toLowerCase(Locale.ROOT), count(counter)));
+        }
+        return report.toString();
+    }
+
+    /**
+     * This method writes the report to a file, replacing it
+     * @param file the file to write
+     */
+    public void writeTo(Path file) throws IOException {
+        Files.writeString(file, "Metrics of " + LocalDateTime.now() + System.lineSeparator() + report(),
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This method registers an MBean per operation, named org.sda.todolist:type=Latency,name=add,
+     * and one for the counters, named org.sda.todolist:type=Counters. MBeans registered before by
+     * another TaskMetrics are replaced.
+     */
+    public void registerMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Operation operation : Operation.values()) {
+            register(server, latencyName(operation), new Latency(latency(operation)));
+        }
+        register(server, countersName(), new Counters(this));
+    }
+
+    /**
+     * This method removes the MBeans registered by registerMBeans
+     */
+    public void unregisterMBeans() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Operation operation : Operation.values()) {
+            if (server.isRegistered(latencyName(operation))) {
+                server.unregisterMBean(latencyName(operation));
+            }
+        }
+        if (server.isRegistered(countersName())) {
+            server.unregisterMBean(countersName());
+        }
+    }
+
+    static ObjectName latencyName(Operation operation) throws JMException {
+        return new ObjectName(DOMAIN + ":type=Latency,name=" + operation.label());
+    }
+
+    static ObjectName countersName() throws JMException {
+        return new ObjectName(DOMAIN + ":type=Counters");
+    }
+
+    private static void register(MBeanServer server, ObjectName name, Object bean) throws JMException {
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(bean, name);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * This interface is the JMX view of the durations of one operation, in milliseconds
+     **/
+    public interface LatencyMXBean {
+        long getCount();
+
+        double getMeanMillis();
+
+        double getP50Millis();
+
+        double getP90Millis();
+
+        double getP99Millis();
+
+        double getP999Millis();
+
+        double getMaxMillis();
+    }
+
+    /**
+     * This interface is the JMX view of the counters
+     **/
+    public interface CountersMXBean {
+        long getBytesRead();
+
+        long getBytesWritten();
+
+        long getFailures();
+    }
+
+    private static final class Latency implements LatencyMXBean {
+        private final LatencyHistogram latency;
+
+        Latency(LatencyHistogram latency) {
+            this.latency = latency;
+        }
+
+        @Override
+        public long getCount() {
+            return latency.count();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return latency.mean() / 1e6;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return millis(latency.percentile(50));
+        }
+
+        @Override
+        public double getP90Millis() {
+            return millis(latency.percentile(90));
+        }
+
+        @Override
+        public double getP99Millis() {
+            return millis(latency.percentile(99));
+        }
+
+        @Override
+        public double getP999Millis() {
+            return millis(latency.percentile(99.9));
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return millis(latency.max());
+        }
+    }
+
+    private static final class Counters implements CountersMXBean {
+        private final TaskMetrics metrics;
+
+        Counters(TaskMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public long getBytesRead() {
+            return metrics.count(Counter.BYTES_READ);
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return metrics.count(Counter.BYTES_WRITTEN);
+        }
+
+        @Override
+        public long getFailures() {
+            return metrics.count(Counter.FAILURES);
+        }
+    }
+}
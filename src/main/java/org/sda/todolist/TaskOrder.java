@@ -0,0 +1,17 @@
+package org.sda.todolist;
+
+/**
+ * This enum lists the orders in which the task list can be shown. Showing the list in one of
+ * these orders does not change the order of the list itself, so task numbers stay the same.
+ **/
+
+public enum TaskOrder {
+    // earliest due date first, tasks without due date last
+    DUE_DATE,
+    // project names in alphabetical order
+    PROJECT,
+    // HIGH, MEDIUM, LOW
+    PRIORITY,
+    // not completed tasks first
+    COMPLETION
+}
@@ -0,0 +1,417 @@
+package org.sda.todolist;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * This class describes which tasks to find: all conditions which are given must match. It is
+ * built in code, e.g. {@code new TaskQuery().project("Work").priority(Task.Priority.HIGH).open()},
+ * or parsed from text, e.g. {@code project:Work priority:high is:open due:this-week report}.
+ *
+ * The text syntax has these conditions, separated by spaces:
+ * project:NAME (quoted if it contains spaces, e.g. project:"Side project"),
+ * priority:HIGH or priority:high,medium, is:open or is:done,
+ * due:RANGE and completed:RANGE, where RANGE is a date, a month like 2024-03, FROM..TO, FROM.. or
+ * ..TO, this-week, next-week, or none (due only); dates are yyyy-mm-dd, today, tomorrow, yesterday
+ * or a number of days from today like +7 or -3. in:archive looks for the tasks in the archive of
+ * the list (see TaskArchive) instead of the list. All other words are search terms, matched like
+ * SearchIndex does. The tasks of the list are found through a QueryIndex.
+ **/
+
+public class TaskQuery {
+    private static final Pattern MONTH = Pattern.compile("\\d{4}-\\d{2}");
+
+    private String project;
+    private Set<Task.Priority> priorities;
+    private Boolean complete;
+    private LocalDate dueFrom;
+    private LocalDate dueTo;
+    private boolean hasDueRange;
+    private boolean withoutDueDate;
+    private LocalDate completedFrom;
+    private LocalDate completedTo;
+    private boolean hasCompletedRange;
+    private boolean inArchive;
+    private String text;
+
+    /**
+     * This method keeps the tasks of a project, ignoring the case
+     */
+    public TaskQuery project(String project) {
+        this.project = project;
+        return this;
+    }
+
+    /**
+     * This method keeps the tasks of one of the given priorities
+     */
+    public TaskQuery priority(Task.Priority... levels) {
+        if (priorities == null) {
+            priorities = EnumSet.noneOf(Task.Priority.class);
+        }
+        priorities.addAll(List.of(levels));
+        return this;
+    }
+
+    /**
+     * This method keeps the tasks which are not completed
+     */
+    public TaskQuery open() {
+        complete = false;
+        return this;
+    }
+
+    /**
+     * This method keeps the completed tasks
+     */
+    public TaskQuery done() {
+        complete = true;
+        return this;
+    }
+
+    /**
+     * This method keeps the tasks due in a range of days
+     * @param from first day, or null for no lower limit
+     * @param to last day, or null for no upper limit
+     */
+    public TaskQuery dueBetween(LocalDate from, LocalDate to) {
+        dueFrom = from;
+        dueTo = to;
+        hasDueRange = true;
+        withoutDueDate = false;
+        return this;
+    }
+
+    /**
+     * This method keeps the tasks which have no due date
+     */
+    public TaskQuery withoutDueDate() {
+        withoutDueDate = true;
+        hasDueRange = false;
+        return this;
+    }
+
+    /**
+     * This method keeps the tasks completed in a range of days
+     * @param from first day, or null for no lower limit
+     * @param to last day, or null for no upper limit
+     */
+    public TaskQuery completedBetween(LocalDate from, LocalDate to) {
+        completedFrom = from;
+        completedTo = to;
+        hasCompletedRange = true;
+        return this;
+    }
+
+    /**
+     * This method looks for the tasks in the archive of the list instead of the list
+     */
+    public TaskQuery archived() {
+        inArchive = true;
+        return this;
+    }
+
+    /**
+     * This method keeps the tasks matching search terms, see TodoList.search
+     */
+    public TaskQuery text(String text) {
+        this.text = text == null || text.isBlank() ? null : text.trim();
+        return this;
+    }
+
+    String project() {
+        return project;
+    }
+
+    Set<Task.Priority> priorities() {
+        return priorities;
+    }
+
+    Boolean complete() {
+        return complete;
+    }
+
+    boolean hasDueRange() {
+        return hasDueRange;
+    }
+
+    boolean withoutDue() {
+        return withoutDueDate;
+    }
+
+    LocalDate dueFrom() {
+        return dueFrom;
+    }
+
+    LocalDate dueTo() {
+        return dueTo;
+    }
+
+    boolean hasCompletedRange() {
+        return hasCompletedRange;
+    }
+
+    LocalDate completedFrom() {
+        return completedFrom;
+    }
+
+    LocalDate completedTo() {
+        return completedTo;
+    }
+
+    String text() {
+        return text;
+    }
+
+    /**
+     * @return true if the tasks are looked for in the archive
+     */
+    public boolean inArchive() {
+        return inArchive;
+    }
+
+    /**
+     * @return true if the project of the task is the one of the query
+     */
+    boolean matchesProject(Task task) {
+        return project == null || project.equalsIgnoreCase(task.getProject() == null ? "" : task.getProject());
+    }
+
+    boolean matchesPriority(Task task) {
+        return priorities == null || priorities.contains(task.getPriorityLevel());
+    }
+
+    boolean matchesCompletion(Task task) {
+        return complete == null || complete == task.isComplete();
+    }
+
+    boolean matchesDueDate(Task task) {
+        if (withoutDueDate) {
+            return task.getDueDate() == null;
+        }
+        return !hasDueRange || within(task.getDueDate(), dueFrom, dueTo);
+    }
+
+    boolean matchesCompletedDate(Task task) {
+        return !hasCompletedRange || (task.isComplete() && within(task.getCompletedDate(), completedFrom, completedTo));
+    }
+
+    boolean matchesText(Task task) {
+        if (text == null) {
+            return true;
+        }
+        for (List<String> group : SearchIndex.parse(text)) {
+            boolean all = true;
+            for (String term : group) {
+                all = all && SearchIndex.matches(task, term);
+            }
+            if (all) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * This method checks all conditions on one task, without any index
+     * @return true if the task matches the query
+     */
+    public boolean matches(Task task) {
+        return matchesProject(task) && matchesPriority(task) && matchesCompletion(task)
+                && matchesDueDate(task) && matchesCompletedDate(task) && matchesText(task);
+    }
+
+    private static boolean within(LocalDate date, LocalDate from, LocalDate to) {
+        return date != null && (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to));
+    }
+
+    /**
+     * This method parses a query, relative dates are counted from today
+     * @throws IllegalArgumentException if a condition is not valid
+     */
+    public static TaskQuery parse(String query) {
+        return parse(query, LocalDate.now());
+    }
+
+    /**
+     * This method parses a query
+     * @param query the query text, see the description of this class
+     * @param today the day relative dates are counted from
+     * @return the query
+     * @throws IllegalArgumentException if a condition is not valid
+     */
+    public static TaskQuery parse(String query, LocalDate today) {
+        TaskQuery result = new TaskQuery();
+        List<String> terms = new ArrayList<>();
+        for (String word : words(query)) {
+            int colon = word.indexOf(':');
+            String key = colon < 0 ? "" : word.substring(0, colon).toLowerCase(Locale.ROOT);
+            String value = colon < 0 ? word : word.substring(colon + 1);
+            switch (key) {
+                case "project" -> result.project(value);
+                case "priority" -> {
+                    for (String level : value.split(",")) {
+                        result.priority(Task.Priority.of(level));
+                    }
+                }
+                case "is" -> {
+                    switch (value.toLowerCase(Locale.ROOT)) {
+                        case "open" -> result.open();
+                        case "done" -> result.done();
+                        default -> throw new IllegalArgumentException("Use is:open or is:done instead of " + word);
+                    }
+                }
+                case "due" -> {
+                    if (value.equalsIgnoreCase("none")) {
+                        result.withoutDueDate();
+                    } else {
+                        LocalDate[] range = range(value, today);
+                        result.dueBetween(range[0], range[1]);
+                    }
+                }
+                case "completed" -> {
+                    LocalDate[] range = range(value, today);
+                    result.completedBetween(range[0], range[1]);
+                }
+                case "in" -> {
+                    if (!value.equalsIgnoreCase("archive")) {
+                        throw new IllegalArgumentException("Use in:archive instead of " + word);
+                    }
+                    result.archived();
+                }
+                default -> terms.add(word);
+            }
+        }
+        return result.text(String.join(" ", terms));
+    }
+
+    /**
+     * This method splits a query at spaces, keeping quoted parts together without the quotes
+     */
+    private static List<String> words(String query) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (Character.isWhitespace(c) && !quoted) {
+                if (word.length() > 0) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                }
+            } else {
+                word.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Missing closing quote in " + query);
+        }
+        if (word.length() > 0) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    /**
+     * @return the first and last day of a range, null for an open end
+     */
+    private static LocalDate[] range(String value, LocalDate today) {
+        String lower = value.toLowerCase(Locale.ROOT);
+        if (lower.equals("this-week") || lower.equals("next-week")) {
+            LocalDate monday = today.with(DayOfWeek.MONDAY).plusWeeks(lower.equals("next-week") ? 1 : 0);
+            return new LocalDate[]{monday, monday.plusDays(6)};
+        }
+        int dots = lower.indexOf("..");
+        if (dots < 0) {
+            return new LocalDate[]{date(lower, today, false), date(lower, today, true)};
+        }
+        String from = lower.substring(0, dots);
+        String to = lower.substring(dots + 2);
+        if (from.isEmpty() && to.isEmpty()) {
+            throw new IllegalArgumentException("A range needs a first or a last day: " + value);
+        }
+        return new LocalDate[]{from.isEmpty() ? null : date(from, today, false), to.isEmpty() ? null : date(to, today, true)};
+    }
+
+    /**
+     * @param last for a month, true for its last day and false for its first day
+     */
+    private static LocalDate date(String value, LocalDate today, boolean last) {
+        if (MONTH.matcher(value).matches()) {
+            try {
+                YearMonth month = YearMonth.parse(value);
+                return last ? month.atEndOfMonth() : month.atDay(1);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Not a month: " + value + " (use yyyy-mm)");
+            }
+        }
+        switch (value) {
+            case "today": return today;
+            case "tomorrow": return today.plusDays(1);
+            case "yesterday": return today.minusDays(1);
+            default:
+        }
+        try {
+            if (value.startsWith("+") || value.startsWith("-")) {
+                return today.plusDays(Integer.parseInt(value));
+            }
+            return LocalDate.parse(value);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Not a date: " + value
+                    + " (use yyyy-mm-dd, today, tomorrow, yesterday or days from today like +7)");
+        }
+    }
+
+    /**
+     * @return the query in the text syntax
+     */
+    @Override
+    public String toString() {
+        List<String> conditions = new ArrayList<>();
+        if (project != null) {
+            conditions.add("project:" + (project.contains(" ") ? "\"" + project + "\"" : project));
+        }
+        if (priorities != null) {
+            List<String> levels = new ArrayList<>();
+            for (Task.Priority level : priorities) {
+                levels.add(level.name());
+            }
+            conditions.add("priority:" + String.join(",", levels));
+        }
+        if (complete != null) {
+            conditions.add(complete ? "is:done" : "is:open");
+        }
+        if (withoutDueDate) {
+            conditions.add("due:none");
+        } else if (hasDueRange) {
+            conditions.add("due:" + range(dueFrom, dueTo));
+        }
+        if (hasCompletedRange) {
+            conditions.add("completed:" + range(completedFrom, completedTo));
+        }
+        if (inArchive) {
+            conditions.add("in:archive");
+        }
+        if (text != null) {
+            conditions.add(text);
+        }
+        return String.join(" ", conditions);
+    }
+
+    private static String range(LocalDate from, LocalDate to) {
+        if (from != null && from.equals(to)) {
+            return from.toString();
+        }
+        return (from == null ? "" : from.toString()) + ".." + (to == null ? "" : to.toString());
+    }
+}
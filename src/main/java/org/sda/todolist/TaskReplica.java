@@ -0,0 +1,225 @@
+package org.sda.todolist;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class keeps a list up to date with the changes of its primary, see ReplicationServer. The
+ * replica is read-only: listing, search and counts are answered from its own list, e.g. by a
+ * TaskServer, while the changes arrive in the background.
+ *
+ * The changes are applied in the order of their sequence and recorded in the journal of the
+ * replica with the same sequence, so a replica which has a data file is a warm standby: it is
+ * started again from its data file and only receives the changes it missed, and the primary can
+ * be started on a copy of it. A replica without state, or one which is further behind than the
+ * log of the primary holds, is sent a snapshot of all tasks first. If the connection is lost, the
+ * replica connects again after a pause which grows up to MAX_RETRY_MILLIS.
+ *
+ * The time from a change on the primary to its application on the replica is recorded as the
+ * REPLICATION operation of the metrics of the replica; the clocks of both must agree, e.g. by
+ * running on the same machine.
+ **/
+
+public class TaskReplica {
+    static final long MAX_RETRY_MILLIS = 2000;
+    // no message for this long means the connection is lost
+    private static final int READ_TIMEOUT_MILLIS = (int) (10 * ReplicationServer.HEARTBEAT_MILLIS);
+
+    private final ConcurrentTodoList tasks;
+    private final InetSocketAddress primary;
+    private final TaskMetrics metrics;
+    private volatile boolean running;
+    private volatile Socket socket;
+    private Thread thread;
+    // sequence of the last change applied, and of the last change of the primary
+    private volatile long applied;
+    private volatile long primarySequence;
+    private volatile boolean connected;
+    private volatile int snapshots;
+    // set when the changes no longer apply, e.g. the primary was started on other data
+    private boolean needsSnapshot;
+
+    /**
+     * @param tasks the list of the replica, it must not be changed in any other way
+     * @param primary the address of the ReplicationServer of the primary
+     */
+    public TaskReplica(ConcurrentTodoList tasks, InetSocketAddress primary) {
+        this.tasks = tasks;
+        this.primary = primary;
+        this.metrics = tasks.metrics();
+        this.applied = tasks.sequence();
+        this.primarySequence = applied;
+        // a list which never had a change has nothing in common with the primary yet
+        this.needsSnapshot = applied == 0;
+    }
+
+    /**
+     * This method starts receiving the changes on a background thread
+     */
+    public synchronized void start() {
+        running = true;
+        thread = new Thread(this::run, "todolist-replica");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * This method stops receiving changes and waits for the change being applied
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+        Thread receiver = thread;
+        if (receiver != null) {
+            receiver.interrupt();
+            receiver.join();
+        }
+    }
+
+    /**
+     * @return the sequence of the last change applied
+     */
+    public long appliedSequence() {
+        return applied;
+    }
+
+    /**
+     * @return the sequence of the last change of the primary, as of its last message
+     */
+    public long primarySequence() {
+        return primarySequence;
+    }
+
+    /**
+     * @return number of changes made on the primary and not applied here yet
+     */
+    public long lag() {
+        return Math.max(0, primarySequence - applied);
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * @return number of snapshots received, i.e., how often the replica had to catch up from one
+     */
+    public int snapshotCount() {
+        return snapshots;
+    }
+
+    /**
+     * This method waits until a change is applied
+     * @param sequence sequence of the change on the primary
+     * @param timeoutMillis maximum time to wait
+     * @return true if the change is applied
+     */
+    public synchronized boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (applied < sequence) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                return false;
+            }
+            wait(wait);
+        }
+        return true;
+    }
+
+    private void run() {
+        long retry = 50;
+        while (running) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(primary, READ_TIMEOUT_MILLIS);
+                connection.setSoTimeout(READ_TIMEOUT_MILLIS);
+                connection.setTcpNoDelay(true);
+                connected = true;
+                retry = 50;
+                receive(connection);
+            } catch (IOException e) {
+                // the primary is not reachable, or the connection was lost or closed by stop
+            } catch (RuntimeException e) {
+                // a change which does not apply to this list, e.g. its task is missing
+                Messages.showMessage("The replica is loaded again from the primary: " + e.getMessage(), true);
+                needsSnapshot = true;
+            } finally {
+                connected = false;
+            }
+            if (!running) {
+                return;
+            }
+            try {
+                Thread.sleep(retry);
+            } catch (InterruptedException e) {
+                return;
+            }
+            retry = Math.min(retry * 2, MAX_RETRY_MILLIS);
+        }
+    }
+
+    private void receive(Socket connection) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+        out.writeInt(ReplicationServer.MAGIC);
+        out.writeInt(ReplicationServer.VERSION);
+        out.writeLong(needsSnapshot ? ReplicationServer.NO_STATE : applied);
+        out.flush();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16));
+        while (running) {
+            byte type = in.readByte();
+            switch (type) {
+                case ReplicationServer.RECORD -> {
+                    long time = in.readLong();
+                    byte[] body = new byte[in.readInt()];
+                    in.readFully(body);
+                    JournalRecord record = JournalRecord.decode(new DataInputStream(new ByteArrayInputStream(body)));
+                    if (record.getSequence() > applied) {
+                        tasks.replicate(record);
+                        metrics.latency(TaskMetrics.Operation.REPLICATION)
+                                .record(Math.max(0, System.currentTimeMillis() - time) * 1_000_000);
+                        applied(record.getSequence());
+                    }
+                }
+                case ReplicationServer.HEARTBEAT -> primarySequence = in.readLong();
+                case ReplicationServer.SNAPSHOT -> {
+                    long sequence = in.readLong();
+                    List<Task> snapshot = new ArrayList<>(in.readInt());
+                    int parts = in.readInt();
+                    for (int i = 0; i < parts; i++) {
+                        byte[] part = new byte[in.readInt()];
+                        in.readFully(part);
+                        snapshot.addAll(BinaryTaskFile.Layout.parse(ByteBuffer.wrap(part)).tasks());
+                    }
+                    tasks.restore(snapshot, sequence);
+                    needsSnapshot = false;
+                    snapshots++;
+                    primarySequence = sequence;
+                    applied(sequence);
+                }
+                default -> throw new IOException("Unknown replication message " + type);
+            }
+        }
+    }
+
+    private synchronized void applied(long sequence) {
+        applied = sequence;
+        notifyAll();
+    }
+}
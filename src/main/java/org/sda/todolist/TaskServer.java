@@ -0,0 +1,380 @@
+package org.sda.todolist;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * This class serves a task list over HTTP with JSON, on the HttpServer of the JDK. Every request
+ * runs on its own virtual thread and reaches the list through ConcurrentTodoList.
+ *
+ * GET    /tasks?order=due&amp;status=open&amp;project=Home&amp;due=7&amp;offset=0&amp;limit=50   page of tasks
+ * GET    /tasks/{id}                                                        one task
+ * GET    /search?q=rent&amp;offset=0&amp;limit=50                                  page of matching tasks
+ * POST   /tasks                 {"title":..,"dueDate":..,...}               add a task, 201
+ * PATCH  /tasks/{id}            {"priority":"HIGH","complete":true}         change fields
+ * POST   /tasks/{id}/complete                                               mark as completed
+ * DELETE /tasks/{id}                                                        delete, 204
+ *
+ * Tasks are the JSON objects of TaskFormat.JSON_LINES. The responses of GET carry the version of
+ * the list as ETag; a request with this ETag in If-None-Match gets 304 without reading the list,
+ * as long as nothing changed. Responses have a fixed length, so connections are kept alive.
+ * The server of a replica (see TaskReplica) is read-only and answers 405 to all changes.
+ **/
+
+public class TaskServer {
+    public static final int DEFAULT_PORT = 8080;
+    // maximum number of tasks of a page
+    public static final int MAX_LIMIT = 1000;
+
+    private final ConcurrentTodoList tasks;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean readOnly;
+
+    /**
+     * @param tasks the list to serve
+     * @param address the address to listen on, port 0 for any free port
+     */
+    public TaskServer(ConcurrentTodoList tasks, InetSocketAddress address) throws IOException {
+        this(tasks, address, false);
+    }
+
+    /**
+     * @param tasks the list to serve
+     * @param address the address to listen on, port 0 for any free port
+     * @param readOnly true to serve only GET requests, e.g. for a replica
+     */
+    public TaskServer(ConcurrentTodoList tasks, InetSocketAddress address, boolean readOnly) throws IOException {
+        this.tasks = tasks;
+        this.readOnly = readOnly;
+        this.server = HttpServer.create(address, 1024);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/tasks", this::handle);
+        server.createContext("/search", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * This method stops accepting requests and waits up to a second for running requests
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        Response response;
+        try (InputStream in = exchange.getRequestBody()) {
+            String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            response = route(exchange, body);
+        } catch (NumberFormatException e) {
+            response = Response.error(400, "Not a number: " + e.getMessage());
+        } catch (IllegalArgumentException | DateTimeException e) {
+            // validation of the request and of the setters of Task, e.g. a past due date
+            response = Response.error(400, String.valueOf(e.getMessage()));
+        } catch (RuntimeException e) {
+            // e.g. the journal could not be written, the request itself was fine
+            response = Response.error(500, "Internal error: " + e);
+        }
+        send(exchange, response);
+    }
+
+    private Response route(HttpExchange exchange, String body) {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().replaceAll("/+$", "").split("/");
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+
+        if (path.length < 2 || !path[1].equals("tasks") && !path[1].equals("search")) {
+            return Response.error(404, "Not found: " + exchange.getRequestURI().getPath());
+        }
+        if (readOnly && !method.equals("GET")) {
+            return Response.notAllowed("GET");
+        }
+        if (path[1].equals("search")) {
+            if (!method.equals("GET")) {
+                return Response.notAllowed("GET");
+            }
+            int offset = offset(query);
+            int limit = limit(query);
+            return conditional(ifNoneMatch, () -> page(tasks.search(query.getOrDefault("q", ""), offset, limit), offset, limit));
+        }
+        if (path.length == 2) {
+            switch (method) {
+                case "GET" -> {
+                    return conditional(ifNoneMatch, () -> list(query));
+                }
+                case "POST" -> {
+                    String[] values = TaskFormat.JSON_LINES.parse(body, null);
+                    checkRequired(values, true);
+                    Task task = TaskImporter.toTask(values);
+                    tasks.add(task);
+                    Response response = new Response(201, task(task));
+                    response.location = "/tasks/" + task.getId();
+                    return response;
+                }
+                default -> {
+                    return Response.notAllowed("GET, POST");
+                }
+            }
+        }
+        long id = Long.parseLong(path[2]);
+        if (path.length == 4 && path[3].equals("complete")) {
+            if (!method.equals("POST")) {
+                return Response.notAllowed("POST");
+            }
+            return tasks.markCompleted(id) ? new Response(200, task(tasks.find(id))) : Response.notFound(id);
+        }
+        if (path.length != 3) {
+            return Response.error(404, "Not found: " + exchange.getRequestURI().getPath());
+        }
+        switch (method) {
+            case "GET" -> {
+                return conditional(ifNoneMatch, () -> {
+                    Task task = tasks.find(id);
+                    return task == null ? Response.notFound(id) : new Response(200, task(task));
+                });
+            }
+            case "PATCH" -> {
+                String[] values = TaskFormat.JSON_LINES.parse(body, null);
+                checkRequired(values, false);
+                return patch(id, values);
+            }
+            case "DELETE" -> {
+                return tasks.remove(id) ? new Response(204, null) : Response.notFound(id);
+            }
+            default -> {
+                return Response.notAllowed("GET, PATCH, DELETE");
+            }
+        }
+    }
+
+    /**
+     * This method checks the values Task requires, which its setters reject with a
+     * NullPointerException; other exceptions of that kind are errors of the server
+     * @param adding true if the values are a new task, false if they are changes
+     * @throws IllegalArgumentException if the title or due date is missing or empty
+     */
+    private static void checkRequired(String[] values, boolean adding) throws IllegalArgumentException {
+        for (int column : new int[] {TaskFormat.TITLE, TaskFormat.DUE_DATE}) {
+            String value = values[column];
+            if (value == null ? adding : value.isBlank()) {
+                throw new IllegalArgumentException("REQUIRED: " + TaskFormat.COLUMNS.get(column) + " can not be empty.");
+            }
+        }
+    }
+
+    /**
+     * This method answers 304 if the list did not change since the version the client holds
+     */
+    private Response conditional(String ifNoneMatch, Supplier<Response> reader) {
+        // read before the list, so a change made meanwhile gives a newer version on the next request
+        String etag = "\"" + tasks.version() + "\"";
+        if (etag.equals(ifNoneMatch)) {
+            Response response = new Response(304, null);
+            response.etag = etag;
+            return response;
+        }
+        Response response = reader.get();
+        if (response.status == 200) {
+            response.etag = etag;
+        }
+        return response;
+    }
+
+    private Response list(Map<String, String> query) {
+        TaskOrder order = null;
+        String orderName = query.get("order");
+        if (orderName != null) {
+            order = switch (orderName.toLowerCase(Locale.ROOT)) {
+                case "due" -> TaskOrder.DUE_DATE;
+                case "project" -> TaskOrder.PROJECT;
+                case "priority" -> TaskOrder.PRIORITY;
+                case "completion" -> TaskOrder.COMPLETION;
+                default -> throw new IllegalArgumentException("Unknown order: " + orderName);
+            };
+        }
+        Predicate<Task> filter = null;
+        String status = query.get("status");
+        if (status != null) {
+            boolean complete = switch (status) {
+                case "open" -> false;
+                case "done" -> true;
+                default -> throw new IllegalArgumentException("Status must be open or done: " + status);
+            };
+            filter = task -> task.isComplete() == complete;
+        }
+        String project = query.get("project");
+        if (project != null) {
+            filter = and(filter, task -> task.getProject().equals(project));
+        }
+        if (query.containsKey("due")) {
+            LocalDate last = LocalDate.now().plusDays(Integer.parseInt(query.get("due")));
+            filter = and(filter, task -> !task.isComplete() && task.getDueDate() != null && !task.getDueDate().isAfter(last));
+        }
+        int offset = offset(query);
+        int limit = limit(query);
+        return page(tasks.getTasks(order, filter, offset, limit), offset, limit);
+    }
+
+    private static int offset(Map<String, String> query) {
+        return Math.max(0, Integer.parseInt(query.getOrDefault("offset", "0")));
+    }
+
+    private static int limit(Map<String, String> query) {
+        return Math.max(0, Math.min(MAX_LIMIT, Integer.parseInt(query.getOrDefault("limit", "50"))));
+    }
+
+    private Response patch(long id, String[] values) {
+        // read like the importer reads it, a value which is not valid is rejected before any change
+        Boolean complete = values[TaskFormat.COMPLETE] == null ? null : TaskImporter.isComplete(values[TaskFormat.COMPLETE]);
+        Map<TaskField, String> changes = new EnumMap<>(TaskField.class);
+        put(changes, TaskField.TITLE, values[TaskFormat.TITLE]);
+        put(changes, TaskField.PROJECT, values[TaskFormat.PROJECT]);
+        put(changes, TaskField.DUE_DATE, values[TaskFormat.DUE_DATE]);
+        put(changes, TaskField.PRIORITY, values[TaskFormat.PRIORITY]);
+        put(changes, TaskField.NOTES, values[TaskFormat.NOTES]);
+        // after the due date, a new rule starts from it
+        put(changes, TaskField.RECURRENCE, values[TaskFormat.RECURRENCE]);
+        if (!changes.isEmpty() && !tasks.update(id, changes)) {
+            return Response.notFound(id);
+        }
+        if (complete != null && !(complete ? tasks.markCompleted(id) : tasks.markInComplete(id))) {
+            return Response.notFound(id);
+        }
+        Task task = tasks.find(id);
+        return task == null ? Response.notFound(id) : new Response(200, task(task));
+    }
+
+    private static void put(Map<TaskField, String> changes, TaskField field, String value) {
+        if (value != null) {
+            changes.put(field, value);
+        }
+    }
+
+    private static Predicate<Task> and(Predicate<Task> first, Predicate<Task> second) {
+        return first == null ? second : first.and(second);
+    }
+
+    private static String task(Task task) {
+        StringBuilder json = new StringBuilder(256);
+        TaskFormat.JSON_LINES.format(task, json);
+        return json.toString();
+    }
+
+    private static Response page(ConcurrentTodoList.Page page, int offset, int limit) {
+        List<Task> found = page.tasks();
+        StringBuilder json = new StringBuilder(64 + found.size() * 200)
+                .append("{\"total\":").append(page.total())
+                .append(",\"offset\":").append(offset)
+                .append(",\"limit\":").append(limit)
+                .append(",\"tasks\":[");
+        for (int i = 0; i < found.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            TaskFormat.JSON_LINES.format(found.get(i), json);
+        }
+        return new Response(200, json.append("]}").toString());
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            String value = equals < 0 ? "" : parameter.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        try (exchange) {
+            if (response.etag != null) {
+                exchange.getResponseHeaders().set("ETag", response.etag);
+                exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            }
+            if (response.location != null) {
+                exchange.getResponseHeaders().set("Location", response.location);
+            }
+            if (response.allow != null) {
+                exchange.getResponseHeaders().set("Allow", response.allow);
+            }
+            if (response.body == null) {
+                exchange.sendResponseHeaders(response.status, -1);
+                return;
+            }
+            byte[] bytes = response.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(response.status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * This class is the status, JSON body and headers of a response
+     **/
+    private static final class Response {
+        final int status;
+        final String body;
+        String etag;
+        String location;
+        String allow;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response error(int status, String message) {
+            StringBuilder json = new StringBuilder("{\"error\":");
+            TaskFormat.appendJson(message, json);
+            return new Response(status, json.append('}').toString());
+        }
+
+        static Response notFound(long id) {
+            return error(404, "No task with id " + id);
+        }
+
+        static Response notAllowed(String methods) {
+            Response response = error(405, "Allowed methods: " + methods);
+            response.allow = methods;
+            return response;
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package org.sda.todolist;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * This class is an immutable view of all tasks of a TodoList at one point in time, see
+ * TodoList.snapshot. It can be listed, searched and written while the list is changed.
+ *
+ * The tasks are kept in a persistent trie indexed by task id with 32 children per node, so the
+ * tasks are in id order, which is the order of the list. A change creates a new snapshot which
+ * copies only the nodes on the path to the changed task (at most 7, usually 3 or 4) and shares
+ * all other nodes with the old snapshot. Taking a snapshot is therefore only reading a reference,
+ * and an old snapshot keeps only the nodes and tasks changed since it was taken.
+ *
+ * The tasks of a snapshot are copies which are never changed, they must not be changed by the
+ * code reading them either.
+ **/
+
+public final class TaskSnapshot extends AbstractList<Task> implements RandomAccess {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final TaskSnapshot EMPTY = new TaskSnapshot(null, 0, 0);
+
+    // null for an empty snapshot
+    private final Node root;
+    // number of id bits below the root: ids up to 2^(shift + 5) - 1 fit
+    private final int shift;
+    // journal sequence of the last change included
+    private final long sequence;
+
+    private TaskSnapshot(Node root, int shift, long sequence) {
+        this.root = root;
+        this.shift = shift;
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return a snapshot without tasks
+     */
+    public static TaskSnapshot empty() {
+        return EMPTY;
+    }
+
+    /**
+     * This method builds a snapshot of copies of the given tasks
+     * @param tasks the tasks, each with a different id
+     * @param sequence journal sequence of the list the tasks are taken from
+     */
+    public static TaskSnapshot of(Iterable<Task> tasks, long sequence) {
+        Node root = null;
+        int shift = 0;
+        for (Task task : tasks) {
+            long id = checkId(task.getId());
+            while (root != null && id >>> (shift + BITS) != 0) {
+                root = Node.above(root);
+                shift += BITS;
+            }
+            if (root == null) {
+                shift = shiftFor(id);
+                root = new Node();
+            }
+            // the nodes are not shared yet, so they are changed in place
+            root.put(id, shift, task.copy());
+        }
+        return root == null ? new TaskSnapshot(null, 0, sequence) : new TaskSnapshot(root, shift, sequence);
+    }
+
+    /**
+     * This method returns a snapshot with a task added or replaced by a copy of the given task
+     * @param task the new state of the task
+     * @param sequence journal sequence of the change
+     */
+    public TaskSnapshot with(Task task, long sequence) {
+        long id = checkId(task.getId());
+        Node newRoot = root;
+        int newShift = shift;
+        if (newRoot == null) {
+            newShift = shiftFor(id);
+        } else {
+            while (id >>> (newShift + BITS) != 0) {
+                newRoot = Node.above(newRoot);
+                newShift += BITS;
+            }
+        }
+        return new TaskSnapshot(Node.with(newRoot, id, newShift, task.copy()), newShift, sequence);
+    }
+
+    /**
+     * This method returns a snapshot without the task with the given id
+     * @param sequence journal sequence of the change
+     */
+    public TaskSnapshot without(long id, long sequence) {
+        if (root == null || id < 0 || id >>> (shift + BITS) != 0 || find(id) == null) {
+            return new TaskSnapshot(root, shift, sequence);
+        }
+        return new TaskSnapshot(Node.without(root, id, shift), shift, sequence);
+    }
+
+    /**
+     * @return the journal sequence of the last change included in this snapshot
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the task with the given id, or null if it is not in this snapshot
+     */
+    public Task find(long id) {
+        if (root == null || id < 0 || id >>> (shift + BITS) != 0) {
+            return null;
+        }
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Node) node.slots[(int) (id >>> level) & MASK];
+            if (node == null) {
+                return null;
+            }
+        }
+        return (Task) node.slots[(int) id & MASK];
+    }
+
+    /**
+     * @param index position of the task in id order
+     */
+    @Override
+    public Task get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            for (Object slot : node.slots) {
+                if (slot == null) {
+                    continue;
+                }
+                Node child = (Node) slot;
+                if (index < child.size) {
+                    node = child;
+                    break;
+                }
+                index -= child.size;
+            }
+        }
+        for (Object slot : node.slots) {
+            if (slot != null && index-- == 0) {
+                return (Task) slot;
+            }
+        }
+        throw new IllegalStateException("Sizes of the snapshot do not match its tasks");
+    }
+
+    @Override
+    public int size() {
+        return root == null ? 0 : root.size;
+    }
+
+    /**
+     * @return the tasks in id order, found by one walk through the trie instead of a search from
+     * the root for every task
+     */
+    @Override
+    public Iterator<Task> iterator() {
+        return new Iterator<>() {
+            // nodes from the root down to the current leaf, and the next slot of each
+            private final Node[] path = new Node[shift / BITS + 1];
+            private final int[] next = new int[path.length];
+            private int depth = root == null ? -1 : 0;
+            private Task following;
+
+            {
+                if (root != null) {
+                    path[0] = root;
+                    advance();
+                }
+            }
+
+            private void advance() {
+                following = null;
+                while (depth >= 0) {
+                    Node node = path[depth];
+                    if (next[depth] == WIDTH) {
+                        depth--;
+                        continue;
+                    }
+                    Object slot = node.slots[next[depth]++];
+                    if (slot == null) {
+                        continue;
+                    }
+                    if (depth == path.length - 1) {
+                        following = (Task) slot;
+                        return;
+                    }
+                    depth++;
+                    path[depth] = (Node) slot;
+                    next[depth] = 0;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return following != null;
+            }
+
+            @Override
+            public Task next() {
+                if (following == null) {
+                    throw new NoSuchElementException();
+                }
+                Task task = following;
+                advance();
+                return task;
+            }
+        };
+    }
+
+    /**
+     * @return the number of nodes of this snapshot which are not shared with the other one
+     */
+    int nodesNotSharedWith(TaskSnapshot other) {
+        List<Node> nodes = new ArrayList<>();
+        collect(root, shift, nodes);
+        List<Node> otherNodes = new ArrayList<>();
+        collect(other.root, other.shift, otherNodes);
+        Set<Node> shared = Collections.newSetFromMap(new IdentityHashMap<>());
+        shared.addAll(otherNodes);
+        int count = 0;
+        for (Node node : nodes) {
+            if (!shared.contains(node)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void collect(Node node, int level, List<Node> nodes) {
+        if (node == null) {
+            return;
+        }
+        nodes.add(node);
+        if (level > 0) {
+            for (Object slot : node.slots) {
+                collect((Node) slot, level - BITS, nodes);
+            }
+        }
+    }
+
+    private static long checkId(long id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("A task of a snapshot must have an id: " + id);
+        }
+        return id;
+    }
+
+    private static int shiftFor(long id) {
+        int shift = 0;
+        while (id >>> (shift + BITS) != 0) {
+            shift += BITS;
+        }
+        return shift;
+    }
+
+    /**
+     * This class is a node of the trie: tasks in a leaf (level 0), child nodes otherwise, and the
+     * number of tasks below it
+     **/
+    private static final class Node {
+        final Object[] slots;
+        int size;
+
+        Node() {
+            this.slots = new Object[WIDTH];
+        }
+
+        private Node(Object[] slots, int size) {
+            this.slots = slots;
+            this.size = size;
+        }
+
+        /**
+         * @return a new root which has the given root as its first child
+         */
+        static Node above(Node root) {
+            Node node = new Node();
+            node.slots[0] = root;
+            node.size = root.size;
+            return node;
+        }
+
+        /**
+         * This method puts a task into a node which is not shared, changing it in place
+         */
+        void put(long id, int level, Task task) {
+            int slot = (int) (id >>> level) & MASK;
+            if (level == 0) {
+                if (slots[slot] == null) {
+                    size++;
+                }
+                slots[slot] = task;
+                return;
+            }
+            Node child = (Node) slots[slot];
+            if (child == null) {
+                child = new Node();
+                slots[slot] = child;
+            }
+            size -= child.size;
+            child.put(id, level - BITS, task);
+            size += child.size;
+        }
+
+        /**
+         * @return a copy of the node (or a new node, for null) with the task put below it
+         */
+        static Node with(Node node, long id, int level, Task task) {
+            int slot = (int) (id >>> level) & MASK;
+            Object[] slots = node == null ? new Object[WIDTH] : Arrays.copyOf(node.slots, WIDTH);
+            int size = node == null ? 0 : node.size;
+            if (level == 0) {
+                if (slots[slot] == null) {
+                    size++;
+                }
+                slots[slot] = task;
+                return new Node(slots, size);
+            }
+            Node child = (Node) slots[slot];
+            Node newChild = with(child, id, level - BITS, task);
+            slots[slot] = newChild;
+            return new Node(slots, size - (child == null ? 0 : child.size) + newChild.size);
+        }
+
+        /**
+         * @return a copy of the node without the task, or null if the node has no tasks left
+         */
+        static Node without(Node node, long id, int level) {
+            int slot = (int) (id >>> level) & MASK;
+            if (node.size == 1) {
+                return null;
+            }
+            Object[] slots = Arrays.copyOf(node.slots, WIDTH);
+            slots[slot] = level == 0 ? null : without((Node) slots[slot], id, level - BITS);
+            return new Node(slots, node.size - 1);
+        }
+    }
+}
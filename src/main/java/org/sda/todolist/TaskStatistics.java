@@ -0,0 +1,279 @@
+package org.sda.todolist;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts the tasks of a TodoList: in total, completed and not completed, overdue and
+ * due soon, and per project and per priority.
+ *
+ * The counters are built once from all tasks and then updated with every change, so reading them
+ * never walks the list. They are LongAdders, updated and read without locks. Overdue and due soon
+ * depend on the current date: they are derived from the number of open tasks per due date and
+ * moved forward once when the date changes, by adding the tasks of the days which passed. Only
+ * these two counters and the per-day counts are updated under a short lock, which is shared with
+ * that daily roll.
+ **/
+
+public class TaskStatistics implements TaskListener {
+    private static final Task.Priority[] PRIORITIES = Task.Priority.values();
+    // after a longer time (or if the clock goes back) the date counters are counted again
+    private static final int MAX_ROLL_DAYS = 366;
+
+    private final Clock clock;
+    private final LongAdder total = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final Map<String, Counts> byProject = new ConcurrentHashMap<>();
+    // by Task.Priority ordinal
+    private final Counts[] byPriority = new Counts[PRIORITIES.length];
+    // not completed tasks by due date (epoch-day); guarded by this, like the fields below
+    private final Map<Integer, Long> openByDueDay = new HashMap<>();
+    // the date (epoch-day) overdue and dueSoon are counted for
+    private long today;
+    private long overdue;
+    private long dueSoon;
+
+    /**
+     * This class holds the number of tasks of one project or one priority
+     */
+    public static final class Counts {
+        private final LongAdder total = new LongAdder();
+        private final LongAdder completed = new LongAdder();
+
+        public long total() {
+            return total.sum();
+        }
+
+        public long completed() {
+            return completed.sum();
+        }
+
+        public long open() {
+            return total() - completed();
+        }
+
+        private void add(boolean complete, int delta) {
+            total.add(delta);
+            if (complete) {
+                completed.add(delta);
+            }
+        }
+    }
+
+    TaskStatistics(Clock clock) {
+        this.clock = clock;
+        this.today = LocalDate.now(clock).toEpochDay();
+        for (int i = 0; i < byPriority.length; i++) {
+            byPriority[i] = new Counts();
+        }
+    }
+
+    /**
+     * This method counts all tasks of a list
+     * @param tasks the tasks to count
+     * @param clock the clock giving the current date
+     */
+    public static TaskStatistics build(List<Task> tasks, Clock clock) {
+        return build(tasks, clock, ParallelTasks.sequential());
+    }
+
+    /**
+     * This method counts parts of the list in parallel and adds up their counts
+     * @param tasks the tasks to count
+     * @param clock the clock giving the current date
+     * @param parallel the pool to count on
+     */
+    public static TaskStatistics build(List<Task> tasks, Clock clock, ParallelTasks parallel) {
+        if (tasks instanceof CompactTaskList compact) {
+            // straight from the primitive columns, without creating views
+            return parallel.collect(compact.size(), () -> new TaskStatistics(clock), (statistics, row) ->
+                    statistics.count(compact.project(row), compact.priorityOrdinal(row), compact.isComplete(row),
+                            compact.dueDay(row), 1), TaskStatistics::merge);
+        }
+        return parallel.collect(tasks, () -> new TaskStatistics(clock), TaskStatistics::taskAdded, TaskStatistics::merge);
+    }
+
+    /**
+     * This method adds the counts of another part of the list
+     * @return this
+     */
+    private TaskStatistics merge(TaskStatistics other) {
+        total.add(other.total());
+        completed.add(other.completed());
+        other.byProject.forEach((project, counts) -> {
+            Counts merged = project(project);
+            merged.total.add(counts.total());
+            merged.completed.add(counts.completed());
+        });
+        for (int i = 0; i < byPriority.length; i++) {
+            byPriority[i].total.add(other.byPriority[i].total());
+            byPriority[i].completed.add(other.byPriority[i].completed());
+        }
+        synchronized (other) {
+            other.openByDueDay.forEach((day, count) -> countOpen(day, (int) (long) count));
+        }
+        return this;
+    }
+
+    @Override
+    public void taskAdded(Task task) {
+        count(task.getProject(), task.getPriorityLevel().ordinal(), task.isComplete(), dueDay(task.getDueDate()), 1);
+    }
+
+    @Override
+    public void taskRemoved(Task task) {
+        count(task.getProject(), task.getPriorityLevel().ordinal(), task.isComplete(), dueDay(task.getDueDate()), -1);
+    }
+
+    @Override
+    public void taskUpdated(Task task, TaskField field, String oldValue) {
+        boolean complete = task.isComplete();
+        switch (field) {
+            case PROJECT -> {
+                project(oldValue).add(complete, -1);
+                project(task.getProject()).add(complete, 1);
+            }
+            case PRIORITY -> {
+                byPriority[Task.Priority.restore(oldValue).ordinal()].add(complete, -1);
+                byPriority[task.getPriorityLevel().ordinal()].add(complete, 1);
+            }
+            case DUE_DATE -> {
+                if (!complete) {
+                    countOpen(dueDay(oldValue == null ? null : LocalDate.parse(oldValue)), -1);
+                    countOpen(dueDay(task.getDueDate()), 1);
+                }
+            }
+            default -> {
+                // title and notes are not counted
+            }
+        }
+    }
+
+    @Override
+    public void taskCompletionChanged(Task task) {
+        int delta = task.isComplete() ? 1 : -1;
+        completed.add(delta);
+        project(task.getProject()).completed.add(delta);
+        byPriority[task.getPriorityLevel().ordinal()].completed.add(delta);
+        countOpen(dueDay(task.getDueDate()), -delta);
+    }
+
+    public long total() {
+        return total.sum();
+    }
+
+    public long completed() {
+        return completed.sum();
+    }
+
+    public long open() {
+        return total() - completed();
+    }
+
+    /**
+     * @return number of not completed tasks with a due date before today
+     */
+    public synchronized long overdue() {
+        roll();
+        return overdue;
+    }
+
+    /**
+     * @return number of not completed tasks due today or within the next Task.DUE_SOON_DAYS days
+     */
+    public synchronized long dueSoon() {
+        roll();
+        return dueSoon;
+    }
+
+    /**
+     * @return the counts of one project, all zero if the project has no tasks
+     */
+    public Counts project(String project) {
+        return byProject.computeIfAbsent(project == null ? "" : project, key -> new Counts());
+    }
+
+    /**
+     * @return the counts of all projects with at least one task, by project name
+     */
+    public SortedMap<String, Counts> projects() {
+        SortedMap<String, Counts> projects = new TreeMap<>();
+        for (Map.Entry<String, Counts> entry : byProject.entrySet()) {
+            if (entry.getValue().total() > 0) {
+                projects.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return projects;
+    }
+
+    public Counts priority(Task.Priority priority) {
+        return byPriority[priority.ordinal()];
+    }
+
+    private void count(String project, int priority, boolean complete, int dueDay, int delta) {
+        total.add(delta);
+        if (complete) {
+            completed.add(delta);
+        } else {
+            countOpen(dueDay, delta);
+        }
+        project(project).add(complete, delta);
+        byPriority[priority].add(complete, delta);
+    }
+
+    private synchronized void countOpen(int dueDay, int delta) {
+        if (dueDay == BinaryTaskFile.NO_DATE) {
+            return;
+        }
+        roll();
+        openByDueDay.merge(dueDay, (long) delta, (count, change) -> count + change == 0 ? null : count + change);
+        long daysLeft = dueDay - today;
+        if (daysLeft < 0) {
+            overdue += delta;
+        } else if (daysLeft <= Task.DUE_SOON_DAYS) {
+            dueSoon += delta;
+        }
+    }
+
+    /**
+     * This method moves the date counters to the current date, called with the lock held
+     */
+    private void roll() {
+        long now = LocalDate.now(clock).toEpochDay();
+        if (now == today) {
+            return;
+        }
+        if (now < today || now - today > MAX_ROLL_DAYS) {
+            overdue = 0;
+            for (Map.Entry<Integer, Long> day : openByDueDay.entrySet()) {
+                if (day.getKey() < now) {
+                    overdue += day.getValue();
+                }
+            }
+        } else {
+            for (long day = today; day < now; day++) {
+                overdue += open(day);
+            }
+        }
+        dueSoon = 0;
+        for (long day = now; day <= now + Task.DUE_SOON_DAYS; day++) {
+            dueSoon += open(day);
+        }
+        today = now;
+    }
+
+    private long open(long day) {
+        return openByDueDay.getOrDefault((int) day, 0L);
+    }
+
+    private static int dueDay(LocalDate dueDate) {
+        return dueDate == null ? BinaryTaskFile.NO_DATE : (int) dueDate.toEpochDay();
+    }
+}
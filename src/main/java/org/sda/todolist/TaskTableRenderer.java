@@ -0,0 +1,273 @@
+package org.sda.todolist;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * This class writes tasks as the rows of a table with fixed column widths.
+ *
+ * The rows are written into one buffered writer which is flushed once per page, instead of a
+ * String.format and a println (which flushes the terminal) per task. Cells are padded from a
+ * reusable array of spaces, numbers and dates are written digit by digit, so a row allocates
+ * nothing beyond the strings of the task itself.
+ **/
+
+public class TaskTableRenderer {
+    // color of the LOW priority, there is no constant for it in Messages
+    private static final String ORANGE_TEXT = "\u001B[33m";
+    private static final String OVERDUE_TEXT = "\u001B[1;31mOVERDUE\u001B[0m";
+    private static final String DONE_TEXT = "YES ✅";
+    private static final String NOT_DONE_TEXT = "NO ❌";
+    private static final String DUE_SOON_TEXT = "Reminder: due soon!";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * This enum lists the content of a column
+     */
+    public enum Cell {
+        NUM, TITLE, PROJECT, PRIORITY, DUE_DATE, DUE_DATE_OVERDUE, DAYS_LEFT, DAYS_LEFT_OVERDUE, STATUS
+    }
+
+    /**
+     * This enum lists the tables shown by TodoList, with header, width and content of each column
+     */
+    public enum Layout {
+        WITH_NUMBER(100,
+                new Column("NUM", 4, Cell.NUM),
+                new Column("TITLE", 25, Cell.TITLE),
+                new Column("PROJECT", 20, Cell.PROJECT),
+                new Column("PRIORITY", 10, Cell.PRIORITY),
+                new Column("DUE DATE", 12, Cell.DUE_DATE),
+                new Column("DAYS LEFT", 15, Cell.DAYS_LEFT_OVERDUE),
+                new Column("COMPLETED", 10, Cell.STATUS)),
+        BY_DATE(95,
+                new Column("DUE DATE", 12, Cell.DUE_DATE),
+                new Column("TITLE", 25, Cell.TITLE),
+                new Column("PROJECT", 20, Cell.PROJECT),
+                new Column("PRIORITY", 10, Cell.PRIORITY),
+                new Column("DAYS LEFT", 15, Cell.DAYS_LEFT),
+                new Column("COMPLETED", 10, Cell.STATUS)),
+        BY_PROJECT(90,
+                new Column("PROJECT", 20, Cell.PROJECT),
+                new Column("TITLE", 30, Cell.TITLE),
+                new Column("DUE DATE", 25, Cell.DUE_DATE_OVERDUE),
+                new Column("STATUS", 10, Cell.STATUS));
+
+        private final int separatorWidth;
+        private final Column[] columns;
+
+        Layout(int separatorWidth, Column... columns) {
+            this.separatorWidth = separatorWidth;
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * This class holds the header, width and content of one column
+     */
+    public static final class Column {
+        private final String header;
+        private final int width;
+        private final Cell cell;
+
+        public Column(String header, int width, Cell cell) {
+            this.header = header;
+            this.width = width;
+            this.cell = cell;
+        }
+    }
+
+    private final Writer out;
+    private final Layout layout;
+    private final long today;
+    private final char[] spaces;
+    private final char[] digits = new char[20];
+
+    /**
+     * @param out the writer to write the table to, it should be buffered
+     * @param layout the columns of the table
+     * @param today the date the days left are counted from
+     */
+    public TaskTableRenderer(Writer out, Layout layout, LocalDate today) {
+        this.out = out;
+        this.layout = layout;
+        this.today = today.toEpochDay();
+        int widest = layout.separatorWidth;
+        for (Column column : layout.columns) {
+            widest = Math.max(widest, column.width);
+        }
+        this.spaces = new char[widest + 1];
+        Arrays.fill(spaces, ' ');
+    }
+
+    /**
+     * This method returns a writer to standard output (terminal) with a large buffer, so that
+     * System.out flushes once per buffer instead of once per line. The writer must be flushed
+     * before printing to System.out again.
+     */
+    public static Writer terminal() {
+        return new BufferedWriter(new OutputStreamWriter(System.out, Charset.defaultCharset()), BUFFER_SIZE);
+    }
+
+    /**
+     * This method writes the column headers followed by a separator line
+     */
+    public void header() throws IOException {
+        Column[] columns = layout.columns;
+        for (int i = 0; i < columns.length; i++) {
+            cell(columns[i].header, columns[i].width, null, i == columns.length - 1);
+        }
+        out.write('\n');
+        for (int i = 0; i < layout.separatorWidth; i++) {
+            out.write('=');
+        }
+        out.write('\n');
+    }
+
+    /**
+     * This method writes one task as a row of the table
+     * @param number the task number shown in the NUM column
+     * @param task the task to show
+     */
+    public void row(int number, Task task) throws IOException {
+        LocalDate due = task.getDueDate();
+        long daysTillDue = due == null ? 0 : due.toEpochDay() - today;
+        boolean overdue = due != null && !task.isComplete() && daysTillDue < 0;
+
+        Column[] columns = layout.columns;
+        for (int i = 0; i < columns.length; i++) {
+            Column column = columns[i];
+            boolean last = i == columns.length - 1;
+            switch (column.cell) {
+                case NUM -> number(number, column.width, false, last);
+                case TITLE -> cell(task.isRecurring() ? task.getTitle() + " (repeats)" : task.getTitle(), column.width, null, last);
+                case PROJECT -> cell(task.getProject(), column.width, null, last);
+                case PRIORITY -> cell(task.getPriority(), column.width, priorityColor(task.getPriority()), last);
+                case DUE_DATE -> date(due, column.width, false, last);
+                case DUE_DATE_OVERDUE -> date(due, column.width, overdue, last);
+                case DAYS_LEFT -> number(daysTillDue, column.width, false, last);
+                case DAYS_LEFT_OVERDUE -> number(daysTillDue, column.width, overdue, last);
+                case STATUS -> {
+                    if (task.isComplete()) {
+                        cell(DONE_TEXT, column.width, null, last);
+                    } else if (due != null && daysTillDue >= 0 && daysTillDue <= Task.DUE_SOON_DAYS) {
+                        cell(DUE_SOON_TEXT, column.width, Messages.YELLOW_TEXT, last);
+                    } else {
+                        cell(NOT_DONE_TEXT, column.width, null, last);
+                    }
+                }
+            }
+        }
+        out.write('\n');
+    }
+
+    /**
+     * This method writes a line of text below the table
+     */
+    public void line(String text) throws IOException {
+        out.write(text);
+        out.write('\n');
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    private void cell(String text, int width, String color, boolean last) throws IOException {
+        String value = text == null ? "null" : text;
+        if (color != null) {
+            out.write(color);
+            out.write(value);
+            out.write(Messages.RESET_TEXT);
+        } else {
+            out.write(value);
+        }
+        pad(width - value.length(), last);
+    }
+
+    private void number(long value, int width, boolean overdue, boolean last) throws IOException {
+        int length = toDigits(value);
+        out.write(digits, digits.length - length, length);
+        if (overdue) {
+            out.write(' ');
+            out.write(OVERDUE_TEXT);
+            length += " OVERDUE".length();
+        }
+        pad(width - length, last);
+    }
+
+    private void date(LocalDate date, int width, boolean overdue, boolean last) throws IOException {
+        int length;
+        if (date == null) {
+            out.write('-');
+            length = 1;
+        } else {
+            // yyyy-mm-dd like LocalDate.toString, for years 0 to 9999
+            int start = digits.length - 10;
+            writeDigits(date.getYear(), start, 4);
+            digits[start + 4] = '-';
+            writeDigits(date.getMonthValue(), start + 5, 2);
+            digits[start + 7] = '-';
+            writeDigits(date.getDayOfMonth(), start + 8, 2);
+            out.write(digits, start, 10);
+            length = 10;
+        }
+        if (overdue) {
+            out.write(' ');
+            out.write(OVERDUE_TEXT);
+            length += " OVERDUE".length();
+        }
+        pad(width - length, last);
+    }
+
+    /**
+     * This method pads a cell to its width plus the space between two columns; the last cell
+     * of a row is not padded
+     */
+    private void pad(int count, boolean last) throws IOException {
+        if (!last) {
+            out.write(spaces, 0, Math.max(count, 0) + 1);
+        }
+    }
+
+    /**
+     * This method writes a number right-aligned at the end of the digits array
+     * @return the number of characters written
+     */
+    private int toDigits(long value) {
+        int position = digits.length;
+        long rest = Math.abs(value);
+        do {
+            digits[--position] = (char) ('0' + rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        if (value < 0) {
+            digits[--position] = '-';
+        }
+        return digits.length - position;
+    }
+
+    private void writeDigits(int value, int start, int count) {
+        for (int i = start + count - 1; i >= start; i--) {
+            digits[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static String priorityColor(String priority) {
+        if (priority == null) {
+            return null;
+        }
+        switch (priority) {
+            case "HIGH": return Messages.RED_TEXT;
+            case "MEDIUM": return Messages.GREEN_TEXT;
+            case "LOW": return ORANGE_TEXT;
+            default: return null;
+        }
+    }
+}
@@ -1,16 +1,31 @@
 package org.sda.todolist;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Scanner;
-import java.time.temporal.ChronoUnit;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.LongFunction;
 import java.util.Random;
 
 /**
@@ -22,19 +37,1304 @@ import java.util.Random;
  **/
 
 public class TodoList {
-    private ArrayList<Task> taskList;
+    // the journal is compacted into a new data file once it grows beyond this size
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 4L * 1024 * 1024;
+    // number of tasks shown at once by the listings
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    // number of days after today shown by the "what's due" screen
+    public static final int DEFAULT_DUE_DAYS = 7;
+
+    private List<Task> taskList;
+    private long nextId = 1;
+    // memory-map the data file and create Task objects only when they are used
+    private boolean lazyLoad;
+    // keep the tasks in primitive arrays instead of Task objects
+    private boolean compactStorage;
+    // store the tasks in one file per project instead of one data file, see ShardedTaskStore
+    private boolean sharded;
+    private ShardedTaskStore store;
+    // compression of the blocks of the data file, see BlockTaskFile
+    private int compressionLevel = BlockTaskFile.DEFAULT_LEVEL;
+    // pool for building indexes and scanning many tasks, see ParallelTasks
+    private ParallelTasks parallel = ParallelTasks.sequential();
+    // receives every change for the replicas of this list, see ReplicationServer
+    private ReplicationLog replicationLog;
+    // tasks completed long ago, kept next to the data file instead of in the list, see TaskArchive
+    private TaskArchive archive;
+
+    // journal of all changes since the data file was written, null until readFromFile is called
+    private Path dataFile;
+    private TaskJournal journal;
+    private long sequence;
+    private long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private ExecutorService compactor;
+    private Future<?> compaction;
+    // no compaction is started while a file is imported, only once after it
+    private volatile boolean importing;
+    // journal sequence right after loading, derived files written for this state can be reused
+    private long loadedSequence = -1;
+    // a data file which could not be read: without a journal, changes are saved by rewriting it
+    private Path unreadFile;
+    private long unreadSequence;
+    private boolean unreadFileKept;
+
+    // structures kept up to date with every change; only changed and iterated under the monitor
+    private final List<TaskListener> listeners = new ArrayList<>();
+    // built or loaded on first use, under the monitor; tasksById is read without it by findTask
+    private volatile Map<Long, Task> tasksById;
+    private SearchIndex searchIndex;
+    private SortedTaskIndexes sortedIndexes;
+    private QueryIndex queryIndex;
+    private TaskStatistics statistics;
+    private DueDateWheel dueDates;
+    private RecurrenceIndex recurring;
+    // positions of tasks by id, only used if the list is not in id order (files sorted by old versions)
+    private Map<Long, Integer> positionsById;
+    // one reader of the user input for all prompts, see setInput
+    private Scanner input;
+    // changes which can be undone and redone, see undo and redo
+    private UndoHistory history = new UndoHistory();
+    // steps of the change being made, collected between beginChange and endChange
+    private UndoHistory.Change change;
+    private int changeDepth;
+    // false while changes are made which are not recorded in the history, e.g. by undo itself
+    private boolean remembering = true;
+    // timings of the operations and bytes read and written, see metrics()
+    private TaskMetrics metrics = new TaskMetrics();
+    // the latest snapshot, kept up to date by snapshotUpdater once snapshot() was called
+    private volatile TaskSnapshot latest;
+    private final TaskListener snapshotUpdater = new TaskListener() {
+        @Override
+        public void taskAdded(Task task) {
+            latest = latest.with(task, sequence);
+        }
+
+        @Override
+        public void taskRemoved(Task task) {
+            latest = latest.without(task.getId(), sequence);
+        }
+
+        @Override
+        public void taskUpdated(Task task, TaskField field, String oldValue) {
+            latest = latest.with(task, sequence);
+        }
+
+        @Override
+        public void taskCompletionChanged(Task task) {
+            latest = latest.with(task, sequence);
+        }
+    };
+
+    public TodoList() {
+        taskList = new ArrayList<>();
+    }
+
+    public void addTask(String title, String project, LocalDate dueDate) {
+        addTask(new Task(title, project, dueDate, "MEDIUM"));
+    }
+
+    /**
+     * This method adds a new task to the list and records it in the journal
+     * @param task the task to add, it gets a new id
+     */
+    public synchronized void addTask(Task task) {
+        long start = metrics.start();
+        task.setId(nextId);
+        // encoded before the list is changed, so that a task the journal can not take is not added
+        JournalRecord added = JournalRecord.add(sequence + 1, task);
+        added.encode();
+        nextId++;
+        sequence++;
+        taskList.add(task);
+        if (tasksById != null) {
+            tasksById.put(task.getId(), task);
+        }
+        positionsById = null;
+        record(added);
+        remember(added, JournalRecord.delete(0, task.getId()));
+        for (TaskListener listener : listeners) {
+            listener.taskAdded(task);
+        }
+        compactIfDue();
+        metrics.record(TaskMetrics.Operation.ADD, start);
+    }
+
+    /**
+     * This method adds many tasks at once, e.g. while importing a file. If more tasks are added
+     * than a quarter of the list, the indexes are dropped and built again on first use, which is
+     * cheaper than updating them task by task. The added tasks are not recorded in the undo
+     * history, which keeps the changes made before.
+     * @param tasks the tasks to add, each gets a new id
+     */
+    public synchronized void addTasks(List<Task> tasks) {
+        if (tasks.size() > taskList.size() / 4) {
+            dropIndexes();
+        }
+        boolean wasRemembering = remembering;
+        remembering = false;
+        try {
+            for (Task task : tasks) {
+                addTask(task);
+            }
+        } finally {
+            remembering = wasRemembering;
+        }
+    }
+
+    /**
+     * This method updates one field of a task through its validating setter and records the change
+     * @param task the task to update
+     * @param field the field to change
+     * @param value the new value as text, dates as yyyy-mm-dd
+     */
+    public synchronized void updateTask(Task task, TaskField field, String value) {
+        long start = metrics.start();
+        task = stored(task);
+        String oldValue = field.read(task);
+        String oldDue = TaskField.DUE_DATE.read(task);
+        // the value is validated on a copy and the change encoded before the task is changed, so
+        // that a value which is rejected leaves the task and the journal alike
+        Task changed = task.copy();
+        field.apply(changed, value);
+        JournalRecord updated = JournalRecord.update(sequence + 1, task.getId(), field, field.read(changed));
+        updated.encode();
+        // a new rule moves the due date to its first occurrence, both are undone at once
+        String newDue = TaskField.DUE_DATE.read(changed);
+        JournalRecord moved = field == TaskField.RECURRENCE && !Objects.equals(oldDue, newDue)
+                ? JournalRecord.update(sequence + 2, task.getId(), TaskField.DUE_DATE, newDue) : null;
+        field.apply(task, value);
+        beginChange();
+        try {
+            sequence++;
+            recordUpdate(task, updated, oldValue);
+            if (moved != null) {
+                sequence++;
+                recordUpdate(task, moved, oldDue);
+            }
+        } finally {
+            endChange();
+        }
+        compactIfDue();
+        metrics.record(TaskMetrics.Operation.EDIT, start);
+    }
+
+    /**
+     * This method records a field of a task which was changed, and tells the listeners
+     * @param updated the change, with the next sequence
+     * @param oldValue the value before the change
+     */
+    private void recordUpdate(Task task, JournalRecord updated, String oldValue) {
+        record(updated);
+        remember(updated, JournalRecord.update(0, task.getId(), updated.getField(), oldValue));
+        for (TaskListener listener : listeners) {
+            listener.taskUpdated(task, updated.getField(), oldValue);
+        }
+    }
+
+    /**
+     * This method sets a field to a value without validation and records it like updateTask,
+     * e.g. the due date of a repeating task moving on to its next occurrence, which may be past
+     * @param value the value in the form the field is read in, see TaskField.read
+     */
+    private void change(Task task, TaskField field, String value) {
+        String oldValue = field.read(task);
+        if (!Objects.equals(oldValue, value)) {
+            JournalRecord updated = JournalRecord.update(sequence + 1, task.getId(), field, value);
+            updated.encode();
+            task.restoreField(field, value);
+            sequence++;
+            recordUpdate(task, updated, oldValue);
+        }
+    }
+
+    /**
+     * This method marks a task as completed. Of a repeating task only the next occurrence is
+     * completed, or the occurrence a copy made for a range of days stands for, see completeOccurrence.
+     */
+    public synchronized void markCompleted(Task task) {
+        if (task.isOccurrence() || task.isRecurring() && !task.isComplete()) {
+            completeOccurrence(task, task.getDueDate());
+            return;
+        }
+        long start = metrics.start();
+        complete(stored(task));
+        compactIfDue();
+        metrics.record(TaskMetrics.Operation.COMPLETE, start);
+    }
+
+    private void complete(Task task) {
+        boolean changed = !task.isComplete();
+        LocalDate oldDate = task.getCompletedDate();
+        task.markCompleted();
+        JournalRecord completed = JournalRecord.complete(++sequence, task.getId(), true, task.getCompletedDate());
+        record(completed);
+        if (changed || !Objects.equals(oldDate, task.getCompletedDate())) {
+            remember(completed, JournalRecord.complete(0, task.getId(), !changed, oldDate));
+        }
+        if (changed) {
+            for (TaskListener listener : listeners) {
+                listener.taskCompletionChanged(task);
+            }
+        }
+    }
+
+    public synchronized void markInComplete(Task task) {
+        long start = metrics.start();
+        task = stored(task);
+        boolean changed = task.isComplete();
+        LocalDate oldDate = task.getCompletedDate();
+        task.markInComplete();
+        JournalRecord reopened = JournalRecord.complete(++sequence, task.getId(), false, null);
+        record(reopened);
+        if (changed) {
+            remember(reopened, JournalRecord.complete(0, task.getId(), true, oldDate));
+            for (TaskListener listener : listeners) {
+                listener.taskCompletionChanged(task);
+            }
+        }
+        compactIfDue();
+        metrics.record(TaskMetrics.Operation.REOPEN, start);
+    }
+
+    /**
+     * This method completes one occurrence of a repeating task. The occurrence becomes a task of
+     * its own, completed and not repeating, and the repeating task moves on to its next occurrence;
+     * a later occurrence is left out of its rule instead. Completing the last occurrence completes
+     * the repeating task itself. All changes are undone at once.
+     * @param task the repeating task, or a copy standing for one of its occurrences
+     * @param day the day of the occurrence
+     * @return the completed task
+     * @throws IllegalArgumentException if the task does not repeat or does not occur on the day
+     */
+    public synchronized Task completeOccurrence(Task task, LocalDate day) {
+        long start = metrics.start();
+        Task series = occurring(task, day);
+        Task done;
+        if (isLast(series, day)) {
+            complete(series);
+            done = series;
+        } else {
+            beginChange();
+            try {
+                done = Task.restore(series.getTitle(), series.getProject(), day, series.getPriority(), true,
+                        LocalDate.now(), series.getNotes());
+                addTask(done);
+                leaveOut(series, day);
+            } finally {
+                endChange();
+            }
+        }
+        compactIfDue();
+        metrics.record(TaskMetrics.Operation.COMPLETE, start);
+        return done;
+    }
+
+    /**
+     * This method leaves one occurrence of a repeating task out without completing it
+     * @param task the repeating task, or a copy standing for one of its occurrences
+     * @param day the day of the occurrence
+     * @throws IllegalArgumentException if the task does not occur on the day, or if it is its
+     * last occurrence, which is completed or deleted instead
+     */
+    public synchronized void skipOccurrence(Task task, LocalDate day) {
+        long start = metrics.start();
+        Task series = occurring(task, day);
+        if (isLast(series, day)) {
+            throw new IllegalArgumentException("The last occurrence of task " + series.getId()
+                    + " can not be skipped, complete or delete the task instead");
+        }
+        beginChange();
+        try {
+            leaveOut(series, day);
+        } finally {
+            endChange();
+        }
+        compactIfDue();
+        metrics.record(TaskMetrics.Operation.EDIT, start);
+    }
+
+    /**
+     * This method turns one occurrence of a repeating task into a task of its own, which can then
+     * be changed like any other task, e.g. moved to another day; the repeating task leaves the day
+     * out. The last occurrence is the repeating task itself, which then no longer repeats.
+     * @param task the repeating task, or a copy standing for one of its occurrences
+     * @param day the day of the occurrence
+     * @return the task due on the day
+     * @throws IllegalArgumentException if the task does not repeat or does not occur on the day
+     */
+    public synchronized Task detachOccurrence(Task task, LocalDate day) {
+        long start = metrics.start();
+        Task series = occurring(task, day);
+        Task detached;
+        beginChange();
+        try {
+            if (isLast(series, day)) {
+                change(series, TaskField.RECURRENCE, null);
+                detached = series;
+            } else {
+                detached = Task.restore(series.getTitle(), series.getProject(), day, series.getPriority(), false,
+                        null, series.getNotes());
+                addTask(detached);
+                leaveOut(series, day);
+            }
+        } finally {
+            endChange();
+        }
+        compactIfDue();
+        metrics.record(TaskMetrics.Operation.EDIT, start);
+        return detached;
+    }
+
+    /**
+     * This method finds the repeating task of an occurrence in the list
+     * @throws IllegalArgumentException if the task does not repeat or does not occur on the day
+     */
+    private Task occurring(Task task, LocalDate day) {
+        Task series = task.isOccurrence() ? findTask(task.getId()) : stored(task);
+        if (series == null || !series.isRecurring() || series.isComplete()) {
+            throw new IllegalArgumentException("Task " + task.getId() + " does not repeat");
+        }
+        LocalDate due = series.getDueDate();
+        if (!day.equals(due) && (day.isBefore(due) || !series.getRecurrence().occursOn(day))) {
+            throw new IllegalArgumentException("Task " + task.getId() + " does not occur on " + day
+                    + ", it is next due on " + due);
+        }
+        return series;
+    }
+
+    private static boolean isLast(Task series, LocalDate day) {
+        return day.equals(series.getDueDate()) && series.getRecurrence().next(day.plusDays(1)) == null;
+    }
+
+    /**
+     * This method leaves an occurrence out of a repeating task: for the next occurrence the task
+     * moves on to the one after it, a later occurrence becomes an exception of the rule
+     */
+    private void leaveOut(Task series, LocalDate day) {
+        Recurrence rule = series.getRecurrence();
+        if (day.equals(series.getDueDate())) {
+            LocalDate next = rule.next(day.plusDays(1));
+            change(series, TaskField.DUE_DATE, next.toString());
+            change(series, TaskField.RECURRENCE, rule.withoutExceptionsBefore(next).toString());
+        } else {
+            change(series, TaskField.RECURRENCE, rule.except(day).toString());
+        }
+    }
+
+    /**
+     * This method removes a task from the list and records the deletion
+     * @param task the task to remove
+     * @return true if the task was in the list
+     */
+    public synchronized boolean removeTask(Task task) {
+        long start = metrics.start();
+        try {
+            task = stored(task);
+            JournalRecord restore = JournalRecord.add(0, task);
+            if (!delete(task)) {
+                return false;
+            }
+            remember(JournalRecord.delete(0, task.getId()), restore);
+            compactIfDue();
+            return true;
+        } finally {
+            metrics.record(TaskMetrics.Operation.DELETE, start);
+        }
+    }
+
+    private boolean delete(Task task) {
+        if (!taskList.remove(task)) {
+            return false;
+        }
+        if (tasksById != null) {
+            tasksById.remove(task.getId());
+        }
+        positionsById = null;
+        record(JournalRecord.delete(++sequence, task.getId()));
+        for (TaskListener listener : listeners) {
+            listener.taskRemoved(task);
+        }
+        return true;
+    }
+
+    /**
+     * This method removes many tasks at once: the list is compacted in one pass instead of once
+     * per task, then every deletion is recorded and the listeners are called. If more tasks are
+     * removed than a quarter of the list, the indexes are dropped and built again on first use.
+     * @param tasks copies of the tasks to remove, which can still be read after the removal
+     */
+    private void removeAll(List<Task> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        if (tasks.size() > taskList.size() / 4) {
+            dropIndexes();
+        }
+        Set<Long> ids = new HashSet<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        taskList.removeIf(task -> ids.contains(task.getId()));
+        positionsById = null;
+        for (Task task : tasks) {
+            if (tasksById != null) {
+                tasksById.remove(task.getId());
+            }
+            record(JournalRecord.delete(++sequence, task.getId()));
+            for (TaskListener listener : listeners) {
+                listener.taskRemoved(task);
+            }
+        }
+    }
+
+    /**
+     * @return copies of the given tasks which are in the list
+     */
+    private List<Task> tasksIn(List<Task> tasks) {
+        List<Task> found = new ArrayList<>();
+        for (Task task : tasks) {
+            Task stored = findTask(task.getId());
+            if (stored != null) {
+                found.add(stored.copy());
+            }
+        }
+        return found;
+    }
+
+    /**
+     * This method moves the tasks completed more than a number of days ago into the archive of
+     * the data file, see TaskArchive. They are appended to the archive first and then removed
+     * like deleted tasks, so that the data file, the indexes and the replicas only keep the other
+     * tasks. The undo history is cleared, since it may refer to the archived tasks.
+     * @param days tasks completed before this many days before today are archived
+     * @return the number of archived tasks
+     * @throws IOException if the archive can not be written; no task is removed then
+     * @throws IllegalStateException if the list was not read from a data file
+     */
+    public synchronized int archiveCompleted(int days) throws IOException {
+        if (archive == null || journal == null) {
+            throw new IllegalStateException("Tasks can only be archived next to a data file");
+        }
+        long start = metrics.start();
+        LocalDate before = LocalDate.now().minusDays(days);
+        List<Task> archived = new ArrayList<>();
+        for (Task task : tasksToWrite()) {
+            if (task.isComplete() && task.getCompletedDate() != null && task.getCompletedDate().isBefore(before)) {
+                archived.add(task.copy());
+            }
+        }
+        if (!archived.isEmpty()) {
+            // the sequence the list has once the tasks are removed, see readFromFile
+            metrics.add(TaskMetrics.Counter.BYTES_WRITTEN, archive.append(archived, sequence + archived.size(), compressionLevel));
+            removeAll(archived);
+            history.clear();
+            journal.sync();
+            compactIfDue();
+        }
+        metrics.record(TaskMetrics.Operation.ARCHIVE, start);
+        return archived.size();
+    }
+
+    /**
+     * This method finds the archived tasks matching a query; only the parts of the archive with
+     * days of completion in the range of the query are read, see TaskArchive.find
+     * @param query the conditions
+     * @return matching tasks by day of completion, none if the list has no archive
+     * @throws IOException if the archive can not be read
+     */
+    public List<Task> queryArchive(TaskQuery query) throws IOException {
+        TaskArchive current;
+        synchronized (this) {
+            current = archive;
+        }
+        if (current == null) {
+            return new ArrayList<>();
+        }
+        long start = metrics.start();
+        long read = current.bytesRead();
+        List<Task> found = current.find(query);
+        metrics.add(TaskMetrics.Counter.BYTES_READ, current.bytesRead() - read);
+        metrics.record(TaskMetrics.Operation.ARCHIVE_QUERY, start);
+        return found;
+    }
+
+    /**
+     * @return the number of archived tasks
+     */
+    public synchronized long archivedCount() {
+        return archive == null ? 0 : archive.size();
+    }
+
+    /**
+     * This method starts a change made of several steps, e.g. several fields of a task updated
+     * one after the other; it is undone and redone as a whole. Every call must be followed by a
+     * call of endChange, calls can be nested.
+     */
+    public synchronized void beginChange() {
+        if (changeDepth++ == 0) {
+            change = new UndoHistory.Change();
+        }
+    }
+
+    /**
+     * This method ends a change started with beginChange and records it in the undo history
+     */
+    public synchronized void endChange() {
+        if (changeDepth > 0 && --changeDepth == 0) {
+            history.record(change);
+            change = null;
+        }
+    }
+
+    /**
+     * This method reverts the last change which was not undone yet. Reverting is recorded in the
+     * journal like any other change.
+     * @return false if there is nothing to undo
+     */
+    public synchronized boolean undo() {
+        long start = metrics.start();
+        UndoHistory.Change last = history.undo();
+        if (last == null) {
+            return false;
+        }
+        applyAll(last.undoRecords());
+        compactIfDue();
+        metrics.record(TaskMetrics.Operation.UNDO, start);
+        return true;
+    }
+
+    /**
+     * This method applies the last undone change again
+     * @return false if there is nothing to redo
+     */
+    public synchronized boolean redo() {
+        long start = metrics.start();
+        UndoHistory.Change last = history.redo();
+        if (last == null) {
+            return false;
+        }
+        applyAll(last.redoRecords());
+        compactIfDue();
+        metrics.record(TaskMetrics.Operation.REDO, start);
+        return true;
+    }
+
+    /**
+     * @return the timings of the operations of this list and the bytes it read and wrote
+     */
+    public TaskMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * This method replaces the metrics, e.g. to share one registry between several lists
+     */
+    public void setMetrics(TaskMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    /**
+     * @return the undo history of the list
+     */
+    public UndoHistory history() {
+        return history;
+    }
+
+    /**
+     * This method replaces the undo history, e.g. by one with another memory budget
+     */
+    public synchronized void setUndoHistory(UndoHistory history) {
+        this.history.close();
+        this.history = history;
+    }
+
+    private void remember(JournalRecord apply, JournalRecord revert) {
+        if (!remembering) {
+            return;
+        }
+        if (change != null) {
+            change.add(apply, revert);
+            return;
+        }
+        UndoHistory.Change single = new UndoHistory.Change();
+        single.add(apply, revert);
+        history.record(single);
+    }
+
+    private void applyAll(List<JournalRecord> records) {
+        boolean wasRemembering = remembering;
+        remembering = false;
+        try {
+            for (JournalRecord record : records) {
+                apply(record);
+            }
+        } finally {
+            remembering = wasRemembering;
+        }
+    }
+
+    /**
+     * This method applies a record of the undo history like a change made by the user, except
+     * that the values are not validated again (e.g. a due date in the past is restored as it was)
+     */
+    private void apply(JournalRecord record) {
+        if (record.getType() == JournalRecord.Type.ADD) {
+            Task task = record.getTask();
+            insert(task);
+            nextId = Math.max(nextId, task.getId() + 1);
+            if (tasksById != null) {
+                tasksById.put(task.getId(), task);
+            }
+            positionsById = null;
+            record(JournalRecord.add(++sequence, task));
+            for (TaskListener listener : listeners) {
+                listener.taskAdded(task);
+            }
+            return;
+        }
+        Task task = findTask(record.getTaskId());
+        if (task == null) {
+            throw new IllegalStateException("No task with id " + record.getTaskId());
+        }
+        switch (record.getType()) {
+            case UPDATE -> {
+                TaskField field = record.getField();
+                String oldValue = field.read(task);
+                task.restoreField(field, record.getValue());
+                record(JournalRecord.update(++sequence, task.getId(), field, record.getValue()));
+                for (TaskListener listener : listeners) {
+                    listener.taskUpdated(task, field, oldValue);
+                }
+            }
+            case COMPLETE -> {
+                boolean changed = task.isComplete() != record.isComplete();
+                task.restoreCompletion(record.isComplete(), record.getCompletedDate());
+                record(JournalRecord.complete(++sequence, task.getId(), record.isComplete(), record.getCompletedDate()));
+                if (changed) {
+                    for (TaskListener listener : listeners) {
+                        listener.taskCompletionChanged(task);
+                    }
+                }
+            }
+            default -> delete(task);
+        }
+    }
+
+    /**
+     * This method puts a task back into the list at the position of its id, so that a deleted
+     * task gets its task number back. Mapped and compact lists only append.
+     */
+    private void insert(Task task) {
+        int size = taskList.size();
+        if (size == 0 || taskList.get(size - 1).getId() < task.getId()
+                || taskList instanceof MappedTaskList || taskList instanceof CompactTaskList) {
+            taskList.add(task);
+            return;
+        }
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (taskList.get(middle).getId() < task.getId()) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        taskList.add(low, task);
+    }
+
+    /**
+     * This method finds a task by its id
+     * @param id id of the task
+     * @return the task, or null if there is no task with this id
+     */
+    public Task findTask(long id) {
+        if (taskList instanceof MappedTaskList mapped) {
+            return mapped.findById(id);
+        }
+        if (taskList instanceof CompactTaskList compact) {
+            return compact.findById(id);
+        }
+        // not synchronized: it is called from the threads of a parallel scan, see lookup
+        Map<Long, Task> byId = tasksById;
+        return (byId != null ? byId : buildTasksById()).get(id);
+    }
+
+    private synchronized Map<Long, Task> buildTasksById() {
+        if (tasksById == null) {
+            Map<Long, Task> byId = new HashMap<>();
+            for (Task task : taskList) {
+                byId.put(task.getId(), task);
+            }
+            tasksById = byId;
+        }
+        return tasksById;
+    }
+
+    /**
+     * This method returns the object holding a task in the list. A compact list does not keep
+     * the Task objects added to it, changes must be made through its own view of the task.
+     */
+    private Task stored(Task task) {
+        if (taskList instanceof CompactTaskList compact && !compact.holds(task)) {
+            Task view = compact.findById(task.getId());
+            return view != null ? view : task;
+        }
+        return task;
+    }
+
+    /**
+     * This method registers a structure which is kept up to date with every change of the list
+     * @param listener the listener to call after each change
+     */
+    public synchronized void addListener(TaskListener listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized void removeListener(TaskListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * This method finds all tasks matching a query through the search index. Terms separated by
+     * spaces must all match, groups separated by OR are alternatives. A term matches if it is
+     * contained in the title or the project, or is one of the words of the notes.
+     * @param query the search terms
+     * @return matching tasks in list order
+     */
+    public List<Task> search(String query) {
+        long start = metrics.start();
+        List<Task> found = tasksOf(searchIndex().search(query, tasksToWrite(), lookup()), 0, Integer.MAX_VALUE);
+        metrics.record(TaskMetrics.Operation.SEARCH, start);
+        return found;
+    }
+
+    /**
+     * This method finds all tasks matching a query, see TaskQuery. The conditions are answered
+     * from bitmaps which are kept up to date with every change, see QueryIndex. A query with
+     * in:archive is answered from the archive instead, see queryArchive. A repeating task which
+     * is due later than the days of the query but occurs in them is found as a copy for its first
+     * occurrence in them.
+     * @param query the conditions
+     * @return matching tasks in list order
+     * @throws UncheckedIOException if the archive can not be read
+     */
+    public List<Task> query(TaskQuery query) {
+        if (query.inArchive()) {
+            try {
+                return queryArchive(query);
+            } catch (IOException e) {
+                throw new UncheckedIOException("The archive can not be read: " + e.getMessage(), e);
+            }
+        }
+        long start = metrics.start();
+        List<Task> found = tasksOf(planQuery(query).execute(), 0, Integer.MAX_VALUE);
+        if (query.hasDueRange() && recurring().size() > 0) {
+            found = withOccurrences(query, found);
+        }
+        metrics.record(TaskMetrics.Operation.QUERY, start);
+        return found;
+    }
+
+    /**
+     * This method adds the repeating tasks which are not due in the days of a query but have a
+     * later occurrence in them, if the copy for that occurrence matches the query
+     */
+    private List<Task> withOccurrences(TaskQuery query, List<Task> found) {
+        Set<Long> ids = new HashSet<>();
+        for (Task task : found) {
+            ids.add(task.getId());
+        }
+        List<Task> tasks = new ArrayList<>(found);
+        for (long id : recurring().ids()) {
+            Task task = findTask(id);
+            if (task == null || ids.contains(id) || task.getDueDate() == null) {
+                continue;
+            }
+            LocalDate from = query.dueFrom() == null || query.dueFrom().isBefore(task.getDueDate())
+                    ? task.getDueDate().plusDays(1) : query.dueFrom();
+            LocalDate day = task.getRecurrence().next(from);
+            if (day != null && (query.dueTo() == null || !day.isAfter(query.dueTo()))) {
+                Task occurrence = task.occurrence(day);
+                if (query.matches(occurrence)) {
+                    tasks.add(occurrence);
+                }
+            }
+        }
+        if (tasks.size() > found.size()) {
+            tasks.sort((first, second) -> Integer.compare(positionOf(first), positionOf(second)));
+        }
+        return tasks;
+    }
+
+    /**
+     * This method finds all tasks matching a query in the text syntax of TaskQuery, e.g.
+     * "project:Work priority:high is:open due:this-week"
+     * @param query the conditions
+     * @return matching tasks in list order
+     * @throws IllegalArgumentException if the query is not valid
+     */
+    public List<Task> query(String query) {
+        return query(TaskQuery.parse(query));
+    }
+
+    /**
+     * This method plans a query without executing it, e.g. to show which conditions are
+     * answered from bitmaps
+     */
+    QueryIndex.Plan planQuery(TaskQuery query) {
+        return queryIndex().plan(query, this::searchIndex, tasksToWrite(), lookup());
+    }
+
+    private synchronized QueryIndex queryIndex() {
+        if (queryIndex == null) {
+            queryIndex = QueryIndex.build(tasksToWrite(), parallel);
+            queryIndex.setParallel(parallel);
+            listeners.add(queryIndex);
+        }
+        return queryIndex;
+    }
+
+    /**
+     * @return findTask, with the map of the tasks by id built before it is called from several threads
+     */
+    private LongFunction<Task> lookup() {
+        if (parallel.isParallel(taskList.size())) {
+            findTask(0);
+        }
+        return this::findTask;
+    }
+
+    /**
+     * This method returns the search index, reading it from the index file next to the data file
+     * if it was written for the loaded state, or building it from all tasks otherwise
+     */
+    private synchronized SearchIndex searchIndex() {
+        if (searchIndex == null) {
+            if (dataFile != null && sequence == loadedSequence) {
+                searchIndex = SearchIndex.read(indexFile(), sequence, taskList.size());
+            }
+            if (searchIndex == null) {
+                searchIndex = SearchIndex.build(tasksToWrite(), parallel);
+            }
+            searchIndex.setParallel(parallel);
+            listeners.add(searchIndex);
+        }
+        return searchIndex;
+    }
+
+    /**
+     * This method returns the tasks in the given order, without changing the order of the list
+     * @param order the order to show the tasks in
+     * @return all tasks in that order
+     */
+    public List<Task> getTasks(TaskOrder order) {
+        return getTasks(order, 0, taskList.size());
+    }
+
+    /**
+     * This method returns a part of the tasks in the given order. The order is read from indexes
+     * which are kept sorted with every change, so no sorting is done here.
+     * @param order the order to show the tasks in
+     * @param offset number of tasks to skip
+     * @param limit maximum number of tasks to return
+     * @return the tasks from offset in that order
+     */
+    public List<Task> getTasks(TaskOrder order, int offset, int limit) {
+        long start = metrics.start();
+        List<Task> tasks = tasksOf(sortedIndexes().window(order, offset, limit), 0, Integer.MAX_VALUE);
+        metrics.record(TaskMetrics.Operation.list(order), start);
+        return tasks;
+    }
+
+    private synchronized SortedTaskIndexes sortedIndexes() {
+        if (sortedIndexes == null) {
+            sortedIndexes = SortedTaskIndexes.build(taskList, parallel);
+            listeners.add(sortedIndexes);
+        }
+        return sortedIndexes;
+    }
+
+    /**
+     * @return the tasks which are not completed and due before today, by due date
+     */
+    public List<Task> getOverdueTasks() {
+        long start = metrics.start();
+        List<Task> tasks = tasksOf(dueDates().overdue(), 0, Integer.MAX_VALUE);
+        metrics.record(TaskMetrics.Operation.LIST_OVERDUE, start);
+        return tasks;
+    }
+
+    /**
+     * @param days number of days after today, 0 for today only
+     * @return the tasks which are not completed and due from today to today + days, by due date;
+     * the later occurrences of repeating tasks in these days are copies, see laterOccurrences
+     */
+    public List<Task> getTasksDueWithin(int days) {
+        long start = metrics.start();
+        long today = dueDates().today().toEpochDay();
+        List<Task> tasks = withLaterOccurrences(tasksOf(dueDates().dueWithin(days), 0, Integer.MAX_VALUE),
+                today, today + Math.max(0, days));
+        metrics.record(TaskMetrics.Operation.LIST_DUE, start);
+        return tasks;
+    }
+
+    /**
+     * @return the tasks which are not completed and due on a date, including copies for the
+     * repeating tasks which occur on it later than their next occurrence
+     */
+    public List<Task> getTasksDueOn(LocalDate date) {
+        return withLaterOccurrences(tasksOf(dueDates().dueOn(date), 0, Integer.MAX_VALUE), date.toEpochDay(), date.toEpochDay());
+    }
+
+    /**
+     * This method returns copies of the tasks which are not completed and due on a date. Like the
+     * methods changing the list it holds the lock of this list, so it can be called from another
+     * thread, e.g. by the ReminderScheduler; tasks of a mapped list are read without caching them.
+     */
+    public synchronized List<Task> copiesOfTasksDueOn(LocalDate date) {
+        int[] ids = dueDates().dueOn(date);
+        List<Task> copies = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Task task = copyOfTask(id);
+            if (task != null) {
+                copies.add(task);
+            }
+        }
+        // the copies for occurrences are not kept by the list
+        copies.addAll(laterOccurrences(date.toEpochDay(), date.toEpochDay()));
+        return copies;
+    }
+
+    /**
+     * This method returns a copy of a task, it can be called from another thread like copiesOfTasksDueOn
+     * @return the copy, or null if there is no task with this id
+     */
+    public synchronized Task copyOfTask(long id) {
+        Task task = taskList instanceof MappedTaskList mapped ? mapped.peekById(id) : findTask(id);
+        return task == null ? null : task.copy();
+    }
+
+    /**
+     * This method lists the later occurrences of the repeating tasks in a range of days, i.e., the
+     * occurrences after the one a task is due on, as copies of the tasks (see Task.occurrence).
+     * Only days from today on are listed: a repeating task is overdue once, for its next occurrence.
+     * @param from first day (epoch-day)
+     * @param to last day (epoch-day), included
+     * @return the copies by due date, and by id within a day
+     */
+    private synchronized List<Task> laterOccurrences(long from, long to) {
+        List<Task> occurrences = new ArrayList<>();
+        long today = dueDates().today().toEpochDay();
+        for (long id : recurring().ids()) {
+            Task task = taskList instanceof MappedTaskList mapped ? mapped.peekById(id) : findTask(id);
+            if (task == null || task.getDueDate() == null) {
+                continue;
+            }
+            long first = Math.max(Math.max(from, today), task.getDueDate().toEpochDay() + 1);
+            if (first > to) {
+                continue;
+            }
+            for (LocalDate day : task.getRecurrence().occurrences(LocalDate.ofEpochDay(first), LocalDate.ofEpochDay(to))) {
+                occurrences.add(task.occurrence(day));
+            }
+        }
+        occurrences.sort(Comparator.comparing(Task::getDueDate).thenComparingLong(Task::getId));
+        return occurrences;
+    }
+
+    /**
+     * This method counts the later occurrences of the repeating tasks in a range of days, see
+     * laterOccurrences, from their rules without listing them
+     */
+    private synchronized long laterOccurrenceCount(long from, long to) {
+        long count = 0;
+        long today = dueDates().today().toEpochDay();
+        for (long id : recurring().ids()) {
+            Task task = taskList instanceof MappedTaskList mapped ? mapped.peekById(id) : findTask(id);
+            if (task == null || task.getDueDate() == null) {
+                continue;
+            }
+            long first = Math.max(Math.max(from, today), task.getDueDate().toEpochDay() + 1);
+            if (first <= to) {
+                count += task.getRecurrence().count(LocalDate.ofEpochDay(first), LocalDate.ofEpochDay(to));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * This method adds the later occurrences in a range of days to the tasks due in it
+     * @param due tasks by due date and by id within a day
+     * @return the tasks and the copies for the occurrences, by due date and by id within a day
+     */
+    private List<Task> withLaterOccurrences(List<Task> due, long from, long to) {
+        List<Task> occurrences = laterOccurrences(from, to);
+        if (occurrences.isEmpty()) {
+            return due;
+        }
+        List<Task> merged = new ArrayList<>(due.size() + occurrences.size());
+        merged.addAll(due);
+        merged.addAll(occurrences);
+        merged.sort(Comparator.comparing(Task::getDueDate).thenComparingLong(Task::getId));
+        return merged;
+    }
+
+    /**
+     * This method returns the ids of the repeating tasks which are not completed, building the
+     * index on first use
+     */
+    private synchronized RecurrenceIndex recurring() {
+        if (recurring == null) {
+            recurring = RecurrenceIndex.build(tasksToWrite());
+            listeners.add(recurring);
+        }
+        return recurring;
+    }
+
+    /**
+     * This method returns the index of the due dates of the tasks which are not completed,
+     * building it on first use
+     */
+    private synchronized DueDateWheel dueDates() {
+        if (dueDates == null) {
+            dueDates = DueDateWheel.build(tasksToWrite(), Clock.systemDefaultZone());
+            listeners.add(dueDates);
+        }
+        return dueDates;
+    }
+
+    /**
+     * This method finds the tasks of a part of a list of ids
+     * @param ids task ids
+     * @param offset number of ids to skip
+     * @param limit maximum number of tasks to return
+     */
+    private List<Task> tasksOf(int[] ids, int offset, int limit) {
+        int from = Math.min(offset, ids.length);
+        int to = from + Math.min(limit, ids.length - from);
+        List<Task> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            Task task = findTask(ids[i]);
+            if (task != null) {
+                result.add(task);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * This method returns the counters of the tasks, which are kept up to date with every change
+     * @return the live statistics of this list
+     */
+    public synchronized TaskStatistics statistics() {
+        if (statistics == null) {
+            // a mapped list is counted without keeping the tasks it decodes
+            statistics = TaskStatistics.build(tasksToWrite(), Clock.systemDefaultZone(), parallel);
+            listeners.add(statistics);
+        }
+        return statistics;
+    }
+
+    /**
+     * This method finds the position of a task in the list, which is the task number shown to
+     * the user minus one. The list is kept in id order, so this is a binary search.
+     * @param task the task to find
+     * @return the position, or -1 if the task is not in the list
+     */
+    public int positionOf(Task task) {
+        if (task.isOccurrence()) {
+            Task stored = findTask(task.getId());
+            return stored == null ? -1 : positionOf(stored);
+        }
+        if (taskList instanceof MappedTaskList || taskList instanceof CompactTaskList) {
+            return taskList.indexOf(task);
+        }
+        int low = 0;
+        int high = taskList.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long id = taskList.get(middle).getId();
+            if (id < task.getId()) {
+                low = middle + 1;
+            } else if (id > task.getId()) {
+                high = middle - 1;
+            } else {
+                return taskList.get(middle) == task ? middle : -1;
+            }
+        }
+        // not found by id: the list may not be in id order
+        if (positionsById == null) {
+            positionsById = new HashMap<>();
+            for (int i = 0; i < taskList.size(); i++) {
+                positionsById.put(taskList.get(i).getId(), i);
+            }
+        }
+        Integer position = positionsById.get(task.getId());
+        return position != null && taskList.get(position) == task ? position : -1;
+    }
+
+    private Path indexFile() {
+        return Paths.get(dataFile + ".idx");
+    }
+
+    /**
+     * @return a read-only view of all tasks in list order
+     */
+    public List<Task> getTasks() {
+        return Collections.unmodifiableList(taskList);
+    }
+
+    /**
+     * This method selects how readFromFile loads the data file
+     * @param lazyLoad true to memory-map the data file and create tasks on first use,
+     *                 false to read all tasks into memory
+     */
+    public void setLazyLoad(boolean lazyLoad) {
+        this.lazyLoad = lazyLoad;
+    }
+
+    /**
+     * This method selects how readFromFile keeps the tasks in memory
+     * @param compactStorage true to keep the fields of all tasks in primitive arrays, using about
+     *                       a third of the memory, false to keep one Task object per task
+     */
+    public void setCompactStorage(boolean compactStorage) {
+        this.compactStorage = compactStorage;
+    }
+
+    /**
+     * This method selects how readFromFile stores a data file which is not sharded yet; a data
+     * file which is already sharded is always read and written as shards
+     * @param sharded true to move the tasks into one file per project on the first save, see
+     *                ShardedTaskStore, false to keep one data file
+     */
+    public void setSharded(boolean sharded) {
+        this.sharded = sharded;
+    }
+
+    /**
+     * This method selects the compression of the data file. The data file is written as blocks
+     * (see BlockTaskFile) unless the list is loaded lazily, which needs a data file which can be
+     * memory-mapped.
+     * @param level Deflater level of the blocks, 0 to store them uncompressed up to 9
+     */
+    public void setCompressionLevel(int level) {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("Compression level must be between 0 and 9: " + level);
+        }
+        this.compressionLevel = level;
+    }
+
+    /**
+     * This method selects the pool which builds the indexes and statistics and checks search terms
+     * and query conditions which have no index on many tasks. Lists smaller than its threshold and
+     * lazily loaded lists are handled on the calling thread.
+     * @param parallel the pool, ParallelTasks.sequential() to use no other threads
+     */
+    public void setParallel(ParallelTasks parallel) {
+        this.parallel = parallel;
+        dropIndexes();
+    }
+
+    /**
+     * This method makes this list the primary of replicas: every change from now on is also
+     * appended to the log, from which a ReplicationServer sends it to the replicas
+     * @param log the log, or null to stop appending to it
+     */
+    public synchronized void setReplicationLog(ReplicationLog log) {
+        this.replicationLog = log;
+        if (log != null) {
+            log.reset(sequence);
+        }
+    }
+
+    /**
+     * @return the journal sequence of the last change
+     */
+    synchronized long sequence() {
+        return sequence;
+    }
+
+    /**
+     * This method applies a change received by a replica from its primary, see TaskReplica. The
+     * change is recorded in the journal with the sequence it has on the primary, it is not
+     * recorded in the undo history.
+     * @throws IllegalStateException if the change does not follow the last change of this list,
+     * or its task is missing
+     */
+    synchronized void applyReplicated(JournalRecord record) {
+        if (record.getSequence() != sequence + 1) {
+            throw new IllegalStateException("Change " + record.getSequence() + " does not follow change " + sequence);
+        }
+        applyAll(List.of(record));
+        compactIfDue();
+    }
+
+    /**
+     * This method replaces all tasks of a replica by a snapshot of its primary, see TaskReplica.
+     * If the list has a data file, the tasks are written to it and the journal is emptied.
+     * @param tasks all tasks of the primary in id order
+     * @param snapshotSequence journal sequence of the primary when the snapshot was taken
+     */
+    synchronized void restoreReplica(List<Task> tasks, long snapshotSequence) {
+        if (store != null) {
+            // the shards of the old projects are emptied, the ones of the new projects written
+            store.markDirty(projectsOf(null));
+        }
+        taskList = compactStorage ? new CompactTaskList(tasks) : new ArrayList<>(tasks);
+        if (store != null) {
+            store.markDirty(projectsOf(null));
+        }
+        dropIndexes();
+        tasksById = null;
+        positionsById = null;
+        history.clear();
+        sequence = snapshotSequence;
+        loadedSequence = -1;
+        nextId = maxId() + 1;
+        if (journal != null) {
+            saveToFile(dataFile.toString());
+        }
+    }
+
+    /**
+     * This method changes the journal size which triggers a background compaction
+     * @param bytes journal size in bytes
+     */
+    public void setCompactionThreshold(long bytes) {
+        this.compactionThreshold = bytes;
+    }
 
-    public TodoList() {
-        taskList = new ArrayList<>();
+    /**
+     * This method changes the number of tasks shown per page by the listings
+     * @param pageSize number of tasks per page, at least 1
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = Math.max(1, pageSize);
     }
 
-    public void addTask(String title, String project, LocalDate dueDate) {
-        this.taskList.add(new Task(title, project, dueDate, "MEDIUM"));
+    /**
+     * This method sets the reader of the user input used by all prompts of this list. It must be
+     * the same Scanner the caller reads from: a Scanner reads ahead, so lines of piped input read
+     * by one Scanner are lost for any other Scanner of the same stream.
+     * @param input the reader of the user input, by default a Scanner of System.in
+     */
+    public void setInput(Scanner input) {
+        this.input = input;
+    }
+
+    private Scanner input() {
+        if (input == null) {
+            input = new Scanner(System.in);
+        }
+        return input;
     }
 
     public boolean readTaskFromUser() {
-        @SuppressWarnings("resource")
-        Scanner scan = new Scanner(System.in);
+        Scanner scan = input();
 
         try {
             System.out.println(Messages.GREEN_TEXT + "Please enter the following details to add a task:" + Messages.RESET_TEXT);
@@ -70,9 +1370,13 @@ public class TodoList {
             System.out.print(">>> Notes (optional): ");
             String notes = scan.nextLine();
 
+            System.out.print(">>> Repeats (e.g. weekly on mon,thu until 2025-06-30, blank for once): ");
+            String repeats = scan.nextLine();
+
             Task newTask = new Task(title, project, dueDate, priority);
             newTask.setNotes(notes);
-            this.taskList.add(newTask);
+            newTask.setRecurrence(Recurrence.parse(repeats, dueDate));
+            addTask(newTask);
 
             Messages.showMessage("Task is added successfully with priority: " + priority, false);
             return true;
@@ -84,37 +1388,46 @@ public class TodoList {
     }
 
     public boolean readTaskFromUserToUpdate(Task task) {
-        Scanner scan = new Scanner(System.in);
+        Scanner scan = input();
         boolean isTaskUpdated = false;
 
+        // all fields entered here are undone at once
+        beginChange();
         try {
             System.out.println(Messages.GREEN_TEXT + "Please enter the following details to update a task:"
                     + "\nIf you do not want to change any field, just press ENTER key!" + Messages.RESET_TEXT);
             System.out.print(">>> Task Title  : ");
             String title = scan.nextLine();
             if (!(title.trim().equals("") || title == null)) {
-                task.setTitle(title);
+                updateTask(task, TaskField.TITLE, title);
                 isTaskUpdated = true;
             }
 
             System.out.print(">>> Project Name: ");
             String project = scan.nextLine();
             if (!(project.trim().equals("") || project == null)) {
-                task.setProject(project);
+                updateTask(task, TaskField.PROJECT, project);
                 isTaskUpdated = true;
             }
 
             System.out.print(">>> Due Date [example: 2019-12-31] : ");
             String dueDate = scan.nextLine();
             if (!(dueDate.trim().equals("") || dueDate == null)) {
-                task.setDueDate(LocalDate.parse(dueDate));
+                updateTask(task, TaskField.DUE_DATE, dueDate);
                 isTaskUpdated = true;
             }
 
             System.out.print(">>> Notes (leave blank to keep current): ");
             String notes = scan.nextLine();
             if (!(notes.trim().equals("") || notes == null)) {
-                task.setNotes(notes);
+                updateTask(task, TaskField.NOTES, notes);
+                isTaskUpdated = true;
+            }
+
+            System.out.print(">>> Repeats (leave blank to keep current, never to stop repeating): ");
+            String repeats = scan.nextLine();
+            if (!repeats.trim().equals("")) {
+                updateTask(task, TaskField.RECURRENCE, repeats);
                 isTaskUpdated = true;
             }
 
@@ -123,157 +1436,173 @@ public class TodoList {
         } catch (Exception e) {
             Messages.showMessage(e.getMessage(), true);
             return false;
+        } finally {
+            endChange();
         }
     }
 
     public void listAllTasksWithIndex() {
-        String displayFormat = "%-4s %-25s %-20s %-10s %-12s %-15s %-10s";
+        listAllTasksWithIndex(null);
+    }
 
+    /**
+     * This method shows all tasks with their task number in the given order. The task number is
+     * the position in the list, so it does not depend on the order the tasks are shown in.
+     * @param order the order to show the tasks in, or null for the order of the list
+     */
+    public void listAllTasksWithIndex(TaskOrder order) {
         if (taskList.size() > 0) {
-            System.out.println(String.format(displayFormat,
-                    "NUM", "TITLE", "PROJECT", "PRIORITY", "DUE DATE", "DAYS LEFT", "COMPLETED"));
-            Messages.separator('=', 100);
+            showPages(TaskTableRenderer.Layout.WITH_NUMBER, order);
         } else {
             System.out.println(Messages.RED_TEXT + "No tasks to show" + Messages.RESET_TEXT);
-            return;
         }
+    }
 
-        LocalDate today = LocalDate.now();
-        for (int i = 0; i < taskList.size(); i++) {
-            Task task = taskList.get(i);
-            LocalDate due = task.getDueDate();
-            String dueStr = (due == null) ? "-" : due.toString();
-            long daysTillDue = (due == null) ? 0 : ChronoUnit.DAYS.between(today, due);
+    public void listAllTasks(String sortBy) {
+        Messages.separator('=', 75);
+        System.out.println("Total Tasks = " + taskList.size() +
+                "\t\t (Completed = " + completedCount() + "\t\t" +
+                Messages.RED_TEXT + " Not Completed = " + notCompletedCount() + Messages.RESET_TEXT + " )");
+        Messages.separator('=', 75);
 
-            String overdueText = "";
-            if (due != null && !task.isComplete() && due.isBefore(LocalDate.now())) {
-                overdueText = Messages.RED_TEXT + "OVERDUE" + Messages.RESET_TEXT;
-            }
+        if (taskList.size() == 0) {
+            System.out.println(Messages.RED_TEXT + "No tasks to show" + Messages.RESET_TEXT);
+        } else if (sortBy.equals("2")) {
+            showPages(TaskTableRenderer.Layout.BY_PROJECT, TaskOrder.PROJECT);
+        } else if (sortBy.equals("3")) {
+            showPages(TaskTableRenderer.Layout.BY_DATE, TaskOrder.PRIORITY);
+        } else {
+            showPages(TaskTableRenderer.Layout.BY_DATE, TaskOrder.DUE_DATE);
+        }
+    }
 
-            String priorityColor = "";
-            switch (task.getPriority().toString()) {
-                case "HIGH": priorityColor = Messages.RED_TEXT; break;
-                case "MEDIUM": priorityColor = Messages.GREEN_TEXT; break;
-                case "LOW": priorityColor = "\u001B[33m"; break;
-            }
-            String resetColor = Messages.RESET_TEXT;
+    /**
+     * This method shows the number of tasks in total, overdue and due soon, by priority and by
+     * project. All numbers are read from the statistics, so no task is read.
+     */
+    public void showSummary() {
+        TaskStatistics counts = statistics();
+        Messages.separator('=', 75);
+        System.out.println("Total Tasks = " + counts.total() +
+                "\t\t (Completed = " + counts.completed() + "\t\t" +
+                Messages.RED_TEXT + " Not Completed = " + counts.open() + Messages.RESET_TEXT + " )");
+        // the counters know repeating tasks by their next occurrence, the later ones are counted from their rules
+        long today = dueDates().today().toEpochDay();
+        long dueSoon = counts.dueSoon() + laterOccurrenceCount(today, today + Task.DUE_SOON_DAYS);
+        System.out.println(Messages.RED_TEXT + "Overdue = " + counts.overdue() + Messages.RESET_TEXT + "\t\t " +
+                Messages.YELLOW_TEXT + "Due within " + Task.DUE_SOON_DAYS + " days = " + dueSoon + Messages.RESET_TEXT);
+        if (archivedCount() > 0) {
+            System.out.println("Archived = " + archivedCount() + "\t\t (completed long ago, query them with in:archive)");
+        }
+        Messages.separator('=', 75);
 
-            // 🟢 NEW: Add emoji next to completed status
-            String completedStatus;
-            if (task.isComplete()) {
-                completedStatus = "YES ✅";
-            } else if (due != null && daysTillDue >= 0 && daysTillDue <= 2) {
-                completedStatus = Messages.YELLOW_TEXT + "Reminder: due soon!" + Messages.RESET_TEXT;
-            } else {
-                completedStatus = "NO ❌";
+        summaryRow("PRIORITY", "TOTAL", "TODO", "COMPLETED");
+        for (Task.Priority level : Task.Priority.values()) {
+            TaskStatistics.Counts priority = counts.priority(level);
+            summaryRow(level.name(), priority.total(), priority.open(), priority.completed());
+        }
+        System.out.println();
+
+        SortedMap<String, TaskStatistics.Counts> projects = counts.projects();
+        summaryRow("PROJECT", "TOTAL", "TODO", "COMPLETED");
+        int shown = 0;
+        for (Map.Entry<String, TaskStatistics.Counts> project : projects.entrySet()) {
+            if (shown++ == pageSize) {
+                System.out.println("... and " + (projects.size() - pageSize) + " more projects");
+                break;
             }
-
-            System.out.println(String.format(displayFormat,
-                (i + 1),
-                task.getTitle(),
-                task.getProject(),
-                priorityColor + task.getPriority() + resetColor,
-                dueStr,
-                daysTillDue + (overdueText.isEmpty() ? "" : " " + overdueText),
-                completedStatus
-            ));
+            TaskStatistics.Counts value = project.getValue();
+            summaryRow(project.getKey(), value.total(), value.open(), value.completed());
         }
     }
 
-    public void listAllTasks(String sortBy) {
+    /**
+     * This method shows the tasks which are not completed and overdue or due within the next
+     * days, by due date. The tasks are read from the due date index, so only the shown tasks
+     * are read.
+     * @param days number of days after today
+     */
+    public void showDueTasks(int days) {
+        DueDateWheel wheel = dueDates();
+        long today = wheel.today().toEpochDay();
+        int[] ids = wheel.due(Long.MIN_VALUE, today + days);
+        List<Task> occurrences = laterOccurrences(today, today + days);
         Messages.separator('=', 75);
-        System.out.println("Total Tasks = " + taskList.size() +
-                "\t\t (Completed = " + completedCount() + "\t\t" +
-                Messages.RED_TEXT + " Not Completed = " + notCompletedCount() + Messages.RESET_TEXT + " )");
+        System.out.println(Messages.RED_TEXT + "Overdue = " + wheel.count(Long.MIN_VALUE, today - 1) + Messages.RESET_TEXT +
+                "\t\t Due today = " + (wheel.count(today, today) + laterOccurrenceCount(today, today)) + "\t\t " +
+                Messages.YELLOW_TEXT + "Due in the next " + days + " days = "
+                + (wheel.count(today + 1, today + days) + laterOccurrenceCount(today + 1, today + days)) + Messages.RESET_TEXT);
         Messages.separator('=', 75);
 
-        LocalDate today = LocalDate.now();
+        if (ids.length == 0 && occurrences.isEmpty()) {
+            System.out.println(Messages.GREEN_TEXT + "Nothing is due" + Messages.RESET_TEXT);
+        } else if (occurrences.isEmpty()) {
+            showPages(TaskTableRenderer.Layout.WITH_NUMBER, ids.length, (from, limit) -> tasksOf(ids, from, limit));
+        } else {
+            // the occurrences are listed between the tasks by their days
+            List<Task> due = withLaterOccurrences(tasksOf(ids, 0, Integer.MAX_VALUE), today, today + days);
+            showPages(TaskTableRenderer.Layout.WITH_NUMBER, due.size(),
+                    (from, limit) -> due.subList(from, Math.min(from + limit, due.size())));
+        }
+    }
 
-        if (sortBy.equals("2")) {
-            String displayFormat = "%-20s %-30s %-25s %-10s";
+    private static void summaryRow(String name, Object total, Object open, Object completed) {
+        System.out.println(String.format("%-35s %12s %12s %12s", name, total, open, completed));
+    }
 
-            if (taskList.size() > 0) {
-                System.out.println(String.format(displayFormat, "PROJECT", "TITLE", "DUE DATE", "STATUS"));
-                Messages.separator('=', 90);
-            } else {
-                System.out.println(Messages.RED_TEXT + "No tasks to show" + Messages.RESET_TEXT);
-            }
-
-            taskList.stream()
-                    .sorted(Comparator.comparing(Task::getProject, Comparator.nullsLast(String::compareTo)))
-                    .forEach(task -> {
-                        LocalDate d = task.getDueDate();
-                        long daysTillDue = (d == null) ? 0 : ChronoUnit.DAYS.between(today, d);
-
-                        // 🟢 Emoji for completion status
-                        String status;
-                        if (task.isComplete()) {
-                            status = "YES ✅";
-                        } else if (d != null && daysTillDue >= 0 && daysTillDue <= 2) {
-                            status = Messages.YELLOW_TEXT + "Reminder: due soon!" + Messages.RESET_TEXT;
-                        } else {
-                            status = "NO ❌";
-                        }
-
-                        String overdue = "";
-                        if (d != null && !task.isComplete() && d.isBefore(LocalDate.now())) {
-                            overdue = " " + "\u001B[1;31mOVERDUE\u001B[0m";
-                        }
-                        String dueDisplay = (d == null) ? "-" : d.toString();
-                        System.out.println(String.format(displayFormat,
-                                task.getProject(),
-                                task.getTitle(),
-                                dueDisplay + overdue,
-                                status
-                        ));
-                    });
+    /**
+     * This method shows the tasks one page at a time. Only the tasks of the shown page are read,
+     * and the user can move to the next or previous page or jump to a page number.
+     * @param layout the columns to show
+     * @param order the order to show the tasks in, or null for the order of the list
+     */
+    private void showPages(TaskTableRenderer.Layout layout, TaskOrder order) {
+        if (order == null) {
+            showPages(layout, taskList.size(), (from, limit) -> taskList.subList(from, Math.min(from + limit, taskList.size())));
         } else {
-            String displayFormat = "%-12s %-25s %-20s %-10s %-15s %-10s";
-            if (taskList.size() > 0) {
-                System.out.println(String.format(displayFormat,
-                        "DUE DATE", "TITLE", "PROJECT", "PRIORITY", "DAYS LEFT", "COMPLETED"));
-                Messages.separator('=', 95);
-            } else {
-                System.out.println(Messages.RED_TEXT + "No tasks to show" + Messages.RESET_TEXT);
-            }
-
-            taskList.stream()
-                    .sorted(Comparator.comparing(Task::getDueDate))
-                    .forEach(task -> {
-                        LocalDate due = task.getDueDate();
-                        String dueStr = (due == null) ? "-" : due.toString();
-                        long daysTillDue = (due == null) ? 0 : ChronoUnit.DAYS.between(today, due);
-                        String priorityColor = "";
-                        switch (task.getPriority().toString()) {
-                            case "HIGH": priorityColor = Messages.RED_TEXT; break;
-                            case "MEDIUM": priorityColor = Messages.GREEN_TEXT; break;
-                            case "LOW": priorityColor = "\u001B[33m"; break;
-                        }
-                        String resetColor = Messages.RESET_TEXT;
-
-                        // 🟢 Emoji for completion status
-                        String completedStatus;
-                        if (task.isComplete()) {
-                            completedStatus = "YES ✅";
-                        } else if (due != null && daysTillDue >= 0 && daysTillDue <= 2) {
-                            completedStatus = Messages.YELLOW_TEXT + "Reminder: due soon!" + Messages.RESET_TEXT;
-                        } else {
-                            completedStatus = "NO ❌";
-                        }
-
-                        System.out.println(String.format(displayFormat,
-                                dueStr,
-                                task.getTitle(),
-                                task.getProject(),
-                                priorityColor + task.getPriority() + resetColor,
-                                daysTillDue,
-                                completedStatus
-                        ));
-                    });
+            showPages(layout, taskList.size(), (from, limit) -> getTasks(order, from, limit));
         }
     }
 
+    /**
+     * This method shows a sequence of tasks one page at a time, see showPages above
+     * @param layout the columns to show
+     * @param count number of tasks in the sequence
+     * @param window returns the tasks of a page, from the offset and the number of tasks
+     */
+    private void showPages(TaskTableRenderer.Layout layout, int count, BiFunction<Integer, Integer, List<Task>> window) {
+        Scanner scan = input();
+        int pages = count / pageSize + (count % pageSize == 0 ? 0 : 1);
+        int page = 0;
+        try {
+            Writer out = TaskTableRenderer.terminal();
+            TaskTableRenderer renderer = new TaskTableRenderer(out, layout, LocalDate.now());
+            while (true) {
+                renderer.header();
+                for (Task task : window.apply(page * pageSize, pageSize)) {
+                    renderer.row(positionOf(task) + 1, task);
+                }
+                renderer.flush();
+                if (pages <= 1) {
+                    return;
+                }
 
+                Messages.pageNavigation(page + 1, pages);
+                String choice = scan.nextLine().trim().toLowerCase();
+                if (choice.equals("n")) {
+                    page = Math.min(page + 1, pages - 1);
+                } else if (choice.equals("p")) {
+                    page = Math.max(page - 1, 0);
+                } else if (choice.matches("\\d+")) {
+                    page = Math.max(0, Math.min(Integer.parseInt(choice), pages) - 1);
+                } else {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            Messages.showMessage(e.getMessage(), true);
+        }
+    }
 
     public void editTask(String selectedTask) throws NullPointerException {
         try {
@@ -290,28 +1619,39 @@ public class TodoList {
             Messages.showMessage("Task Num " + selectedTask + "  is selected:" + task.formattedStringOfTask(), false);
 
             Messages.editTaskMenu();
-            @SuppressWarnings("resource")
-            Scanner scan = new Scanner(System.in);
+            Scanner scan = input();
             String editChoice = scan.nextLine();
             switch (editChoice) {
                 case "1" -> readTaskFromUserToUpdate(task);
                 case "2" -> {
-                    task.markCompleted();
-                    Messages.showMessage("Task Num " + selectedTask + " is marked as Completed: Returning to Main Menu", false);
+                    boolean repeating = task.isRecurring();
+                    LocalDate day = task.getDueDate();
+                    markCompleted(task);
+                    Messages.showMessage("Task Num " + selectedTask + (repeating
+                            ? " is marked as Completed for " + day + ": Returning to Main Menu"
+                            : " is marked as Completed: Returning to Main Menu"), false);
                 }
                 case "3" -> {
-                    @SuppressWarnings("resource")
-                    Scanner confirmScan = new Scanner(System.in);
+                    Scanner confirmScan = input();
                     System.out.print("Are you sure you want to delete this task? (y/n): ");
                     String confirm = confirmScan.nextLine().trim().toLowerCase();
 
                     if (confirm.equals("y") || confirm.equals("yes")) {
-                        taskList.remove(task);
-                        Messages.showMessage("Task Num " + selectedTask + " is Deleted: Returning to Main Menu", true);
+                        removeTask(task);
+                        Messages.showMessage("Task Num " + selectedTask + " is Deleted (option 10 of the main menu brings it back): Returning to Main Menu", true);
                     } else {
                         Messages.showMessage("Deletion cancelled. Returning to Main Menu.", false);
                     }
                 }
+                case "4" -> {
+                    if (!task.isRecurring()) {
+                        throw new IllegalArgumentException("Task Num " + selectedTask + " does not repeat: Returning to Main Menu");
+                    }
+                    LocalDate day = task.getDueDate();
+                    skipOccurrence(task, day);
+                    Messages.showMessage("The occurrence on " + day + " is skipped, the task is next due on "
+                            + task.getDueDate() + ": Returning to Main Menu", false);
+                }
                 default -> Messages.showMessage("Returning to Main Menu", true);
             }
         } catch (Exception e) {
@@ -319,53 +1659,731 @@ public class TodoList {
         }
     }
 
+    /**
+     * This method undoes or redoes the last change and tells the user what is left to undo
+     * @param redo false to undo, true to redo
+     */
+    public void undoOrRedo(boolean redo) {
+        try {
+            if (redo ? redo() : undo()) {
+                Messages.showMessage("Last change is " + (redo ? "redone" : "undone") + " (" + history.undoCount()
+                        + " more to undo, " + history.redoCount() + " to redo)", false);
+            } else {
+                Messages.showMessage("Nothing to " + (redo ? "redo" : "undo"), true);
+            }
+        } catch (Exception e) {
+            Messages.showMessage(e.getMessage(), true);
+        }
+    }
+
     public int completedCount() {
-        return (int) taskList.stream().filter(Task::isComplete).count();
+        if (statistics == null && taskList instanceof MappedTaskList mapped) {
+            // counted on the mapped file, so that the main menu does not decode all tasks
+            return mapped.completedCount();
+        }
+        return (int) statistics().completed();
     }
 
     public int notCompletedCount() {
-        return (int) taskList.stream().filter(task -> !task.isComplete()).count();
+        if (statistics == null && taskList instanceof MappedTaskList mapped) {
+            return mapped.size() - mapped.completedCount();
+        }
+        return (int) statistics().open();
     }
 
+    /**
+     * This method loads the data file, replays the journal kept next to it and keeps the journal
+     * open, so that every following change is recorded without rewriting the data file. If the
+     * data file or the journal can not be read, the changes are saved by rewriting the data file
+     * instead, see flushChanges.
+     * @param filename name of the data file
+     * @return true if the data file and the journal were read, or there is no data file yet
+     */
     public boolean readFromFile(String filename) {
+        long start = metrics.start();
+        Path path = Paths.get(filename);
         try {
-            if (!Files.isReadable(Paths.get(filename))) {
-                Messages.showMessage("The data file, i.e., " + filename + " does not exists", true);
-                return false;
+            long snapshotSequence = 0;
+            long bytesRead = 0;
+            ShardedTaskStore shards = sharded || ShardedTaskStore.exists(path) ? new ShardedTaskStore(path) : null;
+            if (shards != null && ShardedTaskStore.exists(path)) {
+                // shards are read into memory, lazy loading only applies to one data file
+                List<Task> tasks = shards.load();
+                taskList = compactStorage ? new CompactTaskList(tasks) : tasks;
+                snapshotSequence = shards.journalSequence();
+                bytesRead = shards.bytesRead();
+            } else if (!Files.isReadable(path)) {
+                if (!TaskJournal.exists(path)) {
+                    // after a normal quit the changes may be only in the journal
+                    Messages.showMessage("The data file, i.e., " + filename + " does not exists", true);
+                }
+                if (compactStorage && !(taskList instanceof CompactTaskList)) {
+                    taskList = new CompactTaskList(taskList);
+                }
+            } else {
+                if (TaskFileMigrator.isLegacyFile(path)) {
+                    // one-way migration of the old ObjectOutputStream file
+                    int migrated = TaskFileMigrator.migrate(path);
+                    Messages.showMessage("The data file, i.e., " + filename + " is migrated to the new format ("
+                            + migrated + " tasks), old file kept as " + filename + ".bak", false);
+                }
+                if (BlockTaskFile.isBlockFile(path)) {
+                    // blocks are compressed, so they are read into memory also when loading lazily
+                    BlockTaskFile.Contents contents = BlockTaskFile.read(path);
+                    taskList = compactStorage ? new CompactTaskList(contents.tasks()) : contents.tasks();
+                    snapshotSequence = contents.journalSequence();
+                    bytesRead = contents.bytesRead();
+                } else {
+                    BinaryTaskFile.Layout layout = lazyLoad && shards == null ? BinaryTaskFile.map(path) : BinaryTaskFile.open(path);
+                    if (lazyLoad && shards == null) {
+                        taskList = new MappedTaskList(layout);
+                    } else {
+                        taskList = compactStorage ? CompactTaskList.of(layout) : layout.tasks();
+                    }
+                    snapshotSequence = layout.journalSequence();
+                    bytesRead = Files.size(path);
+                }
+            }
+
+            closeJournal();
+            dropIndexes();
+            tasksById = null;
+            positionsById = null;
+            dataFile = path;
+            history.clear();
+            setStore(shards);
+            journal = TaskJournal.open(path);
+            sequence = snapshotSequence;
+            List<JournalRecord> records = journal.replay(snapshotSequence);
+            if (shards != null && !ShardedTaskStore.exists(path)) {
+                replay(records);
+                // not sharded yet, all projects are written by the first save
+                shards.markDirty(projectsOf(null));
+            } else if (shards != null && !records.isEmpty()) {
+                // the store does not see the replayed changes: their projects before and after them
+                shards.markDirty(projectsOf(records));
+                replay(records);
+                shards.markDirty(projectsOf(records));
+            } else {
+                replay(records);
+            }
+            archive = TaskArchive.open(path);
+            if (archive.lastSequence() > sequence) {
+                // the last archiving did not reach the journal, its tasks are removed again
+                removeAll(tasksIn(archive.tasksAfter(sequence)));
+            }
+            nextId = maxId() + 1;
+            loadedSequence = sequence;
+            if (replicationLog != null) {
+                replicationLog.reset(sequence);
             }
+            metrics.add(TaskMetrics.Counter.BYTES_READ, bytesRead + journal.size());
+            metrics.record(TaskMetrics.Operation.LOAD, start);
+            unreadFile = null;
+            return true;
 
-            FileInputStream fileInputStream = new FileInputStream(filename);
-            ObjectInputStream objectInputStream = new ObjectInputStream(fileInputStream);
+        } catch (Exception e) {
+            metrics.add(TaskMetrics.Counter.FAILURES, 1);
+            Messages.showMessage(e.getMessage(), true);
+            if (journal == null) {
+                unreadFile = path;
+                unreadSequence = sequence;
+                unreadFileKept = false;
+            }
+            return false;
+        }
+    }
 
-            taskList = (ArrayList<Task>) objectInputStream.readObject();
+    /**
+     * This method reads only the tasks of one project. If the data file is sharded and all changes
+     * are in its shards, only the shards of the project are read; otherwise the whole list is read
+     * and the tasks of the project are kept. The list is not connected to the data file afterwards,
+     * its changes are not saved.
+     * @param filename name of the data file
+     * @param project the project to read
+     * @return true if the data file was read
+     */
+    public boolean readProject(String filename, String project) {
+        long start = metrics.start();
+        try {
+            Path path = Paths.get(filename);
+            List<Task> tasks;
+            boolean loaded = true;
+            if (ShardedTaskStore.exists(path) && !TaskJournal.exists(path)) {
+                ShardedTaskStore shards = new ShardedTaskStore(path);
+                tasks = shards.loadProject(project);
+                metrics.add(TaskMetrics.Counter.BYTES_READ, shards.bytesRead());
+            } else {
+                loaded = readFromFile(filename);
+                tasks = new ArrayList<>();
+                for (Task task : tasksToWrite()) {
+                    if (task.getProject().equals(project)) {
+                        tasks.add(task);
+                    }
+                }
+            }
 
-            objectInputStream.close();
-            fileInputStream.close();
-            return true;
+            closeJournal();
+            dropIndexes();
+            setStore(null);
+            tasksById = null;
+            positionsById = null;
+            dataFile = null;
+            unreadFile = null;
+            archive = null;
+            history.clear();
+            taskList = compactStorage ? new CompactTaskList(tasks) : tasks;
+            nextId = maxId() + 1;
+            loadedSequence = -1;
+            metrics.record(TaskMetrics.Operation.LOAD, start);
+            return loaded;
 
         } catch (Exception e) {
+            metrics.add(TaskMetrics.Counter.FAILURES, 1);
             Messages.showMessage(e.getMessage(), true);
             return false;
         }
     }
 
-    public boolean saveToFile(String filename) {
+    private void setStore(ShardedTaskStore shards) {
+        if (store != null) {
+            listeners.remove(store);
+        }
+        store = shards;
+        if (store != null) {
+            listeners.add(store);
+        }
+    }
+
+    /**
+     * @param records journal records, or null for all tasks
+     * @return the projects of the tasks changed by the records, as they are now
+     */
+    private Set<String> projectsOf(List<JournalRecord> records) {
+        Set<String> projects = new HashSet<>();
+        Set<Long> ids = new HashSet<>();
+        if (records != null) {
+            for (JournalRecord record : records) {
+                ids.add(record.getTaskId());
+                if (record.getType() == JournalRecord.Type.ADD) {
+                    projects.add(record.getTask().getProject());
+                }
+            }
+        }
+        for (Task task : tasksToWrite()) {
+            if (records == null || ids.contains(task.getId())) {
+                projects.add(task.getProject());
+            }
+        }
+        return projects;
+    }
+
+    /**
+     * This method returns an immutable view of all tasks as they are now, see TaskSnapshot. It
+     * can be read while the list is changed, without locks and without copying the list: the
+     * first call copies all tasks, afterwards every change creates a new snapshot which shares
+     * all unchanged tasks with the one before, and taking it is only reading a reference.
+     * @return the tasks in id order, with the journal sequence of the last change included
+     */
+    public TaskSnapshot snapshot() {
+        TaskSnapshot current = latest;
+        return current != null ? current : buildSnapshot();
+    }
+
+    private synchronized TaskSnapshot buildSnapshot() {
+        if (latest == null) {
+            latest = TaskSnapshot.of(tasksToWrite(), sequence);
+            listeners.add(snapshotUpdater);
+        }
+        return latest;
+    }
+
+    /**
+     * @return true if the tasks are Task objects, so that a snapshot costs no more memory than
+     * the changes since it was taken; mapped and compact lists would be copied into Task objects
+     */
+    boolean keepsTaskObjects() {
+        return !(taskList instanceof MappedTaskList || taskList instanceof CompactTaskList);
+    }
+
+    /**
+     * This method removes the indexes built from the tasks, they are built again on first use
+     */
+    private synchronized void dropIndexes() {
+        if (searchIndex != null) {
+            listeners.remove(searchIndex);
+            searchIndex = null;
+        }
+        if (sortedIndexes != null) {
+            listeners.remove(sortedIndexes);
+            sortedIndexes = null;
+        }
+        if (queryIndex != null) {
+            listeners.remove(queryIndex);
+            queryIndex = null;
+        }
+        if (statistics != null) {
+            listeners.remove(statistics);
+            statistics = null;
+        }
+        if (dueDates != null) {
+            listeners.remove(dueDates);
+            dueDates = null;
+        }
+        if (recurring != null) {
+            listeners.remove(recurring);
+            recurring = null;
+        }
+        if (latest != null) {
+            listeners.remove(snapshotUpdater);
+            latest = null;
+        }
+    }
+
+    /**
+     * This method imports the tasks of a CSV or JSON lines file, see TaskImporter. Rows which are
+     * not valid are written to an error file next to it, named like the file with ".errors.csv".
+     * The journal is compacted at most once, after the import.
+     * @param filename name of the file, its extension selects the format
+     * @return the numbers of imported and rejected rows
+     * @throws IOException if the file can not be read
+     */
+    public TaskImporter.Report importTasks(String filename) throws IOException {
+        long start = metrics.start();
+        TaskImporter importer = new TaskImporter(TaskFormat.of(filename));
+        importing = true;
+        try {
+            TaskImporter.Report report = importer.importFile(Paths.get(filename), Paths.get(filename + ".errors.csv"),
+                    this::addTasks);
+            metrics.add(TaskMetrics.Counter.BYTES_READ, sizeOf(Paths.get(filename)));
+            metrics.record(TaskMetrics.Operation.IMPORT, start);
+            return report;
+        } finally {
+            synchronized (this) {
+                importing = false;
+                if (journal != null) {
+                    compactIfNeeded();
+                }
+            }
+        }
+    }
+
+    /**
+     * This method writes all tasks to a CSV or JSON lines file, in list order
+     * @param filename name of the file, its extension selects the format
+     * @return number of tasks written
+     * @throws IOException if the file can not be written
+     */
+    public int exportTasks(String filename) throws IOException {
+        long start = metrics.start();
+        int exported;
+        if (keepsTaskObjects()) {
+            // written from a snapshot, so the list can be changed meanwhile
+            exported = TaskFormat.of(filename).export(snapshot(), Paths.get(filename));
+        } else {
+            synchronized (this) {
+                // a mapped list is written without keeping the tasks it decodes
+                exported = TaskFormat.of(filename).export(tasksToWrite(), Paths.get(filename));
+            }
+        }
+        metrics.add(TaskMetrics.Counter.BYTES_WRITTEN, sizeOf(Paths.get(filename)));
+        metrics.record(TaskMetrics.Operation.EXPORT, start);
+        return exported;
+    }
+
+    /**
+     * This method asks for a file name and imports or exports the tasks
+     * @param choice "1" to import, "2" to export
+     */
+    public void importOrExportTasks(String choice) {
+        if (!choice.equals("1") && !choice.equals("2")) {
+            Messages.showMessage("Returning to Main Menu", true);
+            return;
+        }
+        Scanner scan = input();
+        System.out.print(">>> File name [example: tasks.csv or tasks.jsonl] : ");
+        String filename = scan.nextLine().trim();
         try {
-            FileOutputStream fileOutputStream = new FileOutputStream(filename);
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(fileOutputStream);
+            if (choice.equals("2")) {
+                int count = exportTasks(filename);
+                Messages.showMessage(count + " task(s) are exported to " + filename, false);
+                return;
+            }
+            long start = System.nanoTime();
+            TaskImporter.Report report = importTasks(filename);
+            Messages.showMessage(report.imported() + " task(s) are imported from " + filename + " in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms", false);
+            if (report.rejected() > 0) {
+                StringBuilder errors = new StringBuilder(report.rejected() + " row(s) are rejected, see "
+                        + report.errorFile() + ":");
+                for (String error : report.errors()) {
+                    errors.append("\n").append(error);
+                }
+                Messages.showMessage(errors.toString(), true);
+            }
+        } catch (Exception e) {
+            Messages.showMessage(e.getMessage(), true);
+        }
+    }
 
-            objectOutputStream.writeObject(taskList);
+    /**
+     * This method writes the whole list to the data file. If a journal is open, the new data file
+     * replaces the old one atomically and the journal is emptied.
+     * @param filename name of the data file
+     * @return true if the data file was written
+     */
+    public boolean saveToFile(String filename) {
+        long start = metrics.start();
+        try {
+            Path path = Paths.get(filename);
+            if (journal == null || !path.equals(dataFile)) {
+                long written;
+                if (keepsTaskObjects()) {
+                    TaskSnapshot tasks = snapshot();
+                    written = writeDataFile(tasks, tasks.sequence(), path);
+                } else {
+                    written = writeDataFile(tasksToWrite(), sequence, path);
+                }
+                metrics.add(TaskMetrics.Counter.BYTES_WRITTEN, written);
+                metrics.record(TaskMetrics.Operation.SAVE, start);
+                return true;
+            }
 
-            objectOutputStream.close();
-            fileOutputStream.close();
+            awaitCompaction();
+            journal.sync();
+            long written;
+            if (store != null) {
+                written = writeShards(store, tasksToWrite(), sequence, store.takeDirty());
+            } else {
+                written = writeDataFile(tasksToWrite(), sequence, path);
+            }
+            journal.reset();
+            metrics.add(TaskMetrics.Counter.BYTES_WRITTEN, written);
+            metrics.record(TaskMetrics.Operation.SAVE, start);
             return true;
 
+        } catch (Exception e) {
+            metrics.add(TaskMetrics.Counter.FAILURES, 1);
+            Messages.showMessage(e.getMessage(), true);
+            return false;
+        }
+    }
+
+    /**
+     * This method forces all recorded changes to the journal on disk. If the data file could not
+     * be read, there is no journal and the data file is rewritten instead, the unreadable file is
+     * kept as .bak.
+     * @return true if all changes reached the disk
+     */
+    public boolean flushChanges() {
+        try {
+            if (journal != null) {
+                journal.sync();
+                return true;
+            }
+            return saveUnreadFile();
+        } catch (IOException e) {
+            Messages.showMessage(e.getMessage(), true);
+            return false;
+        }
+    }
+
+    /**
+     * This method flushes and closes the journal, waiting for a running compaction to finish
+     * @return true if all changes reached the disk
+     */
+    public boolean close() {
+        try {
+            history.close();
+            if (journal == null && !saveUnreadFile()) {
+                return false;
+            }
+            if (store != null && journal != null
+                    && (sequence != store.journalSequence() || !ShardedTaskStore.exists(dataFile))) {
+                // the journal is folded into the shards, so that one project is read from its shards alone
+                saveToFile(dataFile.toString());
+            }
+            closeJournal();
+            if (searchIndex != null && dataFile != null) {
+                // written for the final state, it is reused on the next start if nothing changes meanwhile
+                searchIndex.write(indexFile(), sequence, taskList.size());
+            }
+            return true;
         } catch (Exception e) {
             Messages.showMessage(e.getMessage(), true);
             return false;
         }
     }
 
+    /**
+     * This method saves the list to the data file which could not be read, if it was changed since
+     * @return false if the changes could not be written
+     */
+    private boolean saveUnreadFile() throws IOException {
+        if (unreadFile == null || sequence == unreadSequence) {
+            return true;
+        }
+        if (!unreadFileKept && Files.exists(unreadFile)) {
+            Files.move(unreadFile, Paths.get(unreadFile + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+            Messages.showMessage("The data file which could not be read is kept as " + unreadFile + ".bak", false);
+        }
+        unreadFileKept = true;
+        if (!saveToFile(unreadFile.toString())) {
+            return false;
+        }
+        unreadSequence = sequence;
+        return true;
+    }
+
+    private void record(JournalRecord record) {
+        if (journal != null) {
+            metrics.add(TaskMetrics.Counter.BYTES_WRITTEN, journal.append(record));
+        }
+        if (replicationLog != null) {
+            replicationLog.append(record);
+        }
+    }
+
+    /**
+     * This method is called at the end of every change, after the listeners, so that the
+     * snapshot written by a compaction includes the change
+     */
+    private void compactIfDue() {
+        if (journal != null && !importing) {
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * This method starts a compaction if the journal grew beyond the threshold and no compaction
+     * is running
+     */
+    private void compactIfNeeded() {
+        if (journal.size() >= compactionThreshold && (compaction == null || compaction.isDone())) {
+            try {
+                awaitCompaction();
+            } catch (Exception e) {
+                // the rotated journal is kept and merged into the next compaction
+                Messages.showMessage("Journal compaction failed: " + e.getMessage(), true);
+            }
+            startCompaction();
+        }
+    }
+
+    /**
+     * This method rotates the journal and writes a copy of the current list as the new data file
+     * on a background thread. Records appended meanwhile go to the fresh journal.
+     */
+    private void startCompaction() {
+        try {
+            List<Task> copy;
+            if (keepsTaskObjects()) {
+                // taken at once, the first time it is built and kept up to date afterwards
+                copy = snapshot();
+            } else if (taskList instanceof CompactTaskList compact) {
+                copy = compact.copy();
+            } else {
+                List<Task> source = tasksToWrite();
+                copy = new ArrayList<>(source.size());
+                for (Task task : source) {
+                    copy.add(task.copy());
+                }
+            }
+            long snapshotSequence = sequence;
+            journal.rotate();
+
+            if (compactor == null) {
+                compactor = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "journal-compactor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            TaskJournal rotated = journal;
+            Path path = dataFile;
+            ShardedTaskStore shards = store;
+            // taken with the copy: changes made from now on are written by the next compaction
+            Map<String, ShardedTaskStore.Dirty> changed = shards == null ? null : shards.takeDirty();
+            TaskMetrics measured = metrics;
+            compaction = compactor.submit(() -> {
+                long start = measured.start();
+                long written;
+                if (shards != null) {
+                    written = writeShards(shards, copy, snapshotSequence, changed);
+                } else {
+                    written = writeDataFile(copy, snapshotSequence, path);
+                }
+                measured.add(TaskMetrics.Counter.BYTES_WRITTEN, written);
+                measured.record(TaskMetrics.Operation.COMPACTION, start);
+                rotated.discardRotated();
+                return null;
+            });
+        } catch (IOException e) {
+            Messages.showMessage("Journal compaction failed: " + e.getMessage(), true);
+        }
+    }
+
+    private void awaitCompaction() throws Exception {
+        if (compaction != null) {
+            try {
+                compaction.get();
+            } finally {
+                compaction = null;
+            }
+        }
+    }
+
+    private void closeJournal() throws Exception {
+        if (journal == null) {
+            return;
+        }
+        try {
+            awaitCompaction();
+        } finally {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * @return the list to write to a data file or to scan, e.g. to build an index or to search for
+     * short terms; for a mapped list, rows which were never used are decoded without being kept
+     * in memory
+     */
+    private List<Task> tasksToWrite() {
+        return taskList instanceof MappedTaskList mapped ? mapped.uncachedView() : taskList;
+    }
+
+    /**
+     * @return true if the tasks are read lazily from a memory-mapped data file
+     */
+    boolean isMapped() {
+        return taskList instanceof MappedTaskList;
+    }
+
+    /**
+     * @return the number of tasks of a memory-mapped data file which are kept in memory
+     */
+    int mappedTasksInMemory() {
+        return taskList instanceof MappedTaskList mapped ? mapped.materializedCount() : 0;
+    }
+
+    /**
+     * @return the highest id of the list and of its archive, the ids of archived tasks are not given again
+     */
+    private long maxId() {
+        long archived = archive == null ? 0 : archive.maxId();
+        if (taskList instanceof MappedTaskList mapped) {
+            return Math.max(archived, mapped.maxId());
+        }
+        if (taskList instanceof CompactTaskList compact) {
+            return Math.max(archived, compact.maxId());
+        }
+        long max = archived;
+        for (Task task : taskList) {
+            max = Math.max(max, task.getId());
+        }
+        return max;
+    }
+
+    /**
+     * This method replaces the data file atomically: as blocks, or as one file which can be
+     * memory-mapped if the list is loaded lazily. It is also called by the compaction thread.
+     * @return the number of bytes written
+     */
+    private long writeDataFile(List<Task> tasks, long snapshotSequence, Path path) throws IOException {
+        if (lazyLoad) {
+            long written = writeSnapshot(tasks, snapshotSequence, path);
+            BlockTaskFile.deletePacks(path);
+            return written;
+        }
+        return BlockTaskFile.write(tasks, snapshotSequence, path, compressionLevel);
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    private static long writeSnapshot(List<Task> tasks, long snapshotSequence, Path path) throws IOException {
+        Path temp = Paths.get(path + ".tmp");
+        BinaryTaskFile.write(tasks, snapshotSequence, temp);
+        long written = Files.size(temp);
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return written;
+    }
+
+    /**
+     * @return the size of a file, or of all files of a directory, 0 if it does not exist
+     */
+    private static long sizeOf(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return Files.exists(path) ? Files.size(path) : 0;
+        }
+        long size = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(path)) {
+            for (Path file : files) {
+                size += sizeOf(file);
+            }
+        }
+        return size;
+    }
+
+    private static long writeShards(ShardedTaskStore shards, List<Task> tasks, long snapshotSequence,
+                                    Map<String, ShardedTaskStore.Dirty> changed) throws IOException {
+        try {
+            return shards.write(tasks, snapshotSequence, changed);
+        } catch (IOException | RuntimeException e) {
+            // written again by the next compaction
+            shards.restoreDirty(changed);
+            throw e;
+        }
+    }
+
+    /**
+     * This method applies journal records on top of the loaded data file
+     * @param records records in journal order
+     */
+    private void replay(List<JournalRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        // mapped and compact lists find tasks by id themselves, without creating all of them
+        boolean findsById = taskList instanceof MappedTaskList || taskList instanceof CompactTaskList;
+        Map<Long, Task> tasksById = new HashMap<>();
+        if (!findsById) {
+            for (Task task : taskList) {
+                tasksById.put(task.getId(), task);
+            }
+        }
+        for (JournalRecord record : records) {
+            sequence = Math.max(sequence, record.getSequence());
+            Task task = findsById ? findTask(record.getTaskId()) : tasksById.get(record.getTaskId());
+            switch (record.getType()) {
+                case ADD -> {
+                    Task added = record.getTask();
+                    // an undone delete puts the task back at its position
+                    insert(added);
+                    tasksById.put(added.getId(), added);
+                }
+                case UPDATE -> {
+                    if (task != null) {
+                        task.restoreField(record.getField(), record.getValue());
+                    }
+                }
+                case COMPLETE -> {
+                    if (task != null) {
+                        task.restoreCompletion(record.isComplete(), record.getCompletedDate());
+                    }
+                }
+                case DELETE -> {
+                    if (task != null) {
+                        taskList.remove(task);
+                        tasksById.remove(task.getId());
+                    }
+                }
+            }
+        }
+    }
+
     public void showSortMenu() {
         System.out.println("\n=== Sort Tasks Menu ===");
         System.out.println("1. Sort by Due Date");
@@ -373,8 +2391,7 @@ public class TodoList {
         System.out.println("3. Sort by Completion Status");
         System.out.print(">>> Enter your choice: ");
         
-        @SuppressWarnings("resource")
-        Scanner scan = new Scanner(System.in);
+        Scanner scan = input();
         String choice = scan.nextLine();
 
         switch (choice) {
@@ -386,47 +2403,76 @@ public class TodoList {
     }
 
     public void sortByDueDate() {
-        taskList.sort(Comparator.comparing(Task::getDueDate, Comparator.nullsLast(Comparator.naturalOrder())));
-        Messages.showMessage("Tasks have been sorted by due date!", false);
-        listAllTasksWithIndex();
+        Messages.showMessage("Tasks are shown sorted by due date!", false);
+        listAllTasksWithIndex(TaskOrder.DUE_DATE);
     }
 
     public void sortByPriority() {
-        taskList.sort(Comparator.comparing(Task::getPriority, Comparator.nullsLast(String::compareToIgnoreCase)));
-        Messages.showMessage("Tasks have been sorted by priority!", false);
-        listAllTasksWithIndex();
+        Messages.showMessage("Tasks are shown sorted by priority!", false);
+        listAllTasksWithIndex(TaskOrder.PRIORITY);
     }
 
     public void sortByCompletionStatus() {
-        taskList.sort(Comparator.comparing(Task::isComplete));
-        Messages.showMessage("Tasks have been sorted by completion status!", false);
-        listAllTasksWithIndex();
+        Messages.showMessage("Tasks are shown sorted by completion status!", false);
+        listAllTasksWithIndex(TaskOrder.COMPLETION);
     }
 
     // 🔍 NEW METHOD ADDED BELOW
     public void searchTask() {
-        @SuppressWarnings("resource")
-        Scanner scan = new Scanner(System.in);
-        System.out.print("Enter a keyword to search by title or project: ");
-        String keyword = scan.nextLine().trim().toLowerCase();
+        Scanner scan = input();
+        System.out.print("Enter keywords to search by title, project or notes (use OR for alternatives): ");
+        String keyword = scan.nextLine().trim();
 
         System.out.println("\nSearch Results:");
         Messages.separator('=', 70);
 
-        boolean found = false;
-        for (Task task : taskList) {
-            if (task.getTitle().toLowerCase().contains(keyword) || 
-                task.getProject().toLowerCase().contains(keyword)) {
-                System.out.println(task.formattedStringOfTask());
-                found = true;
-            }
+        List<Task> results = keyword.isEmpty() ? getTasks() : search(keyword);
+        for (Task task : results) {
+            System.out.println(task.formattedStringOfTask());
         }
 
-        if (!found) {
+        if (results.isEmpty()) {
             System.out.println(Messages.RED_TEXT + "No matching tasks found!" + Messages.RESET_TEXT);
         }
         Messages.separator('=', 70);
     }
+
+    /**
+     * This method asks for a query, e.g. "project:Work priority:high is:open due:this-week",
+     * and shows the matching tasks
+     */
+    public void queryTasks() {
+        Scanner scan = input();
+        Messages.queryHelp();
+        String text = scan.nextLine().trim();
+        try {
+            TaskQuery query = TaskQuery.parse(text);
+            List<Task> results;
+            String conditions;
+            if (query.inArchive()) {
+                results = queryArchive(query);
+                conditions = query + " in an archive of " + archivedCount() + " tasks";
+            } else {
+                // like the API, so the later occurrences of repeating tasks are found too
+                results = query(query);
+                conditions = planQuery(query).toString();
+            }
+
+            System.out.println("\nQuery Results:");
+            Messages.separator('=', 70);
+            for (Task task : results) {
+                System.out.println(task.formattedStringOfTask());
+            }
+            if (results.isEmpty()) {
+                System.out.println(Messages.RED_TEXT + "No matching tasks found!" + Messages.RESET_TEXT);
+            }
+            Messages.separator('=', 70);
+            System.out.println(results.size() + " task(s) found, conditions: " + conditions);
+        } catch (IllegalArgumentException | IOException e) {
+            Messages.showMessage(e.getMessage(), true);
+        }
+    }
+
     public void showMotivationalQuote() {
     String[] quotes = {
         "Keep going — every small step counts!",
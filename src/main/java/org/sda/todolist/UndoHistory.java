@@ -0,0 +1,373 @@
+package org.sda.todolist;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class is the history of the changes made to a TodoList, which can be undone and redone.
+ *
+ * A change is kept as journal records: the records which apply it and the records which revert
+ * it. An update only keeps the field with its old and new value; only adding and deleting keep
+ * the fields of the whole task. Changes are stored encoded as bytes in two stacks, one to undo
+ * and one to redo. The newest changes of a stack are kept in a ring buffer in memory, up to a
+ * number of changes and a number of bytes. Older changes are moved to a spill file on disk and
+ * read back when they are undone, so the memory used does not grow with the session. Without a
+ * spill directory the oldest changes are dropped instead.
+ **/
+
+public class UndoHistory implements Closeable {
+    // number of changes of each stack kept in memory
+    public static final int DEFAULT_CAPACITY = 4096;
+    // bytes of the changes of each stack kept in memory
+    public static final long DEFAULT_MEMORY = 1L << 20;
+
+    private final Stack undo;
+    private final Stack redo;
+
+    /**
+     * This constructor keeps the default number of changes in memory and spills older changes
+     * to the directory for temporary files
+     */
+    public UndoHistory() {
+        this(DEFAULT_CAPACITY, DEFAULT_MEMORY, Paths.get(System.getProperty("java.io.tmpdir")));
+    }
+
+    /**
+     * @param capacity number of changes of each stack kept in memory
+     * @param memory bytes of the changes of each stack kept in memory
+     * @param spillDirectory directory of the spill files, or null to drop the oldest changes
+     */
+    public UndoHistory(int capacity, long memory, Path spillDirectory) {
+        if (capacity < 2 || memory < 1) {
+            throw new IllegalArgumentException("The history must keep at least 2 changes in memory");
+        }
+        this.undo = new Stack("undo", capacity, memory, spillDirectory);
+        this.redo = new Stack("redo", capacity, memory, spillDirectory);
+    }
+
+    /**
+     * This method records a new change, the changes which were undone can no longer be redone
+     */
+    public synchronized void record(Change change) {
+        if (change.isEmpty()) {
+            return;
+        }
+        undo.push(change.encode());
+        redo.clear();
+    }
+
+    /**
+     * This method takes the last change to undo it, it can be redone afterwards
+     * @return the change, or null if there is nothing to undo
+     */
+    public synchronized Change undo() {
+        byte[] change = undo.pop();
+        if (change == null) {
+            return null;
+        }
+        redo.push(change);
+        return Change.decode(change);
+    }
+
+    /**
+     * This method takes the last undone change to apply it again
+     * @return the change, or null if there is nothing to redo
+     */
+    public synchronized Change redo() {
+        byte[] change = redo.pop();
+        if (change == null) {
+            return null;
+        }
+        undo.push(change);
+        return Change.decode(change);
+    }
+
+    /**
+     * @return the number of changes which can be undone, in memory and spilled
+     */
+    public synchronized int undoCount() {
+        return undo.count();
+    }
+
+    /**
+     * @return the number of changes which can be redone, in memory and spilled
+     */
+    public synchronized int redoCount() {
+        return redo.count();
+    }
+
+    /**
+     * @return the bytes of the changes kept in memory
+     */
+    public synchronized long memoryUsed() {
+        return undo.bytes + redo.bytes;
+    }
+
+    /**
+     * This method forgets all changes, e.g. when another data file is loaded
+     */
+    public synchronized void clear() {
+        undo.clear();
+        redo.clear();
+    }
+
+    /**
+     * This method forgets all changes and deletes the spill files
+     */
+    @Override
+    public synchronized void close() {
+        undo.close();
+        redo.close();
+    }
+
+    /**
+     * This class is one change of the list, made of one or more steps (e.g. several fields of a
+     * task updated at once). Every step is the journal record which applies it and the journal
+     * record which reverts it; the sequence numbers of the records are not used.
+     **/
+    public static final class Change {
+        private final List<JournalRecord> forward = new ArrayList<>(1);
+        private final List<JournalRecord> backward = new ArrayList<>(1);
+
+        /**
+         * @param apply the record which applies the step
+         * @param revert the record which reverts the step
+         */
+        public void add(JournalRecord apply, JournalRecord revert) {
+            forward.add(apply);
+            backward.add(revert);
+        }
+
+        public boolean isEmpty() {
+            return forward.isEmpty();
+        }
+
+        /**
+         * @return the records which apply the change, in order
+         */
+        public List<JournalRecord> redoRecords() {
+            return Collections.unmodifiableList(forward);
+        }
+
+        /**
+         * @return the records which revert the change, the last step first
+         */
+        public List<JournalRecord> undoRecords() {
+            List<JournalRecord> records = new ArrayList<>(backward);
+            Collections.reverse(records);
+            return records;
+        }
+
+        byte[] encode() {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 * forward.size());
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(forward.size());
+                for (int i = 0; i < forward.size(); i++) {
+                    // records are self-delimiting, see JournalRecord.decode
+                    out.write(forward.get(i).encode());
+                    out.write(backward.get(i).encode());
+                }
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                // writing to a byte array does not fail
+                throw new IllegalStateException(e);
+            }
+        }
+
+        static Change decode(byte[] bytes) {
+            try {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+                Change change = new Change();
+                int steps = in.readInt();
+                for (int i = 0; i < steps; i++) {
+                    change.add(JournalRecord.decode(in), JournalRecord.decode(in));
+                }
+                return change;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Damaged undo history", e);
+            }
+        }
+    }
+
+    /**
+     * This class is a stack of encoded changes. The top of the stack is a ring buffer in memory;
+     * when it is full, its oldest entry is appended to the spill file (or dropped). The spill file
+     * is a stack itself: every entry is followed by its length, so it is read back from its end and
+     * cut off behind the entries read.
+     **/
+    private static final class Stack {
+        // bytes counted for an entry besides its content: array header and reference
+        private static final int ENTRY_OVERHEAD = 24;
+
+        private final String name;
+        private final byte[][] ring;
+        private final long memory;
+        private Path spillDirectory;
+        // position of the oldest entry in the ring, and number of entries in the ring
+        private int head;
+        private int size;
+        private long bytes;
+        private FileChannel spill;
+        private int spilled;
+
+        Stack(String name, int capacity, long memory, Path spillDirectory) {
+            this.name = name;
+            this.ring = new byte[capacity][];
+            this.memory = memory;
+            this.spillDirectory = spillDirectory;
+        }
+
+        void push(byte[] entry) {
+            if (size == ring.length || size > 0 && bytes + entry.length + ENTRY_OVERHEAD > memory) {
+                // half of the ring at once, so that the spill file is written in large blocks
+                evictOldest(Math.max(size / 2, 1), Math.min(memory / 2, memory - entry.length - ENTRY_OVERHEAD));
+            }
+            ring[(head + size) % ring.length] = entry;
+            size++;
+            bytes += entry.length + ENTRY_OVERHEAD;
+        }
+
+        byte[] pop() {
+            if (size == 0 && spilled > 0) {
+                readBack();
+            }
+            if (size == 0) {
+                return null;
+            }
+            int top = (head + size - 1) % ring.length;
+            byte[] entry = ring[top];
+            ring[top] = null;
+            size--;
+            bytes -= entry.length + ENTRY_OVERHEAD;
+            return entry;
+        }
+
+        int count() {
+            return size + spilled;
+        }
+
+        void clear() {
+            Arrays.fill(ring, null);
+            head = 0;
+            size = 0;
+            bytes = 0;
+            spilled = 0;
+            if (spill != null) {
+                try {
+                    spill.truncate(0);
+                } catch (IOException e) {
+                    closeSpill();
+                }
+            }
+        }
+
+        void close() {
+            clear();
+            closeSpill();
+        }
+
+        private void closeSpill() {
+            if (spill != null) {
+                try {
+                    // the file is deleted on close
+                    spill.close();
+                } catch (IOException e) {
+                    // nothing is left to lose
+                }
+                spill = null;
+            }
+        }
+
+        /**
+         * This method moves the oldest entries to the spill file, or drops them
+         * @param count number of entries to move at least
+         * @param target bytes in memory to go below
+         */
+        private void evictOldest(int count, long target) {
+            List<byte[]> evicted = new ArrayList<>(count);
+            long length = 0;
+            while (size > 0 && (evicted.size() < count || bytes > target)) {
+                byte[] oldest = ring[head];
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+                bytes -= oldest.length + ENTRY_OVERHEAD;
+                evicted.add(oldest);
+                length += oldest.length + 4;
+            }
+            if (spillDirectory == null) {
+                return;
+            }
+            try {
+                if (spill == null) {
+                    Path path = Files.createTempFile(spillDirectory, "todolist-" + name + "-", ".spill");
+                    spill = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                            StandardOpenOption.DELETE_ON_CLOSE);
+                }
+                ByteBuffer buffer = ByteBuffer.allocate((int) length);
+                for (byte[] entry : evicted) {
+                    buffer.put(entry).putInt(entry.length);
+                }
+                buffer.flip();
+                long position = spill.size();
+                while (buffer.hasRemaining()) {
+                    position += spill.write(buffer, position);
+                }
+                spilled += evicted.size();
+            } catch (IOException e) {
+                // the history is kept in memory only, the spilled changes can not be undone anymore
+                spillDirectory = null;
+                spilled = 0;
+                closeSpill();
+            }
+        }
+
+        /**
+         * This method moves the newest spilled entries back into the empty ring, up to half of
+         * its capacity and memory, so that the next pushes do not spill them again at once
+         */
+        private void readBack() {
+            try {
+                long end = spill.size();
+                ByteBuffer length = ByteBuffer.allocate(4);
+                while (spilled > 0 && size < ring.length / 2 && bytes < memory / 2) {
+                    length.clear();
+                    spill.read(length, end - 4);
+                    byte[] entry = new byte[length.flip().getInt()];
+                    long start = end - 4 - entry.length;
+                    ByteBuffer content = ByteBuffer.wrap(entry);
+                    while (content.hasRemaining()) {
+                        spill.read(content, start + content.position());
+                    }
+                    // older than all entries in the ring, so it goes below them
+                    head = (head - 1 + ring.length) % ring.length;
+                    ring[head] = entry;
+                    size++;
+                    bytes += entry.length + ENTRY_OVERHEAD;
+                    spilled--;
+                    end = start;
+                }
+                spill.truncate(end);
+            } catch (IOException e) {
+                spilled = 0;
+                throw new UncheckedIOException("The undo history can not be read: " + e.getMessage(), e);
+            }
+        }
+    }
+}
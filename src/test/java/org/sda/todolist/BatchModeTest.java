@@ -0,0 +1,121 @@
+package org.sda.todolist;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the commands of the batch mode, i.e., BatchMode
+ **/
+
+
+public class BatchModeTest {
+    TodoList todoList;
+    StringWriter out;
+    StringWriter err;
+    String tomorrow = LocalDate.now().plusDays(1).toString();
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create an empty task list and collect the output of the commands.
+     */
+    @Before
+    public void setUp() {
+        todoList = new TodoList();
+        out = new StringWriter();
+        err = new StringWriter();
+    }
+
+    /**
+     * This method will validate that a script is applied command by command, and that failed
+     * commands are reported without stopping it
+     */
+    @Test
+    public void testScript() throws Exception {
+        BatchMode batch = new BatchMode(todoList, BatchMode.Format.TEXT, out, err);
+        batch.runScript(new BufferedReader(new StringReader(String.join("\n",
+                "# tasks of the week",
+                "add Pay rent --due " + tomorrow + " --project Home --priority high",
+                "add \"Fix 'login' bug\" --due=" + tomorrow + " --project Work --notes \"see issue 12\"",
+                "",
+                "add Call Anna --due yesterday",
+                "complete 1 7",
+                "list --open",
+                "search issue",
+                "delete 2",
+                "list",
+                "rename 1"))));
+        batch.flush();
+
+        assertEquals(List.of("added 1", "added 2", "completed 1",
+                "2\t" + tomorrow + "\tMEDIUM\topen\tWork\tFix 'login' bug",
+                "2\t" + tomorrow + "\tMEDIUM\topen\tWork\tFix 'login' bug",
+                "deleted 2",
+                "1\t" + tomorrow + "\tHIGH\tdone\tHome\tPay rent"), List.of(out.toString().split("\n")));
+        assertEquals(List.of("line 5: Text 'yesterday' could not be parsed at index 0",
+                "line 6: No task with id 7",
+                "line 11: Unknown command: rename"), List.of(err.toString().split("\n")));
+        assertEquals(1, todoList.getTasks().size());
+    }
+
+    /**
+     * This method will validate the JSON output of tasks, results and errors
+     */
+    @Test
+    public void testJson() {
+        BatchMode batch = new BatchMode(todoList, BatchMode.Format.JSON, out, err);
+        batch.execute(List.of("add", "Pay", "rent", "--due", tomorrow), 1);
+        batch.execute(List.of("list", "--due", "3", "--limit", "1"), 2);
+        batch.execute(List.of("reopen", "x"), 3);
+        batch.flush();
+
+        assertEquals(List.of("{\"added\":1}",
+                "{\"id\":1,\"title\":\"Pay rent\",\"project\":\"\",\"dueDate\":\"" + tomorrow
+                        + "\",\"priority\":\"MEDIUM\",\"complete\":false,\"completedDate\":null,\"notes\":\"\",\"recurrence\":null}",
+                "{\"line\":3,\"error\":\"For input string: \\\"x\\\"\"}"), List.of(out.toString().split("\n")));
+        assertEquals("", err.toString());
+    }
+
+    /**
+     * This method will validate that commands which change the tasks fail if the data file could
+     * not be read, while the other commands still run
+     */
+    @Test
+    public void testReadOnly() {
+        todoList.addTask("Pay rent", "Home", LocalDate.now().plusDays(1));
+        BatchMode batch = new BatchMode(todoList, BatchMode.Format.TEXT, out, err);
+        batch.setReadOnly(true);
+        batch.execute(List.of("add", "Call", "Anna", "--due", tomorrow), 1);
+        batch.execute(List.of("complete", "1"), 2);
+        batch.execute(List.of("search", "rent"), 3);
+        batch.flush();
+
+        assertEquals(List.of("line 1: The data file could not be read, add would not be saved",
+                "line 2: The data file could not be read, complete would not be saved"), List.of(err.toString().split("\n")));
+        assertEquals(1, todoList.getTasks().size());
+        assertFalse(todoList.getTasks().get(0).isComplete());
+        assertTrue(out.toString().contains("Pay rent"));
+    }
+
+    /**
+     * This method will validate that lines of a script are split into words like a shell does
+     */
+    @Test
+    public void testWords() {
+        assertEquals(List.of("add", "Pay rent", "--notes=it's due", "", "a\"b"),
+                BatchMode.words("  add \"Pay rent\" --notes=\"it's due\" '' a\\\"b "));
+        try {
+            BatchMode.words("add \"Pay rent");
+            fail("a quote which is not closed must be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().startsWith("Quote is not closed"));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package org.sda.todolist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the binary data file, i.e., BinaryTaskFile and TaskFileMigrator
+ **/
+
+
+public class BinaryTaskFileTest {
+    Path dataFile;
+    ArrayList<Task> tasks;
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create a temporary data file and a few tasks with different field values.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        dataFile = Files.createTempFile("tasks", ".obj");
+        tasks = new ArrayList<>();
+
+        Task open = new Task("Write report", "Work", LocalDate.now().plusDays(3), "HIGH");
+        open.setNotes("first draft");
+        tasks.add(open);
+
+        Task done = new Task("Buy milk", "Home", LocalDate.now().plusDays(1));
+        done.markCompleted();
+        tasks.add(done);
+
+        tasks.add(Task.restore("Old task", "", LocalDate.parse("2019-12-31"), "LOW", false, null, ""));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(dataFile);
+        Files.deleteIfExists(Paths.get(dataFile + ".bak"));
+    }
+
+    /**
+     * This method will validate that all fields of all tasks survive a write and read of the data file
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        BinaryTaskFile.write(tasks, dataFile);
+
+        assertTrue(BinaryTaskFile.isBinaryFile(dataFile));
+        assertTasksEqual(tasks, BinaryTaskFile.read(dataFile));
+    }
+
+    /**
+     * This method will validate that the rules of repeating tasks are written and read back, and
+     * that only files with repeating tasks are marked with the version older readers refuse
+     */
+    @Test
+    public void testRecurrenceVersion() throws Exception {
+        BinaryTaskFile.write(tasks, dataFile);
+        assertEquals(2, version());
+
+        tasks.get(0).setRecurrence(Recurrence.parse("weekly on mon,fri", tasks.get(0).getDueDate()));
+        BinaryTaskFile.write(tasks, dataFile);
+        assertEquals(BinaryTaskFile.VERSION, version());
+        List<Task> read = BinaryTaskFile.read(dataFile);
+        assertEquals(tasks.get(0).getRecurrence(), read.get(0).getRecurrence());
+        assertFalse(read.get(1).isRecurring());
+    }
+
+    private short version() throws Exception {
+        return ByteBuffer.wrap(Files.readAllBytes(dataFile)).getShort(4);
+    }
+
+    /**
+     * This method will validate that tasks added to a list mapped from the data file are found by
+     * id after they are removed, added back in another order or removed by a filter
+     */
+    @Test
+    public void testMappedListFindsAppendedTasks() throws Exception {
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).setId(i + 1);
+        }
+        BinaryTaskFile.write(tasks, dataFile);
+        MappedTaskList list = new MappedTaskList(BinaryTaskFile.map(dataFile));
+        List<Task> added = new ArrayList<>();
+        for (long id = 10; id < 15; id++) {
+            Task task = new Task("Added " + id, "Home", LocalDate.now().plusDays(1));
+            task.setId(id);
+            added.add(task);
+            list.add(task);
+        }
+        assertSame(added.get(2), list.findById(12));
+        assertSame(added.get(2), list.peekById(12));
+        assertEquals("Write report", list.findById(1).getTitle());
+
+        assertTrue(list.remove(added.get(2)));
+        assertNull(list.findById(12));
+        list.add(added.get(2));
+        assertEquals(list.size() - 1, list.indexOf(added.get(2)));
+        assertSame(added.get(2), list.findById(12));
+        assertSame(added.get(4), list.remove(list.indexOf(added.get(4))));
+        assertNull(list.peekById(14));
+        list.removeIf(task -> task.getId() == 10 || task.getId() == 2);
+        assertNull(list.findById(10));
+        assertNull(list.findById(2));
+        assertSame(added.get(1), list.findById(11));
+        assertEquals(-1, list.indexOf(new Task("Added 11", "Home", LocalDate.now().plusDays(1))));
+    }
+
+    /**
+     * This method will validate that an empty task list can be written and read back
+     */
+    @Test
+    public void testEmptyList() throws Exception {
+        BinaryTaskFile.write(new ArrayList<>(), dataFile);
+
+        assertEquals(0, BinaryTaskFile.read(dataFile).size());
+    }
+
+    /**
+     * This method will validate that a data file written with Java serialization is migrated
+     * to the binary format and a backup of the old file is kept
+     */
+    @Test
+    public void testMigrateLegacyFile() throws Exception {
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(dataFile))) {
+            out.writeObject(tasks);
+        }
+        assertTrue(TaskFileMigrator.isLegacyFile(dataFile));
+
+        assertEquals(tasks.size(), TaskFileMigrator.migrate(dataFile));
+
+        assertTrue(BinaryTaskFile.isBinaryFile(dataFile));
+        assertTrue(Files.exists(Paths.get(dataFile + ".bak")));
+        assertTasksEqual(tasks, BinaryTaskFile.read(dataFile));
+        assertEquals(-1, TaskFileMigrator.migrate(dataFile));
+    }
+
+    private void assertTasksEqual(List<Task> expected, List<Task> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Task e = expected.get(i);
+            Task a = actual.get(i);
+            assertEquals(e.getTitle(), a.getTitle());
+            assertEquals(e.getProject(), a.getProject());
+            assertEquals(e.getPriority(), a.getPriority());
+            assertEquals(e.getDueDate(), a.getDueDate());
+            assertEquals(e.isComplete(), a.isComplete());
+            assertEquals(e.getCompletedDate(), a.getCompletedDate());
+            assertEquals(e.getNotes(), a.getNotes());
+        }
+    }
+}
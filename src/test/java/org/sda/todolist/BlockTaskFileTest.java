@@ -0,0 +1,155 @@
+package org.sda.todolist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the data file stored as blocks, i.e., BlockTaskFile
+ **/
+
+
+public class BlockTaskFileTest {
+    Path directory;
+    Path dataFile;
+    LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create an empty temporary directory for the data file and its pack.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("todolist");
+        dataFile = directory.resolve("tasks.obj");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * This method will validate that the tasks are read back unchanged, compressed or not, and
+     * that saving one changed task appends only its block
+     */
+    @Test
+    public void testRoundTripAndSmallSave() throws Exception {
+        for (int level : new int[]{0, 6}) {
+            List<Task> tasks = tasks(10_000);
+            long first = BlockTaskFile.write(tasks, 3, dataFile, level);
+            BlockTaskFile.Contents contents = BlockTaskFile.read(dataFile);
+            assertEquals(3, contents.journalSequence());
+            assertEquals(tasks.size(), contents.tasks().size());
+            for (int i = 0; i < tasks.size(); i++) {
+                assertEquals(tasks.get(i).getId(), contents.tasks().get(i).getId());
+                assertEquals(tasks.get(i).getTitle(), contents.tasks().get(i).getTitle());
+                assertEquals(tasks.get(i).getProject(), contents.tasks().get(i).getProject());
+                assertEquals(tasks.get(i).getDueDate(), contents.tasks().get(i).getDueDate());
+            }
+
+            tasks.get(5000).setNotes("changed");
+            long second = BlockTaskFile.write(tasks, 4, dataFile, level);
+            // one block of 1024 tasks and the index
+            assertTrue(level + ": " + second + " of " + first, second < first / 5);
+            contents = BlockTaskFile.read(dataFile);
+            assertEquals(4, contents.journalSequence());
+            assertEquals("changed", contents.tasks().get(5000).getNotes());
+            BlockTaskFile.deletePacks(dataFile);
+            Files.delete(dataFile);
+        }
+    }
+
+    /**
+     * This method will validate that a damaged block is reported, and that a torn append to the
+     * pack does not hurt the blocks written before it
+     */
+    @Test
+    public void testDamage() throws Exception {
+        List<Task> tasks = tasks(3000);
+        BlockTaskFile.write(tasks, 1, dataFile, BlockTaskFile.DEFAULT_LEVEL);
+        Path pack = BlockTaskFile.packPath(dataFile, 1);
+        long size = Files.size(pack);
+
+        // half a block written by a save which did not finish
+        try (FileChannel channel = FileChannel.open(pack, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[500]));
+        }
+        assertEquals(3000, BlockTaskFile.read(dataFile).tasks().size());
+        tasks.get(10).setTitle("renamed");
+        BlockTaskFile.write(tasks, 2, dataFile, BlockTaskFile.DEFAULT_LEVEL);
+        assertEquals("renamed", BlockTaskFile.read(dataFile).tasks().get(10).getTitle());
+
+        try (FileChannel channel = FileChannel.open(pack, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}), size / 2);
+        }
+        try {
+            BlockTaskFile.read(dataFile);
+            fail("a damaged block must not be read");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("damaged"));
+        }
+    }
+
+    /**
+     * This method will validate that the pack is rewritten once most of it is unused, and that a
+     * list saves and loads through TodoList as blocks
+     */
+    @Test
+    public void testPackRewrite() throws Exception {
+        List<Task> tasks = tasks(20_000);
+        BlockTaskFile.write(tasks, 1, dataFile, 0);
+        long used = Files.size(BlockTaskFile.packPath(dataFile, 1));
+        long generation = 1;
+        for (int i = 0; i < 30 && generation == 1; i++) {
+            for (Task task : tasks) {
+                task.setNotes("round " + i);
+            }
+            BlockTaskFile.write(tasks, 2 + i, dataFile, 0);
+            generation = Files.exists(BlockTaskFile.packPath(dataFile, 1)) ? 1 : 2;
+        }
+        assertEquals(2, generation);
+        assertTrue(Files.size(BlockTaskFile.packPath(dataFile, 2)) < 2 * used);
+        assertTrue(BlockTaskFile.read(dataFile).tasks().get(19_999).getNotes().startsWith("round"));
+
+        TodoList todoList = new TodoList();
+        todoList.readFromFile(dataFile.toString());
+        todoList.addTask("Pay rent", "Home", tomorrow);
+        assertTrue(todoList.saveToFile(dataFile.toString()));
+        assertTrue(todoList.close());
+        assertTrue(BlockTaskFile.isBlockFile(dataFile));
+        TodoList reopened = new TodoList();
+        assertTrue(reopened.readFromFile(dataFile.toString()));
+        assertEquals(20_001, reopened.getTasks().size());
+        assertEquals("Pay rent", reopened.findTask(20_001).getTitle());
+        reopened.close();
+    }
+
+    private List<Task> tasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            Task task = new Task("Task " + i, "Project " + (i % 7), tomorrow.plusDays(i % 30), "LOW");
+            task.setId(i);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,180 @@
+package org.sda.todolist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the compact task store, i.e., CompactTaskList and
+ * the priority levels of Task
+ **/
+
+
+public class CompactTaskListTest {
+    TodoList todoList;
+    Path directory;
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create a task list kept in primitive arrays.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        todoList = new TodoList();
+        todoList.setCompactStorage(true);
+        directory = Files.createTempDirectory("todolist");
+        todoList.readFromFile(directory.resolve("tasks.obj").toString());
+
+        Task report = new Task("Write report", "Work", LocalDate.now().plusDays(3), "high");
+        report.setNotes("first draft");
+        todoList.addTask(report);
+        todoList.addTask("Buy milk", "Home", LocalDate.now().plusDays(1));
+        todoList.addTask("Water plants", "Home", LocalDate.now().plusDays(2));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        todoList.close();
+        deleteDirectory(directory);
+    }
+
+    /**
+     * This method will validate that priority texts are normalized to the priority levels
+     */
+    @Test
+    public void testPriorityLevels() {
+        Task task = new Task("Title", "Project", LocalDate.now(), "  low ");
+        assertEquals("LOW", task.getPriority());
+        assertEquals(Task.Priority.LOW, task.getPriorityLevel());
+
+        task.setPriority("");
+        assertEquals("MEDIUM", task.getPriority());
+        try {
+            task.setPriority("urgent");
+            fail("should have thrown an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("MEDIUM", task.getPriority());
+        }
+        // stored free text of older versions
+        assertEquals("MEDIUM", Task.restore("Old", "", null, "Medium", false, null, "").getPriority());
+    }
+
+    /**
+     * This method will validate that the views read and write the values of the tasks
+     */
+    @Test
+    public void testViews() {
+        Task report = todoList.getTasks().get(0);
+        assertEquals("Write report", report.getTitle());
+        assertEquals("Work", report.getProject());
+        assertEquals("HIGH", report.getPriority());
+        assertEquals("first draft", report.getNotes());
+        assertEquals(LocalDate.now().plusDays(3), report.getDueDate());
+        assertNull(report.getCompletedDate());
+
+        todoList.updateTask(report, TaskField.TITLE, "Write final report");
+        todoList.updateTask(report, TaskField.PRIORITY, "low");
+        todoList.markCompleted(report);
+        Task again = todoList.findTask(report.getId());
+        assertEquals("Write final report", again.getTitle());
+        assertEquals(Task.Priority.LOW, again.getPriorityLevel());
+        assertTrue(again.isComplete());
+        assertEquals(LocalDate.now(), again.getCompletedDate());
+        assertEquals(1, todoList.completedCount());
+        assertEquals(2, todoList.notCompletedCount());
+
+        try {
+            todoList.updateTask(again, TaskField.TITLE, " ");
+            fail("should have thrown a NullPointerException");
+        } catch (NullPointerException e) {
+            assertEquals("Write final report", again.getTitle());
+        }
+    }
+
+    /**
+     * This method will validate that a view is serialized as a plain task with its current values
+     */
+    @Test
+    public void testSerializedView() throws Exception {
+        Task report = todoList.getTasks().get(0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(report);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Task read = (Task) in.readObject();
+            assertEquals(Task.class, read.getClass());
+            assertEquals(report.getId(), read.getId());
+            assertEquals("Write report", read.getTitle());
+            assertEquals("first draft", read.getNotes());
+        }
+    }
+
+    /**
+     * This method will validate that views stay valid when other tasks are removed, and that a
+     * removed task can still be read
+     */
+    @Test
+    public void testRemove() {
+        Task milk = todoList.getTasks().get(1);
+        Task plants = todoList.getTasks().get(2);
+
+        assertTrue(todoList.removeTask(milk));
+        assertEquals("Buy milk", milk.getTitle());
+        assertEquals(2, todoList.getTasks().size());
+        assertEquals("Water plants", plants.getTitle());
+        assertEquals(1, todoList.positionOf(plants));
+        assertNull(todoList.findTask(milk.getId()));
+        assertFalse(todoList.removeTask(milk));
+    }
+
+    /**
+     * This method will validate that a compact list is written to and read from the data file
+     * and the journal like a list of Task objects
+     */
+    @Test
+    public void testDataFile() throws Exception {
+        Path directory = Files.createTempDirectory("todolist");
+        String dataFile = directory.resolve("tasks.obj").toString();
+
+        TodoList stored = new TodoList();
+        stored.readFromFile(dataFile);
+        stored.addTask("Renew passport", "Admin", LocalDate.now().plusDays(10));
+        stored.addTask("Pay taxes", "Admin", LocalDate.now().plusDays(20));
+        stored.saveToFile(dataFile);
+        stored.markCompleted(stored.getTasks().get(1));
+        stored.close();
+
+        TodoList reloaded = new TodoList();
+        reloaded.setCompactStorage(true);
+        reloaded.readFromFile(dataFile);
+        assertEquals(2, reloaded.getTasks().size());
+        assertEquals("Pay taxes", reloaded.getTasks().get(1).getTitle());
+        assertEquals("Admin", reloaded.getTasks().get(1).getProject());
+        assertEquals(1, reloaded.completedCount());
+        reloaded.addTask("Book flights", "Travel", LocalDate.now().plusDays(5));
+        assertEquals(3, reloaded.getTasks().get(2).getId());
+        reloaded.close();
+        deleteDirectory(directory);
+    }
+
+    private void deleteDirectory(Path directory) throws Exception {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,199 @@
+package org.sda.todolist;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for stress testing of ConcurrentTodoList, i.e., many threads adding,
+ * editing, completing and removing tasks while others read them
+ **/
+
+
+public class ConcurrentTodoListTest {
+    static final int WRITERS = 32;
+    static final int READERS = 4;
+    static final int OPERATIONS = 400;
+
+    TodoList todoList;
+    ConcurrentTodoList tasks;
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create a shared task list with some tasks in it.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        todoList = new TodoList();
+        for (int i = 0; i < 100; i++) {
+            todoList.addTask(new Task("Task " + i, "Shared", LocalDate.now().plusDays(i), "LOW"));
+        }
+    }
+
+    /**
+     * This method will validate the changes of single calls
+     */
+    @Test
+    public void testChanges() {
+        tasks = new ConcurrentTodoList(todoList);
+        long id = tasks.add(new Task("Write report", "Work", LocalDate.now().plusDays(3), "HIGH"));
+        assertEquals(101, id);
+        assertTrue(tasks.update(id, TaskField.PROJECT, "Office"));
+        assertTrue(tasks.markCompleted(id));
+        assertEquals("Office", tasks.find(id).getProject());
+        assertTrue(tasks.find(id).isComplete());
+        assertEquals(1, tasks.completedCount());
+
+        try {
+            tasks.update(id, TaskField.DUE_DATE, "tomorrow");
+            fail("should have thrown a DateTimeParseException");
+        } catch (RuntimeException e) {
+            assertEquals(LocalDate.now().plusDays(3), tasks.find(id).getDueDate());
+        }
+        assertEquals(3, tasks.version());
+
+        assertTrue(tasks.remove(id));
+        assertNull(tasks.find(id));
+        assertFalse(tasks.update(id, TaskField.TITLE, "Gone"));
+        assertFalse(tasks.remove(id));
+        assertEquals(100, tasks.size());
+    }
+
+    /**
+     * This method will validate the final state after 32 threads changed the list at the same
+     * time, and that readers never see a task with only a part of an update applied
+     */
+    @Test
+    public void testStress() throws Exception {
+        tasks = new ConcurrentTodoList(todoList);
+        ExecutorService threads = Executors.newFixedThreadPool(WRITERS + READERS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger tornReads = new AtomicInteger();
+
+        List<Future<Map<Long, Task>>> writers = new ArrayList<>();
+        for (int t = 0; t < WRITERS; t++) {
+            int thread = t;
+            writers.add(threads.submit(() -> {
+                start.await();
+                return write(thread);
+            }));
+        }
+        List<Future<?>> readers = new ArrayList<>();
+        for (int t = 0; t < READERS; t++) {
+            readers.add(threads.submit(() -> {
+                start.await();
+                while (writing.get()) {
+                    for (Task task : tasks.getTasks(TaskOrder.PROJECT, 0, Integer.MAX_VALUE)) {
+                        if (!consistent(task)) {
+                            tornReads.incrementAndGet();
+                        }
+                    }
+                    for (Task task : tasks.search("v1")) {
+                        if (!consistent(task)) {
+                            tornReads.incrementAndGet();
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        Map<Long, Task> expected = new HashMap<>();
+        for (Future<Map<Long, Task>> writer : writers) {
+            expected.putAll(writer.get(60, TimeUnit.SECONDS));
+        }
+        writing.set(false);
+        for (Future<?> reader : readers) {
+            reader.get(60, TimeUnit.SECONDS);
+        }
+        threads.shutdown();
+
+        assertEquals(0, tornReads.get());
+        assertEquals(100 + expected.size(), tasks.size());
+        int completed = 0;
+        for (Task task : expected.values()) {
+            Task actual = tasks.find(task.getId());
+            assertNotNull(actual);
+            assertEquals(task.getTitle(), actual.getTitle());
+            assertEquals(task.getNotes(), actual.getNotes());
+            assertEquals(task.getProject(), actual.getProject());
+            assertEquals(task.isComplete(), actual.isComplete());
+            completed += task.isComplete() ? 1 : 0;
+        }
+        assertEquals(completed, tasks.completedCount());
+        assertEquals(completed, tasks.statistics().completed());
+        assertEquals(100 + expected.size(), tasks.statistics().total());
+        assertEquals(tasks.size(), tasks.getTasks(TaskOrder.DUE_DATE, 0, Integer.MAX_VALUE).size());
+    }
+
+    /**
+     * This method runs the changes of one writer on its own tasks
+     * @return the expected tasks of this writer by id
+     */
+    private Map<Long, Task> write(int thread) {
+        Random random = new Random(thread);
+        Map<Long, Task> own = new HashMap<>();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < OPERATIONS; i++) {
+            int operation = ids.isEmpty() ? 0 : random.nextInt(5);
+            if (operation == 0) {
+                Task task = new Task("v0", "P" + (thread % 8), LocalDate.now().plusDays(random.nextInt(30)), "MEDIUM");
+                task.setNotes("v0");
+                long id = tasks.add(task);
+                own.put(id, task.copy());
+                ids.add(id);
+                continue;
+            }
+            long id = ids.get(random.nextInt(ids.size()));
+            Task task = own.get(id);
+            if (operation == 1) {
+                // title and notes always change together
+                Map<TaskField, String> changes = new EnumMap<>(TaskField.class);
+                changes.put(TaskField.TITLE, "v" + i);
+                changes.put(TaskField.NOTES, "v" + i);
+                assertTrue(tasks.update(id, changes));
+                task.setTitle("v" + i);
+                task.setNotes("v" + i);
+            } else if (operation == 2) {
+                String project = "P" + random.nextInt(8);
+                assertTrue(tasks.update(id, TaskField.PROJECT, project));
+                task.setProject(project);
+            } else if (operation == 3) {
+                assertTrue(task.isComplete() ? tasks.markInComplete(id) : tasks.markCompleted(id));
+                if (task.isComplete()) {
+                    task.markInComplete();
+                } else {
+                    task.markCompleted();
+                }
+            } else {
+                assertTrue(tasks.remove(id));
+                own.remove(id);
+                ids.remove(id);
+            }
+        }
+        return own;
+    }
+
+    private boolean consistent(Task task) {
+        return task.getProject().equals("Shared") || task.getTitle().equals(task.getNotes());
+    }
+}
@@ -0,0 +1,95 @@
+package org.sda.todolist;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the due date index, i.e., DueDateWheel used by the
+ * "what's due" screen
+ **/
+
+
+public class DueDateWheelTest {
+    TodoList todoList;
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create a task list with tasks due today, soon and much later.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        todoList = new TodoList();
+        todoList.addTask(new Task("Pay rent", "Home", LocalDate.now(), "LOW"));
+        todoList.addTask(new Task("Fix bug", "Work", LocalDate.now().plusDays(1), "HIGH"));
+        todoList.addTask(new Task("Call Anna", "Family", LocalDate.now().plusDays(3), "MEDIUM"));
+        todoList.addTask(new Task("Renew passport", "Admin", LocalDate.now().plusDays(100), "LOW"));
+        todoList.addTask(new Task("Plan trip", "Family", LocalDate.now().plusDays(1), "HIGH"));
+    }
+
+    /**
+     * This method will validate the queries, and that they follow the changes of the list
+     */
+    @Test
+    public void testQueries() {
+        assertEquals(List.of("Pay rent", "Fix bug", "Plan trip", "Call Anna"), titles(todoList.getTasksDueWithin(3)));
+        assertEquals(List.of("Pay rent"), titles(todoList.getTasksDueWithin(0)));
+        assertEquals(List.of("Renew passport"), titles(todoList.getTasksDueOn(LocalDate.now().plusDays(100))));
+        assertTrue(todoList.getOverdueTasks().isEmpty());
+
+        todoList.markCompleted(todoList.getTasks().get(1));
+        todoList.updateTask(todoList.getTasks().get(3), TaskField.DUE_DATE, LocalDate.now().plusDays(2).toString());
+        todoList.removeTask(todoList.getTasks().get(0));
+        todoList.addTask(new Task("Book dentist", "Health", LocalDate.now(), "MEDIUM"));
+
+        assertEquals(List.of("Book dentist", "Plan trip", "Renew passport", "Call Anna"), titles(todoList.getTasksDueWithin(3)));
+        assertTrue(todoList.getTasksDueOn(LocalDate.now().plusDays(100)).isEmpty());
+
+        todoList.markInComplete(todoList.getTasks().get(0));
+        assertEquals(List.of("Fix bug", "Plan trip"), titles(todoList.getTasksDueOn(LocalDate.now().plusDays(1))));
+    }
+
+    /**
+     * This method will validate that the wheel moves tasks to overdue and into the ring when the date changes
+     */
+    @Test
+    public void testRoll() {
+        TaskStatisticsTest.DateClock clock = new TaskStatisticsTest.DateClock(LocalDate.now());
+        DueDateWheel wheel = DueDateWheel.build(todoList.getTasks(), clock);
+        long today = LocalDate.now().toEpochDay();
+
+        clock.date = LocalDate.now().plusDays(2);
+        assertArrayEquals(new int[] {1, 2, 5}, wheel.overdue());
+        assertArrayEquals(new int[] {3}, wheel.dueWithin(1));
+        assertEquals(4, wheel.count(Long.MIN_VALUE, today + 3));
+
+        // 100 days later the last task was moved into the ring
+        clock.date = LocalDate.now().plusDays(99);
+        assertArrayEquals(new int[] {4}, wheel.dueWithin(1));
+        assertArrayEquals(new int[] {1, 2, 5, 3}, wheel.overdue());
+        Task passport = todoList.getTasks().get(3);
+        passport.markCompleted();
+        wheel.taskCompletionChanged(passport);
+        assertEquals(0, wheel.dueWithin(DueDateWheel.SLOTS * 2).length);
+
+        // back to today: all buckets are placed again
+        clock.date = LocalDate.now();
+        assertEquals(0, wheel.overdue().length);
+        assertArrayEquals(new int[] {1, 2, 5, 3}, wheel.due(today, today + 200));
+        assertArrayEquals(new int[] {2, 5}, wheel.dueOn(LocalDate.now().plusDays(1)));
+    }
+
+    private List<String> titles(List<Task> tasks) {
+        List<String> titles = new ArrayList<>();
+        for (Task task : tasks) {
+            titles.add(task.getTitle());
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,178 @@
+package org.sda.todolist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the parallel execution, i.e., ParallelTasks and the
+ * indexes built with it
+ **/
+
+
+public class ParallelTasksTest {
+    ParallelTasks parallel;
+    List<Task> tasks;
+    LocalDate today = LocalDate.now();
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create a pool of 4 threads which splits lists from 1,000 tasks on, and
+     * 30,000 tasks in 40 projects with random priorities, due dates (some overdue or missing) and completion.
+     */
+    @Before
+    public void setUp() {
+        parallel = new ParallelTasks(4, 1000);
+        Random random = new Random(3);
+        String[] priorities = {"HIGH", "MEDIUM", "LOW"};
+        tasks = new ArrayList<>();
+        for (int i = 1; i <= 30_000; i++) {
+            // restored like stored tasks, which may be overdue or have no due date
+            boolean complete = random.nextInt(3) == 0;
+            tasks.add(Task.restore("Task " + i + (i % 7 == 0 ? " report" : ""), "Project " + random.nextInt(40),
+                    random.nextInt(10) == 0 ? null : today.plusDays(random.nextInt(40) - 10), priorities[random.nextInt(3)],
+                    complete, complete ? today.minusDays(random.nextInt(20)) : null, ""));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        parallel.shutdown();
+    }
+
+    /**
+     * This method will validate that collecting and filtering in parallel gives the results in
+     * list order, and that small ranges are not split
+     */
+    @Test
+    public void testCollectAndFilter() {
+        assertFalse(parallel.isParallel(999));
+        assertTrue(parallel.isParallel(1000));
+        assertFalse(ParallelTasks.sequential().isParallel(Integer.MAX_VALUE));
+
+        List<Integer> positions = parallel.collect(100_000, ArrayList::new, List::add, (left, right) -> {
+            left.addAll(right);
+            return left;
+        });
+        assertEquals(100_000, positions.size());
+        for (int i = 0; i < positions.size(); i++) {
+            assertEquals(i, (int) positions.get(i));
+        }
+
+        TodoList list = new TodoList();
+        list.addTasks(tasks);
+        int[] expected = ParallelTasks.sequential().filter(list.getTasks(), Task::isComplete);
+        assertArrayEquals(expected, parallel.filter(list.getTasks(), Task::isComplete));
+        int[] ids = new int[list.getTasks().size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = (int) list.getTasks().get(i).getId();
+        }
+        // like TodoList does, the map by id is built before it is read from several threads
+        list.findTask(0);
+        assertArrayEquals(expected, parallel.filter(ids, list::findTask, Task::isComplete));
+
+        try {
+            new ParallelTasks(0, 1000);
+            fail("A parallelism of 0 must not be accepted");
+        } catch (IllegalArgumentException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    /**
+     * This method will validate that the indexes and statistics built in parallel answer like the
+     * ones built on one thread, for Task objects and for a compact list, also after changes
+     */
+    @Test
+    public void testParallelIndexes() {
+        for (boolean compact : new boolean[]{false, true}) {
+            TodoList sequential = newList(compact, ParallelTasks.sequential());
+            TodoList parallelList = newList(compact, parallel);
+            assertSameAnswers(sequential, parallelList);
+
+            // the merged id sets must keep accepting changes
+            for (TodoList list : new TodoList[]{sequential, parallelList}) {
+                list.addTask(new Task("Late report", "Project 1", today, "HIGH"));
+                list.removeTask(list.findTask(15));
+                list.markCompleted(list.findTask(20_001));
+                list.updateTask(list.findTask(7), TaskField.PROJECT, "Project 2");
+            }
+            assertSameAnswers(sequential, parallelList);
+        }
+    }
+
+    /**
+     * This method will validate that TaskIdSet.addAll appends higher ids and merges overlapping ones
+     */
+    @Test
+    public void testIdSetAddAll() {
+        TaskIdSet set = new TaskIdSet();
+        TaskIdSet higher = new TaskIdSet();
+        for (int id = 1; id <= 10; id++) {
+            set.add(id);
+            higher.add(id + 10);
+        }
+        set.addAll(higher);
+        set.addAll(new TaskIdSet());
+        assertEquals(20, set.size());
+        TaskIdSet overlapping = new TaskIdSet();
+        overlapping.add(5);
+        overlapping.add(25);
+        set.addAll(overlapping);
+        assertEquals(21, set.size());
+        assertArrayEquals(new int[]{1, 2, 3}, Arrays.copyOf(set.toArray(), 3));
+        assertEquals(25, set.toArray()[20]);
+    }
+
+    private TodoList newList(boolean compact, ParallelTasks pool) {
+        TodoList list = new TodoList();
+        list.setCompactStorage(compact);
+        list.setParallel(pool);
+        List<Task> copies = new ArrayList<>();
+        for (Task task : tasks) {
+            copies.add(Task.restore(task.getTitle(), task.getProject(), task.getDueDate(), task.getPriorityLevel().name(),
+                    task.isComplete(), task.getCompletedDate(), ""));
+        }
+        list.addTasks(copies);
+        return list;
+    }
+
+    private void assertSameAnswers(TodoList expected, TodoList actual) {
+        TaskStatistics a = expected.statistics();
+        TaskStatistics b = actual.statistics();
+        assertEquals(a.total(), b.total());
+        assertEquals(a.completed(), b.completed());
+        assertEquals(a.overdue(), b.overdue());
+        assertEquals(a.dueSoon(), b.dueSoon());
+        assertEquals(a.projects().size(), b.projects().size());
+        assertEquals(a.project("Project 3").open(), b.project("Project 3").open());
+        for (Task.Priority level : Task.Priority.values()) {
+            assertEquals(a.priority(level).completed(), b.priority(level).completed());
+        }
+        for (TaskOrder order : TaskOrder.values()) {
+            assertEquals(order.name(), ids(expected.getTasks(order)), ids(actual.getTasks(order)));
+        }
+        for (String query : new String[]{"report", "k 1", "1 OR 2", "project 3 report"}) {
+            assertEquals(query, ids(expected.search(query)), ids(actual.search(query)));
+        }
+        for (String query : new String[]{"priority:high is:open", "due:-5..+5 1", "project:\"Project 3\" completed:..-10"}) {
+            assertEquals(query, ids(expected.query(query)), ids(actual.query(query)));
+        }
+    }
+
+    private static List<Long> ids(List<Task> tasks) {
+        List<Long> ids = new ArrayList<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+}
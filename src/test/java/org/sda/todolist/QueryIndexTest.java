@@ -0,0 +1,177 @@
+package org.sda.todolist;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of queries, i.e., TaskQuery, QueryIndex and TaskBitmap
+ **/
+
+
+public class QueryIndexTest {
+    TodoList todoList;
+    LocalDate today = LocalDate.now();
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create a list of 20,000 tasks in 50 projects, with random priorities,
+     * due dates and completion dates.
+     */
+    @Before
+    public void setUp() {
+        todoList = new TodoList();
+        Random random = new Random(7);
+        String[] priorities = {"HIGH", "MEDIUM", "LOW"};
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 1; i <= 20_000; i++) {
+            Task task = new Task(i % 10 == 0 ? "Write report " + i : "Task " + i, "Project " + random.nextInt(50),
+                    today.plusDays(random.nextInt(60)), priorities[random.nextInt(3)]);
+            if (random.nextInt(4) == 0) {
+                task.restoreCompletion(true, today.minusDays(random.nextInt(30)));
+            }
+            tasks.add(task);
+        }
+        todoList.addTasks(tasks);
+    }
+
+    /**
+     * This method will validate the bitmap against a TreeSet, in sparse and in dense chunks
+     */
+    @Test
+    public void testBitmap() {
+        Random random = new Random(11);
+        TaskBitmap a = new TaskBitmap();
+        TaskBitmap b = new TaskBitmap();
+        TreeSet<Integer> expectedA = new TreeSet<>();
+        TreeSet<Integer> expectedB = new TreeSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            // the first chunk dense, the others sparse
+            int id = random.nextBoolean() ? 1 + random.nextInt(30_000) : 1 + random.nextInt(1_000_000);
+            if (random.nextInt(5) == 0) {
+                assertEquals(expectedA.remove(id), a.remove(id));
+            } else {
+                a.add(id);
+                expectedA.add(id);
+            }
+            if (i % 3 == 0) {
+                b.add(id);
+                expectedB.add(id);
+            }
+        }
+        assertArrayEquals(expectedA.stream().mapToInt(Integer::intValue).toArray(), a.toArray());
+        assertEquals(expectedA.size(), a.cardinality());
+
+        TreeSet<Integer> both = new TreeSet<>(expectedA);
+        both.retainAll(expectedB);
+        assertArrayEquals(both.stream().mapToInt(Integer::intValue).toArray(), TaskBitmap.and(a, b).toArray());
+        TreeSet<Integer> either = new TreeSet<>(expectedA);
+        either.addAll(expectedB);
+        assertArrayEquals(either.stream().mapToInt(Integer::intValue).toArray(), TaskBitmap.or(a, b).toArray());
+        TaskBitmap union = new TaskBitmap();
+        union.addAll(b);
+        union.addAll(a);
+        assertEquals(either.size(), union.cardinality());
+        assertTrue(union.contains(either.last()));
+        assertFalse(union.contains(either.last() + 1));
+    }
+
+    /**
+     * This method will validate that queries find the same tasks as checking every task, also
+     * after tasks were changed, completed, reopened and removed
+     */
+    @Test
+    public void testQueriesMatchScan() {
+        String[] queries = {
+            "project:\"Project 7\"",
+            "project:\"project 7\" priority:high is:open",
+            "priority:high,low is:done",
+            "due:today..+6 is:open",
+            "due:+10 priority:medium",
+            "completed:-7..today",
+            "completed:..-20 project:\"Project 3\"",
+            "report priority:high",
+            "report OR \"Task 15\" due:..+30",
+            "project:None",
+            "due:none",
+            ""
+        };
+        assertQueries(queries);
+
+        Random random = new Random(5);
+        for (int i = 0; i < 2000; i++) {
+            Task task = todoList.findTask(1 + random.nextInt(20_000));
+            if (task == null) {
+                continue;
+            }
+            switch (i % 5) {
+                case 0 -> todoList.updateTask(task, TaskField.PROJECT, "Project " + random.nextInt(50));
+                case 1 -> todoList.updateTask(task, TaskField.PRIORITY, random.nextBoolean() ? "HIGH" : "LOW");
+                case 2 -> todoList.updateTask(task, TaskField.DUE_DATE, today.plusDays(random.nextInt(60)).toString());
+                case 3 -> {
+                    if (task.isComplete()) {
+                        todoList.markInComplete(task);
+                    } else {
+                        todoList.markCompleted(task);
+                    }
+                }
+                default -> todoList.removeTask(task);
+            }
+        }
+        assertQueries(queries);
+    }
+
+    /**
+     * This method will validate that the most selective condition is intersected first and that
+     * much less selective conditions are only checked on the candidates
+     */
+    @Test
+    public void testPlan() {
+        todoList.addTask(new Task("Rare", "Tiny", today.plusDays(3), "HIGH"));
+        TaskQuery query = TaskQuery.parse("priority:high due:..+59 project:tiny", today);
+        QueryIndex.Plan plan = todoList.planQuery(query);
+        int[] ids = plan.execute();
+        assertEquals(1, ids.length);
+        assertEquals(List.of("project"), plan.intersected());
+        assertTrue(plan.toString(), plan.toString().startsWith("project (1), then checked: priority"));
+
+        plan = todoList.planQuery(TaskQuery.parse("priority:high is:open", today));
+        plan.execute();
+        assertEquals(2, plan.intersected().size());
+
+        assertEquals("project:\"Side project\" priority:HIGH is:open due:" + today + ".." + today.plusDays(7) + " report",
+                TaskQuery.parse("project:\"Side project\" report priority:high is:open due:today..+7", today).toString());
+        for (String invalid : new String[]{"priority:urgent", "is:maybe", "due:someday", "due:..", "project:\"open"}) {
+            try {
+                TaskQuery.parse(invalid, today);
+                fail(invalid + " must not be parsed");
+            } catch (IllegalArgumentException e) {
+                assertNotNull(e.getMessage());
+            }
+        }
+    }
+
+    private void assertQueries(String[] queries) {
+        for (String text : queries) {
+            TaskQuery query = TaskQuery.parse(text, today);
+            List<Task> expected = new ArrayList<>();
+            for (Task task : todoList.getTasks()) {
+                if (query.matches(task)) {
+                    expected.add(task);
+                }
+            }
+            List<Task> found = todoList.query(query);
+            assertEquals(text, expected.size(), found.size());
+            for (int i = 0; i < found.size(); i++) {
+                assertEquals(text, expected.get(i).getId(), found.get(i).getId());
+            }
+        }
+    }
+}
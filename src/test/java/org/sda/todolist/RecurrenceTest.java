@@ -0,0 +1,295 @@
+package org.sda.todolist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of repeating tasks, i.e., Recurrence and the occurrences
+ * of repeating tasks in TodoList
+ **/
+
+
+public class RecurrenceTest {
+    Path directory;
+    String dataFile;
+    LocalDate today = LocalDate.now();
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create an empty temporary directory for the data file and its journal.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("todolist");
+        dataFile = directory.resolve("tasks.obj").toString();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * This method will validate the syntax of the rules and that their text form is read back
+     */
+    @Test
+    public void testParse() {
+        LocalDate monday = LocalDate.of(2024, 1, 1);
+        Recurrence weekly = Recurrence.parse("Weekly on Mon, Thu until 2024-06-30", monday);
+        assertEquals(Recurrence.Frequency.WEEKLY, weekly.frequency());
+        assertEquals(LocalDate.of(2024, 6, 30), weekly.until());
+        assertEquals(weekly, Recurrence.parse(weekly.toString(), null));
+        assertEquals("every 3 days from 2024-01-01", Recurrence.parse("every 3 days", monday).toString());
+        assertEquals(Recurrence.parse("every 2 weeks", monday), Recurrence.of(Recurrence.Frequency.WEEKLY, 2, monday, DayOfWeek.MONDAY));
+        Recurrence skipped = weekly.except(LocalDate.of(2024, 1, 4));
+        assertEquals(skipped, Recurrence.parse(skipped.toString(), null));
+        assertNull(Recurrence.parse("never", monday));
+        assertNull(Recurrence.parse(" ", monday));
+        for (String wrong : new String[] {"hourly", "every 0 days", "weekly on funday", "daily until tomorrow"}) {
+            try {
+                Recurrence.parse(wrong, monday);
+                fail(wrong);
+            } catch (IllegalArgumentException e) {
+                assertNotNull(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * This method will validate the next occurrence and the number of occurrences of every kind of rule
+     */
+    @Test
+    public void testNextAndCount() {
+        LocalDate monday = LocalDate.of(2024, 1, 1);
+        LocalDate endOfYear = LocalDate.of(2024, 12, 31);
+        Recurrence daily = Recurrence.parse("daily", monday);
+        assertEquals(366, daily.count(monday, endOfYear));
+        assertEquals(monday, daily.next(monday.minusDays(10)));
+
+        Recurrence everyThirdDay = Recurrence.parse("every 3 days", monday);
+        assertEquals(LocalDate.of(2024, 1, 4), everyThirdDay.next(LocalDate.of(2024, 1, 2)));
+        assertEquals(122, everyThirdDay.count(monday, endOfYear));
+
+        Recurrence weekly = Recurrence.parse("weekly on mon,thu", monday);
+        assertEquals(LocalDate.of(2024, 1, 4), weekly.next(LocalDate.of(2024, 1, 2)));
+        assertEquals(9, weekly.count(monday, LocalDate.of(2024, 1, 31)));
+        assertFalse(weekly.occursOn(LocalDate.of(2024, 1, 3)));
+
+        Recurrence fortnightly = Recurrence.parse("every 2 weeks", monday);
+        assertEquals(List.of(monday, LocalDate.of(2024, 1, 15), LocalDate.of(2024, 1, 29)),
+                fortnightly.occurrences(monday, LocalDate.of(2024, 2, 11)));
+
+        // the 31st is the last day of shorter months
+        Recurrence monthly = Recurrence.parse("monthly until 2024-12-31", LocalDate.of(2024, 1, 31));
+        assertEquals(LocalDate.of(2024, 2, 29), monthly.next(LocalDate.of(2024, 2, 1)));
+        assertEquals(LocalDate.of(2024, 4, 30), monthly.next(LocalDate.of(2024, 4, 1)));
+        assertEquals(12, monthly.count(monday, LocalDate.of(2030, 1, 1)));
+        assertNull(monthly.next(LocalDate.of(2025, 1, 1)));
+
+        Recurrence skipped = daily.except(LocalDate.of(2024, 1, 2));
+        assertEquals(LocalDate.of(2024, 1, 3), skipped.next(LocalDate.of(2024, 1, 2)));
+        assertEquals(365, skipped.count(monday, endOfYear));
+    }
+
+    /**
+     * This method will validate that the occurrences counted from a rule are the ones listed
+     */
+    @Test
+    public void testCountMatchesOccurrences() {
+        Random random = new Random(25);
+        String[] rules = {"daily", "every 5 days", "weekly on tue,sat", "every 3 weeks on mon,wed,sun",
+                "monthly", "every 2 months", "weekly until 2026-03-01"};
+        LocalDate start = LocalDate.of(2024, 1, 29);
+        for (int i = 0; i < 500; i++) {
+            Recurrence rule = Recurrence.parse(rules[i % rules.length], start.plusDays(random.nextInt(60)));
+            for (int j = 0; j < 3; j++) {
+                rule = rule.except(start.plusDays(random.nextInt(400)));
+            }
+            LocalDate from = start.plusDays(random.nextInt(400) - 30);
+            LocalDate to = from.plusDays(random.nextInt(900));
+            List<LocalDate> occurrences = rule.occurrences(from, to);
+            assertEquals(rule + " " + from + ".." + to, occurrences.size(), rule.count(from, to));
+            if (!occurrences.isEmpty()) {
+                assertEquals(occurrences.get(0), rule.next(from));
+            }
+        }
+    }
+
+    /**
+     * This method will validate that a repeating task is listed on every day it occurs on without
+     * storing its occurrences, and that completing, skipping and detaching an occurrence is undone
+     */
+    @Test
+    public void testOccurrences() throws Exception {
+        TodoList list = new TodoList();
+        list.readFromFile(dataFile);
+        list.addTask(new Task("Once", "Home", today.plusDays(2), "LOW"));
+        Task daily = new Task("Water plants", "Home", today, "LOW");
+        daily.setRecurrence(Recurrence.parse("daily", today));
+        list.addTask(daily);
+        assertEquals(2, list.getTasks().size());
+        List<Task> week = list.getTasksDueWithin(6);
+        assertEquals(8, week.size());
+        assertEquals(today.plusDays(6), week.get(7).getDueDate());
+        assertEquals(2, list.getTasksDueOn(today.plusDays(2)).size());
+        assertEquals(1, list.copiesOfTasksDueOn(today.plusDays(4)).size());
+        assertTrue(week.get(1).isOccurrence());
+
+        Task completed = list.completeOccurrence(daily, today);
+        assertTrue(completed.isComplete());
+        assertEquals(today, completed.getDueDate());
+        assertEquals(today.plusDays(1), list.findTask(daily.getId()).getDueDate());
+        assertEquals(3, list.getTasks().size());
+        assertEquals(6, list.getTasksDueWithin(5).size());
+
+        list.skipOccurrence(daily, today.plusDays(3));
+        assertFalse(list.findTask(daily.getId()).getRecurrence().occursOn(today.plusDays(3)));
+        assertEquals(5, list.getTasksDueWithin(5).size());
+        // an occurrence listed is completed through its copy
+        Task fifth = list.getTasksDueOn(today.plusDays(5)).get(0);
+        list.markCompleted(fifth);
+        assertEquals(4, list.getTasksDueWithin(5).size());
+        Task detached = list.detachOccurrence(daily, today.plusDays(6));
+        assertNotEquals(daily.getId(), detached.getId());
+        assertFalse(detached.isRecurring());
+        assertEquals(List.of(detached.getId()), list.getTasksDueOn(today.plusDays(6)).stream().map(Task::getId).toList());
+        try {
+            list.skipOccurrence(daily, today.plusDays(3));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("does not occur"));
+        }
+
+        assertTrue(list.undo());
+        assertTrue(list.undo());
+        assertTrue(list.undo());
+        assertTrue(list.undo());
+        assertEquals(2, list.getTasks().size());
+        assertEquals(today, list.findTask(daily.getId()).getDueDate());
+        assertEquals(Recurrence.parse("daily", today), list.findTask(daily.getId()).getRecurrence());
+        assertEquals(8, list.getTasksDueWithin(6).size());
+        assertTrue(list.redo());
+        assertEquals(3, list.getTasks().size());
+
+        // the last occurrence completes the series
+        Task twice = new Task("Twice", "Work", today, "HIGH");
+        twice.setRecurrence(Recurrence.parse("daily until " + today.plusDays(1), today));
+        list.addTask(twice);
+        list.markCompleted(twice);
+        list.markCompleted(list.findTask(twice.getId()));
+        assertTrue(list.findTask(twice.getId()).isComplete());
+        assertTrue(list.close());
+    }
+
+    /**
+     * This method will validate that the rules and their exceptions are kept in the journal and
+     * in the data file, also by lists kept in primitive arrays or mapped from the data file
+     */
+    @Test
+    public void testStorage() throws Exception {
+        TodoList list = new TodoList();
+        list.readFromFile(dataFile);
+        Task weekly = new Task("Team meeting", "Work", today, "MEDIUM");
+        weekly.setRecurrence(Recurrence.parse("weekly until " + today.plusDays(70), today));
+        list.addTask(weekly);
+        list.addTask(new Task("Once", "Home", today.plusDays(1), "LOW"));
+        list.skipOccurrence(weekly, today.plusDays(14));
+        Recurrence rule = list.findTask(weekly.getId()).getRecurrence();
+        assertTrue(list.close());
+
+        // from the journal
+        TodoList reloaded = new TodoList();
+        reloaded.readFromFile(dataFile);
+        assertEquals(rule, reloaded.findTask(weekly.getId()).getRecurrence());
+        assertFalse(reloaded.findTask(2).isRecurring());
+        assertEquals(3, reloaded.getTasksDueWithin(14).size());
+        assertTrue(reloaded.saveToFile(dataFile));
+        assertTrue(reloaded.close());
+
+        for (int i = 0; i < 2; i++) {
+            TodoList other = new TodoList();
+            other.setCompactStorage(i == 0);
+            other.setLazyLoad(i == 1);
+            other.readFromFile(dataFile);
+            assertEquals(rule, other.findTask(weekly.getId()).getRecurrence());
+            assertEquals(4, other.getTasksDueWithin(21).size());
+            other.updateTask(other.findTask(weekly.getId()), TaskField.RECURRENCE, "every 2 days");
+            assertEquals(12, other.getTasksDueWithin(21).size());
+            other.updateTask(other.findTask(weekly.getId()), TaskField.RECURRENCE, "never");
+            assertEquals(2, other.getTasksDueWithin(21).size());
+            assertTrue(other.undo());
+            assertTrue(other.undo());
+            assertEquals(rule, other.findTask(weekly.getId()).getRecurrence());
+            assertTrue(other.close());
+        }
+    }
+
+    /**
+     * This method will validate that a query for a range of due dates finds a repeating task
+     * which occurs in it later than it is due
+     */
+    @Test
+    public void testQuery() throws Exception {
+        TodoList list = new TodoList();
+        list.readFromFile(dataFile);
+        Task monthly = new Task("Pay rent", "Home", today, "HIGH");
+        monthly.setRecurrence(Recurrence.parse("monthly", today));
+        list.addTask(monthly);
+        list.addTask(new Task("Once", "Work", today.plusDays(40), "LOW"));
+        LocalDate from = today.plusDays(35);
+        List<Task> found = list.query("due:" + from + ".." + today.plusDays(70));
+        assertEquals(2, found.size());
+        assertEquals(monthly.getId(), found.get(0).getId());
+        assertTrue(found.get(0).getDueDate().isAfter(from.minusDays(1)));
+        assertEquals(1, list.query("project:Home due:" + from + ".." + today.plusDays(70)).size());
+        assertEquals(0, list.query("project:Work due:" + today.plusDays(41) + ".." + today.plusDays(50)).size());
+        assertTrue(list.close());
+    }
+
+    /**
+     * This method will validate that the query of the menu finds the later occurrences of
+     * repeating tasks like query(TaskQuery)
+     */
+    @Test
+    public void testMenuQuery() throws Exception {
+        TodoList list = new TodoList();
+        list.readFromFile(dataFile);
+        Task weekly = new Task("Team meeting", "Work", today, "MEDIUM");
+        weekly.setRecurrence(Recurrence.parse("weekly", today));
+        list.addTask(weekly);
+        InputStream in = System.in;
+        PrintStream out = System.out;
+        ByteArrayOutputStream shown = new ByteArrayOutputStream();
+        try {
+            System.setIn(new ByteArrayInputStream(("due:" + today.plusDays(10) + ".." + today.plusDays(16) + "\n").getBytes()));
+            System.setOut(new PrintStream(shown, true));
+            list.queryTasks();
+        } finally {
+            System.setIn(in);
+            System.setOut(out);
+        }
+        assertTrue(shown.toString(), shown.toString().contains("1 task(s) found"));
+        assertTrue(shown.toString().contains(today.plusDays(14).toString()));
+        assertTrue(list.close());
+    }
+}
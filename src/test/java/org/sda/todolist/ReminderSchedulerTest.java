@@ -0,0 +1,102 @@
+package org.sda.todolist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the background reminders, i.e., ReminderScheduler
+ **/
+
+
+public class ReminderSchedulerTest {
+    TodoList todoList;
+    ReminderScheduler scheduler;
+    // reminders given, as "title:days left"
+    BlockingQueue<String> reminders = new LinkedBlockingQueue<>();
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create a task list with tasks due today, soon and later.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        todoList = new TodoList();
+        todoList.addTask(new Task("Pay rent", "Home", LocalDate.now(), "LOW"));
+        todoList.addTask(new Task("Fix bug", "Work", LocalDate.now().plusDays(2), "HIGH"));
+        todoList.addTask(new Task("Call Anna", "Family", LocalDate.now().plusDays(5), "MEDIUM"));
+        todoList.addTask(new Task("Water plants", "Home", LocalDate.now(), "LOW"));
+        todoList.markCompleted(todoList.getTasks().get(3));
+    }
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.stop();
+        }
+    }
+
+    /**
+     * This method will validate the reminders given on start and after changes of the list
+     */
+    @Test
+    public void testReminders() throws Exception {
+        scheduler = new ReminderScheduler(todoList, this::remind, 2, 0);
+        scheduler.start();
+        assertEquals(Set.of("Pay rent:0", "Fix bug:2"), take(2));
+
+        todoList.updateTask(todoList.getTasks().get(2), TaskField.DUE_DATE, LocalDate.now().plusDays(2).toString());
+        assertEquals(Set.of("Call Anna:2"), take(1));
+
+        // already reminded of today, and completed tasks are not reminded of
+        todoList.updateTask(todoList.getTasks().get(1), TaskField.DUE_DATE, LocalDate.now().plusDays(4).toString());
+        todoList.updateTask(todoList.getTasks().get(1), TaskField.DUE_DATE, LocalDate.now().plusDays(2).toString());
+        todoList.addTask(new Task("Buy milk", "Home", LocalDate.now().plusDays(1), "LOW"));
+        Task dentist = new Task("Book dentist", "Health", LocalDate.now(), "MEDIUM");
+        dentist.markCompleted();
+        todoList.addTask(dentist);
+        assertNull(reminders.poll(300, TimeUnit.MILLISECONDS));
+
+        todoList.markInComplete(dentist);
+        assertEquals(Set.of("Book dentist:0"), take(1));
+    }
+
+    /**
+     * This method will validate reminders of overdue tasks, given the day after the due date
+     */
+    @Test
+    public void testOverdue() throws Exception {
+        TaskStatisticsTest.DateClock tomorrow = new TaskStatisticsTest.DateClock(LocalDate.now().plusDays(1));
+        scheduler = new ReminderScheduler(todoList, this::remind, tomorrow, -1);
+        scheduler.start();
+        assertEquals(Set.of("Pay rent:-1"), take(1));
+        assertNull(reminders.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    private void remind(Task task, long daysLeft) {
+        reminders.add(task.getTitle() + ":" + daysLeft);
+    }
+
+    /**
+     * This method waits for a number of reminders
+     */
+    private Set<String> take(int count) throws InterruptedException {
+        Set<String> taken = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            String reminder = reminders.poll(5, TimeUnit.SECONDS);
+            assertNotNull(reminder);
+            taken.add(reminder);
+        }
+        return taken;
+    }
+}
@@ -0,0 +1,198 @@
+package org.sda.todolist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the replication, i.e., ReplicationLog,
+ * ReplicationServer and TaskReplica, with the primary and the replicas in one JVM
+ **/
+
+
+public class ReplicationTest {
+    static final long TIMEOUT = 10_000;
+    Path directory;
+    ConcurrentTodoList primary;
+    ReplicationServer server;
+    InetSocketAddress address;
+    // the list of the replica started by startReplica
+    ConcurrentTodoList replicaList;
+    LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create a primary of 1,000 tasks which keeps its last 100 changes for its
+     * replicas, and an empty temporary directory for the data files of the replicas.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("todolist");
+        TodoList list = new TodoList();
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            tasks.add(new Task("Task " + i, "Project " + i % 10, tomorrow.plusDays(i % 30), "MEDIUM"));
+        }
+        list.addTasks(tasks);
+        ReplicationLog log = new ReplicationLog(100);
+        list.setReplicationLog(log);
+        primary = new ConcurrentTodoList(list);
+        server = new ReplicationServer(primary, log, new InetSocketAddress("localhost", 0));
+        server.start();
+        address = new InetSocketAddress("localhost", server.port());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * This method will validate that new replicas get a snapshot and then every change, and that
+     * the listing and the search of a replica are the ones of the primary
+     */
+    @Test
+    public void testReplicasFollowPrimary() throws Exception {
+        ConcurrentTodoList first = new ConcurrentTodoList(new TodoList());
+        ConcurrentTodoList second = new ConcurrentTodoList(new TodoList());
+        TaskReplica firstReplica = new TaskReplica(first, address);
+        TaskReplica secondReplica = new TaskReplica(second, address);
+        firstReplica.start();
+        secondReplica.start();
+        try {
+            assertTrue(firstReplica.awaitSequence(primary.sequence(), TIMEOUT));
+            assertTrue(secondReplica.awaitSequence(primary.sequence(), TIMEOUT));
+            assertEquals(1, firstReplica.snapshotCount());
+            assertEquals(1000, first.size());
+
+            // in steps smaller than the log of the primary, so that no replica needs a snapshot
+            for (int step = 0; step < 6; step++) {
+                change(primary, 50);
+                assertTrue(firstReplica.awaitSequence(primary.sequence(), TIMEOUT));
+                assertTrue(secondReplica.awaitSequence(primary.sequence(), TIMEOUT));
+            }
+            assertEquals(1, firstReplica.snapshotCount());
+            assertSameTasks(primary, first);
+            assertSameTasks(primary, second);
+            assertEquals(ids(primary.search("report")), ids(second.search("report")));
+            assertEquals(ids(primary.getTasks(TaskOrder.PROJECT, 0, 50)), ids(first.getTasks(TaskOrder.PROJECT, 0, 50)));
+            assertEquals(2, server.replicaCount());
+            assertTrue(first.metrics().latency(TaskMetrics.Operation.REPLICATION).count() >= 300);
+        } finally {
+            firstReplica.stop();
+            secondReplica.stop();
+        }
+    }
+
+    /**
+     * This method will validate that a replica started again from its data file receives only
+     * the changes it missed, and a snapshot if it missed more than the log of the primary keeps
+     */
+    @Test
+    public void testCatchUp() throws Exception {
+        String dataFile = directory.resolve("replica.obj").toString();
+        TaskReplica replica = startReplica(dataFile);
+        assertEquals(1, replica.snapshotCount());
+        stopReplica(replica);
+
+        change(primary, 50);
+        replica = startReplica(dataFile);
+        assertEquals(0, replica.snapshotCount());
+        stopReplica(replica);
+
+        change(primary, 250);
+        replica = startReplica(dataFile);
+        assertEquals(1, replica.snapshotCount());
+        stopReplica(replica);
+
+        TodoList reloaded = new TodoList();
+        reloaded.readFromFile(dataFile);
+        assertSameTasks(primary, new ConcurrentTodoList(reloaded));
+        assertEquals(primary.sequence(), reloaded.sequence());
+
+        ReplicationLog log = new ReplicationLog(10);
+        log.reset(5);
+        assertNull(log.read(4, 10, 0));
+        assertTrue(log.read(5, 10, 0).isEmpty());
+        for (int sequence = 6; sequence <= 30; sequence++) {
+            log.append(JournalRecord.delete(sequence, sequence));
+        }
+        assertNull(log.read(19, 10, 0));
+        List<ReplicationLog.Entry> entries = log.read(20, 3, 0);
+        assertEquals(3, entries.size());
+        assertEquals(21, entries.get(0).record().getSequence());
+    }
+
+    private TaskReplica startReplica(String dataFile) throws InterruptedException {
+        TodoList list = new TodoList();
+        list.readFromFile(dataFile);
+        replicaList = new ConcurrentTodoList(list);
+        TaskReplica replica = new TaskReplica(replicaList, address);
+        replica.start();
+        assertTrue(replica.awaitSequence(primary.sequence(), TIMEOUT));
+        assertSameTasks(primary, replicaList);
+        return replica;
+    }
+
+    private void stopReplica(TaskReplica replica) throws InterruptedException {
+        replica.stop();
+        replicaList.close();
+    }
+
+    /**
+     * This method makes changes of every kind through the primary
+     */
+    private void change(ConcurrentTodoList tasks, int count) {
+        for (int i = 0; i < count; i++) {
+            long id = 1 + (primary.sequence() * 7) % 1000;
+            switch (i % 5) {
+                case 0 -> tasks.add(new Task("Write report " + i, "Project " + i % 7, tomorrow, "HIGH"));
+                case 1 -> tasks.update(id, TaskField.TITLE, "Renamed report " + i);
+                case 2 -> tasks.markCompleted(id);
+                case 3 -> tasks.update(id, TaskField.PROJECT, "Moved");
+                default -> tasks.remove(id);
+            }
+        }
+    }
+
+    private static void assertSameTasks(ConcurrentTodoList expected, ConcurrentTodoList actual) {
+        List<Task> expectedTasks = expected.snapshot();
+        List<Task> actualTasks = actual.snapshot();
+        assertEquals(expectedTasks.size(), actualTasks.size());
+        for (int i = 0; i < expectedTasks.size(); i++) {
+            Task task = expectedTasks.get(i);
+            Task copy = actualTasks.get(i);
+            assertEquals(task.getId(), copy.getId());
+            assertEquals(task.getTitle(), copy.getTitle());
+            assertEquals(task.getProject(), copy.getProject());
+            assertEquals(task.getDueDate(), copy.getDueDate());
+            assertEquals(task.getPriority(), copy.getPriority());
+            assertEquals(task.isComplete(), copy.isComplete());
+        }
+        assertEquals(expected.completedCount(), actual.completedCount());
+    }
+
+    private static List<Long> ids(List<Task> tasks) {
+        List<Long> ids = new ArrayList<>();
+        for (Task task : tasks) {
+            ids.add(task.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,187 @@
+package org.sda.todolist;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the search, i.e., SearchIndex used by TodoList.search
+ **/
+
+
+public class SearchIndexTest {
+    TodoList todoList;
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create a task list with a few tasks to search.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        todoList = new TodoList();
+        todoList.addTask("Write quarterly Report", "Work", LocalDate.now().plusDays(3));
+        todoList.addTask("Buy milk", "Home", LocalDate.now().plusDays(1));
+        todoList.addTask("Report broken heater", "Home", LocalDate.now().plusDays(2));
+        Task withNotes = new Task("Call Anna", "Family", LocalDate.now().plusDays(4));
+        withNotes.setNotes("ask about the holiday plans");
+        todoList.addTask(withNotes);
+    }
+
+    /**
+     * This method will validate that a keyword is found anywhere inside the title or the project,
+     * ignoring the case, like the previous String.contains search
+     */
+    @Test
+    public void testSubstringOfTitleAndProject() {
+        assertEquals(titles("Write quarterly Report", "Report broken heater"), titles(todoList.search("report")));
+        assertEquals(titles("Write quarterly Report"), titles(todoList.search("uarter")));
+        assertEquals(titles("Buy milk", "Report broken heater"), titles(todoList.search("HOME")));
+        // shorter than a trigram
+        assertEquals(titles("Buy milk", "Call Anna"), titles(todoList.search("mi")));
+    }
+
+    /**
+     * This method will validate that whole words of the notes are found
+     */
+    @Test
+    public void testWordOfNotes() {
+        assertEquals(titles("Call Anna"), titles(todoList.search("holiday")));
+        assertEquals(titles(), titles(todoList.search("holi")));
+    }
+
+    /**
+     * This method will validate queries with several terms (all must match) and with OR
+     */
+    @Test
+    public void testAndOr() {
+        assertEquals(titles("Report broken heater"), titles(todoList.search("report home")));
+        assertEquals(titles("Buy milk", "Call Anna"), titles(todoList.search("milk OR anna")));
+        assertEquals(titles(), titles(todoList.search("milk work")));
+    }
+
+    /**
+     * This method will validate that the index follows changes made through TodoList
+     */
+    @Test
+    public void testIndexIsUpdated() {
+        assertEquals(1, todoList.search("milk").size());
+
+        Task milk = todoList.search("milk").get(0);
+        todoList.updateTask(milk, TaskField.TITLE, "Buy bread");
+        assertEquals(0, todoList.search("milk").size());
+        assertEquals(1, todoList.search("bread").size());
+
+        todoList.addTask("Bake bread", "Home", LocalDate.now().plusDays(5));
+        assertEquals(2, todoList.search("bread").size());
+
+        todoList.removeTask(milk);
+        assertEquals(titles("Bake bread"), titles(todoList.search("bread")));
+    }
+
+    /**
+     * This method will validate that words split by characters which are numbers but not digits
+     * (e.g. superscripts) are removed from the index when the notes change
+     */
+    @Test
+    public void testWordsOfChangedNotes() {
+        Task anna = todoList.search("holiday").get(0);
+        todoList.updateTask(anna, TaskField.NOTES, "abc²def Ⅻxyz");
+        assertEquals(titles("Call Anna"), titles(todoList.search("abc")));
+        assertEquals(titles("Call Anna"), titles(todoList.search("xyz")));
+
+        todoList.updateTask(anna, TaskField.NOTES, "nothing here");
+        assertEquals(titles(), titles(todoList.search("abc")));
+        assertEquals(titles(), titles(todoList.search("def")));
+        assertEquals(titles(), titles(todoList.search("xyz")));
+    }
+
+    /**
+     * This method will validate that the index written at close is read back for the same state
+     */
+    @Test
+    public void testPersistedIndex() throws Exception {
+        Path directory = Files.createTempDirectory("todolist");
+        String dataFile = directory.resolve("tasks.obj").toString();
+
+        TodoList stored = new TodoList();
+        stored.readFromFile(dataFile);
+        stored.addTask("Renew passport", "Admin", LocalDate.now().plusDays(10));
+        assertEquals(1, stored.search("passport").size());
+        stored.close();
+        assertTrue(Files.exists(directory.resolve("tasks.obj.idx")));
+
+        SearchIndex index = SearchIndex.read(directory.resolve("tasks.obj.idx"), 1, 1);
+        assertNotNull(index);
+        assertNull(SearchIndex.read(directory.resolve("tasks.obj.idx"), 2, 1));
+
+        TodoList reloaded = new TodoList();
+        reloaded.readFromFile(dataFile);
+        assertEquals(1, reloaded.search("passport").size());
+        reloaded.close();
+
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * This method will validate that searching a list mapped from the data file, also for terms
+     * shorter than a trigram, keeps only the matching tasks in memory
+     */
+    @Test
+    public void testMappedListIsNotLoaded() throws Exception {
+        Path directory = Files.createTempDirectory("todolist");
+        String dataFile = directory.resolve("tasks.obj").toString();
+        TodoList stored = new TodoList();
+        // saved without compressed blocks, so that it can be mapped
+        stored.setLazyLoad(true);
+        stored.readFromFile(dataFile);
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            tasks.add(new Task((i % 100 == 0 ? "Pay " : "Call ") + i, "Home", LocalDate.now().plusDays(1)));
+        }
+        stored.addTasks(tasks);
+        assertTrue(stored.saveToFile(dataFile));
+        stored.close();
+
+        TodoList mapped = new TodoList();
+        mapped.setLazyLoad(true);
+        mapped.readFromFile(dataFile);
+        assertTrue(mapped.isMapped());
+        assertEquals(10, mapped.search("pa").size());
+        assertEquals(10, mapped.search("pay").size());
+        assertEquals(10, mapped.query("pa is:open").size());
+        assertTrue(mapped.mappedTasksInMemory() <= 10);
+        mapped.close();
+
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    private List<String> titles(String... titles) {
+        return List.of(titles);
+    }
+
+    private List<String> titles(List<Task> tasks) {
+        List<String> titles = new ArrayList<>();
+        for (Task task : tasks) {
+            titles.add(task.getTitle());
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,214 @@
+package org.sda.todolist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the data file split by project, i.e., ShardedTaskStore
+ **/
+
+
+public class ShardedTaskStoreTest {
+    Path directory;
+    Path dataFile;
+    LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create an empty temporary directory for the data file and its shards.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("todolist");
+        dataFile = directory.resolve("tasks.obj");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        delete(directory);
+    }
+
+    /**
+     * This method will validate that the shards are read back in id order, and that saving a
+     * change of one project writes only the shard of that project
+     */
+    @Test
+    public void testOnlyChangedShardsWritten() {
+        TodoList todoList = new TodoList();
+        todoList.setSharded(true);
+        todoList.readFromFile(dataFile.toString());
+        for (int i = 1; i <= 300; i++) {
+            todoList.addTask("Task " + i, "Project " + (i % 3), tomorrow);
+        }
+        assertTrue(todoList.close());
+        assertTrue(ShardedTaskStore.exists(dataFile));
+        Set<String> before = segments();
+        assertEquals(3, before.size());
+
+        TodoList reopened = new TodoList();
+        reopened.readFromFile(dataFile.toString());
+        List<Task> tasks = reopened.getTasks();
+        assertEquals(300, tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            assertEquals(i + 1, tasks.get(i).getId());
+        }
+        reopened.markCompleted(reopened.findTask(4));
+        assertTrue(reopened.close());
+
+        Set<String> after = segments();
+        Set<String> kept = new HashSet<>(before);
+        kept.retainAll(after);
+        assertEquals(3, after.size());
+        assertEquals(2, kept.size());
+
+        TodoList project = new TodoList();
+        assertTrue(project.readProject(dataFile.toString(), "Project 1"));
+        assertEquals(100, project.getTasks().size());
+        assertTrue(project.findTask(4).isComplete());
+        assertNull(project.findTask(3));
+    }
+
+    /**
+     * This method will validate that a task moved to another project leaves the shard of its old
+     * project, also when the move is only in the journal after a crash
+     */
+    @Test
+    public void testProjectMove() {
+        TodoList todoList = new TodoList();
+        todoList.setSharded(true);
+        todoList.readFromFile(dataFile.toString());
+        todoList.addTask("Pay rent", "Home", tomorrow);
+        todoList.addTask("Write report", "Work", tomorrow);
+        assertTrue(todoList.close());
+
+        TodoList crashed = new TodoList();
+        crashed.readFromFile(dataFile.toString());
+        crashed.updateTask(crashed.findTask(1), TaskField.PROJECT, "Work");
+        // not closed: the move is only in the journal
+        assertTrue(crashed.flushChanges());
+
+        TodoList work = new TodoList();
+        work.readProject(dataFile.toString(), "Work");
+        assertEquals(2, work.getTasks().size());
+
+        TodoList reopened = new TodoList();
+        reopened.readFromFile(dataFile.toString());
+        assertEquals("Work", reopened.findTask(1).getProject());
+        assertTrue(reopened.close());
+
+        TodoList home = new TodoList();
+        assertTrue(home.readProject(dataFile.toString(), "Home"));
+        assertTrue(home.getTasks().isEmpty());
+        work = new TodoList();
+        assertTrue(work.readProject(dataFile.toString(), "Work"));
+        assertEquals(2, work.getTasks().size());
+    }
+
+    /**
+     * This method will validate that a large project is split into buckets, that a change writes
+     * only its bucket, and that all buckets are read in parallel and merged in id order
+     */
+    @Test
+    public void testBuckets() throws Exception {
+        ShardedTaskStore store = new ShardedTaskStore(dataFile, 100, 4);
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            Task task = new Task("Task " + i, i <= 950 ? "Big" : "Small", tomorrow, "LOW");
+            task.setId(i);
+            tasks.add(task);
+            store.taskAdded(task);
+        }
+        store.write(tasks, 7, store.takeDirty());
+        // 950 tasks in 16 buckets of at most 100, and 1 shard of 50
+        assertEquals(17, store.shardCount());
+        Set<String> before = segments();
+
+        tasks.get(499).setNotes("changed");
+        store.taskUpdated(tasks.get(499), TaskField.NOTES, "");
+        store.write(tasks, 8, store.takeDirty());
+        Set<String> kept = new HashSet<>(before);
+        kept.retainAll(segments());
+        assertEquals(16, kept.size());
+
+        ShardedTaskStore reopened = new ShardedTaskStore(dataFile, 100, 4);
+        List<Task> loaded = reopened.load();
+        assertEquals(8, reopened.journalSequence());
+        assertEquals(1000, loaded.size());
+        for (int i = 0; i < loaded.size(); i++) {
+            assertEquals(i + 1, loaded.get(i).getId());
+        }
+        assertEquals("changed", loaded.get(499).getNotes());
+        assertEquals(50, reopened.loadProject("Small").size());
+        assertTrue(reopened.loadProject("None").isEmpty());
+    }
+
+    /**
+     * This method will validate that an existing data file is moved into shards on the first save
+     */
+    @Test
+    public void testMigration() {
+        TodoList todoList = new TodoList();
+        todoList.readFromFile(dataFile.toString());
+        todoList.addTask("Pay rent", "Home", tomorrow);
+        todoList.addTask("Write report", "Work", tomorrow);
+        assertTrue(todoList.saveToFile(dataFile.toString()));
+        assertTrue(todoList.close());
+        assertFalse(ShardedTaskStore.exists(dataFile));
+
+        TodoList sharded = new TodoList();
+        sharded.setSharded(true);
+        sharded.readFromFile(dataFile.toString());
+        assertTrue(sharded.close());
+        assertTrue(ShardedTaskStore.exists(dataFile));
+        assertFalse(Files.exists(dataFile));
+        assertTrue(Files.exists(Paths.get(dataFile + ".unsharded")));
+
+        TodoList reopened = new TodoList();
+        reopened.readFromFile(dataFile.toString());
+        assertEquals(2, reopened.getTasks().size());
+        assertEquals("Work", reopened.findTask(2).getProject());
+        reopened.close();
+    }
+
+    private Set<String> segments() {
+        Set<String> names = new HashSet<>();
+        try (var files = Files.list(ShardedTaskStore.directoryOf(dataFile))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (file.getFileName().toString().startsWith("segment-")) {
+                    names.add(file.getFileName().toString());
+                }
+            }
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+        return names;
+    }
+
+    private static void delete(Path path) throws Exception {
+        if (Files.isDirectory(path)) {
+            List<Path> children = new ArrayList<>();
+            try (var files = Files.list(path)) {
+                files.forEach(children::add);
+            }
+            Collections.sort(children);
+            for (Path child : children) {
+                delete(child);
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,93 @@
+package org.sda.todolist;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the sorted views, i.e., SortedTaskIndexes used by TodoList.getTasks
+ **/
+
+
+public class SortedTaskIndexesTest {
+    TodoList todoList;
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create a task list with tasks in no particular order.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        todoList = new TodoList();
+        todoList.addTask(new Task("Pay rent", "Home", LocalDate.now().plusDays(5), "LOW"));
+        todoList.addTask(new Task("Fix bug", "Work", LocalDate.now().plusDays(1), "HIGH"));
+        todoList.addTask(new Task("Call Anna", "Family", LocalDate.now().plusDays(3), "medium"));
+        todoList.addTask(new Task("Plan trip", "Family", LocalDate.now().plusDays(1), ""));
+    }
+
+    /**
+     * This method will validate each order, ties are kept in the order the tasks were added
+     */
+    @Test
+    public void testOrders() {
+        assertEquals(titles("Fix bug", "Plan trip", "Call Anna", "Pay rent"), titles(todoList.getTasks(TaskOrder.DUE_DATE)));
+        assertEquals(titles("Call Anna", "Plan trip", "Pay rent", "Fix bug"), titles(todoList.getTasks(TaskOrder.PROJECT)));
+        assertEquals(titles("Fix bug", "Call Anna", "Plan trip", "Pay rent"), titles(todoList.getTasks(TaskOrder.PRIORITY)));
+
+        todoList.markCompleted(todoList.getTasks().get(1));
+        assertEquals(titles("Pay rent", "Call Anna", "Plan trip", "Fix bug"), titles(todoList.getTasks(TaskOrder.COMPLETION)));
+    }
+
+    /**
+     * This method will validate that showing a sorted view does not change the list or the task numbers
+     */
+    @Test
+    public void testListOrderIsKept() {
+        List<String> before = titles(todoList.getTasks());
+        Task rent = todoList.getTasks().get(0);
+
+        todoList.getTasks(TaskOrder.DUE_DATE);
+        todoList.sortByPriority();
+
+        assertEquals(before, titles(todoList.getTasks()));
+        assertEquals(0, todoList.positionOf(rent));
+        assertEquals(3, todoList.positionOf(todoList.getTasks(TaskOrder.DUE_DATE).get(1)));
+    }
+
+    /**
+     * This method will validate that the views follow changes and that windows skip the right tasks
+     */
+    @Test
+    public void testViewsAreUpdated() {
+        assertEquals(titles("Fix bug", "Plan trip"), titles(todoList.getTasks(TaskOrder.DUE_DATE, 0, 2)));
+
+        Task rent = todoList.getTasks().get(0);
+        todoList.updateTask(rent, TaskField.DUE_DATE, LocalDate.now().toString());
+        todoList.updateTask(rent, TaskField.PROJECT, "Admin");
+        todoList.removeTask(todoList.getTasks().get(1));
+        todoList.addTask(new Task("Book dentist", "Health", LocalDate.now().plusDays(2), "HIGH"));
+
+        assertEquals(titles("Pay rent", "Plan trip", "Book dentist", "Call Anna"), titles(todoList.getTasks(TaskOrder.DUE_DATE)));
+        assertEquals(titles("Book dentist", "Call Anna"), titles(todoList.getTasks(TaskOrder.DUE_DATE, 2, 10)));
+        assertEquals(titles("Pay rent", "Call Anna", "Plan trip", "Book dentist"), titles(todoList.getTasks(TaskOrder.PROJECT)));
+        assertEquals(3, todoList.positionOf(todoList.getTasks(TaskOrder.PRIORITY).get(0)));
+    }
+
+    private List<String> titles(String... titles) {
+        return List.of(titles);
+    }
+
+    private List<String> titles(List<Task> tasks) {
+        List<String> titles = new ArrayList<>();
+        for (Task task : tasks) {
+            titles.add(task.getTitle());
+        }
+        return titles;
+    }
+}
@@ -0,0 +1,255 @@
+package org.sda.todolist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the archive of completed tasks, i.e., TaskArchive
+ * and its use by TodoList
+ **/
+
+
+public class TaskArchiveTest {
+    Path directory;
+    String dataFile;
+    LocalDate today = LocalDate.now();
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create an empty temporary directory for the data file and its archive.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("todolist");
+        dataFile = directory.resolve("tasks.obj").toString();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * This method will validate that only tasks completed long ago are moved to the archive, that
+     * they are found there by the days of their completion, and that their ids are not given again
+     */
+    @Test
+    public void testArchiveCompleted() throws Exception {
+        TodoList list = new TodoList();
+        list.readFromFile(dataFile);
+        list.addTasks(tasks(3000));
+        int open = list.notCompletedCount();
+        assertEquals(0, list.archiveCompleted(100_000));
+        assertEquals(2000, list.archiveCompleted(30));
+        assertEquals(1000, list.getTasks().size());
+        assertEquals(open, list.notCompletedCount());
+        assertEquals(2000, list.archivedCount());
+        assertEquals(0, list.query("is:done").size());
+        // the last task was archived, its id is not given again
+        list.addTask(new Task("New", "Home", today.plusDays(1), "LOW"));
+        assertEquals(3001, list.findTask(3001).getId());
+        assertTrue(list.close());
+
+        TodoList reloaded = new TodoList();
+        reloaded.readFromFile(dataFile);
+        assertEquals(1001, reloaded.getTasks().size());
+        assertEquals(2000, reloaded.archivedCount());
+        List<Task> march = reloaded.query("in:archive completed:2024-03");
+        assertEquals(1000, march.size());
+        for (Task task : march) {
+            assertTrue(task.isComplete());
+            assertEquals(3, task.getCompletedDate().getMonthValue());
+        }
+        assertEquals(1000, reloaded.queryArchive(new TaskQuery()
+                .completedBetween(LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31))).size());
+        assertEquals(500, reloaded.query("in:archive project:Work completed:2024-03").size());
+        assertEquals(1, reloaded.query("in:archive \"Task 2999\"").size());
+        assertTrue(reloaded.query("in:archive is:open").isEmpty());
+        assertEquals(2000, reloaded.query("in:archive").size());
+        reloaded.addTask(new Task("Newer", "Home", today.plusDays(1), "LOW"));
+        assertNotNull(reloaded.findTask(3002));
+        assertTrue(reloaded.close());
+    }
+
+    /**
+     * This method will validate that a query reads only the parts of the archive with the days
+     * of completion asked for
+     */
+    @Test
+    public void testQueryReadsMatchingSegments() throws Exception {
+        TaskArchive archive = TaskArchive.open(Path.of(dataFile));
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 1; i <= 5 * TaskArchive.SEGMENT_TASKS; i++) {
+            tasks.add(completed(i, LocalDate.of(2024, 1, 1).plusDays(i / 100)));
+        }
+        archive.append(tasks, 5000, BlockTaskFile.DEFAULT_LEVEL);
+        assertEquals(5, archive.segmentCount());
+        assertEquals(5000, archive.lastSequence());
+
+        TaskArchive reopened = TaskArchive.open(Path.of(dataFile));
+        assertEquals(5 * TaskArchive.SEGMENT_TASKS, reopened.size());
+        List<Task> found = reopened.find(TaskQuery.parse("completed:2024-01-05"));
+        assertEquals(100, found.size());
+        long oneSegment = reopened.bytesRead();
+        assertTrue(oneSegment > 0);
+        assertTrue(oneSegment * 3 < Files.size(TaskArchive.archivePath(Path.of(dataFile))));
+        assertEquals(0, reopened.find(TaskQuery.parse("completed:2023-12")).size());
+        assertEquals(oneSegment, reopened.bytesRead());
+    }
+
+    /**
+     * This method will validate that lists kept in primitive arrays or mapped from the data file
+     * are archived like lists of Task objects
+     */
+    @Test
+    public void testCompactAndMappedLists() throws Exception {
+        TodoList compact = new TodoList();
+        compact.setCompactStorage(true);
+        compact.readFromFile(dataFile);
+        compact.addTasks(tasks(3000));
+        compact.search("task");
+        assertEquals(2000, compact.archiveCompleted(30));
+        assertEquals(1000, compact.getTasks().size());
+        assertEquals(1000, compact.search("task").size());
+        assertEquals(0, compact.query("completed:2024-03").size());
+        assertTrue(compact.close());
+
+        TodoList lazy = new TodoList();
+        lazy.setLazyLoad(true);
+        lazy.readFromFile(dataFile);
+        lazy.addTasks(tasks(3000));
+        assertTrue(lazy.saveToFile(dataFile));
+        assertTrue(lazy.close());
+        lazy = new TodoList();
+        lazy.setLazyLoad(true);
+        lazy.readFromFile(dataFile);
+        assertTrue(lazy.isMapped());
+        assertEquals(2000, lazy.archiveCompleted(30));
+        assertEquals(2000, lazy.getTasks().size());
+        assertEquals(2000, lazy.notCompletedCount() + lazy.completedCount());
+        assertEquals(4000, lazy.archivedCount());
+        assertTrue(lazy.close());
+    }
+
+    /**
+     * This method will validate that tasks archived without their removal reaching the journal
+     * are removed again when the list is loaded, and that a torn write of the archive is ignored
+     */
+    @Test
+    public void testRecovery() throws Exception {
+        TodoList list = new TodoList();
+        list.readFromFile(dataFile);
+        list.addTasks(tasks(3000));
+        assertTrue(list.saveToFile(dataFile));
+        assertTrue(list.close());
+        Path backup = Files.createTempDirectory("todolist-backup");
+        List<Path> copied = new ArrayList<>();
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                copied.add(Files.copy(file, backup.resolve(file.getFileName())));
+            }
+        }
+
+        list = new TodoList();
+        list.readFromFile(dataFile);
+        assertEquals(2000, list.archiveCompleted(30));
+        assertTrue(list.close());
+        // the data file and the journal as they were before the archiving
+        for (Path file : copied) {
+            Files.move(file, directory.resolve(file.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.delete(backup);
+        Files.write(TaskArchive.archivePath(Path.of(dataFile)), new byte[100], StandardOpenOption.APPEND);
+        Files.write(TaskArchive.indexPath(Path.of(dataFile)), new byte[30], StandardOpenOption.APPEND);
+
+        TodoList reloaded = new TodoList();
+        reloaded.readFromFile(dataFile);
+        assertEquals(1000, reloaded.getTasks().size());
+        assertEquals(2000, reloaded.archivedCount());
+        for (Task task : reloaded.getTasks()) {
+            assertTrue(!task.isComplete() || task.getCompletedDate().isAfter(today.minusDays(30)));
+        }
+        reloaded.addTask(new Task("Done", "Home", today.plusDays(1), "LOW"));
+        reloaded.markCompleted(reloaded.findTask(3001));
+        reloaded.findTask(3001).restoreCompletion(true, LocalDate.of(2024, 6, 1));
+        // few tasks are archived, so the indexes are kept and updated
+        assertEquals(1001, reloaded.search("Task OR Done").size());
+        assertEquals(1, reloaded.archiveCompleted(30));
+        assertEquals(1000, reloaded.search("Task OR Done").size());
+        assertNull(reloaded.findTask(3001));
+        assertTrue(reloaded.close());
+
+        TaskArchive archive = TaskArchive.open(Path.of(dataFile));
+        assertEquals(2001, archive.size());
+        assertEquals(1, archive.find(TaskQuery.parse("completed:2024-06")).size());
+    }
+
+    /**
+     * This method will validate the month ranges and the archive condition of the query syntax
+     */
+    @Test
+    public void testQuerySyntax() {
+        TaskQuery query = TaskQuery.parse("in:archive completed:2024-02 report");
+        assertTrue(query.inArchive());
+        assertEquals(LocalDate.of(2024, 2, 1), query.completedFrom());
+        assertEquals(LocalDate.of(2024, 2, 29), query.completedTo());
+        assertEquals("completed:2024-02-01..2024-02-29 in:archive report", query.toString());
+        query = TaskQuery.parse("completed:2024-01..2024-03");
+        assertEquals(LocalDate.of(2024, 3, 31), query.completedTo());
+        assertFalse(query.inArchive());
+        try {
+            TaskQuery.parse("in:trash");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("in:archive"));
+        }
+        try {
+            TaskQuery.parse("completed:2024-13");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("2024-13"));
+        }
+    }
+
+    /**
+     * @return tasks of which a third is open, a third was completed in March 2024 and a third in
+     * May 2024; the open ones are the first of every three
+     */
+    private List<Task> tasks(int count) {
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String project = i % 2 == 0 ? "Home" : "Work";
+            LocalDate completed = switch (i % 3) {
+                case 1 -> LocalDate.of(2024, 3, 1 + i % 31);
+                case 2 -> LocalDate.of(2024, 5, 1 + i % 31);
+                default -> null;
+            };
+            tasks.add(Task.restore("Task " + i, project, today.plusDays(1 + i % 20), "MEDIUM",
+                    completed != null, completed, ""));
+        }
+        return tasks;
+    }
+
+    private static Task completed(long id, LocalDate day) {
+        Task task = Task.restore("Task " + id, "Home", day, "LOW", true, day, "");
+        task.setId(id);
+        return task;
+    }
+}
@@ -0,0 +1,148 @@
+package org.sda.todolist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the import and export of CSV and JSON lines files,
+ * i.e., TaskImporter and TaskFormat
+ **/
+
+
+public class TaskImporterTest {
+    Path directory;
+    TodoList todoList;
+    String today = LocalDate.now().toString();
+    String tomorrow = LocalDate.now().plusDays(1).toString();
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create a task list with tasks whose text needs quoting and escaping.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("todolist");
+        todoList = new TodoList();
+        todoList.addTask(new Task("Pay rent", "Home", LocalDate.now(), "LOW"));
+        Task bug = new Task("Fix \"login\" bug, again", "Work", LocalDate.now().plusDays(1), "HIGH");
+        bug.setNotes("first line\nsecond line \\ tab\tend");
+        todoList.addTask(bug);
+        todoList.addTask(new Task("Call Anna", "Family", LocalDate.now().plusDays(5), "MEDIUM"));
+        todoList.markCompleted(todoList.getTasks().get(2));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * This method will validate that exported tasks are imported again with all fields, in both formats
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (String name : List.of("tasks.csv", "tasks.jsonl")) {
+            String filename = directory.resolve(name).toString();
+            assertEquals(3, todoList.exportTasks(filename));
+
+            TodoList imported = new TodoList();
+            TaskImporter.Report report = imported.importTasks(filename);
+            assertEquals(3, report.imported());
+            assertEquals(0, report.rejected());
+            assertNull(report.errorFile());
+            for (int i = 0; i < 3; i++) {
+                Task expected = todoList.getTasks().get(i);
+                Task actual = imported.getTasks().get(i);
+                assertEquals(expected.getTitle(), actual.getTitle());
+                assertEquals(expected.getProject(), actual.getProject());
+                assertEquals(expected.getDueDate(), actual.getDueDate());
+                assertEquals(expected.getPriority(), actual.getPriority());
+                assertEquals(expected.isComplete(), actual.isComplete());
+                assertEquals(expected.getCompletedDate(), actual.getCompletedDate());
+                assertEquals(expected.getNotes(), actual.getNotes());
+            }
+            assertEquals(1, imported.completedCount());
+        }
+    }
+
+    /**
+     * This method will validate that invalid rows are rejected with their line number, and the
+     * valid rows around them are imported
+     */
+    @Test
+    public void testRejectedRows() throws Exception {
+        Path file = directory.resolve("other.csv");
+        Files.write(file, List.of(
+                "Name,Due Date,Project,Priority,Status,Labels",
+                "Write report," + tomorrow + ",Work,high,open,x",
+                "," + tomorrow + ",Work,high,open,x",
+                "Old task,2000-01-01,Work,low,open,",
+                "Old done task,2000-01-01,Work,low,done,",
+                "\"Plan\ntrip\"," + today + ",Family,urgent,,",
+                "Buy milk,tomorrow,Home,,,",
+                "\"Book dentist\"," + today + ",Health,,,"), StandardCharsets.UTF_8);
+
+        TaskImporter.Report report = new TaskImporter(TaskFormat.CSV, 2, 2)
+                .importFile(file, directory.resolve("other.errors.csv"), todoList::addTasks);
+
+        assertEquals(3, report.imported());
+        assertEquals(4, report.rejected());
+        assertEquals(List.of("line 3: REQUIRED: Title can not be empty.",
+                "line 4: Past Date not allowed",
+                "line 6: Priority must be HIGH, MEDIUM or LOW: urgent",
+                "line 8: Invalid date, use yyyy-mm-dd: tomorrow"), report.errors());
+        List<String> errors = Files.readAllLines(report.errorFile(), StandardCharsets.UTF_8);
+        assertEquals("line,error,record", errors.get(0));
+        assertEquals("6,\"Priority must be HIGH, MEDIUM or LOW: urgent\",\"\"\"Plan", errors.get(3));
+
+        assertEquals(6, todoList.getTasks().size());
+        assertEquals("Write report", todoList.getTasks().get(3).getTitle());
+        assertEquals("HIGH", todoList.getTasks().get(3).getPriority());
+        assertTrue(todoList.getTasks().get(4).isComplete());
+        assertEquals(LocalDate.of(2000, 1, 1), todoList.getTasks().get(4).getDueDate());
+        assertEquals("Book dentist", todoList.getTasks().get(5).getTitle());
+        assertEquals(2, todoList.search("dentist").size() + todoList.search("report").size());
+    }
+
+    /**
+     * This method will validate the parsing of JSON lines
+     */
+    @Test
+    public void testJsonLines() throws Exception {
+        Path file = directory.resolve("tasks.jsonl");
+        Files.write(file, List.of(
+                "{\"title\": \"Pay \\\"bills\\\" \\u00e9\", \"due_date\": \"" + tomorrow + "\", \"done\": false, \"id\": 17}",
+                "",
+                "{\"title\": \"Nested\", \"dueDate\": \"" + tomorrow + "\", \"tags\": [\"a\"]}",
+                "{\"title\": \"Broken\", \"dueDate\": \"" + tomorrow + "\"",
+                "{\"title\": \"Read book\", \"dueDate\": \"" + tomorrow + "\", \"priority\": null, \"notes\": null}"),
+                StandardCharsets.UTF_8);
+
+        TaskImporter.Report report = todoList.importTasks(file.toString());
+
+        assertEquals(2, report.imported());
+        assertEquals(List.of("line 3: Nested JSON values are not supported",
+                "line 4: Invalid JSON, expected ',' or '}' at position 45"), report.errors());
+        assertTrue(Files.exists(directory.resolve("tasks.jsonl.errors.csv")));
+        Task bills = todoList.getTasks().get(3);
+        assertEquals("Pay \"bills\" é", bills.getTitle());
+        assertEquals(4, bills.getId());
+        assertEquals("MEDIUM", todoList.getTasks().get(4).getPriority());
+        assertEquals("", todoList.getTasks().get(4).getNotes());
+    }
+}
@@ -0,0 +1,239 @@
+package org.sda.todolist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the journal of changes, i.e., TaskJournal used by TodoList
+ **/
+
+
+public class TaskJournalTest {
+    Path directory;
+    String dataFile;
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create an empty temporary directory for the data file and its journal.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("todolist");
+        dataFile = directory.resolve("tasks.obj").toString();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * This method will validate that changes which were only written to the journal are restored
+     * when the list is loaded again
+     */
+    @Test
+    public void testReplayAfterRestart() {
+        TodoList todoList = new TodoList();
+        todoList.readFromFile(dataFile);
+        todoList.addTask("First", "Home", LocalDate.now().plusDays(5));
+        todoList.addTask("Second", "Work", LocalDate.now().plusDays(6));
+        todoList.addTask("Third", "Work", LocalDate.now().plusDays(7));
+
+        List<Task> tasks = todoList.getTasks();
+        todoList.updateTask(tasks.get(0), TaskField.TITLE, "First (renamed)");
+        todoList.markCompleted(tasks.get(1));
+        todoList.removeTask(tasks.get(2));
+        assertTrue(todoList.close());
+        assertFalse(Files.exists(Path.of(dataFile)));
+
+        TodoList reloaded = new TodoList();
+        reloaded.readFromFile(dataFile);
+        List<Task> restored = reloaded.getTasks();
+        assertEquals(2, restored.size());
+        assertEquals("First (renamed)", restored.get(0).getTitle());
+        assertTrue(restored.get(1).isComplete());
+        assertEquals(LocalDate.now(), restored.get(1).getCompletedDate());
+        reloaded.close();
+    }
+
+    /**
+     * This method will validate that changes are saved by rewriting a data file which could not be
+     * read, and that the unreadable file is kept
+     */
+    @Test
+    public void testUnreadableDataFile() throws Exception {
+        Files.write(Path.of(dataFile), "not a data file".getBytes());
+        TodoList todoList = new TodoList();
+        assertFalse(todoList.readFromFile(dataFile));
+        todoList.addTask("Kept", "Home", LocalDate.now().plusDays(5));
+        assertTrue(todoList.flushChanges());
+        assertEquals("not a data file", new String(Files.readAllBytes(Path.of(dataFile + ".bak"))));
+        todoList.addTask("Also kept", "Home", LocalDate.now().plusDays(6));
+        assertTrue(todoList.close());
+        assertEquals("not a data file", new String(Files.readAllBytes(Path.of(dataFile + ".bak"))));
+
+        TodoList reloaded = new TodoList();
+        assertTrue(reloaded.readFromFile(dataFile));
+        assertEquals(2, reloaded.getTasks().size());
+        assertTrue(reloaded.close());
+    }
+
+    /**
+     * This method will validate that texts longer than 64 KB are journaled, and that a value
+     * which is rejected does not reach the task or the journal
+     */
+    @Test
+    public void testLongTexts() {
+        TodoList todoList = new TodoList();
+        todoList.readFromFile(dataFile);
+        Task task = new Task("Long notes", "Home", LocalDate.now().plusDays(5), "LOW");
+        task.setNotes("n".repeat(100_000));
+        todoList.addTask(task);
+        todoList.updateTask(task, TaskField.TITLE, "\u00e9".repeat(40_000));
+        try {
+            todoList.updateTask(task, TaskField.DUE_DATE, "2000-01-01");
+            fail();
+        } catch (RuntimeException e) {
+            // a rejected value is neither applied nor recorded
+            assertEquals(LocalDate.now().plusDays(5), task.getDueDate());
+        }
+        assertTrue(todoList.close());
+
+        TodoList reloaded = new TodoList();
+        reloaded.readFromFile(dataFile);
+        Task found = reloaded.findTask(task.getId());
+        assertEquals(100_000, found.getNotes().length());
+        assertEquals("\u00e9".repeat(40_000), found.getTitle());
+        assertEquals(LocalDate.now().plusDays(5), found.getDueDate());
+        assertTrue(reloaded.saveToFile(dataFile));
+        assertTrue(reloaded.close());
+        reloaded = new TodoList();
+        reloaded.readFromFile(dataFile);
+        assertEquals(100_000, reloaded.findTask(task.getId()).getNotes().length());
+        assertTrue(reloaded.close());
+    }
+
+    /**
+     * This method will validate that a change too large for the journal is rejected before the
+     * task is changed, and that the following changes are still read
+     */
+    @Test
+    public void testTooLargeChange() {
+        TodoList todoList = new TodoList();
+        todoList.readFromFile(dataFile);
+        Task task = new Task("Notes", "Home", LocalDate.now().plusDays(5), "LOW");
+        todoList.addTask(task);
+        try {
+            todoList.updateTask(task, TaskField.NOTES, "n".repeat(JournalRecord.MAX_LENGTH + 1));
+            fail("should have thrown an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("", task.getNotes());
+        }
+        todoList.updateTask(task, TaskField.TITLE, "Renamed");
+        assertTrue(todoList.close());
+
+        TodoList reloaded = new TodoList();
+        reloaded.readFromFile(dataFile);
+        assertEquals("Renamed", reloaded.findTask(task.getId()).getTitle());
+        assertTrue(reloaded.close());
+    }
+
+    /**
+     * This method will validate that records written before texts were written with their length
+     * (version 0, writeUTF) are still read
+     */
+    @Test
+    public void testVersionZeroRecords() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(JournalRecord.Type.UPDATE.ordinal());
+        out.writeLong(7);
+        out.writeLong(3);
+        out.writeByte(TaskField.NOTES.ordinal());
+        out.writeBoolean(true);
+        out.writeUTF("Old notes");
+        JournalRecord record = JournalRecord.decode(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(JournalRecord.Type.UPDATE, record.getType());
+        assertEquals(7, record.getSequence());
+        assertEquals(3, record.getTaskId());
+        assertEquals("Old notes", record.getValue());
+        // written as version 1, which older readers do not know
+        assertEquals(JournalRecord.VERSION, record.encode()[0] >>> 4);
+        JournalRecord copy = JournalRecord.decode(new DataInputStream(new ByteArrayInputStream(record.encode())));
+        assertEquals("Old notes", copy.getValue());
+    }
+
+    /**
+     * This method will validate that a torn record at the end of the journal is ignored
+     */
+    @Test
+    public void testTornRecordIsIgnored() throws Exception {
+        TodoList todoList = new TodoList();
+        todoList.readFromFile(dataFile);
+        todoList.addTask("Kept", "Home", LocalDate.now().plusDays(5));
+        todoList.close();
+
+        Path journal = TaskJournal.journalPath(Path.of(dataFile));
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 40, 1, 2, 3}));
+        }
+
+        TodoList reloaded = new TodoList();
+        reloaded.readFromFile(dataFile);
+        assertEquals(1, reloaded.getTasks().size());
+        reloaded.addTask("Added after torn record", "Home", LocalDate.now().plusDays(5));
+        reloaded.close();
+
+        TodoList again = new TodoList();
+        again.readFromFile(dataFile);
+        assertEquals(2, again.getTasks().size());
+        again.close();
+    }
+
+    /**
+     * This method will validate that the journal is compacted into the data file once it passes
+     * the threshold, and that changes made during and after the compaction are kept
+     */
+    @Test
+    public void testCompaction() {
+        TodoList todoList = new TodoList();
+        todoList.readFromFile(dataFile);
+        todoList.setCompactionThreshold(1024);
+        for (int i = 0; i < 200; i++) {
+            todoList.addTask("Task " + i, "Project " + (i % 5), LocalDate.now().plusDays(i % 30));
+        }
+        todoList.markCompleted(todoList.getTasks().get(199));
+        assertTrue(todoList.close());
+
+        assertTrue(Files.exists(Path.of(dataFile)));
+
+        TodoList reloaded = new TodoList();
+        reloaded.readFromFile(dataFile);
+        List<Task> restored = reloaded.getTasks();
+        assertEquals(200, restored.size());
+        assertEquals("Task 0", restored.get(0).getTitle());
+        assertTrue(restored.get(199).isComplete());
+        reloaded.close();
+    }
+}
@@ -0,0 +1,134 @@
+package org.sda.todolist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+import javax.management.MBeanServer;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the timings of operations, i.e., TaskMetrics and
+ * LatencyHistogram
+ **/
+
+
+public class TaskMetricsTest {
+    Path directory;
+    LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create an empty temporary directory for the data file.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("todolist");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * This method will validate that the percentiles of the histogram are within 1/64 of the
+     * exact percentiles, from nanoseconds to minutes
+     */
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = new long[100_000];
+        Random random = new Random(3);
+        for (int i = 0; i < values.length; i++) {
+            // spread over 12 orders of magnitude
+            values[i] = (long) Math.pow(10, random.nextDouble() * 12);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, histogram.count());
+        assertEquals(values[values.length - 1], histogram.max());
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9, 100}) {
+            long exact = values[(int) Math.ceil(values.length * percentile / 100) - 1];
+            long measured = histogram.percentile(percentile);
+            assertTrue(percentile + ": " + measured + " " + exact, measured >= exact);
+            assertTrue(percentile + ": " + measured + " " + exact, measured <= exact + exact / 64 + 1);
+        }
+        for (long value = 0; value < 1_000_000; value += 7) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(LatencyHistogram.highestValueOf(index) >= value);
+            assertTrue(index == 0 || LatencyHistogram.highestValueOf(index - 1) < value);
+        }
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.percentile(99));
+    }
+
+    /**
+     * This method will validate that the operations of a list and the bytes of its files are
+     * measured, and that they can be read over JMX
+     */
+    @Test
+    public void testOperations() throws Exception {
+        String dataFile = directory.resolve("tasks.obj").toString();
+        TodoList todoList = new TodoList();
+        todoList.readFromFile(dataFile);
+        for (int i = 1; i <= 100; i++) {
+            todoList.addTask("Task " + i, "Project " + (i % 4), tomorrow);
+        }
+        todoList.markCompleted(todoList.findTask(5));
+        todoList.updateTask(todoList.findTask(6), TaskField.TITLE, "Renamed");
+        todoList.removeTask(todoList.findTask(7));
+        todoList.search("renamed");
+        todoList.getTasks(TaskOrder.PROJECT);
+        assertTrue(todoList.saveToFile(dataFile));
+        assertTrue(todoList.close());
+
+        TaskMetrics metrics = todoList.metrics();
+        assertEquals(100, metrics.latency(TaskMetrics.Operation.ADD).count());
+        assertEquals(1, metrics.latency(TaskMetrics.Operation.COMPLETE).count());
+        assertEquals(1, metrics.latency(TaskMetrics.Operation.EDIT).count());
+        assertEquals(1, metrics.latency(TaskMetrics.Operation.DELETE).count());
+        assertEquals(1, metrics.latency(TaskMetrics.Operation.SEARCH).count());
+        assertEquals(1, metrics.latency(TaskMetrics.Operation.LIST_BY_PROJECT).count());
+        assertEquals(0, metrics.latency(TaskMetrics.Operation.LIST_BY_PRIORITY).count());
+        assertEquals(1, metrics.latency(TaskMetrics.Operation.SAVE).count());
+        // the index and the pack of the blocks
+        long dataFileSize = Files.size(directory.resolve("tasks.obj"))
+                + Files.size(BlockTaskFile.packPath(directory.resolve("tasks.obj"), 1));
+        assertTrue(metrics.count(TaskMetrics.Counter.BYTES_WRITTEN) > dataFileSize);
+        String report = metrics.report();
+        assertTrue(report.contains("list_by_project"));
+        assertFalse(report.contains("list_by_priority"));
+
+        TodoList reopened = new TodoList();
+        assertTrue(reopened.readFromFile(dataFile));
+        assertEquals(1, reopened.metrics().latency(TaskMetrics.Operation.LOAD).count());
+        assertEquals(dataFileSize, reopened.metrics().count(TaskMetrics.Counter.BYTES_READ));
+        reopened.close();
+
+        metrics.registerMBeans();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(100L, server.getAttribute(TaskMetrics.latencyName(TaskMetrics.Operation.ADD), "Count"));
+            assertEquals(metrics.count(TaskMetrics.Counter.BYTES_WRITTEN),
+                    server.getAttribute(TaskMetrics.countersName(), "BytesWritten"));
+        } finally {
+            metrics.unregisterMBeans();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(TaskMetrics.countersName()));
+    }
+}
@@ -0,0 +1,114 @@
+package org.sda.todolist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the HTTP API, i.e., TaskServer
+ **/
+
+
+public class TaskServerTest {
+    TaskServer server;
+    HttpClient client;
+    String url;
+    String tomorrow = LocalDate.now().plusDays(1).toString();
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will start a server for an empty task list on a free port.
+     */
+    @Before
+    public void setUp() throws Exception {
+        server = new TaskServer(new ConcurrentTodoList(new TodoList()), new InetSocketAddress("localhost", 0));
+        server.start();
+        client = HttpClient.newHttpClient();
+        url = "http://localhost:" + server.port();
+    }
+
+    /**
+     * This method will execute after every Test and will stop the server.
+     */
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * This method will validate adding, reading, changing and deleting a task
+     */
+    @Test
+    public void testTask() throws Exception {
+        HttpResponse<String> added = send("POST", "/tasks",
+                "{\"title\":\"Pay rent\",\"project\":\"Home\",\"dueDate\":\"" + tomorrow + "\"}");
+        assertEquals(201, added.statusCode());
+        assertEquals("/tasks/1", added.headers().firstValue("Location").orElse(null));
+
+        HttpResponse<String> rejected = send("POST", "/tasks", "{\"title\":\"Call Anna\",\"dueDate\":\"2000-01-01\"}");
+        assertEquals(400, rejected.statusCode());
+        assertTrue(rejected.body().startsWith("{\"error\":"));
+        assertEquals(400, send("POST", "/tasks", "{\"dueDate\":\"" + tomorrow + "\"}").statusCode());
+        assertEquals(400, send("PATCH", "/tasks/1", "{\"title\":\" \"}").statusCode());
+        assertEquals(400, send("PATCH", "/tasks/1", "{\"dueDate\":\"tomorrow\"}").statusCode());
+
+        HttpResponse<String> changed = send("PATCH", "/tasks/1", "{\"priority\":\"high\",\"complete\":true}");
+        assertEquals(200, changed.statusCode());
+        assertTrue(changed.body().contains("\"priority\":\"HIGH\",\"complete\":true"));
+        assertTrue(send("PATCH", "/tasks/1", "{\"complete\":\"done\"}").body().contains("\"complete\":true"));
+        assertEquals(400, send("PATCH", "/tasks/1", "{\"priority\":\"low\",\"complete\":\"maybe\"}").statusCode());
+        assertTrue(send("GET", "/tasks/1", null).body().contains("\"priority\":\"HIGH\",\"complete\":true"));
+
+        assertEquals(204, send("DELETE", "/tasks/1", null).statusCode());
+        assertEquals(404, send("GET", "/tasks/1", null).statusCode());
+        assertEquals(405, send("PUT", "/tasks/1", "{}").statusCode());
+        assertEquals(400, send("GET", "/tasks/one", null).statusCode());
+    }
+
+    /**
+     * This method will validate filters and pages of the list, the search, and that a client
+     * holding the current ETag gets 304 until the list changes
+     */
+    @Test
+    public void testList() throws Exception {
+        for (int i = 1; i <= 5; i++) {
+            send("POST", "/tasks", "{\"title\":\"Task " + i + "\",\"project\":\"" + (i % 2 == 0 ? "Work" : "Home")
+                    + "\",\"dueDate\":\"" + LocalDate.now().plusDays(6 - i) + "\"}");
+        }
+        assertEquals(200, send("POST", "/tasks/5/complete", null).statusCode());
+
+        HttpResponse<String> page = send("GET", "/tasks?order=due&status=open&project=Home&offset=1&limit=1", null);
+        assertEquals(200, page.statusCode());
+        assertTrue(page.body().startsWith("{\"total\":2,\"offset\":1,\"limit\":1,\"tasks\":[{\"id\":1,"));
+
+        HttpResponse<String> found = send("GET", "/search?q=task+3", null);
+        assertTrue(found.body().startsWith("{\"total\":1,"));
+        assertTrue(found.body().contains("\"title\":\"Task 3\""));
+
+        String etag = page.headers().firstValue("ETag").orElse(null);
+        assertNotNull(etag);
+        HttpRequest conditional = HttpRequest.newBuilder(URI.create(url + "/tasks")).header("If-None-Match", etag).build();
+        assertEquals(304, client.send(conditional, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        send("PATCH", "/tasks/2", "{\"title\":\"Task two\"}");
+        HttpResponse<String> changed = client.send(conditional, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, changed.statusCode());
+        assertNotEquals(etag, changed.headers().firstValue("ETag").orElse(null));
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
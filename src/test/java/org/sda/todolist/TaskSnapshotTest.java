@@ -0,0 +1,146 @@
+package org.sda.todolist;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the point-in-time views of a list, i.e., TaskSnapshot
+ **/
+
+
+public class TaskSnapshotTest {
+    LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+    /**
+     * This method will validate that a snapshot does not see the changes made after it was taken,
+     * and that a new snapshot shares all nodes except the changed paths
+     */
+    @Test
+    public void testIsolation() {
+        TodoList todoList = new TodoList();
+        for (int i = 1; i <= 5000; i++) {
+            todoList.addTask("Task " + i, "Project " + (i % 10), tomorrow);
+        }
+        TaskSnapshot before = todoList.snapshot();
+        assertSame(before, todoList.snapshot());
+
+        todoList.updateTask(todoList.findTask(10), TaskField.TITLE, "Renamed");
+        todoList.markCompleted(todoList.findTask(20));
+        todoList.removeTask(todoList.findTask(30));
+        todoList.addTask("New", "Home", tomorrow);
+        TaskSnapshot after = todoList.snapshot();
+
+        assertEquals(5000, before.size());
+        assertEquals("Task 10", before.find(10).getTitle());
+        assertFalse(before.find(20).isComplete());
+        assertNotNull(before.find(30));
+        assertNull(before.find(5001));
+
+        assertEquals(5000, after.size());
+        assertEquals("Renamed", after.find(10).getTitle());
+        assertTrue(after.find(20).isComplete());
+        assertNull(after.find(30));
+        assertEquals("New", after.get(4999).getTitle());
+        assertEquals(before.sequence() + 4, after.sequence());
+
+        // 4 changes of a trie with 3 levels: the root and at most 4 paths of 2 nodes below it
+        assertTrue(after.nodesNotSharedWith(before) <= 9);
+    }
+
+    /**
+     * This method will validate adding, replacing and removing tasks of the trie against a sorted
+     * map, also for ids which need a higher trie
+     */
+    @Test
+    public void testTrie() {
+        Random random = new Random(7);
+        TreeMap<Long, Task> expected = new TreeMap<>();
+        TaskSnapshot snapshot = TaskSnapshot.empty();
+        for (int i = 0; i < 20_000; i++) {
+            long id = random.nextInt(4) == 0 ? random.nextInt(2_000_000) : random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(id);
+                snapshot = snapshot.without(id, i);
+            } else {
+                Task task = new Task("Task " + id + " " + i, "Home", tomorrow, "LOW");
+                task.setId(id);
+                expected.put(id, task);
+                snapshot = snapshot.with(task, i);
+            }
+        }
+        assertEquals(expected.size(), snapshot.size());
+        Iterator<Task> tasks = snapshot.iterator();
+        int index = 0;
+        for (Map.Entry<Long, Task> entry : expected.entrySet()) {
+            Task task = tasks.next();
+            assertEquals(entry.getValue().getTitle(), task.getTitle());
+            assertSame(task, snapshot.get(index++));
+            assertSame(task, snapshot.find(entry.getKey()));
+        }
+        assertFalse(tasks.hasNext());
+
+        List<Task> all = new ArrayList<>(expected.values());
+        TaskSnapshot built = TaskSnapshot.of(all, 1);
+        assertEquals(snapshot.size(), built.size());
+        assertEquals(all.get(all.size() - 1).getTitle(), built.get(built.size() - 1).getTitle());
+        for (Task task : all) {
+            built = built.without(task.getId(), 2);
+        }
+        assertTrue(built.isEmpty());
+        assertFalse(built.iterator().hasNext());
+    }
+
+    /**
+     * This method will validate that readers of snapshots always see a consistent list while a
+     * writer keeps adding, changing and deleting tasks
+     */
+    @Test
+    public void testReadWhileWriting() throws Exception {
+        TodoList todoList = new TodoList();
+        for (int i = 1; i <= 1000; i++) {
+            todoList.addTask("Task " + i, "Project " + (i % 10), tomorrow);
+        }
+        ConcurrentTodoList shared = new ConcurrentTodoList(todoList);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 5000; i++) {
+                    long id = shared.add(new Task("Added " + i, "Home", tomorrow, "HIGH"));
+                    shared.update(id - 500, TaskField.NOTES, "changed " + i);
+                    shared.remove(id - 1000);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        writer.start();
+        int reads = 0;
+        while (writer.isAlive() || reads == 0) {
+            TaskSnapshot snapshot = todoList.snapshot();
+            long last = 0;
+            int count = 0;
+            for (Task task : snapshot) {
+                assertTrue(task.getId() > last);
+                last = task.getId();
+                count++;
+            }
+            // one task is removed for every task added
+            assertEquals(snapshot.size(), count);
+            assertTrue(count >= 999 && count <= 1001);
+            reads++;
+        }
+        writer.join();
+        assertNull(failure.get());
+        assertEquals(1000, shared.snapshot().size());
+    }
+}
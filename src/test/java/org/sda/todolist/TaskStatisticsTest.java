@@ -0,0 +1,131 @@
+package org.sda.todolist;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of the task counters, i.e., TaskStatistics used by
+ * TodoList.statistics and the summary screen
+ **/
+
+
+public class TaskStatisticsTest {
+    TodoList todoList;
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create a task list with tasks of several projects and priorities.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        todoList = new TodoList();
+        todoList.addTask(new Task("Pay rent", "Home", LocalDate.now(), "LOW"));
+        todoList.addTask(new Task("Fix bug", "Work", LocalDate.now().plusDays(1), "HIGH"));
+        todoList.addTask(new Task("Call Anna", "Family", LocalDate.now().plusDays(5), "MEDIUM"));
+        todoList.addTask(new Task("Plan trip", "Family", LocalDate.now().plusDays(2), "HIGH"));
+    }
+
+    /**
+     * This method will validate that the counters follow every change of the list
+     */
+    @Test
+    public void testCounts() {
+        TaskStatistics statistics = todoList.statistics();
+        assertEquals(4, statistics.total());
+        assertEquals(0, statistics.completed());
+        assertEquals(3, statistics.dueSoon());
+        assertEquals(2, statistics.project("Family").open());
+        assertEquals(2, statistics.priority(Task.Priority.HIGH).total());
+
+        Task bug = todoList.getTasks().get(1);
+        todoList.markCompleted(bug);
+        todoList.markCompleted(bug);
+        Task trip = todoList.getTasks().get(3);
+        todoList.updateTask(trip, TaskField.PROJECT, "Travel");
+        todoList.updateTask(trip, TaskField.PRIORITY, "low");
+        todoList.updateTask(trip, TaskField.DUE_DATE, LocalDate.now().plusDays(30).toString());
+        todoList.removeTask(todoList.getTasks().get(0));
+        todoList.addTask(new Task("Book dentist", "Health", LocalDate.now().plusDays(1), "MEDIUM"));
+
+        assertEquals(4, statistics.total());
+        assertEquals(1, statistics.completed());
+        assertEquals(3, todoList.notCompletedCount());
+        assertEquals(1, statistics.dueSoon());
+        assertEquals(1, statistics.project("Work").completed());
+        assertEquals(0, statistics.project("Work").open());
+        assertEquals(1, statistics.project("Family").total());
+        assertEquals(1, statistics.project("Travel").total());
+        assertFalse(statistics.projects().containsKey("Home"));
+        assertEquals(1, statistics.priority(Task.Priority.LOW).total());
+        assertEquals(0, statistics.priority(Task.Priority.HIGH).open());
+
+        // counting all tasks again gives the same numbers
+        TaskStatistics recount = TaskStatistics.build(todoList.getTasks(), Clock.systemDefaultZone());
+        assertEquals(recount.projects().keySet(), statistics.projects().keySet());
+        assertEquals(recount.dueSoon(), statistics.dueSoon());
+        assertEquals(recount.priority(Task.Priority.MEDIUM).open(), statistics.priority(Task.Priority.MEDIUM).open());
+    }
+
+    /**
+     * This method will validate that overdue and due soon tasks are counted again when the date changes
+     */
+    @Test
+    public void testDayRoll() {
+        DateClock clock = new DateClock(LocalDate.now());
+        TaskStatistics statistics = TaskStatistics.build(todoList.getTasks(), clock);
+        assertEquals(0, statistics.overdue());
+        assertEquals(3, statistics.dueSoon());
+
+        clock.date = LocalDate.now().plusDays(2);
+        assertEquals(2, statistics.overdue());
+        assertEquals(1, statistics.dueSoon());
+
+        // completing a task which is already overdue
+        Task rent = todoList.getTasks().get(0);
+        rent.markCompleted();
+        statistics.taskCompletionChanged(rent);
+        assertEquals(1, statistics.overdue());
+
+        clock.date = LocalDate.now().plusDays(1000);
+        assertEquals(3, statistics.overdue());
+        assertEquals(0, statistics.dueSoon());
+        clock.date = LocalDate.now();
+        assertEquals(0, statistics.overdue());
+        assertEquals(2, statistics.dueSoon());
+    }
+
+    /**
+     * This clock can be set to any date by the tests
+     */
+    static class DateClock extends Clock {
+        LocalDate date;
+
+        DateClock(LocalDate date) {
+            this.date = date;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return date.atStartOfDay().toInstant(ZoneOffset.UTC);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.sda.todolist;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * This class is created for unit testing of undo and redo, i.e., UndoHistory used by TodoList
+ **/
+
+
+public class UndoHistoryTest {
+    Path directory;
+    String dataFile;
+    LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+    /**
+     * This method will execute before executing any Test.
+     * This method will create an empty temporary directory for the data file and the spill files.
+     * @throws Exception
+     */
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("todolist");
+        dataFile = directory.resolve("tasks.obj").toString();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * This method will validate that adding, editing, completing and deleting are undone and
+     * redone step by step, and that undone changes are kept after a restart
+     */
+    @Test
+    public void testUndoRedo() {
+        TodoList todoList = new TodoList();
+        todoList.readFromFile(dataFile);
+        todoList.addTask("Pay rent", "Home", tomorrow);
+        todoList.addTask("Call Anna", "Home", tomorrow.plusDays(1));
+        Task first = todoList.findTask(1);
+
+        todoList.beginChange();
+        todoList.updateTask(first, TaskField.TITLE, "Pay the rent");
+        todoList.updateTask(first, TaskField.PRIORITY, "HIGH");
+        todoList.endChange();
+        todoList.markCompleted(first);
+        todoList.removeTask(todoList.findTask(1));
+        assertEquals(5, todoList.history().undoCount());
+
+        // the deleted task comes back completed, at its old position
+        assertTrue(todoList.undo());
+        assertEquals(1, todoList.getTasks().get(0).getId());
+        assertTrue(todoList.getTasks().get(0).isComplete());
+        assertTrue(todoList.undo());
+        assertFalse(todoList.findTask(1).isComplete());
+        assertTrue(todoList.undo());
+        assertEquals("Pay rent", todoList.findTask(1).getTitle());
+        assertEquals("MEDIUM", todoList.findTask(1).getPriority());
+        assertEquals(0, todoList.search("pay the").size());
+        assertEquals(1, todoList.search("rent").size());
+
+        assertTrue(todoList.redo());
+        assertEquals("Pay the rent", todoList.findTask(1).getTitle());
+        assertEquals(1, todoList.statistics().priority(Task.Priority.HIGH).total());
+        assertEquals(2, todoList.history().redoCount());
+
+        // a new change can not be followed by the changes undone before it
+        todoList.removeTask(todoList.findTask(2));
+        assertFalse(todoList.redo());
+        assertTrue(todoList.undo());
+        assertEquals(2, todoList.getTasks().size());
+        assertTrue(todoList.undo());
+        assertTrue(todoList.undo());
+        assertTrue(todoList.undo());
+        assertFalse(todoList.undo());
+        assertEquals(0, todoList.getTasks().size());
+        assertTrue(todoList.redo());
+        assertTrue(todoList.close());
+
+        TodoList reopened = new TodoList();
+        reopened.readFromFile(dataFile);
+        assertEquals(1, reopened.getTasks().size());
+        assertEquals("Pay rent", reopened.getTasks().get(0).getTitle());
+        assertFalse(reopened.undo());
+        reopened.close();
+    }
+
+    /**
+     * This method will validate that older changes are moved to disk when the memory budget is
+     * used, and that all of them can be undone in order
+     */
+    @Test
+    public void testSpill() {
+        UndoHistory history = new UndoHistory(64, 4096, directory);
+        TodoList todoList = new TodoList();
+        todoList.setUndoHistory(history);
+        todoList.addTask("Task", "Home", tomorrow);
+        Task task = todoList.findTask(1);
+        for (int i = 1; i <= 10_000; i++) {
+            todoList.updateTask(task, TaskField.NOTES, "note " + i);
+            assertTrue(history.memoryUsed() <= 4096);
+        }
+        assertEquals(10_001, history.undoCount());
+
+        for (int i = 9_999; i >= 1; i--) {
+            assertTrue(todoList.undo());
+            assertEquals("note " + i, task.getNotes());
+            assertTrue(history.memoryUsed() <= 8192);
+        }
+        assertTrue(todoList.undo());
+        assertEquals("", task.getNotes());
+        assertTrue(todoList.undo());
+        assertFalse(todoList.undo());
+        assertEquals(10_001, history.redoCount());
+        todoList.close();
+    }
+
+    /**
+     * This method will validate that without a spill directory only the newest changes are kept
+     */
+    @Test
+    public void testDropOldest() {
+        UndoHistory history = new UndoHistory(3, UndoHistory.DEFAULT_MEMORY, null);
+        TodoList todoList = new TodoList();
+        todoList.setUndoHistory(history);
+        for (int i = 0; i < 5; i++) {
+            todoList.addTask("Task " + i, "Home", tomorrow);
+        }
+        assertEquals(3, history.undoCount());
+        while (todoList.undo()) {
+            // undone one by one
+        }
+        List<Task> tasks = todoList.getTasks();
+        assertEquals(2, tasks.size());
+        assertEquals("Task 1", tasks.get(1).getTitle());
+    }
+}